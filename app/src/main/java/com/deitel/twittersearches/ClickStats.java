@@ -0,0 +1,268 @@
+package com.deitel.twittersearches;
+
+import android.content.Context;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+//The ClickStats class counts how often, and how recently, each search is tapped, so that PrefetchJobService
+//can download the results of the searches the user is most likely to tap next.
+//
+//Every tag has a single decayed counter: each tap adds 1, and the count halves every HALF_LIFE_MILLIS, so a
+//search tapped ten times last month ranks below one tapped three times today. Rather than decaying every
+//counter as time passes, a counter is stored as log2(count) + time / HALF_LIFE_MILLIS, its "level". The
+//levels of all the counters then keep their order as time passes, so a tap only updates its own tag's level
+//(in O(1)) and the top tags are simply the ones with the highest levels.
+//
+//The levels are kept in an open-addressing hash table (parallel arrays of tags and doubles) rather than a
+//HashMap, so a counter costs a reference and a double. They are saved to a small file (see save) so that
+//PrefetchJobService can read them while the app isn't running.
+//
+//All methods are synchronized, since the app's taps and the prefetch job use the same ClickStats.
+public class ClickStats {
+
+    private static final int MAGIC = 0x54534353; //"TSCS"
+    private static final int VERSION = 1;
+
+    //The name of the file the counters are saved in.
+    private static final String CLICKS = "clicks.dat";
+
+    //A tap counts half as much after three days.
+    static final long HALF_LIFE_MILLIS = 3L * 24 * 60 * 60 * 1000;
+
+    private static final double LN_2 = Math.log(2);
+
+    private static ClickStats stats;
+
+    private final File file;
+    private String[] tags = new String[16];
+    private double[] levels = new double[16];
+    private int size;
+    private boolean dirty;
+
+
+    //constructor. The counters are read from "file" by load.
+    public ClickStats(File file) {
+        this.file = file;
+    }
+
+
+    //Returns the app's ClickStats, reading its file the first time it is called (which should therefore not
+    //be on the main thread; TagLoader calls it first).
+    public static synchronized ClickStats get(Context context) {
+        if (stats == null) {
+            stats = new ClickStats(new File(context.getApplicationContext().getFilesDir(), CLICKS));
+            try {
+                stats.load();
+            }
+            catch (IOException e) {
+                //start counting again.
+            }
+        }
+        return stats;
+    }
+
+
+    //Counts a tap on "tag" at time "now" (in milliseconds).
+    public synchronized void recordClick(String tag, long now) {
+        double time = (double) now / HALF_LIFE_MILLIS;
+        int slot = find(tag);
+
+        if (slot >= 0) {
+            //log2(2^x + 1), computed so that it neither overflows for large x nor loses the 1 for small x.
+            double x = levels[slot] - time;
+            double count = x > 0 ? x + log2OnePlus(Math.pow(2, -x)) : log2OnePlus(Math.pow(2, x));
+            levels[slot] = count + time;
+        }
+        else
+            insert(tag, time);
+        dirty = true;
+    }
+
+
+    //Returns the decayed number of taps on "tag" at time "now".
+    public synchronized double getCount(String tag, long now) {
+        int slot = find(tag);
+        return slot >= 0 ? Math.pow(2, levels[slot] - (double) now / HALF_LIFE_MILLIS) : 0;
+    }
+
+
+    //Forgets the taps on "tag", e.g. because its search was deleted.
+    public synchronized void remove(String tag) {
+        int slot = find(tag);
+        if (slot < 0)
+            return;
+
+        //backward-shift deletion: move the following entries of the probe sequence up into the gap.
+        int mask = tags.length - 1;
+        int gap = slot;
+        int next = (gap + 1) & mask;
+        while (tags[next] != null) {
+            int home = slot(tags[next]);
+            //the entry can fill the gap if its home slot doesn't lie cyclically in (gap, next].
+            if (((next - home) & mask) >= ((next - gap) & mask)) {
+                tags[gap] = tags[next];
+                levels[gap] = levels[next];
+                gap = next;
+            }
+            next = (next + 1) & mask;
+        }
+        tags[gap] = null;
+        --size;
+        dirty = true;
+    }
+
+
+    //Returns the number of tags with counters.
+    public synchronized int size() {
+        return size;
+    }
+
+
+    //Returns up to "n" tags with the highest counts, the highest first.
+    public synchronized List<String> top(int n) {
+        //a min-heap of the n best slots found so far.
+        PriorityQueue<Integer> best = new PriorityQueue<>(Math.max(1, n), new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return Double.compare(levels[a], levels[b]);
+            }
+        });
+
+        for (int slot = 0; slot < tags.length && n > 0; ++slot) {
+            if (tags[slot] == null)
+                continue;
+            if (best.size() < n)
+                best.add(slot);
+            else if (levels[slot] > levels[best.peek()]) {
+                best.poll();
+                best.add(slot);
+            }
+        }
+
+        List<String> top = new ArrayList<>(best.size());
+        while (!best.isEmpty())
+            top.add(tags[best.poll()]);
+        Collections.reverse(top);
+        return top;
+    }
+
+
+    //Saves the counters to their file if they have changed. The file is written to a temporary file first
+    //so that a crash can't leave a half-written file.
+    public synchronized void save() throws IOException {
+        if (!dirty)
+            return;
+
+        File temporary = new File(file.getPath() + ".tmp");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(size);
+            for (int slot = 0; slot < tags.length; ++slot) {
+                if (tags[slot] != null) {
+                    out.writeUTF(tags[slot]);
+                    out.writeDouble(levels[slot]);
+                }
+            }
+        }
+        finally {
+            out.close();
+        }
+
+        if (!temporary.renameTo(file)) {
+            temporary.delete();
+            throw new IOException("Unable to replace " + file);
+        }
+        dirty = false;
+    }
+
+
+    //Replaces the counters with the ones saved in the file, if there is one.
+    public synchronized void load() throws IOException {
+        if (!file.exists())
+            return;
+
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION)
+                return;
+
+            int count = in.readInt();
+            tags = new String[16];
+            levels = new double[16];
+            size = 0;
+            for (int i = 0; i < count; ++i) {
+                String tag = in.readUTF();
+                double level = in.readDouble();
+                if (find(tag) < 0)
+                    insert(tag, level);
+            }
+            dirty = false;
+        }
+        finally {
+            in.close();
+        }
+    }
+
+
+
+    private int find(String tag) {
+        int mask = tags.length - 1;
+        for (int slot = slot(tag); tags[slot] != null; slot = (slot + 1) & mask)
+            if (tags[slot].equals(tag))
+                return slot;
+        return -1;
+    }
+
+
+    //Adds a tag that isn't in the table yet.
+    private void insert(String tag, double level) {
+        if ((size + 1) * 4 > tags.length * 3)
+            grow();
+
+        int mask = tags.length - 1;
+        int slot = slot(tag);
+        while (tags[slot] != null)
+            slot = (slot + 1) & mask;
+        tags[slot] = tag;
+        levels[slot] = level;
+        ++size;
+    }
+
+
+    private void grow() {
+        String[] oldTags = tags;
+        double[] oldLevels = levels;
+        tags = new String[oldTags.length * 2];
+        levels = new double[oldTags.length * 2];
+        size = 0;
+        for (int slot = 0; slot < oldTags.length; ++slot)
+            if (oldTags[slot] != null)
+                insert(oldTags[slot], oldLevels[slot]);
+    }
+
+
+    //The home slot of "tag": its hash code, mixed so that similar tags spread over the table.
+    private int slot(String tag) {
+        int hash = tag.hashCode() * 0x9e3779b9;
+        return (hash ^ (hash >>> 16)) & (tags.length - 1);
+    }
+
+
+    private static double log2OnePlus(double x) {
+        return Math.log1p(x) / LN_2;
+    }
+}
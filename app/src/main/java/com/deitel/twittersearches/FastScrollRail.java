@@ -0,0 +1,157 @@
+package com.deitel.twittersearches;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Typeface;
+import android.support.v4.content.ContextCompat;
+import android.util.AttributeSet;
+import android.util.TypedValue;
+import android.view.MotionEvent;
+import android.view.View;
+
+import java.util.Arrays;
+
+//The FastScrollRail class is the column of section labels ("#", "A", "B", ...) shown along the right edge
+//of the list. Touching or dragging along it jumps the list straight to the section under the finger.
+//
+//The rail shows one entry per header of the TagSections (consecutive sections with the same label share an
+//entry) together with the position of its first tag. The entries are only rebuilt when the sections have
+//changed, from the sections themselves, so jumping never has to look at the tags.
+public class FastScrollRail extends View {
+
+    //Listener is told the position to jump to when the user touches an entry.
+    public interface Listener {
+        void onJumpTo(int position);
+    }
+
+    private static final int TEXT_SIZE_SP = 11;
+
+    private final Paint textPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint pressedPaint = new Paint();
+
+    private TagSections sections;
+    private Listener listener;
+    private int sectionsModificationCount;
+
+    private String[] labels = new String[32];
+    private int[] starts = new int[32];
+    private int entryCount;
+
+    private int touchedEntry = -1;
+
+    //constructor used when the rail is inflated from a layout.
+    public FastScrollRail(Context context, AttributeSet attrs) {
+        super(context, attrs);
+
+        textPaint.setTextSize(TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_SP, TEXT_SIZE_SP,
+                context.getResources().getDisplayMetrics()));
+        textPaint.setTypeface(Typeface.DEFAULT_BOLD);
+        textPaint.setTextAlign(Paint.Align.CENTER);
+        textPaint.setColor(ContextCompat.getColor(context, R.color.colorPrimary));
+        pressedPaint.setColor(ContextCompat.getColor(context, R.color.colorPrimary));
+        pressedPaint.setAlpha(0x30);
+    }
+
+
+    //Sets the Listener to tell about jumps.
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+
+    //Shows "sections", rebuilding the entries if they are different sections or have changed since they were
+    //last shown. A null "sections" (the list is filtered) hides the rail, as do fewer than two sections to
+    //jump between. Called whenever the list changes.
+    public void update(TagSections sections) {
+        if (sections != null && (sections != this.sections
+                || sections.getModificationCount() != sectionsModificationCount)) {
+            this.sections = sections;
+            sectionsModificationCount = sections.getModificationCount();
+            rebuildEntries();
+            invalidate();
+        }
+        setVisibility(sections != null && entryCount > 1 ? View.VISIBLE : View.GONE);
+    }
+
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        super.onDraw(canvas);
+        if (entryCount == 0)
+            return;
+
+        float entryHeight = (float) getHeight() / entryCount;
+        float lineHeight = textPaint.descent() - textPaint.ascent();
+        //If the entries are closer together than a line of text, only every "step"th label is drawn
+        //(touching still reaches every entry).
+        int step = Math.max(1, (int) Math.ceil(lineHeight / entryHeight));
+        float x = getWidth() / 2f;
+
+        if (touchedEntry >= 0)
+            canvas.drawRect(0, 0, getWidth(), getHeight(), pressedPaint);
+
+        for (int i = 0; i < entryCount; i += step) {
+            float baseline = i * entryHeight + (entryHeight - textPaint.ascent() - textPaint.descent()) / 2f;
+            canvas.drawText(labels[i], x, baseline, textPaint);
+        }
+    }
+
+
+    //onTouchEvent jumps to the entry under the finger as it moves along the rail.
+    @Override
+    public boolean onTouchEvent(MotionEvent event) {
+        if (entryCount == 0)
+            return false;
+
+        switch (event.getActionMasked()) {
+            case MotionEvent.ACTION_DOWN:
+                //keep the list from scrolling (or intercepting the drag) while the rail is touched.
+                getParent().requestDisallowInterceptTouchEvent(true);
+                jumpTo(event.getY());
+                return true;
+            case MotionEvent.ACTION_MOVE:
+                jumpTo(event.getY());
+                return true;
+            case MotionEvent.ACTION_UP:
+            case MotionEvent.ACTION_CANCEL:
+                touchedEntry = -1;
+                invalidate();
+                return true;
+            default:
+                return true;
+        }
+    }
+
+
+    //Jumps to the entry at "y", unless the finger is still on the entry it last jumped to.
+    private void jumpTo(float y) {
+        int entry = (int) (y / getHeight() * entryCount);
+        entry = Math.max(0, Math.min(entryCount - 1, entry));
+        if (entry != touchedEntry) {
+            touchedEntry = entry;
+            invalidate();
+            if (listener != null)
+                listener.onJumpTo(starts[entry]);
+        }
+    }
+
+
+    //One entry per section that has a header; the sections under the same header share its entry.
+    private void rebuildEntries() {
+        int size = sections.size();
+        if (labels.length < size) {
+            labels = Arrays.copyOf(labels, size);
+            starts = Arrays.copyOf(starts, size);
+        }
+
+        entryCount = 0;
+        for (int section = 0; section < size; ++section) {
+            if (!sections.isHeaderSection(section))
+                continue;
+            labels[entryCount] = sections.getLabel(section);
+            starts[entryCount] = sections.getStart(section);
+            ++entryCount;
+        }
+    }
+}
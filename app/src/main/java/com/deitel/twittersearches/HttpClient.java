@@ -0,0 +1,34 @@
+package com.deitel.twittersearches;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+
+//The HttpClient interface is what ResultsFetcher downloads search results with. The app uses a
+//UrlConnectionHttpClient; tests can plug in any other implementation.
+public interface HttpClient {
+
+    //Sends a GET request for "url" with the given extra request headers and returns the response.
+    //Throws an IOException if no response could be read; HTTP error codes are returned as responses.
+    Response get(String url, Map<String, String> headers) throws IOException;
+
+
+    //Response is an HTTP response: its status code, the headers ResultsFetcher uses (with lower-case
+    //names) and its body.
+    final class Response {
+        public final int code;
+        public final Map<String, String> headers;
+        public final byte[] body;
+
+        public Response(int code, Map<String, String> headers, byte[] body) {
+            this.code = code;
+            this.headers = Collections.unmodifiableMap(headers);
+            this.body = body;
+        }
+
+        //Returns the value of the header "name" (in lower case), or null if the response doesn't have it.
+        public String header(String name) {
+            return headers.get(name);
+        }
+    }
+}
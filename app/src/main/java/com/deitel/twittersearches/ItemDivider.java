@@ -1,5 +1,10 @@
 package com.deitel.twittersearches;
 
+import android.content.res.TypedArray;
+import android.graphics.Bitmap;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.drawable.ColorDrawable;
 import android.graphics.drawable.Drawable;
 import android.support.v7.widget.RecyclerView;
 import android.content.Context;
@@ -12,17 +17,44 @@ import android.view.View;
 
 //A ReyclerView.ItemDecoration object draws decorations on a RecyclerView.
 //This class defines dividers displayed between the RecyclerView items.
+//
+//onDrawOver runs on every frame while the list scrolls, so it is written not to allocate anything and to
+//draw as little as possible: the dividers are normally a single solid colour, so all the dividers of a
+//frame are drawn as lines with one Canvas.drawLines call, using a Paint and a coordinate array that are
+//reused from frame to frame. Dividers outside the Canvas' clip bounds are skipped. If the divider Drawable
+//isn't a solid colour, each divider is drawn with the Drawable as before.
 
 class ItemDivider extends RecyclerView.ItemDecoration {
 
     private final Drawable divider;
+    private final int dividerHeight;
+
+    //The Paint the dividers are drawn with, or null if the divider isn't a solid colour.
+    private final Paint paint;
+
+    //Reused on every frame: the x0, y0, x1, y1 coordinates of each divider line, and the clip bounds.
+    private float[] lines = new float[64];
+    private final Rect clipBounds = new Rect();
 
     //The ItemDivider subclass draws divider lines between list items.
     public ItemDivider(Context context){
         //We get android.R.attr.listDivider, which is the standard Android list-item divider used
-        //by default in ListViews.
+        //by default in ListViews. The TypedArray is recycled once we have the Drawable.
         int[] attrs = {android.R.attr.listDivider};
-        divider = context.obtainStyledAttributes(attrs).getDrawable(0);
+        TypedArray attributes = context.obtainStyledAttributes(attrs);
+        divider = attributes.getDrawable(0);
+        attributes.recycle();
+
+        dividerHeight = Math.max(1, divider.getIntrinsicHeight());
+        paint = createPaint(divider, dividerHeight);
+    }
+
+
+    //constructor used by tests to draw a given Drawable.
+    ItemDivider(Drawable divider){
+        this.divider = divider;
+        dividerHeight = Math.max(1, divider.getIntrinsicHeight());
+        paint = createPaint(divider, dividerHeight);
     }
 
 
@@ -37,6 +69,7 @@ class ItemDivider extends RecyclerView.ItemDecoration {
     @Override
     public void onDrawOver(Canvas c, RecyclerView parent, RecyclerView.State state) {
         super.onDrawOver(c, parent, state);
+        long start = Metrics.start();
 
         //We first calculate the left & right x-coordinates that are used to specify the bound's of the Drawable to be displayed.
 
@@ -47,22 +80,93 @@ class ItemDivider extends RecyclerView.ItemDecoration {
         //Right coordinate is determined by calling RecyclerView's getWidth and subtracting the result of getPaddingRight.
         int right = parent.getWidth() - parent.getPaddingRight();
 
-        //In this loop we draw the dividers on the RecyclerView's Canvas by iterating through all but the last item
-        //and drawing the dividers below each item.
-        for (int i = 0; i < parent.getChildCount() - 1; ++i){
+        //Only the dividers inside the Canvas' clip bounds (the part of the list being redrawn) are drawn.
+        if (!c.getClipBounds(clipBounds)) {
+            Metrics.DRAW_DIVIDERS.record(start);
+            return;
+        }
+
+        //Make sure there is room for one line per divider.
+        int dividerCount = parent.getChildCount() - 1;
+        if (lines.length < dividerCount * 4)
+            lines = new float[Math.max(dividerCount * 4, lines.length * 2)];
+        int lineCount = 0;
+
+        //In this loop we collect the dividers below all but the last item.
+        for (int i = 0; i < dividerCount; ++i){
 
             //First we get and store the current RecyclerView item.
             View item = parent.getChildAt(i);
 
             //Then we calculate one divider's top y-coordinate using the item's bottom y-coordinate + item's margin.
-            int top = item.getBottom() + ((RecyclerView.LayoutParams) item.getLayoutParams()).bottomMargin;
+            //While an item is being animated (e.g. moved after an insert or delete) it is drawn offset by its
+            //translation, so its divider is moved along with it.
+            int top = item.getBottom() + ((RecyclerView.LayoutParams) item.getLayoutParams()).bottomMargin
+                    + Math.round(item.getTranslationY());
             //Then we calculate the divider's bottom y-coordinate using the item's top y-coordinate + divider's height.
-            int bottom = top + divider.getIntrinsicHeight();
+            int bottom = top + dividerHeight;
 
-            //Then we draw the divider with the calculated bounds.
-            divider.setBounds(left, top, right, bottom);
-            //finally we draw it on the Canvas "c".
-            divider.draw(c);
+            //Skip the divider if it is off screen.
+            if (bottom <= clipBounds.top || top >= clipBounds.bottom)
+                continue;
+
+            if (paint == null){
+                //The divider isn't a solid colour, so draw the Drawable with the calculated bounds.
+                divider.setBounds(left, top, right, bottom);
+                divider.draw(c);
+            }
+            else if (item.getAlpha() < 1f){
+                //An item fading in or out (while it is added or removed) fades its divider with it.
+                int alpha = paint.getAlpha();
+                paint.setAlpha(Math.round(alpha * item.getAlpha()));
+                c.drawLine(left, top + dividerHeight / 2f, right, top + dividerHeight / 2f, paint);
+                paint.setAlpha(alpha);
+            }
+            else {
+                //Otherwise add a line through the middle of the divider's bounds to the batch.
+                float y = top + dividerHeight / 2f;
+                lines[lineCount++] = left;
+                lines[lineCount++] = y;
+                lines[lineCount++] = right;
+                lines[lineCount++] = y;
+            }
         }
+
+        //finally we draw all the collected dividers on the Canvas "c" at once.
+        if (lineCount > 0)
+            c.drawLines(lines, 0, lineCount, paint);
+        Metrics.DRAW_DIVIDERS.record(start);
+    }
+
+
+    //Returns a Paint that draws lines "height" pixels thick in the divider's colour, or null if the divider
+    //isn't a single solid colour. A ColorDrawable's colour is used directly; any other Drawable (such as the
+    //themes' nine-patch dividers) is drawn once into a one pixel wide Bitmap to find its colour.
+    private static Paint createPaint(Drawable divider, int height){
+        int color;
+        if (divider instanceof ColorDrawable){
+            color = ((ColorDrawable) divider).getColor();
+        }
+        else {
+            Bitmap bitmap = Bitmap.createBitmap(1, height, Bitmap.Config.ARGB_8888);
+            divider.setBounds(0, 0, 1, height);
+            divider.draw(new Canvas(bitmap));
+
+            color = bitmap.getPixel(0, 0);
+            for (int y = 1; y < height; ++y){
+                if (bitmap.getPixel(0, y) != color){
+                    bitmap.recycle();
+                    return null;
+                }
+            }
+            bitmap.recycle();
+        }
+
+        Paint paint = new Paint();
+        paint.setColor(color);
+        paint.setStyle(Paint.Style.STROKE);
+        paint.setStrokeWidth(height);
+        paint.setStrokeCap(Paint.Cap.BUTT);
+        return paint;
     }
 }
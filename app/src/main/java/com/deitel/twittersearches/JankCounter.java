@@ -0,0 +1,69 @@
+package com.deitel.twittersearches;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+//The JankCounter class counts the frames drawn while the list scrolls, and how many of them were late.
+//A frame is janky if it took more than one and a half frame intervals (the display's refresh period);
+//such a frame also means that the frames it overran were dropped, which are counted as well.
+//The frame times themselves are kept in a LatencyHistogram.
+public class JankCounter {
+
+    private final LatencyHistogram frameTimes;
+    private final AtomicLong frames = new AtomicLong();
+    private final AtomicLong jankyFrames = new AtomicLong();
+    private final AtomicLong droppedFrames = new AtomicLong();
+
+    //constructor. "name" labels the frame times in Metrics.dump.
+    public JankCounter(String name) {
+        frameTimes = new LatencyHistogram(name);
+    }
+
+
+    //Records a frame drawn "frameNanos" after the previous one, on a display refreshing every
+    //"frameIntervalNanos".
+    public void recordFrame(long frameNanos, long frameIntervalNanos) {
+        frameTimes.recordNanos(frameNanos);
+        frames.incrementAndGet();
+
+        if (frameNanos * 2 > frameIntervalNanos * 3) {
+            jankyFrames.incrementAndGet();
+            droppedFrames.addAndGet(Math.max(1, (frameNanos + frameIntervalNanos / 2) / frameIntervalNanos - 1));
+        }
+    }
+
+
+    public long getFrameCount() {
+        return frames.get();
+    }
+
+    public long getJankyFrameCount() {
+        return jankyFrames.get();
+    }
+
+    public long getDroppedFrameCount() {
+        return droppedFrames.get();
+    }
+
+    public LatencyHistogram getFrameTimes() {
+        return frameTimes;
+    }
+
+
+    public void reset() {
+        frameTimes.reset();
+        frames.set(0);
+        jankyFrames.set(0);
+        droppedFrames.set(0);
+    }
+
+
+    //Appends the frame time histogram, followed by the jank counts.
+    public void appendTo(StringBuilder out) {
+        frameTimes.appendTo(out);
+        long frameCount = frames.get();
+        out.append(String.format(Locale.US, "  %d frames, %d janky (%.1f%%), %d dropped%n", frameCount,
+                jankyFrames.get(), frameCount == 0 ? 0.0 : jankyFrames.get() * 100.0 / frameCount,
+                droppedFrames.get()));
+    }
+}
@@ -0,0 +1,129 @@
+package com.deitel.twittersearches;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+//The LatencyHistogram class counts how long an operation takes, in nanoseconds, so that its median and
+//tail latencies can be reported without keeping every measurement.
+//
+//Durations are counted in buckets: below 8ns each value has its own bucket, above that every power of two
+//is split into 8 buckets, so a reported percentile is within 12.5% of the real one. The buckets are a
+//fixed array of counters, so recording a duration never allocates, and they are atomic so durations can
+//be recorded from any thread.
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = SUB_BUCKETS + (63 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final String name;
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong totalNanos = new AtomicLong();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    //constructor. "name" labels the histogram in Metrics.dump.
+    public LatencyHistogram(String name) {
+        this.name = name;
+    }
+
+
+    //Records the time since "startNanos", a value returned by Metrics.start. Does nothing if it is 0, which
+    //Metrics.start returns while metrics are disabled.
+    public void record(long startNanos) {
+        if (startNanos != 0)
+            recordNanos(System.nanoTime() - startNanos);
+    }
+
+
+    //Records a duration of "nanos" nanoseconds.
+    public void recordNanos(long nanos) {
+        if (nanos < 0)
+            nanos = 0;
+
+        buckets.incrementAndGet(bucket(nanos));
+        count.incrementAndGet();
+        totalNanos.addAndGet(nanos);
+
+        long max = maxNanos.get();
+        while (nanos > max && !maxNanos.compareAndSet(max, nanos))
+            max = maxNanos.get();
+    }
+
+
+    public String getName() {
+        return name;
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public long getMaxNanos() {
+        return maxNanos.get();
+    }
+
+    public long getMeanNanos() {
+        long n = count.get();
+        return n == 0 ? 0 : totalNanos.get() / n;
+    }
+
+
+    //Returns the duration that "percentile" percent of the recorded durations didn't exceed (give or take
+    //12.5%), or 0 if nothing has been recorded.
+    public long getPercentileNanos(double percentile) {
+        long n = count.get();
+        if (n == 0)
+            return 0;
+
+        long rank = Math.max(1, (long) Math.ceil(n * percentile / 100));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; ++i) {
+            seen += buckets.get(i);
+            if (seen >= rank)
+                return Math.min(upperBound(i), maxNanos.get());
+        }
+        return maxNanos.get();
+    }
+
+
+    //Forgets every recorded duration.
+    public void reset() {
+        for (int i = 0; i < BUCKETS; ++i)
+            buckets.set(i, 0);
+        count.set(0);
+        totalNanos.set(0);
+        maxNanos.set(0);
+    }
+
+
+    //Appends one line with the count and the mean, median, 90th and 99th percentile and maximum durations
+    //in microseconds.
+    public void appendTo(StringBuilder out) {
+        out.append(String.format(Locale.US, "%-22s %8d %9.1f %9.1f %9.1f %9.1f %9.1f%n", name, getCount(),
+                getMeanNanos() / 1e3, getPercentileNanos(50) / 1e3, getPercentileNanos(90) / 1e3,
+                getPercentileNanos(99) / 1e3, getMaxNanos() / 1e3));
+    }
+
+
+
+    static int bucket(long nanos) {
+        if (nanos < SUB_BUCKETS)
+            return (int) nanos;
+        int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+        int subBucket = (int) (nanos >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return SUB_BUCKETS + (exponent - SUB_BUCKET_BITS) * SUB_BUCKETS + subBucket;
+    }
+
+
+    //Returns the largest duration counted in bucket "index".
+    static long upperBound(int index) {
+        if (index < SUB_BUCKETS)
+            return index;
+        int shift = (index - SUB_BUCKETS) / SUB_BUCKETS;
+        long subBucket = (index - SUB_BUCKETS) % SUB_BUCKETS;
+        long lower = (SUB_BUCKETS + subBucket) << shift;
+        return lower + (1L << shift) - 1;
+    }
+}
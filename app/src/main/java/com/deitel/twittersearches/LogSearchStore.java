@@ -0,0 +1,521 @@
+package com.deitel.twittersearches;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.CRC32;
+
+//The LogSearchStore class is a SearchStore that saves searches in an append-only log file.
+//SharedPreferences rewrites its entire XML file every time apply is called, so with thousands of saved
+//searches a single edit rewrites thousands of entries. Here every put or remove only appends one small
+//record to the end of the log, which is memory-mapped so appending is just a copy into memory.
+//
+//When a store is opened the log is replayed from the start to rebuild the in-memory searches, which are
+//kept as UTF-8 bytes in a SearchArena rather than as a Map of Strings.
+//Records that have been overwritten or removed become garbage; once there is more garbage than live
+//data a background compaction pass rewrites the log with only the live searches.
+//
+//Log layout: an 8 byte header (magic number, version) followed by records of the form
+//  type (1 byte) | tag length (4) | query length (4) | tag (UTF-8) | query (UTF-8) | CRC32 (4)
+//A type of 0 marks the end of the log. The checksum lets replay stop at a record that was only
+//partially written when the app was killed.
+public class LogSearchStore implements SearchStore {
+
+    private static final int MAGIC = 0x54534C47; //"TSLG"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+
+    private static final byte RECORD_END = 0;
+    private static final byte RECORD_PUT = 1;
+    private static final byte RECORD_REMOVE = 2;
+
+    //type + tag length + query length + checksum
+    private static final int RECORD_OVERHEAD = 13;
+
+    //The log is mapped in chunks of at least this size and grown by doubling.
+    private static final int INITIAL_CAPACITY = 64 * 1024;
+
+    //Compaction only runs once there is at least this much garbage and more garbage than live data.
+    private static final long MIN_COMPACTION_GARBAGE = 64 * 1024;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final byte[] EMPTY = new byte[0];
+
+    private final File file;
+
+    //The live searches, rebuilt from the log when the store is opened.
+    private final SearchArena searches = new SearchArena();
+
+    private final ExecutorService compactionExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "search-log-compaction");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    //Held for the whole of a compaction pass, so that only one runs at a time.
+    private final Object compactionLock = new Object();
+
+    private final CRC32 crc = new CRC32();
+    private byte[] readBuffer = new byte[256];
+
+    private RandomAccessFile logFile;
+    private FileChannel channel;
+    private MappedByteBuffer log;
+
+    //Offset at which the next record will be appended.
+    private int writePosition;
+    //Number of bytes in the log taken up by the records of live searches.
+    private long liveBytes;
+    private boolean compactionScheduled;
+
+    //constructor opens (or creates) the log file and replays it.
+    public LogSearchStore(File file) throws IOException {
+        this.file = file;
+
+        long length = openChannel();
+        mapLog((int) Math.max(INITIAL_CAPACITY, length));
+
+        if (length < HEADER_SIZE) {
+            //new log, write the header.
+            log.putInt(0, MAGIC);
+            log.putInt(4, VERSION);
+            writePosition = HEADER_SIZE;
+        }
+        else if (log.getInt(0) != MAGIC || log.getInt(4) != VERSION) {
+            close();
+            throw new IOException("Not a search log: " + file);
+        }
+        else {
+            replay();
+        }
+    }
+
+
+    @Override
+    public synchronized String getString(String tag, String defValue) {
+        String query = searches.getQuery(tag);
+        return query != null ? query : defValue;
+    }
+
+    @Override
+    public synchronized boolean contains(String tag) {
+        return searches.contains(tag);
+    }
+
+    @Override
+    public synchronized Map<String, String> getAll() {
+        return searches.toMap();
+    }
+
+    @Override
+    public synchronized int size() {
+        return searches.size();
+    }
+
+    @Override
+    public Editor edit() {
+        return new LogEditor();
+    }
+
+    //Writes any appended records that are still only in memory out to the file.
+    @Override
+    public synchronized void flush() {
+        if (log != null)
+            log.force();
+    }
+
+    @Override
+    public synchronized void close() {
+        compactionExecutor.shutdown();
+
+        if (channel == null)
+            return;
+
+        log.force();
+        closeChannel();
+    }
+
+    //Returns the number of bytes in the log used by overwritten and removed searches.
+    public synchronized long getGarbageBytes() {
+        return writePosition - HEADER_SIZE - liveBytes;
+    }
+
+    //Returns the number of bytes of the log in use, including garbage.
+    public synchronized long getLogBytes() {
+        return writePosition;
+    }
+
+
+
+    //The compact method rewrites the log so that it only contains the live searches.
+    //The live searches are copied under the lock, but the new log is written without holding it so
+    //edits made in the meantime aren't blocked. Those edits are appended to the old log as usual and
+    //copied over to the end of the new log just before it replaces the old one.
+    public void compact() throws IOException {
+        synchronized (compactionLock) {
+            compactLog();
+        }
+    }
+
+
+    private void compactLog() throws IOException {
+        SearchArena snapshot;
+        int snapshotEnd;
+
+        synchronized (this) {
+            if (channel == null)
+                return;
+            snapshot = searches.copy();
+            snapshotEnd = writePosition;
+        }
+
+        File compactedFile = new File(file.getPath() + ".compact");
+        RandomAccessFile compacted = new RandomAccessFile(compactedFile, "rw");
+        boolean replaced = false;
+
+        try {
+            compacted.setLength(0);
+            FileChannel compactedChannel = compacted.getChannel();
+
+            ByteBuffer buffer = ByteBuffer.allocate(INITIAL_CAPACITY);
+            buffer.putInt(MAGIC).putInt(VERSION);
+            CRC32 compactionCrc = new CRC32();
+
+            byte[] bytes = snapshot.getBytes();
+            for (int entry = 0; entry < snapshot.getEntryCount(); ++entry) {
+                if (snapshot.getTagLength(entry) < 0)
+                    continue;
+                byte[] record = encodeRecord(RECORD_PUT, bytes, snapshot.getTagOffset(entry), snapshot.getTagLength(entry),
+                        snapshot.getQueryOffset(entry), snapshot.getQueryLength(entry), compactionCrc);
+
+                if (record.length > buffer.remaining()) {
+                    writeFully(compactedChannel, buffer);
+                    if (record.length > buffer.capacity()) {
+                        ByteBuffer large = ByteBuffer.wrap(record);
+                        while (large.hasRemaining())
+                            compactedChannel.write(large);
+                        continue;
+                    }
+                }
+                buffer.put(record);
+            }
+            writeFully(compactedChannel, buffer);
+
+            synchronized (this) {
+                if (channel == null)
+                    return;
+
+                //copy the records appended since the snapshot was taken.
+                ByteBuffer tail = log.duplicate();
+                tail.limit(writePosition);
+                tail.position(snapshotEnd);
+                while (tail.hasRemaining())
+                    compactedChannel.write(tail);
+
+                compactedChannel.force(false);
+                int compactedLength = (int) compactedChannel.size();
+                compacted.close();
+
+                closeChannel();
+                if (!compactedFile.renameTo(file)) {
+                    //the old log is untouched, so carry on using it.
+                    openChannel();
+                    mapLog(Math.max(INITIAL_CAPACITY, writePosition));
+                    throw new IOException("Unable to replace " + file);
+                }
+                replaced = true;
+
+                openChannel();
+                mapLog(Math.max(INITIAL_CAPACITY, compactedLength * 2));
+                //The live searches haven't changed, only the garbage has been dropped.
+                writePosition = compactedLength;
+            }
+        }
+        finally {
+            compacted.close();
+            if (!replaced)
+                compactedFile.delete();
+        }
+    }
+
+
+
+    //The Editor returned by edit. It collects the changes so that apply can append them all with a
+    //single pass over the log.
+    private class LogEditor implements Editor {
+
+        private final List<String> tags = new ArrayList<>();
+        //a null query marks a remove.
+        private final List<String> queries = new ArrayList<>();
+
+        @Override
+        public Editor putString(String tag, String query) {
+            tags.add(tag);
+            queries.add(query);
+            return this;
+        }
+
+        @Override
+        public Editor remove(String tag) {
+            tags.add(tag);
+            queries.add(null);
+            return this;
+        }
+
+        @Override
+        public void apply() {
+            applyEdits(tags, queries);
+            tags.clear();
+            queries.clear();
+        }
+    }
+
+
+    //Appends one record per edit to the log and updates the in-memory searches to match.
+    private synchronized void applyEdits(List<String> tags, List<String> queries) {
+        if (channel == null)
+            throw new IllegalStateException("Search store is closed");
+        long start = Metrics.start();
+
+        for (int i = 0; i < tags.size(); ++i) {
+            String tag = tags.get(i);
+            String query = queries.get(i);
+
+            //Removing a tag that isn't saved doesn't need a record.
+            if (query == null && !searches.contains(tag))
+                continue;
+
+            byte[] record = encodeRecord(query != null ? RECORD_PUT : RECORD_REMOVE, tag, query, crc);
+            try {
+                ensureCapacity((long) writePosition + record.length);
+            }
+            catch (IOException e) {
+                throw new IllegalStateException("Unable to grow search log " + file, e);
+            }
+            log.position(writePosition);
+            log.put(record);
+            writePosition += record.length;
+
+            apply(tag, query, record.length);
+        }
+
+        maybeScheduleCompaction();
+        Metrics.STORE_WRITE.record(start);
+    }
+
+
+    //Applies one record to the in-memory searches and keeps track of how much of the log is live.
+    private void apply(String tag, String query, int recordLength) {
+        updateLiveBytes(query != null ? searches.put(tag, query) : searches.remove(tag), query != null, recordLength);
+    }
+
+
+    //"previousBytes" is the number of bytes of the tag and query the record replaced, or -1 if there were none.
+    private void updateLiveBytes(int previousBytes, boolean put, int recordLength) {
+        if (previousBytes >= 0)
+            liveBytes -= RECORD_OVERHEAD + previousBytes;
+        if (put)
+            liveBytes += recordLength;
+    }
+
+
+    //Reads every record from the start of the log, stopping at the end marker or at the first record
+    //that is incomplete or fails its checksum.
+    private void replay() {
+        int position = HEADER_SIZE;
+
+        while (true) {
+            int length = replayRecord(position);
+            if (length < 0)
+                break;
+            position += length;
+        }
+        writePosition = position;
+
+        //Clear anything left behind by a partially written record so that it can't be mistaken for
+        //part of a record appended later.
+        if (position < log.capacity() && log.get(position) != RECORD_END) {
+            for (int i = position; i < log.capacity(); ++i)
+                log.put(i, RECORD_END);
+        }
+    }
+
+
+    //Replays the record at "position" and returns its length, or -1 if there is no valid record there.
+    private int replayRecord(int position) {
+        int capacity = log.capacity();
+        if (position + RECORD_OVERHEAD > capacity)
+            return -1;
+
+        byte type = log.get(position);
+        if (type != RECORD_PUT && type != RECORD_REMOVE)
+            return -1;
+
+        int tagLength = log.getInt(position + 1);
+        int queryLength = log.getInt(position + 5);
+        if (tagLength < 0 || queryLength < 0 || (long) position + RECORD_OVERHEAD + tagLength + queryLength > capacity)
+            return -1;
+
+        int length = RECORD_OVERHEAD + tagLength + queryLength;
+        if (readBuffer.length < length)
+            readBuffer = new byte[Math.max(length, readBuffer.length * 2)];
+        log.position(position);
+        log.get(readBuffer, 0, length);
+
+        crc.reset();
+        crc.update(readBuffer, 0, length - 4);
+        if ((int) crc.getValue() != ByteBuffer.wrap(readBuffer, length - 4, 4).getInt())
+            return -1;
+
+        //the tag and query are copied into the arena as they are, without decoding them.
+        if (type == RECORD_PUT)
+            updateLiveBytes(searches.put(readBuffer, 9, tagLength, readBuffer, 9 + tagLength, queryLength), true, length);
+        else
+            updateLiveBytes(searches.remove(readBuffer, 9, tagLength), false, length);
+        return length;
+    }
+
+
+    //Encodes one record, including its checksum.
+    private static byte[] encodeRecord(byte type, String tag, String query, CRC32 crc) {
+        byte[] tagBytes = tag.getBytes(UTF_8);
+        byte[] queryBytes = query != null ? query.getBytes(UTF_8) : EMPTY;
+        byte[] record = new byte[RECORD_OVERHEAD + tagBytes.length + queryBytes.length];
+
+        ByteBuffer buffer = ByteBuffer.wrap(record);
+        buffer.put(type).putInt(tagBytes.length).putInt(queryBytes.length).put(tagBytes).put(queryBytes);
+        crc.reset();
+        crc.update(record, 0, record.length - 4);
+        buffer.putInt((int) crc.getValue());
+        return record;
+    }
+
+
+    //Encodes one record whose tag and query are already UTF-8 bytes in "bytes".
+    private static byte[] encodeRecord(byte type, byte[] bytes, int tagOffset, int tagLength, int queryOffset,
+                                       int queryLength, CRC32 crc) {
+        byte[] record = new byte[RECORD_OVERHEAD + tagLength + queryLength];
+
+        ByteBuffer buffer = ByteBuffer.wrap(record);
+        buffer.put(type).putInt(tagLength).putInt(queryLength).put(bytes, tagOffset, tagLength).put(bytes, queryOffset, queryLength);
+        crc.reset();
+        crc.update(record, 0, record.length - 4);
+        buffer.putInt((int) crc.getValue());
+        return record;
+    }
+
+
+    //Returns the number of bytes String.getBytes(UTF_8) produces for "s".
+    static int utf8Length(String s) {
+        int length = 0;
+        for (int i = 0; i < s.length(); ++i) {
+            char c = s.charAt(i);
+            if (c < 0x80)
+                length += 1;
+            else if (c < 0x800)
+                length += 2;
+            else if (Character.isHighSurrogate(c) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1))) {
+                length += 4;
+                ++i;
+            }
+            else if (Character.isSurrogate(c))
+                length += 1; //unpaired surrogates are encoded as '?'
+            else
+                length += 3;
+        }
+        return length;
+    }
+
+
+    //Remaps the log with a larger capacity if "required" bytes don't fit in the current mapping.
+    private void ensureCapacity(long required) throws IOException {
+        if (required <= log.capacity())
+            return;
+
+        mapLog(grownCapacity(log.capacity(), required));
+    }
+
+    //Doubles "capacity" until "required" bytes fit. A single mapping holds at most Integer.MAX_VALUE bytes,
+    //so the doubling is done in a long and clamped to that, and a log that would need more can't grow.
+    static int grownCapacity(int capacity, long required) throws IOException {
+        if (required > Integer.MAX_VALUE)
+            throw new IOException("The search log can't grow past " + Integer.MAX_VALUE + " bytes");
+
+        long grown = capacity;
+        while (grown < required)
+            grown *= 2;
+        return (int) Math.min(grown, Integer.MAX_VALUE);
+    }
+
+
+    private long openChannel() throws IOException {
+        logFile = new RandomAccessFile(file, "rw");
+        channel = logFile.getChannel();
+        return channel.size();
+    }
+
+    //Mapping past the end of the file grows the file, so the unused tail of the log reads as zeros
+    //(the end marker).
+    private void mapLog(int capacity) throws IOException {
+        log = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+    }
+
+    private void closeChannel() {
+        try {
+            channel.close();
+            logFile.close();
+        }
+        catch (IOException e) {
+            //nothing useful can be done if closing fails.
+        }
+        channel = null;
+        logFile = null;
+        log = null;
+    }
+
+
+    private void maybeScheduleCompaction() {
+        long garbage = writePosition - HEADER_SIZE - liveBytes;
+        if (compactionScheduled || garbage < MIN_COMPACTION_GARBAGE || garbage < liveBytes)
+            return;
+
+        compactionScheduled = true;
+        compactionExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    compact();
+                }
+                catch (IOException e) {
+                    //The log is still complete, so compaction will simply be tried again after a later edit.
+                }
+                finally {
+                    synchronized (LogSearchStore.this) {
+                        compactionScheduled = false;
+                    }
+                }
+            }
+        });
+    }
+
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining())
+            channel.write(buffer);
+        buffer.clear();
+    }
+}
@@ -1,17 +1,26 @@
 package com.deitel.twittersearches;
 
+import android.os.AsyncTask;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
 import android.support.design.widget.FloatingActionButton;
+import android.support.v4.content.FileProvider;
 import android.support.v7.app.AppCompatActivity;
+import android.support.v7.view.ActionMode;
 import android.support.v7.widget.Toolbar;
 import android.text.Editable;
+import android.view.Menu;
+import android.view.MenuItem;
 import android.view.View;
+import android.view.ViewTreeObserver;
 
 import android.app.AlertDialog;
+import android.app.ProgressDialog;
 import android.content.Context;
 import android.content.DialogInterface;
 import android.content.Intent;
-import android.content.SharedPreferences;
+import android.graphics.Typeface;
 import android.net.Uri;
 import android.support.design.widget.TextInputLayout;
 import android.support.v7.widget.LinearLayoutManager;
@@ -21,17 +30,52 @@ import android.view.View.OnClickListener;
 import android.view.View.OnLongClickListener;
 import android.view.inputmethod.InputMethodManager;
 import android.widget.EditText;
+import android.widget.ScrollView;
 import android.widget.TextView;
-
-import java.util.ArrayList;
-import java.util.Collections;
+import android.widget.Toast;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.util.List;
+import java.util.concurrent.Executor;
 
 public class MainActivity extends AppCompatActivity {
 
-    //The static String constant SEARCHES represents the name of a SharedPreferences file
-    //that will store tag-query pairs on the device.
-    private static final String SEARCHES = "searches";
+    //The name of the file in which the QueryIndex is saved.
+    private static final String QUERY_INDEX = "queries.idx";
+
+    //The SharedPreferences file of the app's settings, and the setting that shows search results in the app
+    //(see ResultsActivity) instead of the browser.
+    private static final String SETTINGS = "settings";
+    private static final String RESULTS_IN_APP = "results_in_app";
+
+    //The number of search URLs kept in the SearchUrlCache.
+    private static final int URL_CACHE_SIZE = 64;
+
+    //The number of text layouts of tags kept by the TagLayoutCache: several screens of rows.
+    private static final int LAYOUT_CACHE_SIZE = 256;
+
+    //A fling or a jump with the FastScrollRail replaces every row on the screen at once. The RecyclerView
+    //keeps this many unused rows for reuse (instead of 5), so that the new rows don't have to be inflated,
+    //and the last ITEM_VIEW_CACHE_SIZE rows that scrolled off the screen stay bound, so that scrolling back
+    //doesn't even have to bind them again.
+    private static final int MAX_RECYCLED_VIEWS = 24;
+    private static final int ITEM_VIEW_CACHE_SIZE = 6;
+
+    //Up to this many selected searches are shared as text; more are shared as a file (see shareSearches).
+    private static final int MAX_SHARED_TEXT_SEARCHES = 200;
+    private static final String FILE_PROVIDER_AUTHORITY = "com.deitel.twittersearches.fileprovider";
+    private static final String SHARED_DIRECTORY = "shared";
+    private static final String SHARED_SEARCHES_FILE = "searches.txt";
+
+    //Request codes of the document pickers used to import and export searches.
+    private static final int IMPORT_REQUEST = 1;
+    private static final int EXPORT_JSON_REQUEST = 2;
+    private static final int EXPORT_CSV_REQUEST = 3;
 
     //EditText where user enters a query
     private EditText queryEditText;
@@ -40,73 +84,205 @@ public class MainActivity extends AppCompatActivity {
     //FAB that user touches to save a search.
     private FloatingActionButton saveFloatingActionButton;
 
-    //SharedPreferences instance variable which we'll use to manipulate the tag-query pairs
-    //representing the user's saved searches.
-    private SharedPreferences savedSearches;
+    //SearchStore instance variable which we'll use to manipulate the tag-query pairs
+    //representing the user's saved searches. It is null until the TagLoader has opened the store.
+    private SearchStore savedSearches;
+
+    //The tap counts of the searches (see ClickStats), read by the TagLoader along with the store, so that
+    //tapping or deleting a search never reads their file on the main thread. Null until then too.
+    private ClickStats clickStats;
+
+    //True once the TagLoader has delivered its first chunk of tags to this MainActivity.
+    private boolean firstChunkLoaded;
 
-    //The List that will store the sorted tag names for user searches.
-    private List<String> tags;
+    //The contextual action bar shown while the user is selecting searches, or null.
+    private ActionMode selectionMode;
+
+    //The SearchModel that holds the user's searches, sorted by tag, as versioned snapshots that any thread
+    //can read without locking (see SearchModel). The adapter displays one of its snapshots.
+    private SearchModel model;
 
     //SearchesAdapter instance variable which will refer to RecyclerView.Adapter subclass object
     //that provides data to the RecyclerView.
     private SearchesAdapter adapter;
 
+    //The TagLayoutCache that builds the text layouts of the adapter's rows in the background.
+    private TagLayoutCache layoutCache;
+
+    //The RecyclerView that displays the tags, and the ProgressBar shown over it while they are loading.
+    private RecyclerView recyclerView;
+    private View loadingProgressBar;
+
+    //The rail of section labels along the list's right edge, used to jump to a letter.
+    private FastScrollRail fastScrollRail;
+
+    //The TagLoader that loads the saved searches in the background.
+    private TagLoader tagLoader;
+
+    //The QueryIndex that finds searches by the tokens (words, #hashtags, from:someone, ...) of their queries.
+    private QueryIndex queryIndex;
+
+    //The TagFilter that finds the tags matching the text in tagEditText as the user types.
+    private TagFilter tagFilter;
+
+    //The SearchUrlCache that remembers the search URLs of the recently tapped or shared searches.
+    private SearchUrlCache urlCache;
+
+    //The SearchTransferTask importing or exporting searches (null if there is none), and the dialog showing
+    //its progress.
+    private SearchTransferTask transferTask;
+    private ProgressDialog transferDialog;
+
+    //True if tapping a search shows its results in a ResultsActivity rather than the browser.
+    private boolean resultsInApp;
+
+    //The StartupScheduler that runs the startup work the first frame doesn't need once it has been drawn.
+    private StartupScheduler startupScheduler;
+
+
+    //RetainedState holds everything MainActivity has loaded, so that it survives configuration changes
+    //such as a rotation (see onRetainCustomNonConfigurationInstance). Only the views and the adapter are
+    //created again; the store isn't read and the tags aren't sorted again.
+    private static class RetainedState {
+        SearchStore savedSearches;
+        ClickStats clickStats;
+        SearchModel model;
+        QueryIndex queryIndex;
+        TagFilter tagFilter;
+        SearchUrlCache urlCache;
+        TagLoader tagLoader;
+        SearchTransferTask transferTask;
+    }
+
 
 
     //onCreate will configure the GUI and register event listeners.
+    //Everything it does holds up the first frame, so each phase is timed by the StartupTrace, and the work
+    //that the first frame doesn't need is handed to the StartupScheduler to do afterwards.
     @Override
     protected void onCreate(Bundle savedInstanceState) {
+        StartupTrace.start();
+        StartupTrace.beginPhase("super.onCreate");
         super.onCreate(savedInstanceState);
+
+        StartupTrace.beginPhase("inflate views");
         setContentView(R.layout.activity_main);
         Toolbar toolbar = (Toolbar) findViewById(R.id.toolbar);
         setSupportActionBar(toolbar);
+        startupScheduler = new StartupScheduler(getWindow().getDecorView());
 
+        StartupTrace.beginPhase("text fields");
         //First we must get references to the EditTexts and add TextWatchers to them.
         //TextWatchers are notified when the user enters or removes characters in the EditTexts.
         queryEditText = ((TextInputLayout) findViewById(R.id.queryTextInputLayout)).getEditText();
         queryEditText.addTextChangedListener(textWatcher);
         tagEditText = ((TextInputLayout) findViewById(R.id.tagTextInputLayout)).getEditText();
         tagEditText.addTextChangedListener(textWatcher);
-
-
-
-        //We use the getSharedPreferences method to get a SharedPreference object that can read
-        //existing tag-query pairs from the searches file.
-        //The first argument indicates the name of the file that contains the data.
-        //The second arg specifies the file's access-level.
-        savedSearches = getSharedPreferences(SEARCHES, MODE_PRIVATE);
-
-        //We want to display the search tags alphabetically
-
-        //First we get the Strings representing the keys in the SharedPreferences object
-        //and store them in our array "tags". The getAll method returns all the saved searches
-        //as a Map - a collection of key-value pairs. We then call the keySet method on the Map object
-        //to get all the keys as a Set - a collection of unique values.
-        //The result is used to initialize "tags".
-        tags = new ArrayList<>(savedSearches.getAll().keySet());
-        //We then call Collections.sort to sort our ArrayList.
-        Collections.sort(tags, String.CASE_INSENSITIVE_ORDER);
+        tagEditText.addTextChangedListener(filterTextWatcher);
+
+        //If this MainActivity replaces one that was destroyed by a configuration change (e.g. the screen
+        //was rotated), we take over everything it had loaded. Otherwise we create it all now.
+        StartupTrace.beginPhase("load state");
+        RetainedState state = (RetainedState) getLastCustomNonConfigurationInstance();
+        if (state == null)
+            state = createState();
+        savedSearches = state.savedSearches;
+        clickStats = state.clickStats;
+        model = state.model;
+        queryIndex = state.queryIndex;
+        tagFilter = state.tagFilter;
+        urlCache = state.urlCache;
+        tagLoader = state.tagLoader;
+        transferTask = state.transferTask;
+        //The settings are only needed once the user taps a search (or opens the menu), so they are read
+        //after the first frame. While results are shown in the app, the results of the most tapped searches
+        //are prefetched; scheduling that job is a call to the system, which waits until the main thread is idle.
+        startupScheduler.afterFirstFrame("read settings", new Runnable() {
+            @Override
+            public void run() {
+                resultsInApp = getSharedPreferences(SETTINGS, Context.MODE_PRIVATE).getBoolean(RESULTS_IN_APP, false);
+                if (resultsInApp)
+                    startupScheduler.whenIdle("schedule prefetch job", new Runnable() {
+                        @Override
+                        public void run() {
+                            PrefetchJobService.schedule(MainActivity.this);
+                        }
+                    });
+            }
+        });
 
         //Now we must configure our RecyclerView
+        StartupTrace.beginPhase("set up list");
 
         //First we get a reference to it.
-        RecyclerView recyclerView = (RecyclerView) findViewById(R.id.recyclerView);
+        recyclerView = (RecyclerView) findViewById(R.id.recyclerView);
 
 
         //A RecyclerView can arrange items in multiple ways. We use a LinearLayoutManager
         //to display the item in a vertical list. LLM's constructor receives a Context object,
         //which is the MainActivity in this case.
-        recyclerView.setLayoutManager(new LinearLayoutManager(this));
+        final LinearLayoutManager layoutManager = new LinearLayoutManager(this);
+        recyclerView.setLayoutManager(layoutManager);
+
+        //While the main thread is idle between frames, the LinearLayoutManager creates and binds the rows
+        //that are about to scroll into view. The RecyclerView's size doesn't depend on its items, so adding or
+        //removing a tag doesn't lay out the whole screen again.
+        layoutManager.setItemPrefetchEnabled(true);
+        recyclerView.setHasFixedSize(true);
+        recyclerView.getRecycledViewPool().setMaxRecycledViews(0, MAX_RECYCLED_VIEWS);
+        recyclerView.setItemViewCacheSize(ITEM_VIEW_CACHE_SIZE);
 
         //Then we create a SearchesAdapter that will supply data for display in the RecyclerView.
-        adapter = new SearchesAdapter(tags, itemClickListener, itemLongClickListener);
+        //The text layouts of its rows are built ahead of time by a TagLayoutCache (see TagView). The cache
+        //isn't kept across configuration changes, since its layouts are only good for the current width and
+        //text size.
+        layoutCache = new TagLayoutCache(TagView.createPaint(this), LAYOUT_CACHE_SIZE);
+        adapter = new SearchesAdapter(model.snapshot(), layoutCache, itemClickListener, itemLongClickListener);
         recyclerView.setAdapter(adapter);
 
         //Lastly we create an ItemDivider object and pass it to addItemDecoration, which enables
         //RecyclerView to draw a horizontal line decoration between list items.
         recyclerView.addItemDecoration(new ItemDivider(this));
 
+        //The tags are divided into alphabetical sections (see TagSections), which the SectionHeaderDecoration
+        //draws headers for. The FastScrollRail jumps straight to the first tag of the section the user touches.
+        recyclerView.addItemDecoration(new SectionHeaderDecoration(this, adapter));
+        fastScrollRail = (FastScrollRail) findViewById(R.id.fastScrollRail);
+        fastScrollRail.setListener(new FastScrollRail.Listener() {
+            @Override
+            public void onJumpTo(int position) {
+                layoutManager.scrollToPositionWithOffset(position, 0);
+            }
+        });
+        fastScrollRail.update(adapter.getSections());
+        adapter.registerAdapterDataObserver(sectionObserver);
+
+        //Debug builds time the hot paths (see Metrics) and count the frames that are too slow while the list
+        //scrolls. The results can be viewed with the "Dump metrics" menu item. The list can't be scrolled
+        //before it has been drawn, so the frames are only counted from then on.
+        Metrics.setEnabled(BuildConfig.DEBUG);
+        startupScheduler.afterFirstFrame("scroll jank tracker", new Runnable() {
+            @Override
+            public void run() {
+                recyclerView.addOnScrollListener(new ScrollJankTracker(getWindowManager().getDefaultDisplay().getRefreshRate()));
+            }
+        });
+
+        StartupTrace.beginPhase("start loading");
+        //We show the loading ProgressBar until the TagLoader has delivered every tag. A TagLoader that was
+        //still running before a configuration change now delivers the rest of the tags to this MainActivity.
+        loadingProgressBar = findViewById(R.id.loadingProgressBar);
+        loadingProgressBar.setVisibility(tagLoader.getStatus() == AsyncTask.Status.FINISHED ? View.GONE : View.VISIBLE);
+        tagLoader.setCallbacks(tagLoaderCallbacks);
+
+        //Likewise a running import or export reports to this MainActivity, which shows its progress again.
+        if (transferTask != null) {
+            transferTask.setCallbacks(transferCallbacks);
+            showTransferDialog(transferTask.isImport(), transferTask.getTransferredCount());
+        }
+
         //Now we must register a listener for FAB
+        StartupTrace.beginPhase("save button");
 
         //First we get a reference to our FAB
         saveFloatingActionButton = (FloatingActionButton) findViewById(R.id.fab);
@@ -120,9 +296,364 @@ public class MainActivity extends AppCompatActivity {
         //are empty when onCreate is first called. The button is displayed only when both
         //EditTexts contain input.
         updateSaveFAB();
+        StartupTrace.endPhase();
+    }
+
+
+    //createState creates the objects that hold the app's searches, and starts the TagLoader. They are kept in
+    //a RetainedState so that they outlive this MainActivity if it is recreated by a configuration change.
+    private RetainedState createState(){
+        RetainedState state = new RetainedState();
+
+        //As the user types a tag, the list only shows the saved tags containing it (see filterTextWatcher).
+        //The TagFilter does its work on a background thread and delivers its results on the main thread.
+        final Handler mainHandler = new Handler(Looper.getMainLooper());
+        state.tagFilter = new TagFilter(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                mainHandler.post(command);
+            }
+        });
+
+        //If the user types an operator such as #java or from:someone, the filter also lists the searches whose
+        //queries contain it. The QueryIndex is loaded by the TagLoader and saved in onStop.
+        state.queryIndex = new QueryIndex(new File(getFilesDir(), QUERY_INDEX));
+        state.tagFilter.setQueryIndex(state.queryIndex);
+
+        //Tapping or sharing a search needs its URL, which is built once and then kept in the SearchUrlCache
+        //until the search is edited or deleted.
+        state.urlCache = new SearchUrlCache(getString(R.string.search_URL), URL_CACHE_SIZE);
+
+        //We want to display the search tags alphabetically, but opening the SearchStore and sorting
+        //thousands of tags takes too long to do here before the first frame. So the app's "model" starts out
+        //empty (unless the SearchesProvider has already loaded it) and a TagLoader fills it in on a background
+        //thread (see tagLoaderCallbacks).
+        //The TagLoader opens the app's SearchStore (migrating any searches that older versions of the app
+        //saved in the "searches" SharedPreferences file) and sorts its tags.
+        state.model = SearchStores.getModel();
+        state.tagLoader = new TagLoader(this, state.model, state.queryIndex, tagLoaderCallbacks);
+        state.tagLoader.execute();
+        return state;
+    }
+
+
+    //onRetainCustomNonConfigurationInstance is called just before this MainActivity is destroyed by a
+    //configuration change. The RetainedState it returns is handed to the new MainActivity's onCreate.
+    @Override
+    public Object onRetainCustomNonConfigurationInstance() {
+        RetainedState state = new RetainedState();
+        state.savedSearches = savedSearches;
+        state.clickStats = clickStats;
+        state.model = model;
+        state.queryIndex = queryIndex;
+        state.tagFilter = tagFilter;
+        state.urlCache = urlCache;
+        state.tagLoader = tagLoader;
+        state.transferTask = transferTask;
+        return state;
     }
 
 
+    //onPause writes any searches that the SearchStore is still holding back to batch them, so they are saved
+    //before the app goes into the background (where it may be killed).
+    @Override
+    protected void onPause() {
+        super.onPause();
+        if (savedSearches != null)
+            savedSearches.flush();
+    }
+
+
+    //onStop saves the QueryIndex (if it has changed) on a background thread, so that it doesn't have to be
+    //rebuilt the next time the app starts, the ClickStats, so that PrefetchJobService knows about the
+    //latest taps, and the SearchModel (if it has changed), so that the next start can show the searches
+    //from the SearchSnapshotFile before the store is open.
+    @Override
+    protected void onStop() {
+        super.onStop();
+
+        final QueryIndex index = queryIndex;
+        AsyncTask.THREAD_POOL_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    index.save();
+                }
+                catch (IOException e) {
+                    //the index will be rebuilt from the SearchStore next time.
+                }
+                try {
+                    ClickStats.get(MainActivity.this).save();
+                }
+                catch (IOException e) {
+                    //the taps since the last save are lost.
+                }
+                SearchStores.saveSnapshot(MainActivity.this);
+            }
+        });
+    }
+
+
+    //onDestroy cancels the TagLoader if it is still running, so that it doesn't deliver tags to an
+    //Activity that is no longer displayed, and stops the TagFilter and any import or export. The
+    //TagLayoutCache belongs to this MainActivity alone, so its thread is always stopped, and any startup work
+    //the StartupScheduler hasn't done yet is dropped.
+    //When the MainActivity is only being recreated for a configuration change they are kept running for
+    //the new MainActivity instead (see onRetainCustomNonConfigurationInstance).
+    @Override
+    protected void onDestroy() {
+        if (transferDialog != null)
+            transferDialog.dismiss();
+        layoutCache.shutdown();
+        startupScheduler.cancel();
+
+        if (!isChangingConfigurations()) {
+            tagLoader.cancel(false);
+            if (transferTask != null)
+                transferTask.detach();
+            tagFilter.shutdown();
+        }
+        super.onDestroy();
+    }
+
+
+
+    //onCreateOptionsMenu adds the import and export items to the app bar's overflow menu.
+    @Override
+    public boolean onCreateOptionsMenu(Menu menu) {
+        getMenuInflater().inflate(R.menu.menu_main, menu);
+        return true;
+    }
+
+
+    //onPrepareOptionsMenu disables the items until the searches have been loaded, and while a transfer is running.
+    @Override
+    public boolean onPrepareOptionsMenu(Menu menu) {
+        boolean enabled = savedSearches != null && transferTask == null;
+        menu.findItem(R.id.action_import).setEnabled(enabled);
+        menu.findItem(R.id.action_export_json).setEnabled(enabled);
+        menu.findItem(R.id.action_export_csv).setEnabled(enabled);
+        menu.findItem(R.id.action_results_in_app).setChecked(resultsInApp);
+        menu.findItem(R.id.action_dump_metrics).setVisible(Metrics.isEnabled());
+        return super.onPrepareOptionsMenu(menu);
+    }
+
+
+    //onOptionsItemSelected lets the user pick the file to import from or export to, using the system's
+    //document picker. The picked file is handed to onActivityResult. The "Show results in the app" item is
+    //a checkbox that is saved in the app's settings.
+    @Override
+    public boolean onOptionsItemSelected(MenuItem item) {
+        Intent intent;
+        int requestCode;
+
+        switch (item.getItemId()) {
+            case R.id.action_import:
+                intent = new Intent(Intent.ACTION_OPEN_DOCUMENT);
+                intent.setType("*/*");
+                intent.putExtra(Intent.EXTRA_MIME_TYPES, new String[] {"text/*", "application/json", "application/octet-stream"});
+                requestCode = IMPORT_REQUEST;
+                break;
+            case R.id.action_export_json:
+                intent = new Intent(Intent.ACTION_CREATE_DOCUMENT);
+                intent.setType("application/json");
+                intent.putExtra(Intent.EXTRA_TITLE, "searches.jsonl");
+                requestCode = EXPORT_JSON_REQUEST;
+                break;
+            case R.id.action_export_csv:
+                intent = new Intent(Intent.ACTION_CREATE_DOCUMENT);
+                intent.setType("text/csv");
+                intent.putExtra(Intent.EXTRA_TITLE, "searches.csv");
+                requestCode = EXPORT_CSV_REQUEST;
+                break;
+            case R.id.action_results_in_app:
+                resultsInApp = !resultsInApp;
+                getSharedPreferences(SETTINGS, Context.MODE_PRIVATE).edit().putBoolean(RESULTS_IN_APP, resultsInApp).apply();
+                if (resultsInApp)
+                    PrefetchJobService.schedule(this);
+                else
+                    PrefetchJobService.cancel(this);
+                return true;
+            case R.id.action_dump_metrics:
+                showMetrics();
+                return true;
+            default:
+                return super.onOptionsItemSelected(item);
+        }
+
+        intent.addCategory(Intent.CATEGORY_OPENABLE);
+        startActivityForResult(intent, requestCode);
+        return true;
+    }
+
+
+    //onActivityResult starts a SearchTransferTask for the file the user picked, and shows its progress in a
+    //dialog whose Cancel button stops the transfer.
+    @Override
+    protected void onActivityResult(int requestCode, int resultCode, Intent data) {
+        super.onActivityResult(requestCode, resultCode, data);
+        if (resultCode != RESULT_OK || data == null || data.getData() == null || savedSearches == null || transferTask != null)
+            return;
+
+        switch (requestCode) {
+            case IMPORT_REQUEST:
+                transferTask = SearchTransferTask.importFrom(getContentResolver(), data.getData(), savedSearches,
+                        model, queryIndex, transferCallbacks);
+                break;
+            case EXPORT_JSON_REQUEST:
+            case EXPORT_CSV_REQUEST:
+                SearchTransfer.Format format = requestCode == EXPORT_CSV_REQUEST ? SearchTransfer.Format.CSV : SearchTransfer.Format.JSON_LINES;
+                transferTask = SearchTransferTask.exportTo(getContentResolver(), data.getData(), format, savedSearches,
+                        transferCallbacks);
+                break;
+            default:
+                return;
+        }
+
+        showTransferDialog(requestCode == IMPORT_REQUEST, 0);
+        transferTask.execute();
+    }
+
+
+    //showTransferDialog shows the progress of the transfer in a dialog whose Cancel button stops it.
+    private void showTransferDialog(boolean importing, long count) {
+        transferDialog = new ProgressDialog(this);
+        transferDialog.setTitle(importing ? R.string.importing_searches : R.string.exporting_searches);
+        transferDialog.setMessage(getString(R.string.transfer_progress, count));
+        transferDialog.setCancelable(false);
+        transferDialog.setButton(DialogInterface.BUTTON_NEGATIVE, getString(R.string.cancel), new DialogInterface.OnClickListener() {
+            @Override
+            public void onClick(DialogInterface dialog, int which) {
+                //the transfer stops after the current batch, and onTransferFinished reports how far it got.
+                if (transferTask != null)
+                    transferTask.cancel(false);
+            }
+        });
+        transferDialog.show();
+    }
+
+
+    //transferCallbacks updates the list once per imported batch, and reports the result of a transfer.
+    private final SearchTransferTask.Callbacks transferCallbacks = new SearchTransferTask.Callbacks() {
+        @Override
+        public void onTransferProgress(SearchModel.Snapshot snapshot, List<String> newTags, List<String> replacedTags,
+                                       long count) {
+            //The batch was added to the model in sorted order, so the adapter shows its new tags as a few
+            //ranges in one pass.
+            if (snapshot != null)
+                adapter.setSnapshot(snapshot);
+            if (!newTags.isEmpty()) {
+                tagFilter.addAll(newTags);
+                //While filtering, run the filter again so that matching imported tags are shown.
+                if (adapter.isFiltered())
+                    tagFilter.filter(tagEditText.getText(), tagFilterCallback);
+            }
+            //The URLs of the searches whose queries were replaced are out of date.
+            for (String tag : replacedTags)
+                urlCache.invalidate(tag);
+
+            transferDialog.setMessage(getString(R.string.transfer_progress, count));
+        }
+
+        @Override
+        public void onTransferFinished(long count, IOException error) {
+            int message = transferTask.isImport() ? R.string.import_finished : R.string.export_finished;
+            transferDialog.dismiss();
+            transferDialog = null;
+            transferTask = null;
+
+            if (error == null)
+                Toast.makeText(MainActivity.this, getString(message, count), Toast.LENGTH_SHORT).show();
+            else
+                Toast.makeText(MainActivity.this, getString(R.string.transfer_failed, count, error.getMessage()), Toast.LENGTH_LONG).show();
+        }
+    };
+
+
+    //tagLoaderCallbacks receives the sorted tags from the TagLoader on the main thread.
+    private final TagLoader.Callbacks tagLoaderCallbacks = new TagLoader.Callbacks() {
+        @Override
+        public void onTagsLoaded(SearchStore store, ClickStats stats, SearchModel.Snapshot snapshot,
+                                 List<String> addedTags, List<String> removedTags) {
+            //report when the first row has actually been drawn.
+            if (!firstChunkLoaded) {
+                firstChunkLoaded = true;
+                StartupTrace.mark(StartupTrace.FIRST_CHUNK);
+                recyclerView.getViewTreeObserver().addOnPreDrawListener(firstRowListener);
+            }
+
+            //Chunks read from the snapshot file arrive before the store is open. Once it is, searches can be
+            //clicked and saved.
+            if (savedSearches == null && store != null) {
+                savedSearches = store;
+                clickStats = stats;
+                updateSaveFAB();
+            }
+
+            //Each chunk follows the tags already loaded, so the adapter tells the RecyclerView about the
+            //chunk's version of the model as a single range of inserted items.
+            adapter.setSnapshot(snapshot);
+            tagFilter.addAll(addedTags);
+            tagFilter.removeAll(removedTags);
+        }
+
+        @Override
+        public void onLoadFinished(SearchStore store, ClickStats stats) {
+            if (savedSearches == null) {
+                savedSearches = store;
+                clickStats = stats;
+                updateSaveFAB();
+            }
+            loadingProgressBar.setVisibility(View.GONE);
+        }
+    };
+
+
+    //sectionObserver keeps the section headers and the FastScrollRail in step with the list. An added or
+    //removed tag can move a header to a different item, so the RecyclerView is told to ask the
+    //SectionHeaderDecoration for every item's header space again.
+    private final RecyclerView.AdapterDataObserver sectionObserver = new RecyclerView.AdapterDataObserver() {
+        @Override
+        public void onChanged() {
+            sectionsChanged();
+        }
+
+        @Override
+        public void onItemRangeInserted(int positionStart, int itemCount) {
+            sectionsChanged();
+        }
+
+        @Override
+        public void onItemRangeRemoved(int positionStart, int itemCount) {
+            sectionsChanged();
+        }
+
+        @Override
+        public void onItemRangeMoved(int fromPosition, int toPosition, int itemCount) {
+            sectionsChanged();
+        }
+
+        private void sectionsChanged() {
+            recyclerView.invalidateItemDecorations();
+            fastScrollRail.update(adapter.getSections());
+        }
+    };
+
+
+    //firstRowListener marks the StartupTrace when the RecyclerView is about to draw its first row, which is
+    //what the "time to first visible row" is measured to.
+    private final ViewTreeObserver.OnPreDrawListener firstRowListener = new ViewTreeObserver.OnPreDrawListener() {
+        @Override
+        public boolean onPreDraw() {
+            if (recyclerView.getChildCount() > 0) {
+                recyclerView.getViewTreeObserver().removeOnPreDrawListener(this);
+                StartupTrace.mark(StartupTrace.FIRST_ROW);
+            }
+            return true;
+        }
+    };
+
+
 
 
 
@@ -153,17 +684,71 @@ public class MainActivity extends AppCompatActivity {
 
 
 
+    //filterTextWatcher filters the list of tags each time the text in tagEditText changes.
+    //If the text is cleared, every tag is shown again.
+    private final TextWatcher filterTextWatcher = new TextWatcher() {
+        @Override
+        public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+
+        }
+
+        @Override
+        public void onTextChanged(CharSequence s, int start, int before, int count) {
+
+        }
+
+        @Override
+        public void afterTextChanged(Editable s) {
+            if (s.length() == 0){
+                tagFilter.cancel();
+                if (adapter.isFiltered())
+                    tagFilter.recycle(adapter.setFilteredTags(null));
+            }
+            else {
+                //filter copies the text, so typing doesn't make a String per keystroke.
+                tagFilter.filter(s, tagFilterCallback);
+            }
+        }
+    };
+
+
+    //tagFilterCallback displays the tags found by the TagFilter. The TagFilter drops results that arrive
+    //after the text has changed again, so these always match the current text. The matches displayed until
+    //now are handed back for the next filter to fill.
+    private final TagFilter.Callback tagFilterCallback = new TagFilter.Callback() {
+        @Override
+        public void onFiltered(List<String> matches) {
+            List<String> previous = adapter.setFilteredTags(matches);
+            if (previous != null)
+                tagFilter.recycle(previous);
+        }
+    };
+
+
+
+
     //the updateSaveFAB method checks whether theres texts in both EditTexts.
     private void updateSaveFAB(){
+        long start = Metrics.start();
 
         //If both or either of the EditTexts are empty, we call the FAB's hide method to hide the button. Because both
         //the query and tag are required before a tag-query pair can be saved.
-        if (queryEditText.getText().toString().isEmpty() || tagEditText.getText().toString().isEmpty())
+        //The FAB is also hidden until the TagLoader has opened the SearchStore.
+        //The Editables' lengths are checked directly: this runs on every keystroke, and converting them to
+        //Strings would allocate two copies of the text each time.
+        if (savedSearches == null || !hasQueryAndTag(queryEditText.getText(), tagEditText.getText()))
             saveFloatingActionButton.hide();
         else
             //If they both contain text then we call the FAB's show method. So the user can touch it
             //and store a query-tag pair.
             saveFloatingActionButton.show();
+        Metrics.UPDATE_SAVE_FAB.record(start);
+    }
+
+
+    //Returns true if neither "query" nor "tag" is empty, i.e. the search can be saved.
+    static boolean hasQueryAndTag(CharSequence query, CharSequence tag){
+        return query.length() > 0 && tag.length() > 0;
     }
 
 
@@ -179,8 +764,8 @@ public class MainActivity extends AppCompatActivity {
             String tag = tagEditText.getText().toString();
 
 
-            //If the user entered a query and a tag then
-            if (!query.isEmpty() && !tag.isEmpty()){
+            //If the user entered a query and a tag (and the searches have been loaded) then
+            if (!query.isEmpty() && !tag.isEmpty() && savedSearches != null){
 
                 //hide the soft keyboard
                 ((InputMethodManager) getSystemService(
@@ -206,56 +791,86 @@ public class MainActivity extends AppCompatActivity {
     //It adds a new search to file, then refreshes all buttons.
     private void addTaggedSearch(String tag, String query){
 
-        //To change a SharedPreferences object you must first get its editor. The Editor can
-        //add , remove, and modify the values associated with a particular key in SP file.
-        //We get a SharedPreferences.Editor to store a new tag/query pair.
-        SharedPreferences.Editor preferencesEditor = savedSearches.edit();
+        //To change a SearchStore you must first get its editor. The Editor can
+        //add , remove, and modify the values associated with a particular key in the store.
+        //We get a SearchStore.Editor to store a new tag/query pair.
+        SearchStore.Editor preferencesEditor = savedSearches.edit();
+
+        //We remember the query previously saved under the tag (if any) so that the QueryIndex can forget its tokens.
+        String oldQuery = savedSearches.getString(tag, null);
 
         //Then we call Editor's putString() method to save the search's tag (the key) and query (the value).
         //If the tag already exists the value is updated.
         preferencesEditor.putString(tag, query);
-        //Lastly we call Editor's apply method to commit the changes.
+        //Lastly we call Editor's apply method to commit the changes. This appends a single record to the search log.
         preferencesEditor.apply();
 
+        //The search's URL (if it was cached) is out of date now.
+        urlCache.invalidate(tag);
+
         //Finally we have to notify the RecyclerView.Adapter that its data has changed.
         //When the user adds a new search, the RecyclerView should be updated to display it.
 
-        //We check if a new tag was added.
-        if (!tags.contains(tag)){
-            //if so then we add the new search's to tags and sort it.
-            tags.add(tag);
-            Collections.sort(tags, String.CASE_INSENSITIVE_ORDER);
-            //then call notifyDataSetChanged to indicate that the underlying data in "tags" has changed.
-            //the RecyclerView.Adapter then notifies RecyclerView to update its lost of displayed items.
-            adapter.notifyDataSetChanged();
-        }
+        //We put the search in the model, which makes a new version of it with the tag in sorted position, and
+        //hand that version to the adapter, which notifies the RecyclerView of the exact position that was
+        //inserted. If the tag was already there (i.e. an existing search was edited) nothing changes in the list.
+        adapter.setSnapshot(model.put(tag, query));
+        if (oldQuery == null)
+            tagFilter.add(tag);
+
+        //Lastly we index the tokens of the new query.
+        queryIndex.update(tag, oldQuery, query);
     }
 
 
 
     //Here we define an instance variable itemClickListener, which refers to an anon-inner-class object
     //that implements the OnClickListener interface.
-    //The view registered with this OnClickListener will be the TextView that displays a search tag in RecyclerView.
+    //The view registered with this OnClickListener will be the TagView that displays a search tag in RecyclerView.
     private final OnClickListener itemClickListener = new OnClickListener() {
         @Override
         public void onClick(View v) {
 
-            //First we get the Text of the View touched. This is the tag for a search.
-            String tag = ((TextView) v).getText().toString();
+            //The rows loaded from the snapshot file are shown before the store is open, and the query can't
+            //be looked up until it is.
+            if (savedSearches == null)
+                return;
+
+            //While searches are being selected, a tap selects or unselects the search instead.
+            if (adapter.isSelecting()) {
+                toggleSelection(v);
+                return;
+            }
+
+            //First we get the tag of the search touched, from the adapter: the View's position is known
+            //without reading anything from the View. A row that is being removed has no position.
+            String tag = getTag(v);
+            if (tag == null)
+                return;
+
+            //We count the tap, so that the searches tapped most often (and most recently) can be prefetched.
+            clickStats.recordClick(tag, System.currentTimeMillis());
 
 
 
-            //Then we create a String containing the Twitter Search URL and the query to perform.
-            //We append the the TwitterSearchURL with the query using savedSearches, which is our SharedPreferences
-            //getString method which returns the query associated with the tag. If the tag doesnt already exist then
-            //the second argument ("") is returned. We then pass the query to Uri's encode method which escapes any
-            //special URL characters such as (?,/,;etc) and returns a so-called URL-encoded string. Class Uri enables
-            //us to convert a URL into the format required by an Intent that launches the device's browser. This is important
-            //to ensure Twitter webserver receives a request properly parsed.
-            String urlString = getString(R.string.search_URL) + Uri.encode(savedSearches.getString(tag, ""), "UTF-8");
+            //Then we get a String containing the Twitter Search URL and the query to perform.
+            //The SearchUrlCache appends the query (looked up in savedSearches) to the TwitterSearchURL, URL-encoding it
+            //the way Uri's encode method does: it escapes any special URL characters such as (?,/,;etc) to ensure
+            //the Twitter webserver receives a request properly parsed. The URL is cached, so tapping the same search
+            //again doesn't have to look up and encode its query again.
+            String urlString = urlCache.get(tag, savedSearches);
 
 
 
+            //If the user prefers to see the results in the app, a ResultsActivity fetches and shows them. Results
+            //fetched a few minutes ago are shown straight from its cache.
+            if (resultsInApp) {
+                Intent resultsIntent = new Intent(MainActivity.this, ResultsActivity.class);
+                resultsIntent.putExtra(ResultsActivity.EXTRA_URL, urlString);
+                resultsIntent.putExtra(ResultsActivity.EXTRA_TAG, tag);
+                startActivity(resultsIntent);
+                return;
+            }
 
             //Then we create an Intent to launch the web browser. Here we use an implicit intent.
             //The 1st arg of Intents constructor is a constant describing the action to perform. We specify ACTION_VIEW
@@ -279,15 +894,26 @@ public class MainActivity extends AppCompatActivity {
 
     //Here we define an instance variable itemLongClickListener which refers to an anon-inner-class object
     //that implements the interface OnLongClickListener.
-    //The view registered with this OnLongClickListener will be the TextView that displays search tags.
-    //It allows the user to share, edit, or delete a saved search.
+    //The view registered with this OnLongClickListener will be the TagView that displays search tags.
+    //It allows the user to share, edit, or delete a saved search, or to start selecting several searches.
     private final OnLongClickListener itemLongClickListener = new OnLongClickListener() {
         @Override
         public boolean onLongClick(View v) {
+            //Sharing, editing and deleting need the store, which may still be opening (see itemClickListener).
+            if (savedSearches == null)
+                return false;
+
+            //While searches are being selected, a long press selects or unselects the search like a tap.
+            if (adapter.isSelecting()) {
+                toggleSelection(v);
+                return true;
+            }
 
-            //First assign a final local variable tag to the text of the item the user long pressed.
+            //First assign a final local variable tag to the tag of the item the user long pressed.
             //"final" is required for any local variable or method parameter used in an anon-inner-class.
-            final String tag = ((TextView) v).getText().toString();
+            final String tag = getTag(v);
+            if (tag == null)
+                return false;
 
             //Next we create an AlertDialog.Builder to start building our AlertDialog box.
             AlertDialog.Builder builder = new AlertDialog.Builder(MainActivity.this);
@@ -316,6 +942,9 @@ public class MainActivity extends AppCompatActivity {
                         case 2://user clicks Delete
                             deleteSearch(tag);
                             break;
+                        case 3://user clicks Select, to share or delete several searches at once
+                            startSelection(tag);
+                            break;
                     }
                 }
             });
@@ -331,11 +960,135 @@ public class MainActivity extends AppCompatActivity {
 
 
 
+    //The startSelection method shows the contextual action bar, from which the selected searches can be
+    //shared or deleted together, and starts selecting searches with "tag" selected.
+    private void startSelection(String tag){
+        selectionMode = startSupportActionMode(selectionCallback);
+        adapter.startSelection(tag, selectionListener);
+    }
+
+
+    //Returns the tag of the search shown by "view", a row of the RecyclerView, or null if the row is no
+    //longer in the adapter (e.g. it is being animated away).
+    private String getTag(View view){
+        int position = recyclerView.getChildAdapterPosition(view);
+        return position != RecyclerView.NO_POSITION ? adapter.getTag(position) : null;
+    }
+
+
+    //Selects the search shown by "view", or unselects it if it was selected.
+    private void toggleSelection(View view){
+        int position = recyclerView.getChildAdapterPosition(view);
+        if (position != RecyclerView.NO_POSITION)
+            adapter.toggleSelection(position);
+    }
+
+
+    //selectionCallback fills the contextual action bar with the Share and Delete actions, and stops selecting
+    //searches when it is closed.
+    private final ActionMode.Callback selectionCallback = new ActionMode.Callback() {
+        @Override
+        public boolean onCreateActionMode(ActionMode mode, Menu menu) {
+            mode.getMenuInflater().inflate(R.menu.menu_selection, menu);
+            return true;
+        }
+
+        @Override
+        public boolean onPrepareActionMode(ActionMode mode, Menu menu) {
+            return false;
+        }
+
+        @Override
+        public boolean onActionItemClicked(ActionMode mode, MenuItem item) {
+            switch (item.getItemId()) {
+                case R.id.action_share_selected:
+                    shareSearches(adapter.getSelectedTags());
+                    mode.finish();
+                    return true;
+                case R.id.action_delete_selected:
+                    deleteSearches(adapter.getSelectedTags());
+                    return true;
+                default:
+                    return false;
+            }
+        }
+
+        @Override
+        public void onDestroyActionMode(ActionMode mode) {
+            selectionMode = null;
+            adapter.endSelection();
+        }
+    };
+
+
+    //selectionListener shows how many searches are selected in the contextual action bar, and closes it once
+    //none are (e.g. the last one was unselected).
+    private final SearchesAdapter.SelectionListener selectionListener = new SearchesAdapter.SelectionListener() {
+        @Override
+        public void onSelectionChanged(int selectedCount) {
+            if (selectionMode == null)
+                return;
+            if (selectedCount == 0)
+                selectionMode.finish();
+            else
+                selectionMode.setTitle(getString(R.string.searches_selected, selectedCount));
+        }
+    };
+
+
+
+    //Method showMetrics shows the timings collected by Metrics, the hit rates of the caches, how many store
+    //edits were batched, the StartupTrace and the PrefetchStats in a dialog, from which they can be shared
+    //(e.g. emailed or pasted into a bug report) or reset before measuring again.
+    private void showMetrics(){
+        //the prefetch counts are read from their (small) file, if they haven't been read yet.
+        final PrefetchStats prefetchStats = ResultsFetcher.get(this).getStats();
+        StringBuilder counts = new StringBuilder();
+        layoutCache.appendTo(counts);
+        urlCache.appendTo(counts);
+        if (savedSearches instanceof WriteBehindSearchStore)
+            ((WriteBehindSearchStore) savedSearches).appendTo(counts);
+        final String metrics = Metrics.dump() + counts + StartupTrace.dump() + prefetchStats;
+
+        TextView textView = new TextView(this);
+        textView.setText(metrics);
+        textView.setTypeface(Typeface.MONOSPACE);
+        textView.setHorizontallyScrolling(true);
+        int padding = getResources().getDimensionPixelSize(R.dimen.metrics_padding);
+        textView.setPadding(padding, padding, padding, padding);
+        ScrollView scrollView = new ScrollView(this);
+        scrollView.addView(textView);
+
+        new AlertDialog.Builder(this)
+                .setTitle(R.string.metrics_title)
+                .setView(scrollView)
+                .setPositiveButton(R.string.share, new DialogInterface.OnClickListener() {
+                    @Override
+                    public void onClick(DialogInterface dialog, int which) {
+                        Intent shareIntent = new Intent(Intent.ACTION_SEND);
+                        shareIntent.putExtra(Intent.EXTRA_SUBJECT, getString(R.string.metrics_title));
+                        shareIntent.putExtra(Intent.EXTRA_TEXT, metrics);
+                        shareIntent.setType("text/plain");
+                        startActivity(Intent.createChooser(shareIntent, getString(R.string.share_metrics)));
+                    }
+                })
+                .setNeutralButton(R.string.reset_metrics, new DialogInterface.OnClickListener() {
+                    @Override
+                    public void onClick(DialogInterface dialog, int which) {
+                        Metrics.reset();
+                        prefetchStats.reset();
+                    }
+                })
+                .setNegativeButton(R.string.cancel, null)
+                .show();
+    }
+
+
     //Method shareSearch is called when the user selects to share a search.
     private void shareSearch(String tag){
 
-        //First we create a String representing the search to share.
-        String urlString = getString(R.string.search_URL) + Uri.encode(savedSearches.getString(tag, ""), "UTF-8");
+        //First we get a String representing the search to share from the SearchUrlCache.
+        String urlString = urlCache.get(tag, savedSearches);
 
         //Then we create and configure an Intent that allows the user to send the search URL using an Activity
         //that can handle the INTENT.ACTION_SEND
@@ -358,6 +1111,77 @@ public class MainActivity extends AppCompatActivity {
 
 
 
+    //Method shareSearches is called when the user shares the selected searches. They are all sent in a single
+    //ACTION_SEND, one "tag: URL" line each. A few searches are sent as text, but an Intent's extras have to
+    //fit in one Binder transaction, so more than MAX_SHARED_TEXT_SEARCHES are streamed into a file in the
+    //cache directory on a background thread instead, which the receiving app reads through the FileProvider.
+    private void shareSearches(final List<String> tags){
+        final SearchStore store = savedSearches;
+        final Intent shareIntent = new Intent(Intent.ACTION_SEND);
+        shareIntent.putExtra(Intent.EXTRA_SUBJECT, getString(R.string.share_searches_subject));
+        shareIntent.setType("text/plain");
+        final String message = getString(R.string.share_searches_message);
+
+        if (tags.size() <= MAX_SHARED_TEXT_SEARCHES){
+            StringBuilder text = new StringBuilder(message).append('\n');
+            for (String tag : tags)
+                appendSharedSearch(tag, store, text);
+            shareIntent.putExtra(Intent.EXTRA_TEXT, text.toString());
+            startActivity(Intent.createChooser(shareIntent, getString(R.string.share_searches)));
+            return;
+        }
+
+        final File file = new File(new File(getCacheDir(), SHARED_DIRECTORY), SHARED_SEARCHES_FILE);
+        new AsyncTask<Void, Void, IOException>() {
+            @Override
+            protected IOException doInBackground(Void... params) {
+                try {
+                    file.getParentFile().mkdirs();
+                    Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"));
+                    try {
+                        //each line is written as soon as it is built, so the whole text is never in memory.
+                        StringBuilder line = new StringBuilder(message).append('\n');
+                        for (String tag : tags) {
+                            appendSharedSearch(tag, store, line);
+                            out.append(line);
+                            line.setLength(0);
+                        }
+                    }
+                    finally {
+                        out.close();
+                    }
+                    return null;
+                }
+                catch (IOException e) {
+                    return e;
+                }
+            }
+
+            @Override
+            protected void onPostExecute(IOException error) {
+                if (isDestroyed())
+                    return;
+                if (error != null) {
+                    Toast.makeText(MainActivity.this, getString(R.string.share_failed, error.getMessage()), Toast.LENGTH_LONG).show();
+                    return;
+                }
+                shareIntent.putExtra(Intent.EXTRA_STREAM, FileProvider.getUriForFile(MainActivity.this, FILE_PROVIDER_AUTHORITY, file));
+                shareIntent.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
+                startActivity(Intent.createChooser(shareIntent, getString(R.string.share_searches)));
+            }
+        }.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+    }
+
+
+    //Appends the line sharing the search saved under "tag" to "out".
+    private void appendSharedSearch(String tag, SearchStore store, StringBuilder out){
+        out.append(tag).append(": ");
+        urlCache.appendUrl(tag, store, out);
+        out.append('\n');
+    }
+
+
+
     //The deleteSearch method is called when the user long presses a search tag and selects Delete from the AlertDialog.
     //Before deleting the search, the app displays an AlertDialog to confirm the delete operation.
     private void deleteSearch(final String tag){
@@ -376,14 +1200,19 @@ public class MainActivity extends AppCompatActivity {
             @Override
             public void onClick(DialogInterface dialog, int which) {
 
-                //We remove the tag from the "tags" List.
-                tags.remove(tag);
-                //Then we remove it from SharedPreferences, for which we must first get a SP.Editor object.
-                SharedPreferences.Editor preferencesEditor = savedSearches.edit();
-                preferencesEditor.remove(tag); //remove from SP.
+                //We remove the search from the model and hand the new version to the adapter, which notifies
+                //the RecyclerView of the exact position that was removed, so only that row is animated away.
+                adapter.setSnapshot(model.remove(tag));
+                tagFilter.remove(tag);
+                //Then we remove it from the SearchStore, for which we must first get a SearchStore.Editor object.
+                //Before removing it we look up its query so that the QueryIndex can forget its tokens.
+                String oldQuery = savedSearches.getString(tag, null);
+                SearchStore.Editor preferencesEditor = savedSearches.edit();
+                preferencesEditor.remove(tag); //remove from the store.
                 preferencesEditor.apply();     //commit the change.
-                //notify the Adapter the underlying data has changed so it can update itself.
-                adapter.notifyDataSetChanged();
+                queryIndex.update(tag, oldQuery, null);
+                urlCache.invalidate(tag);
+                clickStats.remove(tag);
             }
         });
 
@@ -391,4 +1220,35 @@ public class MainActivity extends AppCompatActivity {
         confirmBuilder.create().show();
     }
 
+
+
+    //The deleteSearches method is called when the user deletes the selected searches. After one confirmation
+    //they are all removed from the model in a single version, whose runs of neighbouring positions each
+    //become one range notification, and from the store with a single Editor, so they are written together.
+    private void deleteSearches(final List<String> tags){
+        AlertDialog.Builder confirmBuilder = new AlertDialog.Builder(this);
+        confirmBuilder.setMessage(getResources().getQuantityString(R.plurals.confirm_delete_searches, tags.size(), tags.size()));
+        confirmBuilder.setNegativeButton(getString(R.string.cancel), null);
+        confirmBuilder.setPositiveButton(getString(R.string.delete), new DialogInterface.OnClickListener() {
+            @Override
+            public void onClick(DialogInterface dialog, int which) {
+                if (selectionMode != null)
+                    selectionMode.finish();
+
+                adapter.setSnapshot(model.removeAll(tags));
+                tagFilter.removeAll(tags);
+
+                SearchStore.Editor preferencesEditor = savedSearches.edit();
+                for (String tag : tags) {
+                    queryIndex.update(tag, savedSearches.getString(tag, null), null);
+                    preferencesEditor.remove(tag);
+                    urlCache.invalidate(tag);
+                    clickStats.remove(tag);
+                }
+                preferencesEditor.apply();
+            }
+        });
+        confirmBuilder.create().show();
+    }
+
 }
@@ -0,0 +1,81 @@
+package com.deitel.twittersearches;
+
+import java.util.Locale;
+
+//The Metrics class holds the app's latency histograms for its hot paths and the jank counter of the
+//search list, and dumps them as text (see the "Dump metrics" item of the debug menu).
+//
+//A hot path is timed like this:
+//  long start = Metrics.start();
+//  ...
+//  Metrics.BIND_VIEW_HOLDER.record(start);
+//While metrics are disabled (the default in release builds), start returns 0 without reading the clock
+//and record returns straight away, so the instrumentation costs a field read and a comparison.
+public final class Metrics {
+
+    public static final LatencyHistogram STORE_OPEN = new LatencyHistogram("store open + read");
+    public static final LatencyHistogram TAG_SORT = new LatencyHistogram("tag sort");
+    public static final LatencyHistogram SNAPSHOT_FIRST_CHUNK = new LatencyHistogram("snapshot open + first chunk");
+    public static final LatencyHistogram CREATE_VIEW_HOLDER = new LatencyHistogram("onCreateViewHolder");
+    public static final LatencyHistogram BIND_VIEW_HOLDER = new LatencyHistogram("onBindViewHolder");
+    public static final LatencyHistogram TAG_LAYOUT = new LatencyHistogram("tag layout (uncached)");
+    public static final LatencyHistogram DRAW_DIVIDERS = new LatencyHistogram("ItemDivider.onDrawOver");
+    public static final LatencyHistogram UPDATE_SAVE_FAB = new LatencyHistogram("updateSaveFAB");
+    public static final LatencyHistogram STORE_WRITE = new LatencyHistogram("store write");
+
+    public static final JankCounter SCROLL_FRAMES = new JankCounter("scroll frame");
+
+    private static final LatencyHistogram[] HISTOGRAMS = {STORE_OPEN, TAG_SORT, SNAPSHOT_FIRST_CHUNK,
+            CREATE_VIEW_HOLDER, BIND_VIEW_HOLDER, TAG_LAYOUT, DRAW_DIVIDERS, UPDATE_SAVE_FAB, STORE_WRITE};
+
+    private static volatile boolean enabled;
+
+    private Metrics() {
+    }
+
+
+    //Turns the collection of metrics on or off.
+    public static void setEnabled(boolean enable) {
+        enabled = enable;
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+
+    //Returns the start time to pass to LatencyHistogram.record, or 0 if metrics are disabled.
+    public static long start() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+
+    //Forgets everything recorded so far.
+    public static void reset() {
+        for (LatencyHistogram histogram : HISTOGRAMS)
+            histogram.reset();
+        SCROLL_FRAMES.reset();
+    }
+
+
+    //Appends the hit and miss counts of the cache called "name", and its hit rate.
+    public static void appendHitCounts(StringBuilder out, String name, long hits, long misses) {
+        long lookups = hits + misses;
+        out.append(String.format(Locale.US, "%s: %d hits, %d misses (%.1f%% hits)%n", name, hits, misses,
+                lookups == 0 ? 0.0 : hits * 100.0 / lookups));
+    }
+
+
+    //Returns every histogram and the jank counts as a table, with durations in microseconds.
+    public static String dump() {
+        StringBuilder out = new StringBuilder();
+        out.append(String.format(Locale.US, "%-22s %8s %9s %9s %9s %9s %9s%n", "(microseconds)", "count", "mean", "p50",
+                "p90", "p99", "max"));
+        for (LatencyHistogram histogram : HISTOGRAMS)
+            histogram.appendTo(out);
+        SCROLL_FRAMES.appendTo(out);
+        if (!enabled)
+            out.append("(metrics are disabled)\n");
+        return out.toString();
+    }
+}
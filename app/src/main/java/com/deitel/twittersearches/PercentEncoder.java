@@ -0,0 +1,71 @@
+package com.deitel.twittersearches;
+
+//The PercentEncoder class URL-encodes search queries the same way Uri.encode(query) does: letters, digits
+//and the unreserved characters _-!.~'()* are kept, and every other character is replaced by the
+//percent-escaped bytes of its UTF-8 encoding (e.g. "#java" becomes "%23java").
+//
+//Uri.encode builds a new StringBuilder, a UTF-8 byte array and a String for every run of characters it
+//escapes. PercentEncoder instead appends straight into one StringBuilder that it reuses for every call, so
+//encoding a query only allocates the resulting String.
+//A PercentEncoder is not thread safe; each thread should use its own.
+public class PercentEncoder {
+
+    private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+    private static final String UNRESERVED = "_-!.~'()*";
+
+    private final StringBuilder buffer = new StringBuilder(256);
+
+    //Returns "prefix" followed by the encoded "text".
+    public String encode(String prefix, String text) {
+        buffer.setLength(0);
+        buffer.append(prefix);
+        appendEncoded(text, buffer);
+        return buffer.toString();
+    }
+
+
+    //Appends the encoded "text" to "out".
+    static void appendEncoded(String text, StringBuilder out) {
+        int length = text.length();
+        for (int i = 0; i < length; ++i) {
+            char c = text.charAt(i);
+
+            if (isAllowed(c)) {
+                out.append(c);
+            }
+            else if (c < 0x80) {
+                appendEscaped(c, out);
+            }
+            else if (c < 0x800) {
+                appendEscaped(0xC0 | (c >> 6), out);
+                appendEscaped(0x80 | (c & 0x3F), out);
+            }
+            else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(text.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, text.charAt(++i));
+                appendEscaped(0xF0 | (codePoint >> 18), out);
+                appendEscaped(0x80 | ((codePoint >> 12) & 0x3F), out);
+                appendEscaped(0x80 | ((codePoint >> 6) & 0x3F), out);
+                appendEscaped(0x80 | (codePoint & 0x3F), out);
+            }
+            else if (Character.isSurrogate(c)) {
+                //an unpaired surrogate can't be encoded; like String.getBytes, replace it with '?'.
+                appendEscaped('?', out);
+            }
+            else {
+                appendEscaped(0xE0 | (c >> 12), out);
+                appendEscaped(0x80 | ((c >> 6) & 0x3F), out);
+                appendEscaped(0x80 | (c & 0x3F), out);
+            }
+        }
+    }
+
+
+    private static boolean isAllowed(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+                || UNRESERVED.indexOf(c) >= 0;
+    }
+
+    private static void appendEscaped(int b, StringBuilder out) {
+        out.append('%').append(HEX_DIGITS[(b >> 4) & 0xF]).append(HEX_DIGITS[b & 0xF]);
+    }
+}
@@ -0,0 +1,97 @@
+package com.deitel.twittersearches;
+
+import android.app.job.JobInfo;
+import android.app.job.JobParameters;
+import android.app.job.JobScheduler;
+import android.app.job.JobService;
+import android.content.ComponentName;
+import android.content.Context;
+
+import java.util.ArrayList;
+import java.util.List;
+
+//The PrefetchJobService class downloads the results of the searches the user taps most (see ClickStats)
+//into the ResultsCache, so that tapping them shows their results straight away.
+//It is a JobService run by the JobScheduler every few hours, but only while the device is idle and on an
+//unmetered (e.g. Wi-Fi) network, so it neither slows the phone down nor uses mobile data. The downloads are
+//limited to MAX_CONCURRENT at a time and about MAX_BYTES per run (see ResultsPrefetcher).
+//The job is only scheduled while the user has "Show results in the app" turned on; PrefetchStats counts
+//how many of the prefetched results were used.
+public class PrefetchJobService extends JobService {
+
+    private static final int JOB_ID = 1;
+    private static final long PERIOD_MILLIS = 6 * 60 * 60 * 1000;
+
+    //The number of searches whose results are prefetched.
+    private static final int TOP_SEARCHES = 10;
+    private static final int MAX_CONCURRENT = 2;
+    private static final long MAX_BYTES = 2 * 1024 * 1024;
+
+    private ResultsPrefetcher prefetcher;
+
+
+    //Schedules the job, unless it is already scheduled (scheduling it again would restart its period).
+    public static void schedule(Context context) {
+        JobScheduler scheduler = (JobScheduler) context.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+        for (JobInfo job : scheduler.getAllPendingJobs())
+            if (job.getId() == JOB_ID)
+                return;
+
+        scheduler.schedule(new JobInfo.Builder(JOB_ID, new ComponentName(context, PrefetchJobService.class))
+                .setRequiresDeviceIdle(true)
+                .setRequiredNetworkType(JobInfo.NETWORK_TYPE_UNMETERED)
+                .setPeriodic(PERIOD_MILLIS)
+                .setPersisted(true)
+                .build());
+    }
+
+
+    //Cancels the job.
+    public static void cancel(Context context) {
+        ((JobScheduler) context.getSystemService(Context.JOB_SCHEDULER_SERVICE)).cancel(JOB_ID);
+    }
+
+
+    //onStartJob is called on the main thread, so the downloads are done on a thread of their own, which
+    //calls jobFinished when they are done.
+    @Override
+    public boolean onStartJob(final JobParameters params) {
+        final Context context = getApplicationContext();
+        final String searchUrl = getString(R.string.search_URL);
+        prefetcher = new ResultsPrefetcher(ResultsFetcher.get(context), MAX_CONCURRENT, MAX_BYTES);
+
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                List<String> tags = ClickStats.get(context).top(TOP_SEARCHES);
+                SearchStore store = SearchStores.get(context);
+                PercentEncoder encoder = new PercentEncoder();
+
+                List<String> urls = new ArrayList<>(tags.size());
+                for (String tag : tags) {
+                    String query = store.getString(tag, null);
+                    if (query != null)
+                        urls.add(encoder.encode(searchUrl, query));
+                }
+
+                try {
+                    prefetcher.prefetch(urls);
+                }
+                catch (InterruptedException e) {
+                    //stopped.
+                }
+                jobFinished(params, false);
+            }
+        }, "prefetch-job").start();
+        return true;
+    }
+
+
+    //onStopJob is called when the device is no longer idle or on an unmetered network. The downloads are
+    //stopped, and the JobScheduler is asked to run the job again later.
+    @Override
+    public boolean onStopJob(JobParameters params) {
+        prefetcher.cancel();
+        return true;
+    }
+}
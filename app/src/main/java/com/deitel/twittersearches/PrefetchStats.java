@@ -0,0 +1,158 @@
+package com.deitel.twittersearches;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Locale;
+
+//The PrefetchStats class counts whether prefetching search results (see PrefetchJobService) pays off: how
+//many results were prefetched, and how many of those the user then actually looked at before they were
+//replaced, as well as how many taps were answered without downloading anything.
+//
+//The counters are saved to a small file after every change, since the prefetch job and the taps often happen
+//in different runs of the app. They are shown in the "Dump metrics" dialog (see toString).
+//All methods are synchronized; the file is read the first time a counter is used.
+public class PrefetchStats {
+
+    private static final int MAGIC = 0x54535053; //"TSPS"
+    private static final int VERSION = 1;
+
+    private final File file;
+    private boolean loaded;
+
+    private long prefetched;
+    private long prefetchedBytes;
+    private long used;
+    private long taps;
+    private long tapsFromCache;
+
+
+    //constructor. The counters are kept in "file".
+    public PrefetchStats(File file) {
+        this.file = file;
+    }
+
+
+    //Counts a result that was downloaded by a prefetch.
+    public synchronized void recordPrefetched(int bytes) {
+        load();
+        ++prefetched;
+        prefetchedBytes += bytes;
+        save();
+    }
+
+
+    //Counts a tap on a search, which was answered from the cache (fresh, revalidated or stale) if "fromCache"
+    //is true, and whose results had been prefetched (and not looked at since) if "prefetchUsed" is true.
+    public synchronized void recordTap(boolean fromCache, boolean prefetchUsed) {
+        load();
+        ++taps;
+        if (fromCache)
+            ++tapsFromCache;
+        if (prefetchUsed)
+            ++used;
+        save();
+    }
+
+
+    //Returns the number of prefetched results.
+    public synchronized long getPrefetchedCount() {
+        load();
+        return prefetched;
+    }
+
+
+    //Returns the number of prefetched results that were looked at.
+    public synchronized long getUsedCount() {
+        load();
+        return used;
+    }
+
+
+    //Returns the number of taps that were answered from the cache.
+    public synchronized long getTapsFromCacheCount() {
+        load();
+        return tapsFromCache;
+    }
+
+
+    //Forgets every count.
+    public synchronized void reset() {
+        loaded = true;
+        prefetched = prefetchedBytes = used = taps = tapsFromCache = 0;
+        save();
+    }
+
+
+    //Returns the counts and hit rates as text.
+    @Override
+    public synchronized String toString() {
+        load();
+        return String.format(Locale.US, "prefetched %d results (%d KB), %d used (%s)%ntaps %d, %d from cache (%s)%n",
+                prefetched, prefetchedBytes / 1024, used, percent(used, prefetched), taps, tapsFromCache,
+                percent(tapsFromCache, taps));
+    }
+
+
+
+    private static String percent(long count, long total) {
+        return total == 0 ? "-" : String.format(Locale.US, "%.0f%%", 100.0 * count / total);
+    }
+
+
+    private void load() {
+        if (loaded)
+            return;
+        loaded = true;
+        if (!file.exists())
+            return;
+
+        try {
+            DataInputStream in = new DataInputStream(new FileInputStream(file));
+            try {
+                if (in.readInt() != MAGIC || in.readInt() != VERSION)
+                    return;
+                prefetched = in.readLong();
+                prefetchedBytes = in.readLong();
+                used = in.readLong();
+                taps = in.readLong();
+                tapsFromCache = in.readLong();
+            }
+            finally {
+                in.close();
+            }
+        }
+        catch (IOException e) {
+            //start counting again.
+            prefetched = prefetchedBytes = used = taps = tapsFromCache = 0;
+        }
+    }
+
+
+    private void save() {
+        try {
+            File temporary = new File(file.getPath() + ".tmp");
+            DataOutputStream out = new DataOutputStream(new FileOutputStream(temporary));
+            try {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(prefetched);
+                out.writeLong(prefetchedBytes);
+                out.writeLong(used);
+                out.writeLong(taps);
+                out.writeLong(tapsFromCache);
+            }
+            finally {
+                out.close();
+            }
+            if (!temporary.renameTo(file))
+                temporary.delete();
+        }
+        catch (IOException e) {
+            //the counts are only statistics; they will be saved with the next change.
+        }
+    }
+}
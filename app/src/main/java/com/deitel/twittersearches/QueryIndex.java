@@ -0,0 +1,415 @@
+package com.deitel.twittersearches;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+//The QueryIndex class is an inverted index from the tokens of the saved queries (see QueryTokenizer) to
+//the tags of the searches that contain them. It answers questions like "which of my searches mention
+//#java" or "which searches are from:someone" without loading and scanning every query.
+//
+//The tokens are kept in a TreeMap so that every token starting with some text (e.g. "#jav") can be found
+//as one range of keys while the user is still typing.
+//The index is kept up to date by calling update whenever a search is saved or deleted, and it is saved
+//to a file so it doesn't have to be rebuilt on every start. The file records a fingerprint of the searches
+//it was built from; if the searches have changed since (e.g. the app was killed before the index was
+//saved), the index is rebuilt from the SearchStore, which is always the source of truth.
+//
+//File layout: magic number | version | fingerprint | body length | CRC32 of the body, then the body:
+//  tag count | tags, then token count | for each token: token | posting count | tag numbers
+//Strings are written as their UTF-8 length and bytes. A body that doesn't match its checksum, or a count
+//that doesn't fit in the rest of the file, is reported as an IOException and the index is rebuilt.
+//
+//The index can be loaded or saved on a background thread while it is used on the main thread. Neither holds
+//the index's lock while it reads the store or a file: a load builds a new index on its own and swaps it in,
+//replaying the updates made in the meantime, and a save writes a copy of the index. The lock is only held to
+//look up, update, copy or swap the index, so update (called on the main thread when a search is saved or
+//deleted) never waits for a load or a save. The posting sets shared with a save's copy are copied before
+//they are next changed.
+public class QueryIndex {
+
+    private static final int MAGIC = 0x54535149; //"TSQI"
+    private static final int VERSION = 3;
+    private static final int HEADER_SIZE = 24;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final File file;
+    private TreeMap<String, Set<String>> tagsByToken = new TreeMap<>();
+    private long fingerprint;
+
+    //The number of updates made, and the number the saved file includes.
+    private long changes;
+    private long savedChanges;
+
+    //The posting sets that update may change in place: all of them until a save copies the index, then only
+    //the ones created or copied since. The others may be shared with the save's copy.
+    private boolean allSetsOwned = true;
+    private final Set<Set<String>> ownedSets = Collections.newSetFromMap(new IdentityHashMap<Set<String>, Boolean>());
+
+    //While a load is running, the updates made since it read the store, as (tag, old query, new query).
+    private List<String[]> updatesDuringLoad;
+
+    //Held for the whole of a load, and of a save, so that only one of each runs at a time.
+    private final Object loadLock = new Object();
+    private final Object saveLock = new Object();
+
+    //constructor. The index starts out empty; call loadOrRebuild to fill it.
+    public QueryIndex(File file) {
+        this.file = file;
+    }
+
+
+    //Loads the index from its file, or rebuilds it from "store" if the file is missing, unreadable or
+    //out of date. Returns true if the index had to be rebuilt.
+    public boolean loadOrRebuild(SearchStore store) {
+        synchronized (loadLock) {
+            synchronized (this) {
+                updatesDuringLoad = new ArrayList<>();
+            }
+
+            Map<String, String> searches = store.getAll();
+            long expected = fingerprint(searches);
+
+            TreeMap<String, Set<String>> index = null;
+            try {
+                if (file.exists())
+                    index = load(expected);
+            }
+            catch (IOException e) {
+                //fall through and rebuild.
+            }
+
+            boolean rebuilt = index == null;
+            if (rebuilt) {
+                index = new TreeMap<>();
+                for (Map.Entry<String, String> search : searches.entrySet())
+                    add(index, search.getKey(), search.getValue(), null);
+            }
+
+            synchronized (this) {
+                //The updates made since the store was read may or may not be in "searches" already; replaying
+                //them gives the same index and fingerprint either way.
+                for (String[] update : updatesDuringLoad) {
+                    String tag = update[0];
+                    String savedQuery = searches.get(tag);
+                    if (savedQuery != null)
+                        expected -= entryFingerprint(tag, savedQuery);
+                    if (update[1] != null)
+                        remove(index, tag, update[1], null);
+                    if (update[2] != null) {
+                        add(index, tag, update[2], null);
+                        searches.put(tag, update[2]);
+                        expected += entryFingerprint(tag, update[2]);
+                    }
+                    else
+                        searches.remove(tag);
+                }
+                boolean changed = rebuilt || !updatesDuringLoad.isEmpty();
+                updatesDuringLoad = null;
+
+                tagsByToken = index;
+                fingerprint = expected;
+                allSetsOwned = true;
+                ownedSets.clear();
+                ++changes;
+                if (!changed)
+                    savedChanges = changes;
+            }
+            return rebuilt;
+        }
+    }
+
+
+    //Updates the index after the query saved under "tag" changed from "oldQuery" to "newQuery".
+    //Either may be null: oldQuery for a new search and newQuery for a deleted one.
+    public synchronized void update(String tag, String oldQuery, String newQuery) {
+        if (oldQuery != null) {
+            remove(tagsByToken, tag, oldQuery, ownedSets());
+            fingerprint -= entryFingerprint(tag, oldQuery);
+        }
+        if (newQuery != null) {
+            add(tagsByToken, tag, newQuery, ownedSets());
+            fingerprint += entryFingerprint(tag, newQuery);
+        }
+        if (updatesDuringLoad != null)
+            updatesDuringLoad.add(new String[] {tag, oldQuery, newQuery});
+        ++changes;
+    }
+
+
+    //Returns the tags of the searches containing "token" (which is normalized the way QueryTokenizer
+    //normalizes query words).
+    public synchronized Set<String> find(String token) {
+        String normalized = QueryTokenizer.normalize(token);
+        Set<String> tags = normalized != null ? tagsByToken.get(normalized) : null;
+        return tags != null ? new HashSet<>(tags) : new HashSet<String>();
+    }
+
+
+    //Returns the tags of the searches containing a token that starts with "prefix".
+    public synchronized Set<String> findByPrefix(String prefix) {
+        Set<String> tags = new HashSet<>();
+        String normalized = QueryTokenizer.normalize(prefix);
+        if (normalized == null)
+            return tags;
+
+        SortedMap<String, Set<String>> range = tagsByToken.subMap(normalized, normalized + Character.MAX_VALUE);
+        for (Set<String> tokenTags : range.values())
+            tags.addAll(tokenTags);
+        return tags;
+    }
+
+
+    //Returns the number of distinct tokens in the index.
+    public synchronized int getTokenCount() {
+        return tagsByToken.size();
+    }
+
+
+    //Saves the index to its file if it has changed since it was loaded or last saved.
+    //The index is written to a temporary file first so that a crash can't leave a half-written index.
+    public void save() throws IOException {
+        synchronized (saveLock) {
+            TreeMap<String, Set<String>> index;
+            long savedFingerprint;
+            long savedAt;
+            synchronized (this) {
+                if (changes == savedChanges)
+                    return;
+                //the copy shares the posting sets, which update copies before changing them from now on.
+                index = new TreeMap<>(tagsByToken);
+                allSetsOwned = false;
+                ownedSets.clear();
+                savedFingerprint = fingerprint;
+                savedAt = changes;
+            }
+
+            write(index, savedFingerprint);
+
+            synchronized (this) {
+                savedChanges = Math.max(savedChanges, savedAt);
+            }
+        }
+    }
+
+
+
+    private void write(TreeMap<String, Set<String>> index, long savedFingerprint) throws IOException {
+        //number the tags so that each posting list only stores ints.
+        Map<String, Integer> ids = new HashMap<>();
+        List<String> tags = new ArrayList<>();
+        for (Set<String> tokenTags : index.values()) {
+            for (String tag : tokenTags) {
+                if (!ids.containsKey(tag)) {
+                    ids.put(tag, tags.size());
+                    tags.add(tag);
+                }
+            }
+        }
+
+        //the body is built first, since its length and checksum go in the header.
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        DataOutputStream bodyOut = new DataOutputStream(body);
+        bodyOut.writeInt(tags.size());
+        for (String tag : tags)
+            writeString(tag, bodyOut);
+
+        bodyOut.writeInt(index.size());
+        for (Map.Entry<String, Set<String>> entry : index.entrySet()) {
+            writeString(entry.getKey(), bodyOut);
+            bodyOut.writeInt(entry.getValue().size());
+            for (String tag : entry.getValue())
+                bodyOut.writeInt(ids.get(tag));
+        }
+        bodyOut.flush();
+        byte[] bodyBytes = body.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(bodyBytes);
+
+        File temporary = new File(file.getPath() + ".tmp");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(savedFingerprint);
+            out.writeInt(bodyBytes.length);
+            out.writeInt((int) crc.getValue());
+            out.write(bodyBytes);
+        }
+        finally {
+            out.close();
+        }
+
+        if (!temporary.renameTo(file)) {
+            temporary.delete();
+            throw new IOException("Unable to replace " + file);
+        }
+    }
+
+
+    //Reads the index file, returning null if it isn't a query index of this version or wasn't built from the
+    //searches with fingerprint "expected". Throws an IOException if the file is damaged.
+    private TreeMap<String, Set<String>> load(long expected) throws IOException {
+        long bodyLength = file.length() - HEADER_SIZE;
+        byte[] bodyBytes;
+        int checksum;
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION || in.readLong() != expected)
+                return null;
+            int length = in.readInt();
+            checksum = in.readInt();
+            if (length != bodyLength)
+                throw new IOException("Corrupt query index " + file);
+            bodyBytes = new byte[length];
+            in.readFully(bodyBytes);
+        }
+        finally {
+            in.close();
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(bodyBytes);
+        if ((int) crc.getValue() != checksum)
+            throw new IOException("Corrupt query index " + file);
+
+        //Every count is checked against the bytes left before anything is allocated for it.
+        DataInputStream body = new DataInputStream(new ByteArrayInputStream(bodyBytes));
+        try {
+            String[] tags = new String[readCount(body, 4)];
+            for (int i = 0; i < tags.length; ++i)
+                tags[i] = readString(body);
+
+            TreeMap<String, Set<String>> loaded = new TreeMap<>();
+            int tokenCount = readCount(body, 8);
+            for (int i = 0; i < tokenCount; ++i) {
+                String token = readString(body);
+                int count = readCount(body, 4);
+                Set<String> tokenTags = new HashSet<>(count * 2);
+                for (int j = 0; j < count; ++j)
+                    tokenTags.add(tags[body.readInt()]);
+                loaded.put(token, tokenTags);
+            }
+            return loaded;
+        }
+        catch (ArrayIndexOutOfBoundsException e) {
+            throw new IOException("Corrupt query index " + file, e);
+        }
+    }
+
+
+    //Reads a count of items that take at least "itemBytes" bytes each, checking that they fit in the rest of
+    //"in" (which reads from a byte array, so available() is the number of bytes left).
+    private static int readCount(DataInputStream in, int itemBytes) throws IOException {
+        int count = in.readInt();
+        if (count < 0 || count > in.available() / itemBytes)
+            throw new IOException("Corrupt query index");
+        return count;
+    }
+
+
+    //Strings are written as their length in UTF-8 bytes followed by the bytes (writeUTF can't write strings
+    //over 64KB, such as a very long query).
+    private static void writeString(String string, DataOutputStream out) throws IOException {
+        byte[] bytes = string.getBytes(UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+
+    //Reads a string from "in", which reads from a byte array (see readCount).
+    private static String readString(DataInputStream in) throws IOException {
+        int length = readCount(in, 1);
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+
+    //Adds the tokens of "query" to "index". "owned" holds the posting sets that may be changed in place, or
+    //is null if they all may (see ownedSets).
+    private static void add(TreeMap<String, Set<String>> index, String tag, String query, Set<Set<String>> owned) {
+        for (String token : QueryTokenizer.tokenize(query)) {
+            Set<String> tags = index.get(token);
+            if (tags == null) {
+                tags = new HashSet<>();
+                index.put(token, tags);
+                if (owned != null)
+                    owned.add(tags);
+            }
+            else
+                tags = owned(index, token, tags, owned);
+            tags.add(tag);
+        }
+    }
+
+
+    private static void remove(TreeMap<String, Set<String>> index, String tag, String query, Set<Set<String>> owned) {
+        for (String token : QueryTokenizer.tokenize(query)) {
+            Set<String> tags = index.get(token);
+            if (tags == null || !tags.contains(tag))
+                continue;
+            if (tags.size() == 1)
+                index.remove(token);
+            else
+                owned(index, token, tags, owned).remove(tag);
+        }
+    }
+
+
+    //Returns the posting set of "token", copying it first if it isn't in "owned".
+    private static Set<String> owned(TreeMap<String, Set<String>> index, String token, Set<String> tags,
+                                     Set<Set<String>> owned) {
+        if (owned == null || owned.contains(tags))
+            return tags;
+        Set<String> copy = new HashSet<>(tags);
+        index.put(token, copy);
+        owned.add(copy);
+        return copy;
+    }
+
+
+    //Returns the posting sets of tagsByToken that may be changed in place, or null if they all may.
+    private Set<Set<String>> ownedSets() {
+        return allSetsOwned ? null : ownedSets;
+    }
+
+
+    //The fingerprint of a set of searches is the sum of a hash of each tag-query pair, so it doesn't depend
+    //on the order of the searches and can be updated one search at a time.
+    static long fingerprint(Map<String, String> searches) {
+        long fingerprint = 0;
+        for (Map.Entry<String, String> search : searches.entrySet())
+            fingerprint += entryFingerprint(search.getKey(), search.getValue());
+        return fingerprint;
+    }
+
+
+    private static long entryFingerprint(String tag, String query) {
+        long hash = tag.hashCode() * 0x9E3779B97F4A7C15L + query.hashCode();
+        hash ^= hash >>> 33;
+        hash *= 0xFF51AFD7ED558CCDL;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,93 @@
+package com.deitel.twittersearches;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+//The QueryTokenizer class splits a Twitter search query into the tokens that QueryIndex indexes.
+//Twitter operators are kept whole so that they can be searched for as written:
+//  #hashtag, @mention, from:someone, to:someone, since:2017-06-27, lang:en, filter:links, ...
+//An @ after an operator's colon is dropped, so "from:@someone" and "from:someone" are the same token.
+//Excluded terms keep their minus sign ("-#spam"), so a search excluding a hashtag isn't found as one
+//mentioning it. Everything else is split into lowercase words with surrounding punctuation removed,
+//and the OR and AND keywords are skipped.
+public final class QueryTokenizer {
+
+    private static final String PUNCTUATION = "\"'()[]{}.,;!?";
+
+    private QueryTokenizer() {
+    }
+
+
+    //Returns the tokens of "query", in the order they appear. A token may appear more than once.
+    public static List<String> tokenize(String query) {
+        List<String> tokens = new ArrayList<>();
+
+        int start = 0;
+        int length = query.length();
+        while (start < length) {
+            while (start < length && Character.isWhitespace(query.charAt(start)))
+                ++start;
+            int end = start;
+            while (end < length && !Character.isWhitespace(query.charAt(end)))
+                ++end;
+
+            if (end > start) {
+                String token = normalize(query.substring(start, end));
+                if (token != null)
+                    tokens.add(token);
+            }
+            start = end;
+        }
+        return tokens;
+    }
+
+
+    //Returns true if "text" looks like a Twitter operator (a hashtag, mention or name:value pair) rather
+    //than a plain word.
+    //It is checked on every keystroke while filtering, so it reads "text" in place rather than making Strings.
+    public static boolean isOperator(CharSequence text) {
+        int start = text.length() > 0 && text.charAt(0) == '-' ? 1 : 0;
+        if (start == text.length())
+            return false;
+        char first = text.charAt(start);
+        if (first == '#' || first == '@')
+            return true;
+        for (int i = start + 1; i < text.length(); ++i) {
+            if (text.charAt(i) == ':')
+                return true;
+        }
+        return false;
+    }
+
+
+    //Normalizes a single whitespace-separated word of a query, or returns null if it should be skipped.
+    static String normalize(String word) {
+        String token = trim(word.toLowerCase(Locale.ROOT));
+
+        boolean excluded = token.startsWith("-");
+        if (excluded)
+            token = trim(token.substring(1));
+
+        if (token.isEmpty() || (!excluded && (token.equals("or") || token.equals("and"))))
+            return null;
+
+        int colon = token.indexOf(':');
+        if (colon > 0 && colon + 1 < token.length() && token.charAt(colon + 1) == '@')
+            token = token.substring(0, colon + 1) + token.substring(colon + 2);
+
+        return excluded ? "-" + token : token;
+    }
+
+
+    //Removes punctuation from both ends of "token".
+    private static String trim(String token) {
+        int start = 0;
+        int end = token.length();
+        while (start < end && PUNCTUATION.indexOf(token.charAt(start)) >= 0)
+            ++start;
+        while (end > start && PUNCTUATION.indexOf(token.charAt(end - 1)) >= 0)
+            --end;
+        return token.substring(start, end);
+    }
+}
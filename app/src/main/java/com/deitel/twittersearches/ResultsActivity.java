@@ -0,0 +1,96 @@
+package com.deitel.twittersearches;
+
+import android.annotation.SuppressLint;
+import android.content.Intent;
+import android.net.Uri;
+import android.os.AsyncTask;
+import android.os.Bundle;
+import android.support.v7.app.AppCompatActivity;
+import android.view.View;
+import android.webkit.WebView;
+import android.widget.Toast;
+
+import java.io.IOException;
+
+//The ResultsActivity class shows the results of a search inside the app, when the user has turned on
+//"Show results in the app" (otherwise MainActivity opens them in the browser).
+//The results page is fetched by the app's ResultsFetcher, so a search that was tapped a moment ago is
+//shown straight from its ResultsCache, without starting the browser or going to the network at all.
+//If the results can't be loaded, they are opened in the browser instead.
+public class ResultsActivity extends AppCompatActivity {
+
+    //The extras of the Intent that starts a ResultsActivity: the search URL and the tag (used as the title).
+    public static final String EXTRA_URL = "com.deitel.twittersearches.URL";
+    public static final String EXTRA_TAG = "com.deitel.twittersearches.TAG";
+
+    private String url;
+    private WebView webView;
+    private View progressBar;
+    private FetchTask fetchTask;
+
+
+    //onCreate shows the results, downloading them on a background thread if they aren't cached.
+    @SuppressLint("SetJavaScriptEnabled")
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_results);
+
+        url = getIntent().getStringExtra(EXTRA_URL);
+        setTitle(getIntent().getStringExtra(EXTRA_TAG));
+
+        progressBar = findViewById(R.id.resultsProgressBar);
+        webView = (WebView) findViewById(R.id.resultsWebView);
+        //the mobile Twitter pages need JavaScript to show more than their first results.
+        webView.getSettings().setJavaScriptEnabled(true);
+
+        fetchTask = new FetchTask();
+        fetchTask.execute(url);
+    }
+
+
+    //onDestroy stops a download that hasn't finished.
+    @Override
+    protected void onDestroy() {
+        fetchTask.cancel(true);
+        super.onDestroy();
+    }
+
+
+
+    //FetchTask fetches the results on a background thread and shows them in the WebView.
+    private class FetchTask extends AsyncTask<String, Void, ResultsFetcher.Result> {
+
+        private IOException error;
+
+        @Override
+        protected ResultsFetcher.Result doInBackground(String... urls) {
+            try {
+                return ResultsFetcher.get(ResultsActivity.this).fetch(urls[0]);
+            }
+            catch (IOException e) {
+                error = e;
+                return null;
+            }
+        }
+
+        @Override
+        protected void onPostExecute(ResultsFetcher.Result result) {
+            progressBar.setVisibility(View.GONE);
+
+            if (result == null) {
+                Toast.makeText(ResultsActivity.this, getString(R.string.results_failed, error.getMessage()),
+                        Toast.LENGTH_LONG).show();
+                startActivity(new Intent(Intent.ACTION_VIEW, Uri.parse(url)));
+                finish();
+                return;
+            }
+
+            if (result.source == ResultsFetcher.Source.STALE)
+                Toast.makeText(ResultsActivity.this, R.string.stale_results, Toast.LENGTH_LONG).show();
+
+            //The page's links and resources are resolved against the search URL, as if it had been loaded from it.
+            webView.loadDataWithBaseURL(url, new String(result.body, result.getCharset()), "text/html", null, url);
+        }
+    }
+}
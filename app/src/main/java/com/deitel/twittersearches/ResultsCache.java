@@ -0,0 +1,284 @@
+package com.deitel.twittersearches;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+//The ResultsCache class keeps downloaded search results on disk (see ResultsFetcher), so that tapping a
+//search again shows its results straight away, and still shows them when the phone is offline.
+//
+//Every response is kept in its own file in the cache directory, named after a hash of its URL, together
+//with the URL itself (to detect hash collisions), the time it was downloaded, how long it stays fresh, and
+//the validators (ETag and Last-Modified) needed to ask the server whether it has changed, and whether it was
+//downloaded by a prefetch and hasn't been looked at yet.
+//The files are kept in a LinkedHashMap in access order with their sizes; once they add up to more than
+//maxBytes, the least recently used files are deleted. A file's modification time is set whenever it is
+//used, so that the order survives restarts.
+//
+//All methods are synchronized. The directory is only listed the first time the cache is used, so that
+//creating the cache doesn't touch the disk.
+public class ResultsCache {
+
+    private static final int MAGIC = 0x54535243; //"TSRC"
+    private static final int VERSION = 2;
+
+    //The offset of the "prefetched" flag in a file, after the magic number and the version.
+    private static final int PREFETCHED_OFFSET = 8;
+
+    //Entry is one cached response.
+    public static final class Entry {
+        public final String contentType;
+        public final String etag;
+        public final String lastModified;
+        public final long fetchedAt;
+        public final long freshUntil;
+        public final boolean prefetched;
+        public final byte[] body;
+
+        //"etag" and "lastModified" may be null if the server didn't send them.
+        public Entry(String contentType, String etag, String lastModified, long fetchedAt, long freshUntil,
+                     boolean prefetched, byte[] body) {
+            this.contentType = contentType;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.fetchedAt = fetchedAt;
+            this.freshUntil = freshUntil;
+            this.prefetched = prefetched;
+            this.body = body;
+        }
+
+        //Returns true if the entry can be used at time "now" without asking the server.
+        public boolean isFresh(long now) {
+            return now < freshUntil;
+        }
+    }
+
+    private final File directory;
+    private final long maxBytes;
+
+    //file name -> file size, least recently used first. null until the directory has been listed.
+    private LinkedHashMap<String, Long> files;
+    private long totalBytes;
+
+
+    //constructor. The responses are kept in "directory", which is created if necessary.
+    public ResultsCache(File directory, long maxBytes) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+    }
+
+
+    //Returns the entry saved for "url", or null if there is none (or it can't be read).
+    public synchronized Entry get(String url) {
+        String name = fileName(url);
+        //get (rather than containsKey) moves the file to the end of the access order.
+        if (index().get(name) == null)
+            return null;
+
+        File file = new File(directory, name);
+        Entry entry;
+        try {
+            entry = read(file, url);
+        }
+        catch (IOException e) {
+            entry = null;
+        }
+
+        if (entry == null) {
+            //a corrupt file, or one saved for another URL with the same hash.
+            remove(name);
+            return null;
+        }
+
+        file.setLastModified(System.currentTimeMillis());
+        return entry;
+    }
+
+
+    //Saves "entry" for "url", replacing any entry saved for it, and deletes the least recently used
+    //entries if the cache has grown too large.
+    public synchronized void put(String url, Entry entry) throws IOException {
+        String name = fileName(url);
+        File file = new File(directory, name);
+        File temporary = new File(directory, name + ".tmp");
+
+        if (!directory.isDirectory() && !directory.mkdirs())
+            throw new IOException("Unable to create " + directory);
+
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeBoolean(entry.prefetched);
+            out.writeUTF(url);
+            out.writeUTF(entry.contentType != null ? entry.contentType : "");
+            out.writeUTF(entry.etag != null ? entry.etag : "");
+            out.writeUTF(entry.lastModified != null ? entry.lastModified : "");
+            out.writeLong(entry.fetchedAt);
+            out.writeLong(entry.freshUntil);
+            out.writeInt(entry.body.length);
+            out.write(entry.body);
+        }
+        finally {
+            out.close();
+        }
+
+        if (!temporary.renameTo(file)) {
+            temporary.delete();
+            throw new IOException("Unable to replace " + file);
+        }
+
+        Map<String, Long> index = index();
+        Long oldSize = index.remove(name);
+        if (oldSize != null)
+            totalBytes -= oldSize;
+        index.put(name, file.length());
+        totalBytes += file.length();
+
+        trim();
+    }
+
+
+    //Marks the entry saved for "url" as no longer prefetched (it has been looked at), by rewriting only its flag.
+    public synchronized void clearPrefetched(String url) {
+        String name = fileName(url);
+        if (!index().containsKey(name))
+            return;
+
+        try {
+            RandomAccessFile file = new RandomAccessFile(new File(directory, name), "rw");
+            try {
+                file.seek(PREFETCHED_OFFSET);
+                file.writeBoolean(false);
+            }
+            finally {
+                file.close();
+            }
+        }
+        catch (IOException e) {
+            //the entry will just be counted as used again.
+        }
+    }
+
+
+    //Deletes every entry.
+    public synchronized void clear() {
+        for (String name : index().keySet())
+            new File(directory, name).delete();
+        files.clear();
+        totalBytes = 0;
+    }
+
+
+    //Returns the number of entries.
+    public synchronized int size() {
+        return index().size();
+    }
+
+
+    //Returns the number of bytes the entries take up on disk.
+    public synchronized long getTotalBytes() {
+        index();
+        return totalBytes;
+    }
+
+
+
+    //Returns the index of the files, listing the directory the first time it is called.
+    private Map<String, Long> index() {
+        if (files != null)
+            return files;
+
+        files = new LinkedHashMap<>(16, 0.75f, true);
+        File[] listed = directory.listFiles();
+        if (listed == null)
+            return files;
+
+        //least recently used first.
+        Arrays.sort(listed, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                long difference = a.lastModified() - b.lastModified();
+                return difference < 0 ? -1 : difference > 0 ? 1 : 0;
+            }
+        });
+        for (File file : listed) {
+            if (file.getName().endsWith(".tmp")) {
+                //left behind by a put that didn't finish.
+                file.delete();
+                continue;
+            }
+            files.put(file.getName(), file.length());
+            totalBytes += file.length();
+        }
+        return files;
+    }
+
+
+    //Deletes the least recently used files until the cache fits into maxBytes.
+    private void trim() {
+        Iterator<Map.Entry<String, Long>> iterator = files.entrySet().iterator();
+        while (totalBytes > maxBytes && iterator.hasNext()) {
+            Map.Entry<String, Long> eldest = iterator.next();
+            new File(directory, eldest.getKey()).delete();
+            totalBytes -= eldest.getValue();
+            iterator.remove();
+        }
+    }
+
+
+    private void remove(String name) {
+        Long size = files.remove(name);
+        if (size != null)
+            totalBytes -= size;
+        new File(directory, name).delete();
+    }
+
+
+    //Reads the entry in "file", returning null if it isn't an entry for "url".
+    private static Entry read(File file, String url) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION)
+                return null;
+            boolean prefetched = in.readBoolean();
+            if (!in.readUTF().equals(url))
+                return null;
+
+            String contentType = in.readUTF();
+            String etag = in.readUTF();
+            String lastModified = in.readUTF();
+            long fetchedAt = in.readLong();
+            long freshUntil = in.readLong();
+            int length = in.readInt();
+            if (length < 0 || length > file.length())
+                return null;
+            byte[] body = new byte[length];
+            in.readFully(body);
+
+            return new Entry(contentType.isEmpty() ? null : contentType, etag.isEmpty() ? null : etag,
+                    lastModified.isEmpty() ? null : lastModified, fetchedAt, freshUntil, prefetched, body);
+        }
+        finally {
+            in.close();
+        }
+    }
+
+
+    //The file name of the entry for "url": the 64-bit FNV-1a hash of the URL in hexadecimal.
+    private static String fileName(String url) {
+        return String.format(Locale.US, "%016x", SearchesAdapter.stableId(url));
+    }
+}
@@ -0,0 +1,231 @@
+package com.deitel.twittersearches;
+
+import android.content.Context;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+//The ResultsFetcher class downloads the results of a search for ResultsActivity, through an HttpClient,
+//and keeps them in a ResultsCache.
+//
+//The cache's freshness rules:
+//- A response is fresh for freshMillis after it was downloaded (longer if the server's Cache-Control
+//  max-age says so), and while it is fresh it is shown without asking the server at all.
+//- Once it is stale the server is asked whether it has changed (If-None-Match / If-Modified-Since with the
+//  validators it was sent with). A 304 Not Modified makes the cached copy fresh again without downloading it.
+//- If the server can't be reached (or answers with an error), a stale copy up to maxStaleMillis old is
+//  shown instead, marked as stale.
+//Twitter marks its result pages as no-cache, which would mean every tap downloads them again; since the
+//cache is private to the device and the results are only ever shown to the user who asked for them, the
+//app applies its own freshness time instead, and only a longer max-age is taken from the server.
+//
+//Results can also be downloaded ahead of time with prefetch (see PrefetchJobService). Such results are marked
+//in the cache until they are looked at, so that PrefetchStats can count how many prefetches were used.
+//
+//Only 200 responses are cached. fetch and prefetch do network and disk I/O, so they must not be called on
+//the main thread.
+public class ResultsFetcher {
+
+    private static final String RESULTS_CACHE = "results";
+    private static final String PREFETCH_STATS = "prefetch.stats";
+    private static final long MAX_CACHE_BYTES = 10 * 1024 * 1024;
+    private static final long FRESH_MILLIS = 5 * 60 * 1000;
+    private static final long MAX_STALE_MILLIS = 24 * 60 * 60 * 1000;
+
+    private static ResultsFetcher fetcher;
+
+    //Source tells where the results returned by fetch came from.
+    public enum Source {
+        CACHE,       //a fresh cached copy; the server wasn't asked.
+        NETWORK,     //downloaded.
+        REVALIDATED, //a cached copy the server said hasn't changed.
+        STALE        //a stale cached copy, because the server couldn't be reached.
+    }
+
+    //Result holds the results of a search.
+    public static final class Result {
+        public final byte[] body;
+        public final String contentType;
+        public final Source source;
+
+        Result(byte[] body, String contentType, Source source) {
+            this.body = body;
+            this.contentType = contentType;
+            this.source = source;
+        }
+
+        //Returns the character set of the body from its Content-Type, or UTF-8 if it isn't given (or unknown).
+        public Charset getCharset() {
+            if (contentType != null) {
+                for (String parameter : contentType.split(";")) {
+                    parameter = parameter.trim();
+                    if (parameter.regionMatches(true, 0, "charset=", 0, 8)) {
+                        try {
+                            return Charset.forName(parameter.substring(8).replace("\"", ""));
+                        }
+                        catch (IllegalArgumentException e) {
+                            break;
+                        }
+                    }
+                }
+            }
+            return Charset.forName("UTF-8");
+        }
+    }
+
+    private final HttpClient client;
+    private final ResultsCache cache;
+    private final PrefetchStats stats;
+    private final long freshMillis;
+    private final long maxStaleMillis;
+
+
+    //constructor.
+    public ResultsFetcher(HttpClient client, ResultsCache cache, PrefetchStats stats, long freshMillis,
+                          long maxStaleMillis) {
+        this.client = client;
+        this.cache = cache;
+        this.stats = stats;
+        this.freshMillis = freshMillis;
+        this.maxStaleMillis = maxStaleMillis;
+    }
+
+
+    //Returns the app's ResultsFetcher, which caches results in the app's cache directory. Like SearchStores,
+    //it returns the same fetcher every time, so that every screen shares one cache.
+    public static synchronized ResultsFetcher get(Context context) {
+        if (fetcher == null) {
+            File cacheDir = context.getApplicationContext().getCacheDir();
+            fetcher = new ResultsFetcher(new UrlConnectionHttpClient(),
+                    new ResultsCache(new File(cacheDir, RESULTS_CACHE), MAX_CACHE_BYTES),
+                    new PrefetchStats(new File(cacheDir, PREFETCH_STATS)), FRESH_MILLIS, MAX_STALE_MILLIS);
+        }
+        return fetcher;
+    }
+
+
+    //Returns the results at "url" for the user to look at, from the cache if possible.
+    public Result fetch(String url) throws IOException {
+        ResultsCache.Entry cached = cache.get(url);
+        Result result = fetch(url, cached, false);
+
+        //results that were prefetched have now been used (a 304 has already saved them as not prefetched).
+        boolean prefetchUsed = cached != null && cached.prefetched && result.source != Source.NETWORK;
+        if (prefetchUsed && result.source != Source.REVALIDATED)
+            cache.clearPrefetched(url);
+        stats.recordTap(result.source != Source.NETWORK, prefetchUsed);
+        return result;
+    }
+
+
+    //Downloads the results at "url" into the cache ahead of time, unless the cached copy is still fresh (or
+    //the server says it hasn't changed). Returns the number of bytes downloaded.
+    public int prefetch(String url) throws IOException {
+        Result result = fetch(url, cache.get(url), true);
+        if (result.source != Source.NETWORK)
+            return 0;
+        stats.recordPrefetched(result.body.length);
+        return result.body.length;
+    }
+
+
+    //Returns the ResultsCache the results are kept in.
+    public ResultsCache getCache() {
+        return cache;
+    }
+
+
+    //Returns the counts of prefetched results and how many of them were used.
+    public PrefetchStats getStats() {
+        return stats;
+    }
+
+
+
+    //Returns the results at "url", given its cached entry (null if there is none). Downloaded results are
+    //marked as prefetched if "prefetch" is true.
+    private Result fetch(String url, ResultsCache.Entry cached, boolean prefetch) throws IOException {
+        long now = System.currentTimeMillis();
+        if (cached != null && cached.isFresh(now))
+            return new Result(cached.body, cached.contentType, Source.CACHE);
+
+        Map<String, String> headers = new HashMap<>();
+        if (cached != null) {
+            if (cached.etag != null)
+                headers.put("If-None-Match", cached.etag);
+            if (cached.lastModified != null)
+                headers.put("If-Modified-Since", cached.lastModified);
+        }
+
+        HttpClient.Response response;
+        try {
+            response = client.get(url, headers);
+        }
+        catch (IOException e) {
+            if (isUsableWhenStale(cached, now))
+                return new Result(cached.body, cached.contentType, Source.STALE);
+            throw e;
+        }
+
+        if (response.code == HttpURLConnection.HTTP_NOT_MODIFIED && cached != null) {
+            ResultsCache.Entry refreshed = new ResultsCache.Entry(cached.contentType, cached.etag,
+                    cached.lastModified, now, now + freshness(response), prefetch && cached.prefetched, cached.body);
+            store(url, refreshed);
+            return new Result(cached.body, cached.contentType, Source.REVALIDATED);
+        }
+
+        if (response.code != HttpURLConnection.HTTP_OK) {
+            if (isUsableWhenStale(cached, now))
+                return new Result(cached.body, cached.contentType, Source.STALE);
+            throw new IOException("HTTP " + response.code + " for " + url);
+        }
+
+        String contentType = response.header("content-type");
+        store(url, new ResultsCache.Entry(contentType, response.header("etag"), response.header("last-modified"),
+                now, now + freshness(response), prefetch, response.body));
+        return new Result(response.body, contentType, Source.NETWORK);
+    }
+
+
+    private boolean isUsableWhenStale(ResultsCache.Entry cached, long now) {
+        return cached != null && now - cached.fetchedAt <= maxStaleMillis;
+    }
+
+
+    //Returns how long "response" stays fresh: freshMillis, or the Cache-Control max-age if that is longer.
+    private long freshness(HttpClient.Response response) {
+        long freshness = freshMillis;
+        String cacheControl = response.header("cache-control");
+        if (cacheControl == null)
+            return freshness;
+
+        for (String directive : cacheControl.toLowerCase(Locale.US).split(",")) {
+            directive = directive.trim();
+            if (directive.startsWith("max-age=")) {
+                try {
+                    freshness = Math.max(freshness, Long.parseLong(directive.substring(8).trim()) * 1000);
+                }
+                catch (NumberFormatException e) {
+                    //ignore a malformed max-age.
+                }
+            }
+        }
+        return freshness;
+    }
+
+
+    //Saves "entry"; the results can still be shown if they can't be saved.
+    private void store(String url, ResultsCache.Entry entry) {
+        try {
+            cache.put(url, entry);
+        }
+        catch (IOException e) {
+            //they will be downloaded again next time.
+        }
+    }
+}
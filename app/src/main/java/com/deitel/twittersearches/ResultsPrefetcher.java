@@ -0,0 +1,90 @@
+package com.deitel.twittersearches;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+//The ResultsPrefetcher class downloads the results of several searches into the ResultsCache ahead of time
+//(see PrefetchJobService), with at most maxConcurrent downloads at once and at most about maxBytes downloaded
+//in total: no new download is started once maxBytes have been downloaded, so the total can only exceed it by
+//the downloads that were already running.
+//The URLs are downloaded in the order given, so the searches most likely to be tapped go first.
+//Results that are still fresh in the cache aren't downloaded again, and a failed download is skipped.
+public class ResultsPrefetcher {
+
+    private final ResultsFetcher fetcher;
+    private final int maxConcurrent;
+    private final long maxBytes;
+
+    private volatile boolean cancelled;
+
+
+    //constructor.
+    public ResultsPrefetcher(ResultsFetcher fetcher, int maxConcurrent, long maxBytes) {
+        this.fetcher = fetcher;
+        this.maxConcurrent = maxConcurrent;
+        this.maxBytes = maxBytes;
+    }
+
+
+    //Downloads the results at "urls" and returns the number of results downloaded. Waits until every
+    //download has finished, or until cancel is called.
+    public int prefetch(List<String> urls) throws InterruptedException {
+        final AtomicLong bytes = new AtomicLong();
+        final AtomicInteger downloaded = new AtomicInteger();
+
+        ExecutorService executor = Executors.newFixedThreadPool(maxConcurrent, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "results-prefetch");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+        try {
+            for (final String url : urls) {
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (cancelled || bytes.get() >= maxBytes)
+                            return;
+                        try {
+                            int count = fetcher.prefetch(url);
+                            if (count > 0) {
+                                bytes.addAndGet(count);
+                                downloaded.incrementAndGet();
+                            }
+                        }
+                        catch (IOException e) {
+                            //skip it; the user's tap will download it.
+                        }
+                    }
+                });
+            }
+        }
+        finally {
+            executor.shutdown();
+        }
+
+        while (!executor.awaitTermination(100, TimeUnit.MILLISECONDS)) {
+            if (cancelled) {
+                executor.shutdownNow();
+                break;
+            }
+        }
+        return downloaded.get();
+    }
+
+
+    //Stops prefetch from starting any more downloads, and makes it return without waiting for the
+    //running ones.
+    public void cancel() {
+        cancelled = true;
+    }
+}
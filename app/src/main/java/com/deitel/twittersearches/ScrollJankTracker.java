@@ -0,0 +1,48 @@
+package com.deitel.twittersearches;
+
+import android.support.v7.widget.RecyclerView;
+import android.view.Choreographer;
+
+//The ScrollJankTracker class measures the time between frames while a RecyclerView scrolls, and records it
+//in Metrics.SCROLL_FRAMES. It is a RecyclerView.OnScrollListener: when scrolling starts it asks the
+//Choreographer to call doFrame on every frame, until the list stops scrolling again.
+//Nothing is tracked while metrics are disabled.
+class ScrollJankTracker extends RecyclerView.OnScrollListener implements Choreographer.FrameCallback {
+
+    private final long frameIntervalNanos;
+    private boolean tracking;
+    private long lastFrameNanos;
+
+    //constructor. "refreshRate" is the display's refresh rate in frames per second.
+    ScrollJankTracker(float refreshRate) {
+        frameIntervalNanos = (long) (1e9 / (refreshRate > 0 ? refreshRate : 60));
+    }
+
+
+    @Override
+    public void onScrollStateChanged(RecyclerView recyclerView, int newState) {
+        if (newState == RecyclerView.SCROLL_STATE_IDLE) {
+            //the callback already posted is taken back, so that scrolling again within the same frame
+            //doesn't leave two callbacks asking for every frame.
+            tracking = false;
+            Choreographer.getInstance().removeFrameCallback(this);
+        }
+        else if (!tracking && Metrics.isEnabled()) {
+            tracking = true;
+            lastFrameNanos = 0;
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+    }
+
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        if (!tracking)
+            return;
+
+        if (lastFrameNanos != 0)
+            Metrics.SCROLL_FRAMES.recordFrame(frameTimeNanos - lastFrameNanos, frameIntervalNanos);
+        lastFrameNanos = frameTimeNanos;
+        Choreographer.getInstance().postFrameCallback(this);
+    }
+}
@@ -0,0 +1,392 @@
+package com.deitel.twittersearches;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+//The SearchArena class holds tag-query pairs in memory as compactly as possible, for LogSearchStore.
+//A HashMap<String, String> costs an entry object, two String objects and two char arrays per search.
+//Here every tag and query is stored as UTF-8 bytes, one after the other, in a single shared byte array
+//(the arena), and each search is only four ints in the "entries" array: the offset and length of its tag
+//and of its query. Tags are found through an open-addressing hash table of int entry numbers.
+//Queries are only decoded to Strings when they are asked for.
+//
+//Overwritten queries and removed searches leave unused bytes behind in the arena. Once they take up more
+//room than the live searches, the arena and the entries are copied without them.
+//
+//A SearchArena isn't thread-safe; LogSearchStore only uses it while holding its own lock.
+public class SearchArena {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    //entries holds ENTRY_INTS ints per search: tag offset, tag length, query offset, query length.
+    //A removed search has a tag length of -1.
+    private static final int ENTRY_INTS = 4;
+    private static final int TAG_OFFSET = 0;
+    private static final int TAG_LENGTH = 1;
+    private static final int QUERY_OFFSET = 2;
+    private static final int QUERY_LENGTH = 3;
+
+    //Garbage is only dropped once there is at least this much of it.
+    private static final int MIN_COMPACTION_GARBAGE = 16 * 1024;
+
+    private byte[] arena = new byte[1024];
+    private int arenaSize;
+    private int garbageBytes;
+
+    private int[] entries = new int[16 * ENTRY_INTS];
+    private int[] hashes = new int[16];
+    private int entryCount;
+    private int removedCount;
+
+    //The hash table: entry number + 1 for each used slot, 0 for a free one. Its length is a power of two
+    //and it is kept at most half full.
+    private int[] table = new int[32];
+
+    //The UTF-8 encoding of the last tag looked up by String, reused so that lookups don't allocate.
+    private byte[] scratch = new byte[64];
+
+
+    //Returns the number of searches.
+    public int size() {
+        return entryCount - removedCount;
+    }
+
+
+    //Returns true if there is a search tagged "tag".
+    public boolean contains(String tag) {
+        int length = encodeScratch(tag);
+        return find(scratch, 0, length, hash(scratch, 0, length)) >= 0;
+    }
+
+
+    //Returns the query of the search tagged "tag", or null if there isn't one.
+    public String getQuery(String tag) {
+        int length = encodeScratch(tag);
+        int entry = find(scratch, 0, length, hash(scratch, 0, length));
+        if (entry < 0)
+            return null;
+        int base = entry * ENTRY_INTS;
+        return new String(arena, entries[base + QUERY_OFFSET], entries[base + QUERY_LENGTH], UTF_8);
+    }
+
+
+    //Saves "query" under "tag". Returns the number of UTF-8 bytes of the tag and query it replaced, or -1 if
+    //there was no search tagged "tag".
+    public int put(String tag, String query) {
+        byte[] queryBytes = query.getBytes(UTF_8);
+        int tagLength = encodeScratch(tag);
+        return put(scratch, 0, tagLength, queryBytes, 0, queryBytes.length);
+    }
+
+
+    //Saves the query in "queryBytes" under the tag in "tagBytes", both given as UTF-8 bytes (used when
+    //replaying a log, so that no Strings are created). Returns the same as put(String, String).
+    public int put(byte[] tagBytes, int tagOffset, int tagLength, byte[] queryBytes, int queryOffset, int queryLength) {
+        int hash = hash(tagBytes, tagOffset, tagLength);
+        int entry = find(tagBytes, tagOffset, tagLength, hash);
+
+        if (entry >= 0) {
+            int base = entry * ENTRY_INTS;
+            int previousLength = entries[base + QUERY_LENGTH];
+            if (queryLength <= previousLength) {
+                //the new query fits where the old one was.
+                System.arraycopy(queryBytes, queryOffset, arena, entries[base + QUERY_OFFSET], queryLength);
+                garbageBytes += previousLength - queryLength;
+            }
+            else {
+                entries[base + QUERY_OFFSET] = append(queryBytes, queryOffset, queryLength);
+                garbageBytes += previousLength;
+            }
+            entries[base + QUERY_LENGTH] = queryLength;
+            maybeCompact();
+            return tagLength + previousLength;
+        }
+
+        if (entries.length < (entryCount + 1) * ENTRY_INTS) {
+            entries = Arrays.copyOf(entries, entries.length * 2);
+            hashes = Arrays.copyOf(hashes, hashes.length * 2);
+        }
+        entry = entryCount++;
+        int base = entry * ENTRY_INTS;
+        entries[base + TAG_OFFSET] = append(tagBytes, tagOffset, tagLength);
+        entries[base + TAG_LENGTH] = tagLength;
+        entries[base + QUERY_OFFSET] = append(queryBytes, queryOffset, queryLength);
+        entries[base + QUERY_LENGTH] = queryLength;
+        hashes[entry] = hash;
+
+        if (entryCount * 2 > table.length)
+            rebuildTable(table.length * 2);
+        else
+            insert(entry, hash);
+        return -1;
+    }
+
+
+    //Removes the search tagged "tag". Returns the number of UTF-8 bytes of its tag and query, or -1 if there
+    //was no search tagged "tag".
+    public int remove(String tag) {
+        int length = encodeScratch(tag);
+        return remove(scratch, 0, length);
+    }
+
+
+    //Removes the search whose tag is in "tagBytes" as UTF-8 bytes. Returns the same as remove(String).
+    public int remove(byte[] tagBytes, int tagOffset, int tagLength) {
+        int hash = hash(tagBytes, tagOffset, tagLength);
+        int slot = findSlot(tagBytes, tagOffset, tagLength, hash);
+        if (table[slot] == 0)
+            return -1;
+
+        int entry = table[slot] - 1;
+        int base = entry * ENTRY_INTS;
+        int removedBytes = entries[base + TAG_LENGTH] + entries[base + QUERY_LENGTH];
+        entries[base + TAG_LENGTH] = -1;
+        garbageBytes += removedBytes;
+        ++removedCount;
+        deleteSlot(slot);
+
+        maybeCompact();
+        return removedBytes;
+    }
+
+
+    //Removes every search.
+    public void clear() {
+        arenaSize = 0;
+        garbageBytes = 0;
+        entryCount = 0;
+        removedCount = 0;
+        Arrays.fill(table, 0);
+    }
+
+
+    //Returns every search, decoded to Strings.
+    public Map<String, String> toMap() {
+        Map<String, String> searches = new HashMap<>(size() * 4 / 3 + 1);
+        for (int entry = 0; entry < entryCount; ++entry) {
+            int base = entry * ENTRY_INTS;
+            if (entries[base + TAG_LENGTH] < 0)
+                continue;
+            searches.put(new String(arena, entries[base + TAG_OFFSET], entries[base + TAG_LENGTH], UTF_8),
+                    new String(arena, entries[base + QUERY_OFFSET], entries[base + QUERY_LENGTH], UTF_8));
+        }
+        return searches;
+    }
+
+
+    //Returns a copy of this arena, which can be read without affecting this one (e.g. by a compaction pass).
+    public SearchArena copy() {
+        SearchArena copy = new SearchArena();
+        copy.arena = Arrays.copyOf(arena, arenaSize);
+        copy.arenaSize = arenaSize;
+        copy.garbageBytes = garbageBytes;
+        copy.entries = Arrays.copyOf(entries, Math.max(ENTRY_INTS, entryCount * ENTRY_INTS));
+        copy.hashes = Arrays.copyOf(hashes, Math.max(1, entryCount));
+        copy.entryCount = entryCount;
+        copy.removedCount = removedCount;
+        copy.table = table.clone();
+        return copy;
+    }
+
+
+    //Returns the number of bytes used by the arena and the entry and hash table arrays, for measuring.
+    public long getFootprintBytes() {
+        return arena.length + scratch.length + 4L * (entries.length + hashes.length + table.length);
+    }
+
+
+
+    //The following methods let LogSearchStore write the searches out without decoding them. Entries are
+    //numbered from 0 to getEntryCount() - 1; removed entries have a tag length of -1.
+
+    int getEntryCount() {
+        return entryCount;
+    }
+
+    byte[] getBytes() {
+        return arena;
+    }
+
+    int getTagOffset(int entry) {
+        return entries[entry * ENTRY_INTS + TAG_OFFSET];
+    }
+
+    int getTagLength(int entry) {
+        return entries[entry * ENTRY_INTS + TAG_LENGTH];
+    }
+
+    int getQueryOffset(int entry) {
+        return entries[entry * ENTRY_INTS + QUERY_OFFSET];
+    }
+
+    int getQueryLength(int entry) {
+        return entries[entry * ENTRY_INTS + QUERY_LENGTH];
+    }
+
+
+
+    //Returns the number of the live entry whose tag is "tagBytes", or -1.
+    private int find(byte[] tagBytes, int tagOffset, int tagLength, int hash) {
+        int slot = findSlot(tagBytes, tagOffset, tagLength, hash);
+        return table[slot] - 1;
+    }
+
+
+    //Returns the slot holding the entry whose tag is "tagBytes", or the free slot where it would go.
+    private int findSlot(byte[] tagBytes, int tagOffset, int tagLength, int hash) {
+        int mask = table.length - 1;
+        int slot = hash & mask;
+        while (table[slot] != 0) {
+            int entry = table[slot] - 1;
+            if (hashes[entry] == hash && tagEquals(entry, tagBytes, tagOffset, tagLength))
+                return slot;
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+
+    private boolean tagEquals(int entry, byte[] tagBytes, int tagOffset, int tagLength) {
+        int base = entry * ENTRY_INTS;
+        if (entries[base + TAG_LENGTH] != tagLength)
+            return false;
+        int offset = entries[base + TAG_OFFSET];
+        for (int i = 0; i < tagLength; ++i) {
+            if (arena[offset + i] != tagBytes[tagOffset + i])
+                return false;
+        }
+        return true;
+    }
+
+
+    private void insert(int entry, int hash) {
+        int mask = table.length - 1;
+        int slot = hash & mask;
+        while (table[slot] != 0)
+            slot = (slot + 1) & mask;
+        table[slot] = entry + 1;
+    }
+
+
+    //Frees "slot" and moves later entries of the same probe run back, so that lookups never stop early at
+    //the freed slot (linear probing without tombstones).
+    private void deleteSlot(int slot) {
+        int mask = table.length - 1;
+        int next = (slot + 1) & mask;
+        while (table[next] != 0) {
+            int home = hashes[table[next] - 1] & mask;
+            //the entry at "next" can move to "slot" unless its home lies cyclically in (slot, next].
+            boolean movable = slot <= next ? (home <= slot || home > next) : (home <= slot && home > next);
+            if (movable) {
+                table[slot] = table[next];
+                slot = next;
+            }
+            next = (next + 1) & mask;
+        }
+        table[slot] = 0;
+    }
+
+
+    private void rebuildTable(int capacity) {
+        table = new int[capacity];
+        for (int entry = 0; entry < entryCount; ++entry) {
+            if (entries[entry * ENTRY_INTS + TAG_LENGTH] >= 0)
+                insert(entry, hashes[entry]);
+        }
+    }
+
+
+    //Appends "length" bytes to the arena and returns the offset they were copied to.
+    private int append(byte[] bytes, int offset, int length) {
+        if (arena.length - arenaSize < length)
+            arena = Arrays.copyOf(arena, Math.max(arenaSize + length, arena.length * 2));
+        System.arraycopy(bytes, offset, arena, arenaSize, length);
+        int start = arenaSize;
+        arenaSize += length;
+        return start;
+    }
+
+
+    //Copies the live searches to a new arena and entry array once the garbage outweighs them.
+    private void maybeCompact() {
+        if (garbageBytes < MIN_COMPACTION_GARBAGE || garbageBytes < arenaSize - garbageBytes)
+            return;
+
+        int liveEntries = size();
+        byte[] oldArena = arena;
+        int[] oldEntries = entries;
+        int[] oldHashes = hashes;
+        int oldCount = entryCount;
+
+        arena = new byte[Math.max(1024, (arenaSize - garbageBytes) * 2)];
+        arenaSize = 0;
+        garbageBytes = 0;
+        entries = new int[Math.max(16, liveEntries * 2) * ENTRY_INTS];
+        hashes = new int[entries.length / ENTRY_INTS];
+        entryCount = 0;
+        removedCount = 0;
+
+        for (int entry = 0; entry < oldCount; ++entry) {
+            int oldBase = entry * ENTRY_INTS;
+            if (oldEntries[oldBase + TAG_LENGTH] < 0)
+                continue;
+            int base = entryCount * ENTRY_INTS;
+            entries[base + TAG_OFFSET] = append(oldArena, oldEntries[oldBase + TAG_OFFSET], oldEntries[oldBase + TAG_LENGTH]);
+            entries[base + TAG_LENGTH] = oldEntries[oldBase + TAG_LENGTH];
+            entries[base + QUERY_OFFSET] = append(oldArena, oldEntries[oldBase + QUERY_OFFSET], oldEntries[oldBase + QUERY_LENGTH]);
+            entries[base + QUERY_LENGTH] = oldEntries[oldBase + QUERY_LENGTH];
+            hashes[entryCount++] = oldHashes[entry];
+        }
+
+        int capacity = 32;
+        while (capacity < entryCount * 2)
+            capacity *= 2;
+        rebuildTable(capacity);
+    }
+
+
+    //Encodes "s" into "scratch" the way String.getBytes(UTF_8) does, and returns the number of bytes.
+    private int encodeScratch(String s) {
+        if (scratch.length < s.length() * 3)
+            scratch = new byte[Math.max(s.length() * 3, scratch.length * 2)];
+
+        int length = 0;
+        for (int i = 0; i < s.length(); ++i) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                scratch[length++] = (byte) c;
+            }
+            else if (c < 0x800) {
+                scratch[length++] = (byte) (0xC0 | (c >> 6));
+                scratch[length++] = (byte) (0x80 | (c & 0x3F));
+            }
+            else if (Character.isHighSurrogate(c) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, s.charAt(++i));
+                scratch[length++] = (byte) (0xF0 | (codePoint >> 18));
+                scratch[length++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                scratch[length++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                scratch[length++] = (byte) (0x80 | (codePoint & 0x3F));
+            }
+            else if (Character.isSurrogate(c)) {
+                scratch[length++] = '?'; //unpaired surrogates are encoded as '?'
+            }
+            else {
+                scratch[length++] = (byte) (0xE0 | (c >> 12));
+                scratch[length++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                scratch[length++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        return length;
+    }
+
+
+    private static int hash(byte[] bytes, int offset, int length) {
+        int hash = 0;
+        for (int i = 0; i < length; ++i)
+            hash = 31 * hash + bytes[offset + i];
+        //spread the bits so that similar tags don't land in neighbouring slots.
+        return hash ^ (hash >>> 16) ^ (hash >>> 8);
+    }
+}
@@ -0,0 +1,338 @@
+package com.deitel.twittersearches;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReference;
+
+//The SearchModel class holds the saved searches (tags and their queries) in memory as a series of
+//versions, each of which is an unchanging Snapshot. Any thread can read the current Snapshot, and keep
+//reading it for as long as it likes, without locking and without ever seeing a half-made change: changes
+//make a new Snapshot rather than changing the current one.
+//
+//A change copies the current Snapshot's SortedTagIndex, which shares all of its nodes with the original,
+//changes the copy (building only the O(log n) nodes on the path to each changed tag) and then publishes it
+//with compareAndSet. If another thread published a version in the meantime, the change is simply made again
+//on top of that version, so changes made at the same time on different threads are never lost.
+//
+//Each Snapshot also records how its tags differ from the previous version, as runs of inserted and removed
+//positions, so that the SearchesAdapter can tell the RecyclerView exactly what changed. Listeners are told
+//which tags each new version changed (see SearchesProvider).
+//
+//The SearchStore is still where the searches are saved; the SearchModel is what the screen (and any
+//background work) reads them from.
+public class SearchModel {
+
+    //Listener is told about every new version, on the thread that made it.
+    public interface Listener {
+
+        //Called with the new version and the tags whose searches it added, changed or removed.
+        void onSearchesChanged(Snapshot snapshot, List<String> changedTags);
+    }
+
+    //Snapshot is one version of the saved searches. It never changes.
+    public static final class Snapshot implements Iterable<String> {
+
+        private final long version;
+        private final long previousVersion;
+        private final SortedTagIndex index;
+
+        //The runs of positions inserted or removed since the previous version, in the order they were made,
+        //as pairs of (start, length): the length is negative for removed runs.
+        private final int[] runs;
+        private final int insertedCount;
+        private final int removedCount;
+
+        private Snapshot(long version, long previousVersion, SortedTagIndex index, int[] runs) {
+            this.version = version;
+            this.previousVersion = previousVersion;
+            this.index = index;
+            this.runs = runs;
+
+            int inserted = 0;
+            int removed = 0;
+            for (int i = 1; i < runs.length; i += 2) {
+                if (runs[i] > 0)
+                    inserted += runs[i];
+                else
+                    removed -= runs[i];
+            }
+            insertedCount = inserted;
+            removedCount = removed;
+        }
+
+        //Returns the version number, which is higher for every later version.
+        public long getVersion() {
+            return version;
+        }
+
+        //Returns the version this one was made from, or -1 for the first version.
+        public long getPreviousVersion() {
+            return previousVersion;
+        }
+
+        //Returns the number of searches.
+        public int size() {
+            return index.size();
+        }
+
+        //Returns the tag at "position" in sorted order (see SortedTagIndex.ORDER).
+        public String get(int position) {
+            return index.get(position);
+        }
+
+        //Returns the position of "tag", or -1 if there is no search with that tag.
+        public int indexOf(String tag) {
+            return index.indexOf(tag);
+        }
+
+        //Returns true if there is a search with "tag".
+        public boolean contains(String tag) {
+            return index.contains(tag);
+        }
+
+        //Returns the query of the search with "tag", or null if there is none.
+        public String getQuery(String tag) {
+            return index.getQuery(tag);
+        }
+
+        //Returns true if the search with "tag" has "query", without decoding its saved query.
+        public boolean hasQuery(String tag, String query) {
+            return index.hasQuery(tag, query);
+        }
+
+        //Returns the position of the first tag starting with "prefix", ignoring case. The tags starting with
+        //"prefix" are the ones from getPrefixStart up to (but not including) getPrefixEnd.
+        public int getPrefixStart(String prefix) {
+            return index.prefixStart(prefix);
+        }
+
+        //Returns the position after the last tag starting with "prefix", ignoring case.
+        public int getPrefixEnd(String prefix) {
+            return index.prefixEnd(prefix);
+        }
+
+        //Returns the alphabetical sections of the tags.
+        public TagSections getSections() {
+            return index.getSections();
+        }
+
+        //Returns an Iterator over the tags in sorted order.
+        @Override
+        public Iterator<String> iterator() {
+            return index.iterator();
+        }
+
+        //Returns the number of runs of positions inserted or removed since the previous version.
+        public int getRunCount() {
+            return runs.length / 2;
+        }
+
+        //Returns the first position of "run".
+        public int getRunStart(int run) {
+            return runs[run * 2];
+        }
+
+        //Returns the number of positions in "run".
+        public int getRunLength(int run) {
+            return Math.abs(runs[run * 2 + 1]);
+        }
+
+        //Returns true if the positions of "run" were inserted, false if they were removed.
+        public boolean isRunInserted(int run) {
+            return runs[run * 2 + 1] > 0;
+        }
+
+        //Returns the number of tags inserted since the previous version.
+        public int getInsertedCount() {
+            return insertedCount;
+        }
+
+        //Returns the number of tags removed since the previous version.
+        public int getRemovedCount() {
+            return removedCount;
+        }
+    }
+
+    private final AtomicReference<Snapshot> current =
+            new AtomicReference<>(new Snapshot(0, -1, new SortedTagIndex(), new int[0]));
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+
+    //Adds a Listener to tell about every new version.
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+
+    //Stops telling "listener" about new versions.
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+
+    //Returns the current version of the searches.
+    public Snapshot snapshot() {
+        return current.get();
+    }
+
+
+    //Saves "query" under "tag", replacing the query already saved under it (if any). Returns the version
+    //with the change, or the current version if "tag" already had that query.
+    public Snapshot put(String tag, String query) {
+        while (true) {
+            Snapshot snapshot = current.get();
+            if (snapshot.hasQuery(tag, query))
+                return snapshot;
+
+            SortedTagIndex index = new SortedTagIndex(snapshot.index);
+            Runs runs = new Runs();
+            runs.inserted(index.put(tag, query));
+
+            Snapshot next = new Snapshot(snapshot.version + 1, snapshot.version, index, runs.toArray());
+            if (current.compareAndSet(snapshot, next))
+                return published(next, Collections.singletonList(tag));
+        }
+    }
+
+
+    //Saves every search in "searches" (tag to query), as put does, in one new version. The tags are inserted
+    //in sorted order, so that tags which land next to each other make a single run.
+    public Snapshot putAll(Map<String, String> searches) {
+        String[] tags = searches.keySet().toArray(new String[searches.size()]);
+        Arrays.sort(tags, SortedTagIndex.ORDER);
+
+        while (true) {
+            Snapshot snapshot = current.get();
+            SortedTagIndex index = new SortedTagIndex(snapshot.index);
+            Runs runs = new Runs();
+            List<String> changedTags = new ArrayList<>();
+
+            for (String tag : tags) {
+                String query = searches.get(tag);
+                if (index.hasQuery(tag, query))
+                    continue;
+                runs.inserted(index.put(tag, query));
+                changedTags.add(tag);
+            }
+            if (changedTags.isEmpty())
+                return snapshot;
+
+            Snapshot next = new Snapshot(snapshot.version + 1, snapshot.version, index, runs.toArray());
+            if (current.compareAndSet(snapshot, next))
+                return published(next, changedTags);
+        }
+    }
+
+
+    //Removes the search with "tag". Returns the version with the change, or the current version if there was
+    //no search with "tag".
+    public Snapshot remove(String tag) {
+        while (true) {
+            Snapshot snapshot = current.get();
+            if (!snapshot.contains(tag))
+                return snapshot;
+
+            SortedTagIndex index = new SortedTagIndex(snapshot.index);
+            Runs runs = new Runs();
+            runs.removed(index.remove(tag));
+
+            Snapshot next = new Snapshot(snapshot.version + 1, snapshot.version, index, runs.toArray());
+            if (current.compareAndSet(snapshot, next))
+                return published(next, Collections.singletonList(tag));
+        }
+    }
+
+
+    //Removes the searches with every tag in "tags", as remove does, in one new version. The tags are removed in
+    //sorted order, so that neighbouring tags make a single run.
+    public Snapshot removeAll(Collection<String> tags) {
+        String[] sortedTags = tags.toArray(new String[tags.size()]);
+        Arrays.sort(sortedTags, SortedTagIndex.ORDER);
+
+        while (true) {
+            Snapshot snapshot = current.get();
+            SortedTagIndex index = new SortedTagIndex(snapshot.index);
+            Runs runs = new Runs();
+            List<String> changedTags = new ArrayList<>();
+
+            for (String tag : sortedTags) {
+                int position = index.remove(tag);
+                if (position < 0)
+                    continue;
+                runs.removed(position);
+                changedTags.add(tag);
+            }
+            if (changedTags.isEmpty())
+                return snapshot;
+
+            Snapshot next = new Snapshot(snapshot.version + 1, snapshot.version, index, runs.toArray());
+            if (current.compareAndSet(snapshot, next))
+                return published(next, changedTags);
+        }
+    }
+
+
+    private Snapshot published(Snapshot snapshot, List<String> changedTags) {
+        for (Listener listener : listeners)
+            listener.onSearchesChanged(snapshot, changedTags);
+        return snapshot;
+    }
+
+
+
+    //Runs collects the positions inserted and removed by one change, joining neighbouring positions into runs
+    //the way the RecyclerView's range notifications expect them.
+    private static class Runs {
+        private int[] runs = new int[8];
+        private int size;
+
+        //Records a tag inserted at "position" (nothing if it is negative, i.e. the tag was already there).
+        void inserted(int position) {
+            if (position < 0)
+                return;
+            //the tag extends the last run if it was inserted inside it or right after it.
+            if (size > 0 && runs[size - 1] > 0 && position >= runs[size - 2]
+                    && position <= runs[size - 2] + runs[size - 1]) {
+                ++runs[size - 1];
+                return;
+            }
+            add(position, 1);
+        }
+
+        //Records a tag removed from "position" (nothing if it is negative, i.e. the tag wasn't there).
+        void removed(int position) {
+            if (position < 0)
+                return;
+            //the tag extends the last run if it was right after it or right before it.
+            if (size > 0 && runs[size - 1] < 0) {
+                if (position == runs[size - 2]) {
+                    --runs[size - 1];
+                    return;
+                }
+                if (position == runs[size - 2] - 1) {
+                    runs[size - 2] = position;
+                    --runs[size - 1];
+                    return;
+                }
+            }
+            add(position, -1);
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(runs, size);
+        }
+
+        private void add(int start, int length) {
+            if (size == runs.length)
+                runs = Arrays.copyOf(runs, size * 2);
+            runs[size++] = start;
+            runs[size++] = length;
+        }
+    }
+}
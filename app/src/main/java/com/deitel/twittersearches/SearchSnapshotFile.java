@@ -0,0 +1,279 @@
+package com.deitel.twittersearches;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+//The SearchSnapshotFile class saves the searches of a SearchModel.Snapshot in a binary file, already sorted,
+//so that the next time the app starts the TagLoader can show them without opening the SearchStore (which
+//replays its whole log) and without sorting them again.
+//
+//The file is memory-mapped rather than read: opening it only checks its header, and the searches are decoded
+//a block at a time as they are read, so showing the first screen only touches the first block.
+//
+//File layout (big-endian):
+//  header: magic number | version | search count | block count | CRC32 of the count, block count and table
+//  table:  one entry per block of BLOCK_SIZE searches: offset | length | CRC32 of the block
+//  blocks: searches in SortedTagIndex.ORDER: tag length | tag (UTF-8) | query length | query (UTF-8)
+//Each block's checksum is checked the first time the block is read, so a damaged file is detected however
+//little of it is read. Any problem is reported as an IOException, after which the caller should load the
+//searches from the SearchStore, which is always the source of truth.
+//
+//A SearchSnapshotFile is not thread-safe.
+public class SearchSnapshotFile {
+
+    private static final int MAGIC = 0x5453534E; //"TSSN"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 20;
+    private static final int TABLE_ENTRY_SIZE = 12;
+
+    //The number of searches in a block.
+    static final int BLOCK_SIZE = 256;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final MappedByteBuffer buffer;
+    private final int count;
+    private final int[] blockOffsets;
+    private final int[] blockLengths;
+    private final int[] blockChecksums;
+
+    //The block being read, copied out of the mapping and checked, and the position and offset (within
+    //blockBytes) of the next search in it.
+    private byte[] blockBytes = new byte[0];
+    private int block = -1;
+    private int nextPosition = -1;
+    private int nextOffset;
+
+
+    private SearchSnapshotFile(MappedByteBuffer buffer, int count, int[] blockOffsets, int[] blockLengths,
+                               int[] blockChecksums) {
+        this.buffer = buffer;
+        this.count = count;
+        this.blockOffsets = blockOffsets;
+        this.blockLengths = blockLengths;
+        this.blockChecksums = blockChecksums;
+    }
+
+
+    //Opens the snapshot saved in "file" and checks its header. Throws an IOException if the file is missing,
+    //isn't a snapshot or its header is damaged.
+    public static SearchSnapshotFile open(File file) throws IOException {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        MappedByteBuffer buffer;
+        try {
+            FileChannel channel = randomAccessFile.getChannel();
+            if (channel.size() < HEADER_SIZE || channel.size() > Integer.MAX_VALUE)
+                throw new IOException("Not a search snapshot: " + file);
+            //the mapping stays valid after the file is closed.
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        finally {
+            randomAccessFile.close();
+        }
+
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION)
+            throw new IOException("Not a search snapshot: " + file);
+        int count = buffer.getInt(8);
+        int blockCount = buffer.getInt(12);
+        if (count < 0 || blockCount != (count + BLOCK_SIZE - 1) / BLOCK_SIZE
+                || HEADER_SIZE + (long) blockCount * TABLE_ENTRY_SIZE > buffer.capacity())
+            throw new IOException("Damaged search snapshot: " + file);
+
+        byte[] table = new byte[8 + blockCount * TABLE_ENTRY_SIZE];
+        buffer.position(8);
+        buffer.get(table, 0, 8);
+        buffer.position(HEADER_SIZE);
+        buffer.get(table, 8, blockCount * TABLE_ENTRY_SIZE);
+        CRC32 crc = new CRC32();
+        crc.update(table);
+        if ((int) crc.getValue() != buffer.getInt(16))
+            throw new IOException("Damaged search snapshot: " + file);
+
+        int[] offsets = new int[blockCount];
+        int[] lengths = new int[blockCount];
+        int[] checksums = new int[blockCount];
+        ByteBuffer entries = ByteBuffer.wrap(table, 8, blockCount * TABLE_ENTRY_SIZE);
+        for (int i = 0; i < blockCount; ++i) {
+            offsets[i] = entries.getInt();
+            lengths[i] = entries.getInt();
+            checksums[i] = entries.getInt();
+            if (offsets[i] < HEADER_SIZE || lengths[i] < 0 || (long) offsets[i] + lengths[i] > buffer.capacity())
+                throw new IOException("Damaged search snapshot: " + file);
+        }
+        return new SearchSnapshotFile(buffer, count, offsets, lengths, checksums);
+    }
+
+
+    //Returns the number of searches in the snapshot.
+    public int size() {
+        return count;
+    }
+
+
+    //Puts the searches at positions [start, end) into "into" (tag to query), in sorted order if "into" keeps
+    //its order. Reading the searches in order (e.g. one chunk after the other) only decodes each one once.
+    //Throws an IOException if a block that is read is damaged.
+    public void read(int start, int end, Map<String, String> into) throws IOException {
+        for (int position = start; position < end; ++position) {
+            if (position != nextPosition)
+                seek(position);
+            else if (position % BLOCK_SIZE == 0) {
+                //the previous block has been read; this search starts the next one.
+                loadBlock(position / BLOCK_SIZE);
+                nextOffset = 0;
+            }
+
+            String tag = readString();
+            String query = readString();
+            into.put(tag, query);
+            ++nextPosition;
+        }
+    }
+
+
+    //Saves the searches of "snapshot" in "file", replacing it. The snapshot is written to a temporary file
+    //first, so a snapshot that was only partly written never replaces a good one.
+    public static void write(File file, SearchModel.Snapshot snapshot) throws IOException {
+        int count = snapshot.size();
+        int blockCount = (count + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        ByteBuffer table = ByteBuffer.allocate(8 + blockCount * TABLE_ENTRY_SIZE);
+        table.putInt(count);
+        table.putInt(blockCount);
+
+        File temporary = new File(file.getPath() + ".tmp");
+        RandomAccessFile out = new RandomAccessFile(temporary, "rw");
+        try {
+            out.setLength(0);
+            out.seek(HEADER_SIZE + blockCount * TABLE_ENTRY_SIZE);
+
+            ByteArrayOutputStream blockBytes = new ByteArrayOutputStream(16 * 1024);
+            DataOutputStream blockOut = new DataOutputStream(blockBytes);
+            CRC32 crc = new CRC32();
+            int inBlock = 0;
+            for (String tag : snapshot) {
+                writeString(tag, blockOut);
+                writeString(snapshot.getQuery(tag), blockOut);
+
+                if (++inBlock == BLOCK_SIZE) {
+                    writeBlock(blockBytes, out, table, crc);
+                    inBlock = 0;
+                }
+            }
+            if (inBlock > 0)
+                writeBlock(blockBytes, out, table, crc);
+
+            crc.reset();
+            crc.update(table.array());
+            out.seek(0);
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(count);
+            out.writeInt(blockCount);
+            out.writeInt((int) crc.getValue());
+            out.write(table.array(), 8, blockCount * TABLE_ENTRY_SIZE);
+            out.getFD().sync();
+        }
+        finally {
+            out.close();
+        }
+
+        if (!temporary.renameTo(file)) {
+            temporary.delete();
+            throw new IOException("Unable to replace " + file);
+        }
+    }
+
+
+
+    //Makes "position" the next search read, starting from the beginning of its block.
+    private void seek(int position) throws IOException {
+        if (position < 0 || position >= count)
+            throw new IndexOutOfBoundsException("position " + position + ", size " + count);
+
+        int positionBlock = position / BLOCK_SIZE;
+        if (positionBlock != block)
+            loadBlock(positionBlock);
+        nextPosition = positionBlock * BLOCK_SIZE;
+        nextOffset = 0;
+        while (nextPosition < position) {
+            skipString();
+            skipString();
+            ++nextPosition;
+        }
+    }
+
+
+    //Copies "newBlock" out of the mapping and checks it against its checksum.
+    private void loadBlock(int newBlock) throws IOException {
+        int length = blockLengths[newBlock];
+        if (blockBytes.length < length)
+            blockBytes = new byte[length];
+        buffer.position(blockOffsets[newBlock]);
+        buffer.get(blockBytes, 0, length);
+
+        CRC32 crc = new CRC32();
+        crc.update(blockBytes, 0, length);
+        if ((int) crc.getValue() != blockChecksums[newBlock]) {
+            block = -1;
+            throw new IOException("Damaged search snapshot block " + newBlock);
+        }
+        block = newBlock;
+    }
+
+
+    private String readString() throws IOException {
+        int length = readLength();
+        String string = new String(blockBytes, nextOffset, length, UTF_8);
+        nextOffset += length;
+        return string;
+    }
+
+
+    private void skipString() throws IOException {
+        int length = readLength();
+        nextOffset += length;
+    }
+
+
+    private int readLength() throws IOException {
+        int end = blockLengths[block];
+        if (nextOffset + 4 > end)
+            throw new IOException("Damaged search snapshot block " + block);
+        int length = ((blockBytes[nextOffset] & 0xff) << 24) | ((blockBytes[nextOffset + 1] & 0xff) << 16)
+                | ((blockBytes[nextOffset + 2] & 0xff) << 8) | (blockBytes[nextOffset + 3] & 0xff);
+        nextOffset += 4;
+        if (length < 0 || nextOffset + length > end)
+            throw new IOException("Damaged search snapshot block " + block);
+        return length;
+    }
+
+
+    private static void writeString(String string, DataOutputStream out) throws IOException {
+        byte[] bytes = string.getBytes(UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+
+    //Appends the block in "blockBytes" to "out" and its entry to "table", then empties "blockBytes".
+    private static void writeBlock(ByteArrayOutputStream blockBytes, RandomAccessFile out, ByteBuffer table,
+                                   CRC32 crc) throws IOException {
+        byte[] bytes = blockBytes.toByteArray();
+        crc.reset();
+        crc.update(bytes);
+        table.putInt((int) out.getFilePointer());
+        table.putInt(bytes.length);
+        table.putInt((int) crc.getValue());
+        out.write(bytes);
+        blockBytes.reset();
+    }
+}
@@ -0,0 +1,49 @@
+package com.deitel.twittersearches;
+
+import java.util.Map;
+
+//The SearchStore interface describes where the app keeps its tag-query pairs.
+//It deliberately mirrors the small part of the SharedPreferences API that MainActivity uses
+//(getString, getAll, edit, putString, remove, apply) so that the storage backend can be swapped
+//without changing how the rest of the app reads and writes searches.
+//LogSearchStore is the default backend, SharedPreferencesSearchStore wraps the original "searches" file,
+//and WriteBehindSearchStore batches the edits made to another store.
+public interface SearchStore {
+
+    //Returns the query saved under "tag", or defValue if there is no such tag.
+    String getString(String tag, String defValue);
+
+    //Returns true if a query is saved under "tag".
+    boolean contains(String tag);
+
+    //Returns a copy of every saved search as a Map of tag (key) to query (value).
+    Map<String, String> getAll();
+
+    //Returns the number of saved searches.
+    int size();
+
+    //Returns an Editor that collects changes and writes them all at once when apply is called.
+    Editor edit();
+
+    //Writes out any changes that apply has only buffered in memory so far. Called when the app goes into
+    //the background.
+    void flush();
+
+    //Releases any files held open by the store.
+    void close();
+
+
+    //An Editor batches puts and removes. Nothing is written until apply is called, and the changes
+    //are applied in the order they were made.
+    interface Editor {
+
+        //Saves "query" under "tag", replacing any query already saved under it.
+        Editor putString(String tag, String query);
+
+        //Removes the search saved under "tag".
+        Editor remove(String tag);
+
+        //Writes all the collected changes to the store.
+        void apply();
+    }
+}
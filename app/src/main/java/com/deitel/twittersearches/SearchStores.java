@@ -0,0 +1,187 @@
+package com.deitel.twittersearches;
+
+import android.content.Context;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+
+//The SearchStores class opens the app's SearchStore, and holds the app's SearchModel and the
+//SearchSnapshotFile it is loaded from at startup.
+//Like Context.getSharedPreferences, it returns the same store every time it is called so that every
+//part of the app reads and writes the same set of searches. Likewise every part of the app (MainActivity,
+//SearchesProvider) reads the searches from the same SearchModel, and every change made through the app is
+//made to both.
+public final class SearchStores {
+
+    //The static String constant SEARCHES is the name of the SharedPreferences file in which older
+    //versions of the app stored their tag-query pairs.
+    private static final String SEARCHES = "searches";
+
+    //The name of the log file that LogSearchStore keeps the searches in.
+    private static final String SEARCHES_LOG = "searches.log";
+
+    //The name of the file that the SearchModel is saved in (see SearchSnapshotFile).
+    private static final String SEARCHES_SNAPSHOT = "searches.snapshot";
+
+    //Edits are buffered for up to this long so that several edits in a row are written to the log together.
+    private static final long WRITE_BEHIND_MILLIS = 500;
+
+    private static SearchStore store;
+    private static SearchModel model = new SearchModel();
+    private static boolean modelLoaded;
+
+    //The version of the model last saved in the snapshot file, or -1 if it hasn't been saved since it was
+    //loaded. Snapshots are saved one at a time, under snapshotLock.
+    private static final Object snapshotLock = new Object();
+    private static SearchModel savedSnapshotModel;
+    private static long savedSnapshotVersion = -1;
+
+    private SearchStores() {
+    }
+
+
+    //Returns the app's SearchStore, opening it the first time this method is called.
+    //Opening the store reads the whole log, so this should not be called on the main thread when
+    //the store hasn't been opened yet.
+    public static synchronized SearchStore get(Context context) {
+        if (store == null) {
+            Context appContext = context.getApplicationContext();
+            File logFile = new File(appContext.getFilesDir(), SEARCHES_LOG);
+
+            LogSearchStore log;
+            try {
+                log = new LogSearchStore(logFile);
+            }
+            catch (IOException e) {
+                //If the log can't be opened fall back to SharedPreferences, so that the user can still
+                //see and save searches.
+                store = new SharedPreferencesSearchStore(
+                        appContext.getSharedPreferences(SEARCHES, Context.MODE_PRIVATE));
+                return store;
+            }
+
+            //The searches saved by older versions are migrated straight into the log, so that they are in
+            //it before the SharedPreferences file is emptied.
+            migrate(new SharedPreferencesSearchStore(
+                    appContext.getSharedPreferences(SEARCHES, Context.MODE_PRIVATE)), log);
+
+            //A WriteBehindSearchStore batches the edits made in quick succession before they reach the log.
+            store = new WriteBehindSearchStore(log, WRITE_BEHIND_MILLIS);
+        }
+        return store;
+    }
+
+
+    //Returns the app's SearchModel. It is empty until the searches have been loaded into it, either by
+    //MainActivity's TagLoader or by getLoadedModel.
+    public static synchronized SearchModel getModel() {
+        return model;
+    }
+
+
+    //Returns the app's SearchModel with every saved search loaded into it. The first call opens the store
+    //(see get) and loads it, so it should not be called on the main thread.
+    public static SearchModel getLoadedModel(Context context) {
+        SearchStore searchStore;
+        SearchModel searchModel;
+        synchronized (SearchStores.class) {
+            if (modelLoaded)
+                return model;
+            searchStore = get(context);
+            searchModel = model;
+        }
+
+        //The searches are put in the model outside the lock, since they may take a while to sort. Searches
+        //that the TagLoader has already loaded, or that were saved in the meantime, don't change anything.
+        searchModel.putAll(searchStore.getAll());
+        synchronized (SearchStores.class) {
+            if (searchModel == model)
+                modelLoaded = true;
+        }
+        return searchModel;
+    }
+
+
+    //Records that every saved search has been loaded into "searchModel" (by MainActivity's TagLoader).
+    //"snapshotSaved" is true if its current version is the one saved in the snapshot file, so that
+    //saveSnapshot doesn't write the same searches again.
+    static synchronized void setModelLoaded(SearchModel searchModel, boolean snapshotSaved) {
+        if (searchModel != model)
+            return;
+        modelLoaded = true;
+        if (snapshotSaved) {
+            synchronized (snapshotLock) {
+                savedSnapshotModel = searchModel;
+                savedSnapshotVersion = searchModel.snapshot().getVersion();
+            }
+        }
+    }
+
+
+    //Returns the file that the app's SearchModel is saved in.
+    static File getSnapshotFile(Context context) {
+        return new File(context.getApplicationContext().getFilesDir(), SEARCHES_SNAPSHOT);
+    }
+
+
+    //Saves the current version of the app's SearchModel in the snapshot file, so that the next time the app
+    //starts the TagLoader can show the searches before the store has been opened. Nothing is saved until
+    //every search has been loaded into the model (a partly loaded model would be missing searches), or if
+    //the model hasn't changed since it was last saved. Writes a file, so it should not be called on the main
+    //thread.
+    public static void saveSnapshot(Context context) {
+        SearchModel searchModel;
+        synchronized (SearchStores.class) {
+            if (!modelLoaded)
+                return;
+            searchModel = model;
+        }
+
+        synchronized (snapshotLock) {
+            SearchModel.Snapshot snapshot = searchModel.snapshot();
+            if (searchModel == savedSnapshotModel && snapshot.getVersion() == savedSnapshotVersion)
+                return;
+            try {
+                SearchSnapshotFile.write(getSnapshotFile(context), snapshot);
+                savedSnapshotModel = searchModel;
+                savedSnapshotVersion = snapshot.getVersion();
+            }
+            catch (IOException e) {
+                //the file saved last time (if any) is still checked against the store when it is loaded.
+            }
+        }
+    }
+
+
+    //Makes get return "searchStore" instead of opening the app's store, with a new SearchModel to go with
+    //it. Used by tests.
+    static synchronized void set(SearchStore searchStore) {
+        store = searchStore;
+        model = new SearchModel();
+        modelLoaded = false;
+        synchronized (snapshotLock) {
+            savedSnapshotModel = null;
+            savedSnapshotVersion = -1;
+        }
+    }
+
+
+    //The migrate method copies every search from a SharedPreferences file written by an older version
+    //of the app into "to" with a single apply, then empties the SharedPreferences file so that
+    //the searches are only migrated once. "to" is flushed first, so that a store which holds edits back
+    //(such as a WriteBehindSearchStore) has written the searches before they are removed from the file.
+    static void migrate(SharedPreferencesSearchStore from, SearchStore to) {
+        Map<String, String> searches = from.getAll();
+        if (searches.isEmpty())
+            return;
+
+        SearchStore.Editor editor = to.edit();
+        for (Map.Entry<String, String> search : searches.entrySet())
+            editor.putString(search.getKey(), search.getValue());
+        editor.apply();
+        to.flush();
+
+        from.clear();
+    }
+}
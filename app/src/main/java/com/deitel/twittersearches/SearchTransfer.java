@@ -0,0 +1,467 @@
+package com.deitel.twittersearches;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+//The SearchTransfer class imports and exports saved searches as JSON Lines or CSV files, so that they can
+//be moved to another device in one go instead of being typed in again one at a time.
+//
+//JSON Lines files hold one search per line:
+//  {"tag":"Java","query":"#java OR #kotlin"}
+//CSV files start with a "tag,query" header, followed by one search per record; fields containing commas,
+//quotes or line breaks are quoted as described in RFC 4180:
+//  tag,query
+//  Java,#java OR #kotlin
+//  "Oracle, Inc.","from:oracle ""java one"""
+//
+//Files are streamed: records are read (or written) a batch at a time, so even a file with hundreds of
+//thousands of searches never has to be held in memory at once. Each imported batch is written to the
+//SearchStore with a single Editor.apply, and the Listener is told about it so that the list can be updated
+//once per batch rather than once per search.
+public final class SearchTransfer {
+
+    //The number of searches imported or exported per batch.
+    public static final int BATCH_SIZE = 5000;
+
+    //The file formats searches can be imported from and exported to.
+    public enum Format {
+        JSON_LINES, CSV
+    }
+
+    //Listener is told about every batch of searches imported or exported.
+    public interface Listener {
+
+        //Called after a batch of "searches" (tag to query) has been imported or exported. When importing,
+        //"replacedQueries" holds the queries that were saved under the batch's tags before the import.
+        //"count" is the number of searches imported or exported so far. Returns false to stop.
+        boolean onBatch(Map<String, String> searches, Map<String, String> replacedQueries, long count);
+    }
+
+    private static final String TAG_FIELD = "tag";
+    private static final String QUERY_FIELD = "query";
+
+    //The number of characters looked at to tell a JSON Lines file from a CSV file.
+    private static final int DETECT_LIMIT = 4096;
+
+    private SearchTransfer() {
+    }
+
+
+    //Returns the format of the file read by "reader" (JSON Lines if it starts with '{', CSV otherwise),
+    //without consuming anything from it.
+    public static Format detectFormat(BufferedReader reader) throws IOException {
+        reader.mark(DETECT_LIMIT);
+        try {
+            for (int i = 0; i < DETECT_LIMIT; ++i) {
+                int c = reader.read();
+                if (c < 0 || !Character.isWhitespace(c) && c != '\uFEFF')
+                    return c == '{' ? Format.JSON_LINES : Format.CSV;
+            }
+            return Format.CSV;
+        }
+        finally {
+            reader.reset();
+        }
+    }
+
+
+    //Imports the searches read from "reader" into "store", BATCH_SIZE searches at a time. Searches whose tag
+    //is already saved replace the saved query. Returns the number of searches imported, which is less than
+    //the number in the file if the listener stopped the import.
+    //Throws an IOException if the file can't be read or isn't in the given format; the batches imported
+    //before the error are kept.
+    public static long importSearches(Reader reader, Format format, SearchStore store, Listener listener)
+            throws IOException {
+        RecordReader records = format == Format.JSON_LINES ? new JsonLinesReader(reader) : new CsvReader(reader);
+
+        long count = 0;
+        Map<String, String> batch = new LinkedHashMap<>();
+        Map<String, String> replacedQueries = new HashMap<>();
+        String[] record = new String[2];
+
+        while (true) {
+            boolean more = records.next(record);
+            if (more) {
+                String tag = record[0];
+                String query = record[1];
+                //the app never saves a search without a tag or a query, so neither does the import.
+                if (tag.isEmpty() || query.isEmpty())
+                    continue;
+
+                if (!batch.containsKey(tag)) {
+                    String replaced = store.getString(tag, null);
+                    if (replaced != null)
+                        replacedQueries.put(tag, replaced);
+                }
+                batch.put(tag, query);
+                ++count;
+            }
+
+            if (batch.size() == BATCH_SIZE || (!more && !batch.isEmpty())) {
+                SearchStore.Editor editor = store.edit();
+                for (Map.Entry<String, String> search : batch.entrySet())
+                    editor.putString(search.getKey(), search.getValue());
+                editor.apply();
+
+                if (!listener.onBatch(batch, replacedQueries, count))
+                    return count;
+                batch = new LinkedHashMap<>();
+                replacedQueries = new HashMap<>();
+            }
+
+            if (!more)
+                return count;
+        }
+    }
+
+
+    //Writes every search in "store" to "writer", BATCH_SIZE searches at a time. Returns the number of
+    //searches exported, which is less than the number saved if the listener stopped the export.
+    //"writer" is flushed but not closed.
+    public static long exportSearches(SearchStore store, Writer writer, Format format, Listener listener)
+            throws IOException {
+        StringBuilder line = new StringBuilder(256);
+        if (format == Format.CSV)
+            writer.write(TAG_FIELD + "," + QUERY_FIELD + "\r\n");
+
+        long count = 0;
+        Map<String, String> batch = new LinkedHashMap<>();
+        Map<String, String> noReplacedQueries = new HashMap<>();
+
+        for (Map.Entry<String, String> search : store.getAll().entrySet()) {
+            line.setLength(0);
+            if (format == Format.JSON_LINES) {
+                line.append("{\"" + TAG_FIELD + "\":");
+                appendJsonString(search.getKey(), line);
+                line.append(",\"" + QUERY_FIELD + "\":");
+                appendJsonString(search.getValue(), line);
+                line.append("}\n");
+            }
+            else {
+                appendCsvField(search.getKey(), line);
+                line.append(',');
+                appendCsvField(search.getValue(), line);
+                line.append("\r\n");
+            }
+            writer.append(line);
+
+            batch.put(search.getKey(), search.getValue());
+            ++count;
+            if (batch.size() == BATCH_SIZE) {
+                if (!listener.onBatch(batch, noReplacedQueries, count)) {
+                    writer.flush();
+                    return count;
+                }
+                batch = new LinkedHashMap<>();
+            }
+        }
+
+        writer.flush();
+        if (!batch.isEmpty())
+            listener.onBatch(batch, noReplacedQueries, count);
+        return count;
+    }
+
+
+
+    private static void appendJsonString(String text, StringBuilder out) {
+        out.append('"');
+        for (int i = 0; i < text.length(); ++i) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '"':  out.append("\\\""); break;
+                case '\\': out.append("\\\\"); break;
+                case '\n': out.append("\\n"); break;
+                case '\r': out.append("\\r"); break;
+                case '\t': out.append("\\t"); break;
+                default:
+                    if (c < 0x20)
+                        out.append(String.format("\\u%04x", (int) c));
+                    else
+                        out.append(c);
+            }
+        }
+        out.append('"');
+    }
+
+
+    private static void appendCsvField(String text, StringBuilder out) {
+        boolean quote = text.isEmpty() || Character.isWhitespace(text.charAt(0))
+                || Character.isWhitespace(text.charAt(text.length() - 1));
+        for (int i = 0; i < text.length() && !quote; ++i) {
+            char c = text.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+
+        if (!quote) {
+            out.append(text);
+            return;
+        }
+        out.append('"');
+        for (int i = 0; i < text.length(); ++i) {
+            char c = text.charAt(i);
+            if (c == '"')
+                out.append('"');
+            out.append(c);
+        }
+        out.append('"');
+    }
+
+
+
+    //A RecordReader reads one tag and query at a time from a file.
+    private interface RecordReader {
+
+        //Reads the next search into record[0] (the tag) and record[1] (the query). Returns false at the end
+        //of the file.
+        boolean next(String[] record) throws IOException;
+    }
+
+
+    //JsonLinesReader reads one JSON object per line. Only the "tag" and "query" members are used; other
+    //members (e.g. added by other apps) are skipped.
+    private static final class JsonLinesReader implements RecordReader {
+
+        private final BufferedReader reader;
+        private final StringBuilder value = new StringBuilder();
+        private String line;
+        private int position;
+        private long lineNumber;
+
+        JsonLinesReader(Reader reader) {
+            this.reader = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader);
+        }
+
+        @Override
+        public boolean next(String[] record) throws IOException {
+            while ((line = reader.readLine()) != null) {
+                ++lineNumber;
+                position = 0;
+                skipWhitespace();
+                if (position == line.length())
+                    continue; //blank line
+
+                record[0] = null;
+                record[1] = null;
+                expect('{');
+                skipWhitespace();
+                if (peek() != '}') {
+                    do {
+                        skipWhitespace();
+                        String name = readString();
+                        skipWhitespace();
+                        expect(':');
+                        skipWhitespace();
+                        if (peek() == '"') {
+                            String member = readString();
+                            if (name.equals(TAG_FIELD))
+                                record[0] = member;
+                            else if (name.equals(QUERY_FIELD))
+                                record[1] = member;
+                        }
+                        else {
+                            skipLiteral();
+                        }
+                        skipWhitespace();
+                    } while (tryRead(','));
+                }
+                expect('}');
+                skipWhitespace();
+                if (position != line.length())
+                    throw error("unexpected text after the object");
+                if (record[0] == null || record[1] == null)
+                    throw error("missing \"" + TAG_FIELD + "\" or \"" + QUERY_FIELD + "\"");
+                return true;
+            }
+            return false;
+        }
+
+        private String readString() throws IOException {
+            expect('"');
+            value.setLength(0);
+            while (true) {
+                if (position == line.length())
+                    throw error("unterminated string");
+                char c = line.charAt(position++);
+                if (c == '"')
+                    return value.toString();
+                if (c != '\\') {
+                    value.append(c);
+                    continue;
+                }
+
+                if (position == line.length())
+                    throw error("unterminated string");
+                char escaped = line.charAt(position++);
+                switch (escaped) {
+                    case '"':
+                    case '\\':
+                    case '/': value.append(escaped); break;
+                    case 'b': value.append('\b'); break;
+                    case 'f': value.append('\f'); break;
+                    case 'n': value.append('\n'); break;
+                    case 'r': value.append('\r'); break;
+                    case 't': value.append('\t'); break;
+                    case 'u':
+                        if (position + 4 > line.length())
+                            throw error("bad \\u escape");
+                        try {
+                            value.append((char) Integer.parseInt(line.substring(position, position + 4), 16));
+                        }
+                        catch (NumberFormatException e) {
+                            throw error("bad \\u escape");
+                        }
+                        position += 4;
+                        break;
+                    default:
+                        throw error("bad escape \\" + escaped);
+                }
+            }
+        }
+
+        //Skips a number, true, false or null.
+        private void skipLiteral() throws IOException {
+            int start = position;
+            while (position < line.length() && "-+.eE0123456789truefalsn".indexOf(line.charAt(position)) >= 0)
+                ++position;
+            if (position == start)
+                throw error("unsupported value");
+        }
+
+        private void skipWhitespace() {
+            while (position < line.length() && Character.isWhitespace(line.charAt(position)))
+                ++position;
+            //a byte order mark at the start of the file.
+            if (position == 0 && lineNumber == 1 && line.startsWith("\uFEFF")) {
+                ++position;
+                skipWhitespace();
+            }
+        }
+
+        private int peek() {
+            return position < line.length() ? line.charAt(position) : -1;
+        }
+
+        private boolean tryRead(char c) {
+            if (peek() != c)
+                return false;
+            ++position;
+            return true;
+        }
+
+        private void expect(char c) throws IOException {
+            if (!tryRead(c))
+                throw error("expected '" + c + "'");
+        }
+
+        private IOException error(String message) {
+            return new IOException("Line " + lineNumber + ": " + message);
+        }
+    }
+
+
+    //CsvReader reads RFC 4180 records: fields are separated by commas, records by line breaks, and quoted
+    //fields may contain commas, line breaks and doubled quotes. Records need at least two fields (the tag
+    //and the query); further fields are ignored. A "tag,query" header and blank lines are skipped.
+    private static final class CsvReader implements RecordReader {
+
+        private final Reader reader;
+        private final char[] buffer = new char[8192];
+        private int position;
+        private int limit;
+        private final StringBuilder field = new StringBuilder();
+        private final List<String> fields = new ArrayList<>();
+        private long recordNumber;
+
+        CsvReader(Reader reader) {
+            this.reader = reader;
+        }
+
+        @Override
+        public boolean next(String[] record) throws IOException {
+            while (readRecord()) {
+                ++recordNumber;
+                if (fields.size() == 1 && fields.get(0).isEmpty())
+                    continue; //blank line
+                if (recordNumber == 1 && fields.size() >= 2 && fields.get(0).trim().equalsIgnoreCase(TAG_FIELD)
+                        && fields.get(1).trim().equalsIgnoreCase(QUERY_FIELD))
+                    continue; //header
+                if (fields.size() < 2)
+                    throw new IOException("Record " + recordNumber + ": expected a tag and a query");
+
+                record[0] = fields.get(0);
+                record[1] = fields.get(1);
+                return true;
+            }
+            return false;
+        }
+
+        //Reads the fields of the next record into "fields". Returns false at the end of the file.
+        private boolean readRecord() throws IOException {
+            fields.clear();
+            int c = read();
+            if (c < 0)
+                return false;
+            if (recordNumber == 0 && c == '\uFEFF')
+                c = read();
+
+            while (true) {
+                field.setLength(0);
+                if (c == '"') {
+                    //a quoted field ends at a quote that isn't doubled.
+                    while (true) {
+                        c = read();
+                        if (c < 0)
+                            throw new IOException("Record " + (recordNumber + 1) + ": unterminated quoted field");
+                        if (c == '"') {
+                            c = read();
+                            if (c != '"')
+                                break;
+                        }
+                        field.append((char) c);
+                    }
+                }
+                else {
+                    while (c >= 0 && c != ',' && c != '\n' && c != '\r') {
+                        field.append((char) c);
+                        c = read();
+                    }
+                }
+                fields.add(field.toString());
+
+                if (c == ',') {
+                    c = read();
+                    continue;
+                }
+                if (c == '\r') {
+                    c = read();
+                    if (c != '\n' && c >= 0)
+                        --position; //a lone '\r' ends the record too.
+                }
+                else if (c >= 0 && c != '\n') {
+                    throw new IOException("Record " + (recordNumber + 1) + ": unexpected text after a quoted field");
+                }
+                return true;
+            }
+        }
+
+        private int read() throws IOException {
+            if (position == limit) {
+                limit = reader.read(buffer, 0, buffer.length);
+                position = 0;
+                if (limit <= 0) {
+                    limit = 0;
+                    return -1;
+                }
+            }
+            return buffer[position++];
+        }
+    }
+}
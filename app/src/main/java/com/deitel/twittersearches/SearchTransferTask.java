@@ -0,0 +1,228 @@
+package com.deitel.twittersearches;
+
+import android.content.ContentResolver;
+import android.net.Uri;
+import android.os.AsyncTask;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+//The SearchTransferTask class imports searches from, or exports them to, a file picked by the user (see
+//SearchTransfer) on a background thread.
+//
+//When importing, every batch is written to the SearchStore, the SearchModel and the QueryIndex on the
+//background thread, and the batch's version of the model is then handed to the main thread, so that
+//MainActivity can update the list with a single update per batch. Calling cancel stops the transfer after the current batch.
+class SearchTransferTask extends AsyncTask<Void, SearchTransferTask.Progress, Long> {
+
+    //Callbacks receives the progress of the transfer on the main thread.
+    interface Callbacks {
+
+        //Called after each batch. "snapshot" is the version of the SearchModel with the batch imported,
+        //"newTags" holds the imported tags that weren't saved before, sorted by SortedTagIndex.ORDER, and
+        //"replacedTags" the ones whose query was replaced. When exporting "snapshot" is null and both lists
+        //are empty. "count" is the number of searches transferred so far.
+        void onTransferProgress(SearchModel.Snapshot snapshot, List<String> newTags, List<String> replacedTags,
+                                long count);
+
+        //Called when the transfer has finished, with the number of searches transferred, or the error
+        //that stopped it (null if there was none).
+        void onTransferFinished(long count, IOException error);
+    }
+
+    //Progress is one batch handed from the background thread to the main thread.
+    static class Progress {
+        final SearchModel.Snapshot snapshot;
+        final List<String> newTags;
+        final List<String> replacedTags;
+        final long count;
+
+        Progress(SearchModel.Snapshot snapshot, List<String> newTags, List<String> replacedTags, long count) {
+            this.snapshot = snapshot;
+            this.newTags = newTags;
+            this.replacedTags = replacedTags;
+            this.count = count;
+        }
+    }
+
+    private static final String CHARSET = "UTF-8";
+
+    private final ContentResolver contentResolver;
+    private final Uri uri;
+    private final boolean importing;
+    private final SearchTransfer.Format format;
+    private final SearchStore store;
+    private final SearchModel model;
+    private final QueryIndex queryIndex;
+    private Callbacks callbacks;
+    private IOException error;
+
+    //The number of searches transferred so far, reported even if an error stops the transfer part way.
+    private volatile long transferred;
+
+    private SearchTransferTask(ContentResolver contentResolver, Uri uri, boolean importing,
+                               SearchTransfer.Format format, SearchStore store, SearchModel model,
+                               QueryIndex queryIndex, Callbacks callbacks) {
+        this.contentResolver = contentResolver;
+        this.uri = uri;
+        this.importing = importing;
+        this.format = format;
+        this.store = store;
+        this.model = model;
+        this.queryIndex = queryIndex;
+        this.callbacks = callbacks;
+    }
+
+
+    //Returns a task that imports the searches in the file at "uri" (JSON Lines or CSV, whichever it looks
+    //like) into "store", "model" and "queryIndex".
+    static SearchTransferTask importFrom(ContentResolver contentResolver, Uri uri, SearchStore store,
+                                         SearchModel model, QueryIndex queryIndex, Callbacks callbacks) {
+        return new SearchTransferTask(contentResolver, uri, true, null, store, model, queryIndex, callbacks);
+    }
+
+
+    //Returns a task that exports the searches in "store" to the file at "uri", in "format".
+    static SearchTransferTask exportTo(ContentResolver contentResolver, Uri uri, SearchTransfer.Format format,
+                                       SearchStore store, Callbacks callbacks) {
+        return new SearchTransferTask(contentResolver, uri, false, format, store, null, null, callbacks);
+    }
+
+
+    //Returns true if the task imports searches, false if it exports them.
+    boolean isImport() {
+        return importing;
+    }
+
+
+    //Returns the number of searches transferred so far.
+    long getTransferredCount() {
+        return transferred;
+    }
+
+
+    //Delivers the remaining callbacks to "callbacks" instead, e.g. to the MainActivity created after a rotation.
+    void setCallbacks(Callbacks callbacks) {
+        this.callbacks = callbacks;
+    }
+
+
+    @Override
+    protected Long doInBackground(Void... params) {
+        try {
+            return importing ? importSearches() : exportSearches();
+        }
+        catch (IOException e) {
+            error = e;
+            return transferred;
+        }
+    }
+
+
+    private long importSearches() throws IOException {
+        InputStream in = contentResolver.openInputStream(uri);
+        if (in == null)
+            throw new IOException("Unable to open " + uri);
+
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, CHARSET));
+        try {
+            return SearchTransfer.importSearches(reader, SearchTransfer.detectFormat(reader), store,
+                    new SearchTransfer.Listener() {
+                        @Override
+                        public boolean onBatch(Map<String, String> searches, Map<String, String> replacedQueries,
+                                               long count) {
+                            List<String> newTags = new ArrayList<>(searches.size() - replacedQueries.size());
+                            for (Map.Entry<String, String> search : searches.entrySet()) {
+                                String tag = search.getKey();
+                                queryIndex.update(tag, replacedQueries.get(tag), search.getValue());
+                                if (!replacedQueries.containsKey(tag))
+                                    newTags.add(tag);
+                            }
+                            Collections.sort(newTags, SortedTagIndex.ORDER);
+                            SearchModel.Snapshot snapshot = model.putAll(searches);
+
+                            transferred = count;
+                            publishProgress(new Progress(snapshot, newTags, new ArrayList<>(replacedQueries.keySet()),
+                                    count));
+                            return !isCancelled();
+                        }
+                    });
+        }
+        finally {
+            reader.close();
+        }
+    }
+
+
+    private long exportSearches() throws IOException {
+        OutputStream out = contentResolver.openOutputStream(uri, "w");
+        if (out == null)
+            throw new IOException("Unable to open " + uri);
+
+        BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(out, CHARSET));
+        try {
+            return SearchTransfer.exportSearches(store, writer, format, new SearchTransfer.Listener() {
+                @Override
+                public boolean onBatch(Map<String, String> searches, Map<String, String> replacedQueries,
+                                       long count) {
+                    transferred = count;
+                    publishProgress(new Progress(null, Collections.<String>emptyList(),
+                            Collections.<String>emptyList(), count));
+                    return !isCancelled();
+                }
+            });
+        }
+        finally {
+            writer.close();
+        }
+    }
+
+
+    @Override
+    protected void onProgressUpdate(Progress... batches) {
+        if (callbacks == null)
+            return;
+
+        //batches that were already posted when the task was cancelled have been saved, so they are still
+        //delivered to keep the list in step with the store.
+        for (Progress batch : batches)
+            callbacks.onTransferProgress(batch.snapshot, batch.newTags, batch.replacedTags, batch.count);
+    }
+
+
+    @Override
+    protected void onPostExecute(Long count) {
+        finish(count);
+    }
+
+
+    @Override
+    protected void onCancelled(Long count) {
+        finish(count != null ? count : 0L);
+    }
+
+
+    //Stops delivering callbacks, e.g. because the Activity is being destroyed. The transfer itself is
+    //stopped after the current batch.
+    void detach() {
+        callbacks = null;
+        cancel(false);
+    }
+
+
+    private void finish(long count) {
+        if (callbacks == null)
+            return;
+        callbacks.onTransferFinished(count, error);
+        callbacks = null;
+    }
+}
@@ -0,0 +1,103 @@
+package com.deitel.twittersearches;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+//The SearchUrlCache class remembers the Twitter search URL of the most recently used searches, so that
+//tapping or sharing a search doesn't look its query up and encode it again every time.
+//
+//The URLs are kept in a LinkedHashMap in access order; once it holds more than maxSize URLs, the least
+//recently used one is dropped. The URL of a tag must be invalidated whenever its query is edited or the
+//search is deleted. The hit and miss counts show how well the cache works; they are shown in the "Dump
+//metrics" dialog (see appendTo).
+//
+//All methods are synchronized: the main thread uses the cache when a search is tapped, shared or edited,
+//while MainActivity.shareSearches appends the URLs of large shares (written to a file) from an AsyncTask on
+//THREAD_POOL_EXECUTOR.
+public class SearchUrlCache {
+
+    private final String searchUrl;
+    private final PercentEncoder encoder = new PercentEncoder();
+    private final LinkedHashMap<String, String> urls;
+    private long hits;
+    private long misses;
+
+    //constructor. "searchUrl" is the URL the encoded query is appended to.
+    public SearchUrlCache(String searchUrl, final int maxSize) {
+        this.searchUrl = searchUrl;
+        this.urls = new LinkedHashMap<String, String>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+
+    //Returns the search URL of the search saved in "store" under "tag".
+    public synchronized String get(String tag, SearchStore store) {
+        String url = urls.get(tag);
+        if (url != null) {
+            ++hits;
+            return url;
+        }
+
+        ++misses;
+        url = encoder.encode(searchUrl, store.getString(tag, ""));
+        urls.put(tag, url);
+        return url;
+    }
+
+
+    //Appends the search URL of the search saved in "store" under "tag" to "out". A cached URL is used if there
+    //is one, but a URL that isn't cached is encoded straight into "out" and not cached, so that sharing
+    //hundreds of searches at once doesn't push the recently used URLs out of the cache.
+    public synchronized void appendUrl(String tag, SearchStore store, StringBuilder out) {
+        String url = urls.get(tag);
+        if (url != null) {
+            ++hits;
+            out.append(url);
+            return;
+        }
+
+        ++misses;
+        out.append(searchUrl);
+        PercentEncoder.appendEncoded(store.getString(tag, ""), out);
+    }
+
+
+    //Forgets the URL of "tag". Must be called when the search's query changes or it is deleted.
+    public synchronized void invalidate(String tag) {
+        urls.remove(tag);
+    }
+
+
+    //Forgets every URL.
+    public synchronized void clear() {
+        urls.clear();
+    }
+
+
+    //Returns the number of URLs currently cached.
+    public synchronized int size() {
+        return urls.size();
+    }
+
+
+    //Returns the number of calls to get and appendUrl that found the URL in the cache.
+    public synchronized long getHitCount() {
+        return hits;
+    }
+
+
+    //Returns the number of calls to get and appendUrl that had to build the URL.
+    public synchronized long getMissCount() {
+        return misses;
+    }
+
+
+    //Appends the hit and miss counts, e.g. for Metrics.dump.
+    public synchronized void appendTo(StringBuilder out) {
+        Metrics.appendHitCounts(out, "search URL cache", hits, misses);
+    }
+}
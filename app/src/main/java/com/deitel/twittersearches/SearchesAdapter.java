@@ -1,12 +1,18 @@
 package com.deitel.twittersearches;
 
+import android.os.AsyncTask;
+import android.support.v7.util.DiffUtil;
 import android.support.v7.widget.RecyclerView;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
-import android.widget.TextView;
 
+import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 
 /**
  * Created by Yevgeniy on 6/27/2017.
@@ -17,21 +23,353 @@ import java.util.List;
 //RecyclerView's adapter.
 public class SearchesAdapter extends RecyclerView.Adapter<SearchesAdapter.ViewHolder> {
 
+    //SelectionListener is told how many rows are selected whenever that changes (see startSelection).
+    public interface SelectionListener {
+        void onSelectionChanged(int selectedCount);
+    }
+
+    //The payload of the notifyItemChanged calls that only change whether rows are selected, so that only
+    //their activated state is updated rather than their text being set again.
+    private static final Object SELECTION_PAYLOAD = new Object();
 
     //Here we define instance variables which will maintain references to the event listeners (defined in MA)
     //that are registered for each RecyclerView item.
     private final View.OnClickListener clickListener;
     private final View.OnLongClickListener longClickListener;
 
-    //The "tags" instance variable maintains a reference to MA's List<String> that contains the tag names to display.
-    //It is used to obtain RecyclerView item's data
-    private final List<String> tags;
+    //The "snapshot" instance variable refers to the version of MA's SearchModel that is displayed. Looking up
+    //the tag at a position in it is O(log n). Since a snapshot never changes, the adapter always displays a
+    //consistent list, whichever thread changes the model; it moves to a newer version in setSnapshot.
+    //"latestSnapshot" is the newest version handed to setSnapshot, which is displayed as soon as the
+    //difference from the displayed version is known.
+    private SearchModel.Snapshot snapshot;
+    private SearchModel.Snapshot latestSnapshot;
+
+    //While the user is filtering the tags (see TagFilter), "filteredTags" holds the matching tags and is
+    //displayed instead of the whole snapshot. It is null when there is no filter.
+    private List<String> filteredTags;
+
+    //True while DiffUtil is working out the difference between two versions on a background thread.
+    private boolean diffing;
+
+    //DiffUtil runs on its own thread rather than AsyncTask's shared serial executor, so that a long diff
+    //doesn't hold up the app's other AsyncTasks (and they don't hold up the diff). Diffs are made one at a
+    //time anyway (see "diffing"), so one thread is enough for every adapter.
+    private static final Executor DIFF_EXECUTOR = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "searches-diff");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    //While the user is selecting searches (see startSelection), "selection" has a bit set for every selected
+    //position of the displayed list, so even selecting every one of thousands of rows takes a few kilobytes.
+    //The bits are moved along as rows are inserted and removed. It is null when not selecting.
+    private BitSet selection;
+    private SelectionListener selectionListener;
+
+    //The rows' TagViews take their text layouts from "layoutCache". As the list scrolls, the layouts of the
+    //next PREFETCH_DISTANCE rows in the direction of scrolling are built ahead of time on the cache's
+    //background thread; [prefetchStart, prefetchEnd) are the positions last asked for, and lastBoundPosition
+    //tells which way the list is scrolling.
+    private static final int PREFETCH_DISTANCE = 40;
+    private final TagLayoutCache layoutCache;
+    private final List<String> prefetchTags = new ArrayList<>(PREFETCH_DISTANCE);
+    private int prefetchStart;
+    private int prefetchEnd;
+    private int lastBoundPosition;
 
     //constructor
-    public SearchesAdapter(List<String> tags, View.OnClickListener clickListener, View.OnLongClickListener longClickListener){
-        this.tags = tags;
+    public SearchesAdapter(SearchModel.Snapshot snapshot, TagLayoutCache layoutCache,
+                           View.OnClickListener clickListener, View.OnLongClickListener longClickListener){
+        this.snapshot = snapshot;
+        this.latestSnapshot = snapshot;
+        this.layoutCache = layoutCache;
         this.clickListener = clickListener;
         this.longClickListener = longClickListener;
+
+        //Every tag gets an ID derived from its text (see getItemId), so the RecyclerView can keep track of
+        //items as they move and reuse their views.
+        setHasStableIds(true);
+    }
+
+
+
+
+    //The setSnapshot method displays "next", a version of the SearchModel, unless a newer version is
+    //already displayed (or on its way).
+    //If "next" was made straight from the displayed version (the usual case: one change at a time on the main
+    //thread, or one chunk at a time from the TagLoader), the RecyclerView is told exactly which ranges were
+    //inserted and removed, so only those items have to be bound and laid out.
+    //Otherwise (e.g. several versions were published at once by another thread) the difference is computed
+    //by DiffUtil on a background thread, which can read both versions safely since they never change, and
+    //applied as one batch of insert, remove and move notifications.
+    public void setSnapshot(SearchModel.Snapshot next){
+        if (next.getVersion() <= latestSnapshot.getVersion())
+            return;
+        latestSnapshot = next;
+        if (!diffing)
+            showLatestSnapshot();
+    }
+
+
+    private void showLatestSnapshot(){
+        final SearchModel.Snapshot previous = snapshot;
+        final SearchModel.Snapshot next = latestSnapshot;
+        if (next == previous)
+            return;
+
+        //While filtering, the snapshot's positions aren't the displayed positions. Deleted tags are taken
+        //out of the matches; new tags are shown when the filter is run again.
+        if (filteredTags != null){
+            snapshot = next;
+            removeDeletedMatches(previous, next);
+            return;
+        }
+
+        if (next.getPreviousVersion() == previous.getVersion()){
+            snapshot = next;
+            for (int run = 0; run < next.getRunCount(); ++run){
+                if (next.isRunInserted(run)){
+                    selectionInserted(next.getRunStart(run), next.getRunLength(run));
+                    notifyItemRangeInserted(next.getRunStart(run), next.getRunLength(run));
+                }
+                else {
+                    selectionRemoved(next.getRunStart(run), next.getRunLength(run));
+                    notifyItemRangeRemoved(next.getRunStart(run), next.getRunLength(run));
+                }
+            }
+            return;
+        }
+
+        //If the list was empty (e.g. the searches were loaded all at once by another thread) there is nothing
+        //to diff.
+        if (previous.size() == 0){
+            snapshot = next;
+            notifyItemRangeInserted(0, next.size());
+            return;
+        }
+
+        diffing = true;
+        new AsyncTask<Void, Void, DiffUtil.DiffResult>() {
+            @Override
+            protected DiffUtil.DiffResult doInBackground(Void... params) {
+                return DiffUtil.calculateDiff(new TagDiffCallback(toList(previous), toList(next)), true);
+            }
+
+            @Override
+            protected void onPostExecute(DiffUtil.DiffResult diff) {
+                diffing = false;
+                snapshot = next;
+                resetPrefetch();
+
+                //The diff is of the whole list, which isn't what is displayed while filtering.
+                if (filteredTags != null)
+                    removeDeletedMatches(previous, next);
+                else {
+                    //the selected positions can't be followed through a diff's moves.
+                    clearSelection();
+                    diff.dispatchUpdatesTo(SearchesAdapter.this);
+                }
+
+                //a newer version may have arrived in the meantime.
+                showLatestSnapshot();
+            }
+        }.executeOnExecutor(DIFF_EXECUTOR);
+    }
+
+
+    //Removes the displayed matches that are no longer in "next", which follows "previous". Neighbouring
+    //matches are removed together, with one range notification.
+    private void removeDeletedMatches(SearchModel.Snapshot previous, SearchModel.Snapshot next){
+        if (next.getPreviousVersion() == previous.getVersion() && next.getRemovedCount() == 0)
+            return;
+        int i = filteredTags.size() - 1;
+        while (i >= 0){
+            if (next.contains(filteredTags.get(i))){
+                --i;
+                continue;
+            }
+            int last = i;
+            while (i >= 0 && !next.contains(filteredTags.get(i)))
+                --i;
+            filteredTags.subList(i + 1, last + 1).clear();
+            selectionRemoved(i + 1, last - i);
+            notifyItemRangeRemoved(i + 1, last - i);
+        }
+    }
+
+
+    private static List<String> toList(SearchModel.Snapshot snapshot){
+        List<String> tags = new ArrayList<>(snapshot.size());
+        for (String tag : snapshot)
+            tags.add(tag);
+        return tags;
+    }
+
+
+    //The setFilteredTags method displays only "matches" (which the adapter may change), or every tag if
+    //"matches" is null. The whole list is replaced, so the RecyclerView is told that everything changed;
+    //the stable IDs let it keep the views of tags that are still displayed.
+    //It returns the list of matches displayed until now (or null), which the adapter no longer uses, so that
+    //it can be handed back to the TagFilter.
+    public List<String> setFilteredTags(List<String> matches){
+        List<String> previous = filteredTags;
+        filteredTags = matches;
+        resetPrefetch();
+        clearSelection();
+        notifyDataSetChanged();
+        return previous;
+    }
+
+
+    //Returns the alphabetical sections of the displayed tags, or null while filtering (the matches aren't
+    //divided into sections).
+    public TagSections getSections(){
+        return filteredTags != null ? null : snapshot.getSections();
+    }
+
+
+    //Returns true if only the tags matching a filter are displayed.
+    public boolean isFiltered(){
+        return filteredTags != null;
+    }
+
+
+    //The startSelection method starts selecting rows, with the row showing "tag" selected. While selecting,
+    //the rows are shown activated (see list_item_background.xml) and "listener" is told how many are
+    //selected every time that changes, including when selected searches are deleted; the count drops to 0
+    //when the selection is cleared (e.g. because the list was filtered).
+    public void startSelection(String tag, SelectionListener listener){
+        selection = new BitSet();
+        selectionListener = listener;
+        int position = filteredTags != null ? filteredTags.indexOf(tag) : snapshot.indexOf(tag);
+        if (position >= 0)
+            toggleSelection(position);
+    }
+
+
+    //Returns true while rows are being selected.
+    public boolean isSelecting(){
+        return selection != null;
+    }
+
+
+    //Selects the row at "position" if it isn't selected, or unselects it if it is.
+    public void toggleSelection(int position){
+        selection.flip(position);
+        notifyItemChanged(position, SELECTION_PAYLOAD);
+        selectionListener.onSelectionChanged(selection.cardinality());
+    }
+
+
+    //Returns the number of selected rows.
+    public int getSelectedCount(){
+        return selection != null ? selection.cardinality() : 0;
+    }
+
+
+    //Returns the tags of the selected rows, in the order they are displayed.
+    public List<String> getSelectedTags(){
+        List<String> tags = new ArrayList<>(getSelectedCount());
+        if (selection != null){
+            for (int position = selection.nextSetBit(0); position >= 0; position = selection.nextSetBit(position + 1))
+                tags.add(getTag(position));
+        }
+        return tags;
+    }
+
+
+    //Stops selecting rows, and shows the selected ones as unselected again.
+    public void endSelection(){
+        if (selection == null)
+            return;
+        notifySelectionChanged();
+        selection = null;
+        selectionListener = null;
+    }
+
+
+    //Unselects every row, e.g. when the positions are about to mean other tags.
+    private void clearSelection(){
+        if (selection == null || selection.isEmpty())
+            return;
+        notifySelectionChanged();
+        selection.clear();
+        selectionListener.onSelectionChanged(0);
+    }
+
+
+    //Tells the RecyclerView to update the selected rows' activated state, a range of neighbouring rows at a time.
+    private void notifySelectionChanged(){
+        int start = selection.nextSetBit(0);
+        while (start >= 0){
+            int end = selection.nextClearBit(start);
+            notifyItemRangeChanged(start, end - start, SELECTION_PAYLOAD);
+            start = selection.nextSetBit(end);
+        }
+    }
+
+
+    //Moves the selected positions from "start" on down by "count" rows, which were inserted at "start".
+    private void selectionInserted(int start, int count){
+        if (selection == null || selection.nextSetBit(start) < 0)
+            return;
+        BitSet moved = selection.get(start, selection.length());
+        selection.clear(start, selection.length());
+        for (int i = moved.nextSetBit(0); i >= 0; i = moved.nextSetBit(i + 1))
+            selection.set(start + count + i);
+    }
+
+
+    //Forgets the selected positions among the "count" rows removed from "start" and moves the positions
+    //after them up by "count".
+    private void selectionRemoved(int start, int count){
+        if (selection == null || selection.nextSetBit(start) < 0)
+            return;
+        int selectedCount = selection.cardinality();
+        BitSet moved = selection.get(start + count, Math.max(start + count, selection.length()));
+        selection.clear(start, selection.length());
+        for (int i = moved.nextSetBit(0); i >= 0; i = moved.nextSetBit(i + 1))
+            selection.set(start + i);
+        if (selection.cardinality() != selectedCount)
+            selectionListener.onSelectionChanged(selection.cardinality());
+    }
+
+
+    //TagDiffCallback tells DiffUtil how to compare two sorted lists of tags. A row only shows its tag, so
+    //two rows with the same tag have the same contents.
+    private static class TagDiffCallback extends DiffUtil.Callback {
+
+        private final List<String> oldTags;
+        private final List<String> newTags;
+
+        TagDiffCallback(List<String> oldTags, List<String> newTags){
+            this.oldTags = oldTags;
+            this.newTags = newTags;
+        }
+
+        @Override
+        public int getOldListSize() {
+            return oldTags.size();
+        }
+
+        @Override
+        public int getNewListSize() {
+            return newTags.size();
+        }
+
+        @Override
+        public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+            return oldTags.get(oldItemPosition).equals(newTags.get(newItemPosition));
+        }
+
+        @Override
+        public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+            return true;
+        }
     }
 
 
@@ -43,20 +381,20 @@ public class SearchesAdapter extends RecyclerView.Adapter<SearchesAdapter.ViewHo
     //For this app we define a Recycler.ViewHolder called "ViewHolder"
     public static class ViewHolder extends RecyclerView.ViewHolder{
 
-        public final TextView textView;
+        public final TagView tagView;
 
         //The ViewHolder constructor receives a View object and listens for that View's OnClick/OnLongClick events.
         //The View represents an item in the RecyclerView, which is passed to the superclass's constructor.
         public ViewHolder(View itemView, View.OnClickListener clickListener, View.OnLongClickListener longClickListener){
 
             super(itemView);
-            //First we store a reference to the TextView for the item.
-            textView = (TextView) itemView.findViewById(R.id.textView);
+            //First we store a reference to the TagView for the item.
+            tagView = (TagView) itemView.findViewById(R.id.tagView);
 
-            //Then we register the TextView's OnClickListener which displays the search results for that TextView's tag.
+            //Then we register the TagView's OnClickListener which displays the search results for that TagView's tag.
             itemView.setOnClickListener(clickListener);
-            //Then we register the TextView's OnLongClickListener, which opens the Share,Edit,Delete dialog
-            //for that TextView's tag.
+            //Then we register the TagView's OnLongClickListener, which opens the Share,Edit,Delete dialog
+            //for that TagView's tag.
             itemView.setOnLongClickListener(longClickListener);
         }
     }
@@ -71,12 +409,15 @@ public class SearchesAdapter extends RecyclerView.Adapter<SearchesAdapter.ViewHo
     //This new ViewHolder object is returned to the RecyclerView for display.
     @Override
     public ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+        long start = Metrics.start();
 
         //inflate the list_item layout
         View view = LayoutInflater.from(parent.getContext()).inflate(R.layout.list_item,parent,false);
 
         //create a new ViewHolder for current item.
-        return (new ViewHolder(view, clickListener, longClickListener));
+        ViewHolder holder = new ViewHolder(view, clickListener, longClickListener);
+        Metrics.CREATE_VIEW_HOLDER.record(start);
+        return holder;
     }
 
 
@@ -85,23 +426,118 @@ public class SearchesAdapter extends RecyclerView.Adapter<SearchesAdapter.ViewHo
     //The RecyclerView calls its Adapter's onBindViewHolder method to set the data thats displayed
     //for a particular RecyclerView item. The method receives:
     //1) an object of our custom subclass of RecyclerView.ViewHolder containing the Views in which data
-    //will be displayed. In this case its one TextView.
+    //will be displayed. In this case its one TagView.
     //2) an int representing the item's position in the RecyclerView.
     @Override
     public void onBindViewHolder(ViewHolder holder, int position) {
+        long start = Metrics.start();
+
+        //Here we set the TagView's text to the tag at the given position in the displayed snapshot.
+        //Its layout has usually been prefetched already. Once the layouts are cached, binding a row doesn't
+        //allocate anything (see HotPathAllocationTest), so scrolling doesn't cause garbage collections.
+        holder.tagView.setText(getTag(position), layoutCache);
+        holder.itemView.setActivated(isSelected(position));
+        prefetch(position);
+        Metrics.BIND_VIEW_HOLDER.record(start);
+    }
+
+
+    //When only the selection changed, the row keeps its text and just shows whether it is selected.
+    @Override
+    public void onBindViewHolder(ViewHolder holder, int position, List<Object> payloads) {
+        if (!payloads.isEmpty() && onlySelectionChanged(payloads)) {
+            holder.itemView.setActivated(isSelected(position));
+            return;
+        }
+        onBindViewHolder(holder, position);
+    }
+
+
+    private static boolean onlySelectionChanged(List<Object> payloads) {
+        for (int i = 0; i < payloads.size(); ++i) {
+            if (payloads.get(i) != SELECTION_PAYLOAD)
+                return false;
+        }
+        return true;
+    }
+
+
+    private boolean isSelected(int position) {
+        return selection != null && selection.get(position);
+    }
+
+
+    //The prefetch method asks the TagLayoutCache to build the layouts of the rows after "position" (or before
+    //it if the list is scrolling up) once the rows asked for last time are half used up.
+    //It is package-private so that tests can simulate binds without views.
+    void prefetch(int position){
+        boolean down = position >= lastBoundPosition;
+        lastBoundPosition = position;
+
+        int start;
+        int end;
+        if (down){
+            if (position >= prefetchStart && position + PREFETCH_DISTANCE / 2 < prefetchEnd)
+                return;
+            start = position + 1;
+            end = Math.min(getItemCount(), start + PREFETCH_DISTANCE);
+        }
+        else {
+            if (position < prefetchEnd && position - PREFETCH_DISTANCE / 2 >= prefetchStart)
+                return;
+            end = position;
+            start = Math.max(0, end - PREFETCH_DISTANCE);
+        }
+
+        prefetchStart = start;
+        prefetchEnd = end;
+        prefetchTags.clear();
+        for (int i = start; i < end; ++i)
+            prefetchTags.add(getTag(i));
+        layoutCache.prefetch(prefetchTags);
+    }
+
 
-        //Here we set the TextView's text to the String in "tags" List at the given position.
-        holder.textView.setText(tags.get(position));
+    //Makes the next bind prefetch again, since the positions asked for last time now hold other tags.
+    private void resetPrefetch(){
+        prefetchStart = 0;
+        prefetchEnd = 0;
     }
 
 
 
 
     //The RecyclerView calls its Adapter's getItemCount method to obtain the total number of items that the
-    //RecyclerView needs to display. In our case it is the number of items in our "tags" List.
+    //RecyclerView needs to display. In our case it is the number of tags in the displayed snapshot, or the
+    //number of matching tags while filtering.
     @Override
     public int getItemCount() {
-        return tags.size();
+        return filteredTags != null ? filteredTags.size() : snapshot.size();
+    }
+
+
+    //Returns the tag displayed at "position".
+    public String getTag(int position) {
+        return filteredTags != null ? filteredTags.get(position) : snapshot.get(position);
+    }
+
+
+
+    //With stable IDs enabled, the RecyclerView calls getItemId to identify the item at each position.
+    //The ID is a 64-bit FNV-1a hash of the tag, so a tag keeps the same ID wherever it moves in the list.
+    @Override
+    public long getItemId(int position) {
+        return stableId(getTag(position));
+    }
+
+
+    static long stableId(String tag) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < tag.length(); ++i) {
+            hash ^= tag.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
     }
 
 
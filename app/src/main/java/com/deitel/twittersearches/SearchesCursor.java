@@ -0,0 +1,158 @@
+package com.deitel.twittersearches;
+
+import android.database.AbstractCursor;
+import android.os.Bundle;
+
+//The SearchesCursor class is the Cursor returned by SearchesProvider. Its rows are a range of positions in a
+//SearchModel.Snapshot: since a snapshot never changes, the cursor doesn't have to copy its rows up front, and
+//it keeps showing the same rows however the searches change after the query.
+//
+//Only a window of WINDOW_SIZE rows is read from the snapshot at a time: moving outside it reads the next
+//window (or the previous one when moving backwards), at O(log n) per row. So a cursor takes the same small
+//amount of memory whether it covers ten searches or a hundred thousand.
+class SearchesCursor extends AbstractCursor {
+
+    static final int WINDOW_SIZE = 64;
+
+    //The columns a cursor can have, by their index in SearchesProvider.COLUMNS.
+    private static final int ID = 0;
+    private static final int TAG = 1;
+    private static final int QUERY = 2;
+
+    private final SearchModel.Snapshot snapshot;
+    private final int start;
+    private final int count;
+    private final String[] columnNames;
+    private final int[] columns;
+    private final Bundle extras;
+
+    //The rows [windowStart, windowStart + windowSize) of the cursor, read from the snapshot.
+    private final String[] tags = new String[WINDOW_SIZE];
+    private final String[] queries = new String[WINDOW_SIZE];
+    private int windowStart;
+    private int windowSize;
+
+
+    //constructor. The cursor's rows are the "count" tags from position "start" of "snapshot", with the
+    //columns named in "columnNames" (which must be some of SearchesProvider.COLUMNS).
+    SearchesCursor(SearchModel.Snapshot snapshot, int start, int count, String[] columnNames, Bundle extras) {
+        this.snapshot = snapshot;
+        this.start = start;
+        this.count = count;
+        this.columnNames = columnNames;
+        this.extras = extras;
+
+        columns = new int[columnNames.length];
+        for (int i = 0; i < columnNames.length; ++i) {
+            if (SearchesProvider._ID.equals(columnNames[i]))
+                columns[i] = ID;
+            else if (SearchesProvider.TAG.equals(columnNames[i]))
+                columns[i] = TAG;
+            else if (SearchesProvider.QUERY.equals(columnNames[i]))
+                columns[i] = QUERY;
+            else
+                throw new IllegalArgumentException("Unknown column: " + columnNames[i]);
+        }
+    }
+
+
+    @Override
+    public int getCount() {
+        return count;
+    }
+
+
+    @Override
+    public String[] getColumnNames() {
+        return columnNames;
+    }
+
+
+    @Override
+    public Bundle getExtras() {
+        return extras;
+    }
+
+
+    //onMove reads the window containing "newPosition" if the current window doesn't.
+    @Override
+    public boolean onMove(int oldPosition, int newPosition) {
+        if (newPosition < windowStart || newPosition >= windowStart + windowSize) {
+            //when moving backwards, the window ends at newPosition rather than starting there.
+            int first = newPosition < oldPosition ? Math.max(0, newPosition - WINDOW_SIZE + 1) : newPosition;
+            readWindow(first);
+        }
+        return true;
+    }
+
+
+    @Override
+    public String getString(int column) {
+        checkPosition();
+        int row = getPosition() - windowStart;
+        switch (columns[column]) {
+            case ID:
+                return Long.toString(SearchesAdapter.stableId(tags[row]));
+            case TAG:
+                return tags[row];
+            default:
+                return queries[row];
+        }
+    }
+
+
+    @Override
+    public long getLong(int column) {
+        checkPosition();
+        if (columns[column] == ID)
+            return SearchesAdapter.stableId(tags[getPosition() - windowStart]);
+        return Long.parseLong(getString(column));
+    }
+
+
+    @Override
+    public int getInt(int column) {
+        return (int) getLong(column);
+    }
+
+
+    @Override
+    public short getShort(int column) {
+        return (short) getLong(column);
+    }
+
+
+    @Override
+    public float getFloat(int column) {
+        return Float.parseFloat(getString(column));
+    }
+
+
+    @Override
+    public double getDouble(int column) {
+        return Double.parseDouble(getString(column));
+    }
+
+
+    @Override
+    public int getType(int column) {
+        return columns[column] == ID ? FIELD_TYPE_INTEGER : FIELD_TYPE_STRING;
+    }
+
+
+    @Override
+    public boolean isNull(int column) {
+        return getString(column) == null;
+    }
+
+
+
+    private void readWindow(int first) {
+        windowStart = first;
+        windowSize = Math.min(WINDOW_SIZE, count - first);
+        for (int i = 0; i < windowSize; ++i) {
+            tags[i] = snapshot.get(start + first + i);
+            queries[i] = snapshot.getQuery(tags[i]);
+        }
+    }
+}
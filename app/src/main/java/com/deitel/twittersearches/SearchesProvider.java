@@ -0,0 +1,195 @@
+package com.deitel.twittersearches;
+
+import android.content.ContentProvider;
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.UriMatcher;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Bundle;
+import android.provider.BaseColumns;
+
+import java.util.List;
+
+//The SearchesProvider class lets other apps (launchers, widgets, share targets) read the user's saved
+//searches, sorted by tag, without loading them all:
+//- content://com.deitel.twittersearches.searches/searches lists the searches. The selection PREFIX_SELECTION
+//  with an argument such as "java%" lists only the tags starting with "java" (ignoring case). The argument
+//  must end with "%"; any other "%" or "_" in it is matched as it is, not as a wildcard.
+//- The query parameters "offset" and "limit" page through the list, e.g. ...searches?offset=200&limit=100.
+//  The cursor's extras hold the number of searches matching the selection (EXTRA_TOTAL_COUNT).
+//- content://com.deitel.twittersearches.searches/searches/<tag> is a single search (see uriFor).
+//
+//Queries read the app's SearchModel: they take its current snapshot without locking, and the cursor reads
+//its rows from the snapshot a window at a time (see SearchesCursor), so a query takes the same small amount
+//of memory however many searches there are. Finding a prefix or an offset is O(log n).
+//
+//When searches are saved, edited or deleted, only the URIs of those searches are notified, so an observer of
+//a single search isn't disturbed by changes to the others (an observer of the whole list still hears about
+//every change). A change to more than MAX_ITEM_NOTIFICATIONS searches at once (e.g. an import) notifies the
+//list's URI instead.
+//
+//The searches can only be changed through the app, so insert, update and delete aren't supported. Other apps
+//need the READ_SEARCHES permission (see AndroidManifest.xml).
+public class SearchesProvider extends ContentProvider {
+
+    public static final String AUTHORITY = "com.deitel.twittersearches.searches";
+    public static final Uri CONTENT_URI = Uri.parse("content://" + AUTHORITY + "/searches");
+
+    public static final String CONTENT_TYPE = ContentResolver.CURSOR_DIR_BASE_TYPE + "/vnd.com.deitel.twittersearches.search";
+    public static final String CONTENT_ITEM_TYPE = ContentResolver.CURSOR_ITEM_BASE_TYPE + "/vnd.com.deitel.twittersearches.search";
+
+    //The columns: a stable ID derived from the tag (see SearchesAdapter.getItemId), the tag and the query.
+    public static final String _ID = BaseColumns._ID;
+    public static final String TAG = "tag";
+    public static final String QUERY = "query";
+    static final String[] COLUMNS = {_ID, TAG, QUERY};
+
+    //The only selection supported: tags starting with a prefix.
+    public static final String PREFIX_SELECTION = TAG + " LIKE ?";
+
+    //The query parameters that page through the searches.
+    public static final String PARAM_OFFSET = "offset";
+    public static final String PARAM_LIMIT = "limit";
+
+    //The cursor extra holding the number of searches matching the selection, before paging.
+    public static final String EXTRA_TOTAL_COUNT = "total_count";
+
+    private static final int MAX_ITEM_NOTIFICATIONS = 32;
+
+    private static final int SEARCHES = 1;
+    private static final int SEARCH = 2;
+    private static final UriMatcher URI_MATCHER = new UriMatcher(UriMatcher.NO_MATCH);
+
+    static {
+        URI_MATCHER.addURI(AUTHORITY, "searches", SEARCHES);
+        URI_MATCHER.addURI(AUTHORITY, "searches/*", SEARCH);
+    }
+
+
+    //Returns the URI of the search with "tag".
+    public static Uri uriFor(String tag) {
+        return CONTENT_URI.buildUpon().appendPath(tag).build();
+    }
+
+
+    //onCreate is called on the main thread when the app starts, so it only starts listening for changes; the
+    //searches are loaded by the first query.
+    @Override
+    public boolean onCreate() {
+        SearchStores.getModel().addListener(changeListener);
+        return true;
+    }
+
+
+    @Override
+    public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs,
+                        String sortOrder) {
+        if (sortOrder != null && !sortOrder.equals(TAG) && !sortOrder.equalsIgnoreCase(TAG + " ASC"))
+            throw new IllegalArgumentException("Searches are always sorted by tag: " + sortOrder);
+
+        SearchModel.Snapshot snapshot = SearchStores.getLoadedModel(getContext()).snapshot();
+        int start;
+        int end;
+        switch (URI_MATCHER.match(uri)) {
+            case SEARCHES:
+                if (selection == null) {
+                    start = 0;
+                    end = snapshot.size();
+                }
+                else if (PREFIX_SELECTION.equals(selection) && selectionArgs != null && selectionArgs.length == 1
+                        && selectionArgs[0].endsWith("%")) {
+                    String prefix = selectionArgs[0].substring(0, selectionArgs[0].length() - 1);
+                    start = snapshot.getPrefixStart(prefix);
+                    end = snapshot.getPrefixEnd(prefix);
+                }
+                else
+                    throw new IllegalArgumentException("Unsupported selection: " + selection);
+                break;
+            case SEARCH:
+                int position = snapshot.indexOf(uri.getLastPathSegment());
+                start = Math.max(position, 0);
+                end = position + 1;
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown URI: " + uri);
+        }
+
+        //page through the matching searches.
+        int offset = parameter(uri, PARAM_OFFSET, 0);
+        int limit = parameter(uri, PARAM_LIMIT, Integer.MAX_VALUE);
+        int from = (int) Math.min(end, (long) start + offset);
+        int to = (int) Math.min(end, (long) from + limit);
+
+        Bundle extras = new Bundle();
+        extras.putInt(EXTRA_TOTAL_COUNT, end - start);
+        SearchesCursor cursor = new SearchesCursor(snapshot, from, to - from,
+                projection != null ? projection : COLUMNS, extras);
+        cursor.setNotificationUri(getContext().getContentResolver(), uri);
+        return cursor;
+    }
+
+
+    @Override
+    public String getType(Uri uri) {
+        switch (URI_MATCHER.match(uri)) {
+            case SEARCHES:
+                return CONTENT_TYPE;
+            case SEARCH:
+                return CONTENT_ITEM_TYPE;
+            default:
+                return null;
+        }
+    }
+
+
+    @Override
+    public Uri insert(Uri uri, ContentValues values) {
+        throw new UnsupportedOperationException("Searches can only be saved in the app");
+    }
+
+
+    @Override
+    public int delete(Uri uri, String selection, String[] selectionArgs) {
+        throw new UnsupportedOperationException("Searches can only be deleted in the app");
+    }
+
+
+    @Override
+    public int update(Uri uri, ContentValues values, String selection, String[] selectionArgs) {
+        throw new UnsupportedOperationException("Searches can only be edited in the app");
+    }
+
+
+
+    //changeListener notifies the URIs of the searches changed in the app.
+    private final SearchModel.Listener changeListener = new SearchModel.Listener() {
+        @Override
+        public void onSearchesChanged(SearchModel.Snapshot snapshot, List<String> changedTags) {
+            ContentResolver resolver = getContext().getContentResolver();
+            if (changedTags.size() > MAX_ITEM_NOTIFICATIONS) {
+                resolver.notifyChange(CONTENT_URI, null, false);
+                return;
+            }
+            for (String tag : changedTags)
+                resolver.notifyChange(uriFor(tag), null, false);
+        }
+    };
+
+
+    //Returns the value of the query parameter "name", or "defaultValue" if there is none.
+    private static int parameter(Uri uri, String name, int defaultValue) {
+        String value = uri.getQueryParameter(name);
+        if (value == null)
+            return defaultValue;
+        try {
+            int number = Integer.parseInt(value);
+            if (number >= 0)
+                return number;
+        }
+        catch (NumberFormatException e) {
+            //reported below.
+        }
+        throw new IllegalArgumentException("Invalid " + name + ": " + value);
+    }
+}
@@ -0,0 +1,107 @@
+package com.deitel.twittersearches;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.Typeface;
+import android.support.v4.content.ContextCompat;
+import android.support.v7.widget.RecyclerView;
+import android.util.TypedValue;
+import android.view.View;
+
+//The SectionHeaderDecoration class draws the alphabetical section headers ("A", "B", ... see TagSections)
+//above the first tag of each section, and keeps the header of the section at the top of the list stuck to
+//the top until the next header pushes it out of the way.
+//Like ItemDivider it is a RecyclerView.ItemDecoration: the headers are drawn straight onto the Canvas with
+//a Paint, so no header views are inflated or bound, and nothing is allocated while the list scrolls.
+//While the list is filtered there are no sections, so nothing is drawn.
+class SectionHeaderDecoration extends RecyclerView.ItemDecoration {
+
+    private static final int HEADER_HEIGHT_DP = 32;
+    private static final int TEXT_SIZE_SP = 14;
+
+    private final SearchesAdapter adapter;
+    private final int headerHeight;
+    private final Paint textPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint backgroundPaint = new Paint();
+
+    //constructor. The headers use the app's primary colour on the list's background colour.
+    SectionHeaderDecoration(Context context, SearchesAdapter adapter) {
+        this.adapter = adapter;
+
+        headerHeight = Math.round(TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, HEADER_HEIGHT_DP,
+                context.getResources().getDisplayMetrics()));
+        textPaint.setTextSize(TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_SP, TEXT_SIZE_SP,
+                context.getResources().getDisplayMetrics()));
+        textPaint.setTypeface(Typeface.DEFAULT_BOLD);
+        textPaint.setColor(ContextCompat.getColor(context, R.color.colorPrimary));
+        backgroundPaint.setColor(ContextCompat.getColor(context, R.color.colorTaggedSearches));
+    }
+
+
+    //getItemOffsets leaves room for a header above the first tag of each section.
+    @Override
+    public void getItemOffsets(Rect outRect, View view, RecyclerView parent, RecyclerView.State state) {
+        TagSections sections = adapter.getSections();
+        int position = parent.getChildAdapterPosition(view);
+
+        if (sections != null && position != RecyclerView.NO_POSITION && sections.isHeaderPosition(position))
+            outRect.set(0, headerHeight, 0, 0);
+        else
+            outRect.set(0, 0, 0, 0);
+    }
+
+
+    //onDrawOver draws the headers over the items, so that the sticky header covers the items scrolled under it.
+    @Override
+    public void onDrawOver(Canvas c, RecyclerView parent, RecyclerView.State state) {
+        super.onDrawOver(c, parent, state);
+
+        TagSections sections = adapter.getSections();
+        if (sections == null || sections.size() == 0 || parent.getChildCount() == 0)
+            return;
+
+        int left = parent.getPaddingLeft();
+        int right = parent.getWidth() - parent.getPaddingRight();
+
+        //The sticky header shows the section of the first visible item. It is pushed up by the header of the
+        //next section once that one reaches it.
+        int stickyTop = 0;
+        int stickySection = -1;
+
+        for (int i = 0; i < parent.getChildCount(); ++i) {
+            View item = parent.getChildAt(i);
+            int position = parent.getChildAdapterPosition(item);
+            if (position == RecyclerView.NO_POSITION)
+                continue;
+
+            if (stickySection < 0)
+                stickySection = sections.getSectionForPosition(position);
+
+            if (sections.isHeaderPosition(position)) {
+                //The header sits in the space left above the item by getItemOffsets, and moves with the item
+                //while it is animated.
+                int top = item.getTop() - headerHeight + Math.round(item.getTranslationY());
+                if (i > 0 && top < headerHeight)
+                    stickyTop = Math.min(stickyTop, top - headerHeight);
+                drawHeader(c, sections.getLabel(sections.getSectionForPosition(position)), left, right, top);
+            }
+        }
+
+        if (stickySection >= 0) {
+            //use the label of the first section sharing this label, i.e. the one under the header.
+            while (stickySection > 0 && !sections.isHeaderSection(stickySection))
+                --stickySection;
+            drawHeader(c, sections.getLabel(stickySection), left, right, stickyTop);
+        }
+    }
+
+
+    //Draws one header with its top edge at "top": the list's background, with the label centred vertically.
+    private void drawHeader(Canvas c, String label, int left, int right, int top) {
+        c.drawRect(left, top, right, top + headerHeight, backgroundPaint);
+        float baseline = top + (headerHeight - textPaint.ascent() - textPaint.descent()) / 2f;
+        c.drawText(label, left, baseline, textPaint);
+    }
+}
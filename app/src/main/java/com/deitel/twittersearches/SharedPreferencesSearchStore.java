@@ -0,0 +1,86 @@
+package com.deitel.twittersearches;
+
+import android.content.SharedPreferences;
+
+import java.util.HashMap;
+import java.util.Map;
+
+//The SharedPreferencesSearchStore class is a SearchStore backed by a SharedPreferences file.
+//This is how the app originally saved its searches. Every apply rewrites the whole XML file, so it is
+//no longer the default store, but it is kept so that searches saved by older versions can be migrated
+//(see SearchStores).
+public class SharedPreferencesSearchStore implements SearchStore {
+
+    private final SharedPreferences preferences;
+
+    //constructor
+    public SharedPreferencesSearchStore(SharedPreferences preferences) {
+        this.preferences = preferences;
+    }
+
+    @Override
+    public String getString(String tag, String defValue) {
+        return preferences.getString(tag, defValue);
+    }
+
+    @Override
+    public boolean contains(String tag) {
+        return preferences.contains(tag);
+    }
+
+    //SharedPreferences.getAll returns values of any type, but this app only ever stores Strings.
+    @Override
+    public Map<String, String> getAll() {
+        Map<String, ?> all = preferences.getAll();
+        Map<String, String> searches = new HashMap<>(all.size());
+        for (Map.Entry<String, ?> entry : all.entrySet()) {
+            if (entry.getValue() instanceof String)
+                searches.put(entry.getKey(), (String) entry.getValue());
+        }
+        return searches;
+    }
+
+    @Override
+    public int size() {
+        return preferences.getAll().size();
+    }
+
+    @Override
+    public Editor edit() {
+        final SharedPreferences.Editor preferencesEditor = preferences.edit();
+
+        return new Editor() {
+            @Override
+            public Editor putString(String tag, String query) {
+                preferencesEditor.putString(tag, query);
+                return this;
+            }
+
+            @Override
+            public Editor remove(String tag) {
+                preferencesEditor.remove(tag);
+                return this;
+            }
+
+            @Override
+            public void apply() {
+                preferencesEditor.apply();
+            }
+        };
+    }
+
+    //apply already hands every change to SharedPreferences, which writes it out on its own.
+    @Override
+    public void flush() {
+    }
+
+    //SharedPreferences files are managed by the system, so there is nothing to close.
+    @Override
+    public void close() {
+    }
+
+    //Removes every search from the SharedPreferences file. Used once the searches have been migrated.
+    public void clear() {
+        preferences.edit().clear().apply();
+    }
+}
@@ -0,0 +1,373 @@
+package com.deitel.twittersearches;
+
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+//The SortedTagIndex class keeps the search tags sorted case-insensitively, the way the RecyclerView
+//displays them.
+//It is an order-statistic tree: a balanced (AVL) binary search tree in which every node also records the
+//size of its subtree. That lets it find the tag at a given position, and the position of a given tag,
+//in O(log n) as well as add, remove and look up tags in O(log n). A sorted ArrayList needs O(n) for
+//contains and remove, and re-sorting it after every add costs O(n log n).
+//
+//Tags that differ only in case (e.g. "Java" and "java") are both kept; they are ordered by
+//String.compareTo so that the order doesn't depend on the order in which they were added.
+//
+//The index also keeps its tags' alphabetical sections (see TagSections) up to date as tags are added and
+//removed, so the position of each section is always known without scanning the tags.
+//
+//Each tag can also carry its search's query (see put and getQuery). Queries are kept as UTF-8 bytes, which
+//take about half the memory of a String for the usual ASCII query, and are only decoded to a String by
+//getQuery. (They can't point into the SearchStore's own copy instead: LogSearchStore's SearchArena
+//overwrites and compacts its bytes, while a node must keep the query it was built with for as long as any
+//snapshot of the index uses it.)
+//The tree's nodes are never changed: adding or removing a tag builds new copies of the O(log n) nodes on
+//the path to it and shares every other node with the previous tree. That makes copying an index O(1), so
+//SearchModel can keep each version of the saved searches as an unchanging snapshot without copying them all.
+public class SortedTagIndex implements Iterable<String> {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    //The order in which tags are displayed: String.CASE_INSENSITIVE_ORDER, ties broken by compareTo.
+    public static final Comparator<String> ORDER = new Comparator<String>() {
+        @Override
+        public int compare(String a, String b) {
+            int result = String.CASE_INSENSITIVE_ORDER.compare(a, b);
+            return result != 0 ? result : a.compareTo(b);
+        }
+    };
+
+    //Nodes are never changed once they are built, so that copies of the index can share them (see the
+    //copy constructor). Adding or removing a tag builds new nodes along the path to it instead.
+    private static final class Node {
+        final String tag;
+        final byte[] query;  //UTF-8, or null if the tag was added without a query
+        final Node left;
+        final Node right;
+        final int height;
+        final int size;
+
+        Node(String tag, byte[] query, Node left, Node right) {
+            this.tag = tag;
+            this.query = query;
+            this.left = left;
+            this.right = right;
+            height = Math.max(height(left), height(right)) + 1;
+            size = size(left) + size(right) + 1;
+        }
+    }
+
+    private Node root;
+    private final TagSections sections = new TagSections();
+
+    //The put and remove methods report the position of the tag they changed through this field,
+    //since the recursive helpers already return the new subtree.
+    private int changedPosition;
+
+
+    //constructor for an empty index.
+    public SortedTagIndex() {
+    }
+
+
+    //constructor for a copy of "other". The copy shares all of other's tags rather than copying them, so it
+    //takes the same (short) time however many tags there are, and changing either index afterwards doesn't
+    //change the other one.
+    public SortedTagIndex(SortedTagIndex other) {
+        root = other.root;
+        sections.copyFrom(other.sections);
+    }
+
+
+    //Returns the number of tags in the index.
+    public int size() {
+        return size(root);
+    }
+
+
+    //Returns the alphabetical sections of the tags.
+    public TagSections getSections() {
+        return sections;
+    }
+
+
+    //Returns the tag at "position" in sorted order.
+    public String get(int position) {
+        if (position < 0 || position >= size())
+            throw new IndexOutOfBoundsException("position " + position + ", size " + size());
+
+        Node node = root;
+        while (true) {
+            int leftSize = size(node.left);
+            if (position < leftSize)
+                node = node.left;
+            else if (position > leftSize) {
+                position -= leftSize + 1;
+                node = node.right;
+            }
+            else
+                return node.tag;
+        }
+    }
+
+
+    //Returns the position of "tag" in sorted order, or -1 if it isn't in the index.
+    public int indexOf(String tag) {
+        int position = 0;
+        Node node = root;
+
+        while (node != null) {
+            int result = ORDER.compare(tag, node.tag);
+            if (result < 0)
+                node = node.left;
+            else if (result > 0) {
+                position += size(node.left) + 1;
+                node = node.right;
+            }
+            else
+                return position + size(node.left);
+        }
+        return -1;
+    }
+
+
+    //Returns true if "tag" is in the index.
+    public boolean contains(String tag) {
+        Node node = root;
+        while (node != null) {
+            int result = ORDER.compare(tag, node.tag);
+            if (result == 0)
+                return true;
+            node = result < 0 ? node.left : node.right;
+        }
+        return false;
+    }
+
+
+    //Returns the position of the first tag that starts with "prefix", ignoring case, or the position it would
+    //be inserted at if there is none. Since the tags are sorted case-insensitively, the tags starting with
+    //"prefix" are all next to each other, from prefixStart up to (but not including) prefixEnd.
+    public int prefixStart(String prefix) {
+        int position = 0;
+        Node node = root;
+        while (node != null) {
+            if (String.CASE_INSENSITIVE_ORDER.compare(node.tag, prefix) < 0) {
+                position += size(node.left) + 1;
+                node = node.right;
+            }
+            else
+                node = node.left;
+        }
+        return position;
+    }
+
+
+    //Returns the position after the last tag that starts with "prefix", ignoring case (see prefixStart).
+    public int prefixEnd(String prefix) {
+        int position = 0;
+        Node node = root;
+        while (node != null) {
+            if (String.CASE_INSENSITIVE_ORDER.compare(node.tag, prefix) < 0
+                    || node.tag.regionMatches(true, 0, prefix, 0, prefix.length())) {
+                position += size(node.left) + 1;
+                node = node.right;
+            }
+            else
+                node = node.left;
+        }
+        return position;
+    }
+
+
+    //Returns the query saved with "tag", or null if the tag isn't in the index or was added without one.
+    public String getQuery(String tag) {
+        Node node = root;
+        while (node != null) {
+            int result = ORDER.compare(tag, node.tag);
+            if (result == 0)
+                return node.query != null ? new String(node.query, UTF_8) : null;
+            node = result < 0 ? node.left : node.right;
+        }
+        return null;
+    }
+
+
+    //Returns true if "tag" is in the index with "query", without decoding the saved query.
+    public boolean hasQuery(String tag, String query) {
+        Node node = root;
+        while (node != null) {
+            int result = ORDER.compare(tag, node.tag);
+            if (result == 0)
+                return node.query != null && Arrays.equals(node.query, query.getBytes(UTF_8));
+            node = result < 0 ? node.left : node.right;
+        }
+        return false;
+    }
+
+
+    //Adds "tag" and returns the position it was inserted at, or -1 if it was already in the index.
+    public int add(String tag) {
+        return insert(tag, null, false);
+    }
+
+
+    //Adds "tag" with "query", or replaces the query of "tag" if it is already in the index. Returns the
+    //position the tag was inserted at, or -1 if it was already in the index.
+    public int put(String tag, String query) {
+        return insert(tag, query != null ? query.getBytes(UTF_8) : null, true);
+    }
+
+
+    //Removes "tag" and returns the position it was removed from, or -1 if it wasn't in the index.
+    public int remove(String tag) {
+        changedPosition = -1;
+        root = delete(root, tag, 0);
+        if (changedPosition >= 0)
+            sections.remove(tag);
+        return changedPosition;
+    }
+
+
+    //Returns an Iterator over the tags in sorted order.
+    @Override
+    public Iterator<String> iterator() {
+        return new Iterator<String>() {
+            private final Deque<Node> path = new ArrayDeque<>();
+            private Node next = root;
+
+            @Override
+            public boolean hasNext() {
+                return next != null || !path.isEmpty();
+            }
+
+            @Override
+            public String next() {
+                while (next != null) {
+                    path.push(next);
+                    next = next.left;
+                }
+                if (path.isEmpty())
+                    throw new NoSuchElementException();
+
+                Node node = path.pop();
+                next = node.right;
+                return node.tag;
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+
+
+    private int insert(String tag, byte[] query, boolean replace) {
+        changedPosition = -1;
+        root = insert(root, tag, query, replace, 0);
+        if (changedPosition >= 0)
+            sections.add(tag);
+        return changedPosition;
+    }
+
+
+    //Returns the subtree rooted at "node", whose first tag is at position "offset", with "tag" inserted.
+    //If "tag" is already there its query is replaced if "replace" is true.
+    private Node insert(Node node, String tag, byte[] query, boolean replace, int offset) {
+        if (node == null) {
+            changedPosition = offset;
+            return new Node(tag, query, null, null);
+        }
+
+        int result = ORDER.compare(tag, node.tag);
+        if (result < 0) {
+            Node left = insert(node.left, tag, query, replace, offset);
+            return left == node.left ? node : balance(node.tag, node.query, left, node.right);
+        }
+        if (result > 0) {
+            Node right = insert(node.right, tag, query, replace, offset + size(node.left) + 1);
+            return right == node.right ? node : balance(node.tag, node.query, node.left, right);
+        }
+
+        //already in the index.
+        if (!replace || Arrays.equals(query, node.query))
+            return node;
+        return new Node(tag, query, node.left, node.right);
+    }
+
+
+    //Returns the subtree rooted at "node", whose first tag is at position "offset", without "tag".
+    private Node delete(Node node, String tag, int offset) {
+        if (node == null)
+            return null;
+
+        int result = ORDER.compare(tag, node.tag);
+        if (result < 0) {
+            Node left = delete(node.left, tag, offset);
+            return left == node.left ? node : balance(node.tag, node.query, left, node.right);
+        }
+        if (result > 0) {
+            Node right = delete(node.right, tag, offset + size(node.left) + 1);
+            return right == node.right ? node : balance(node.tag, node.query, node.left, right);
+        }
+
+        changedPosition = offset + size(node.left);
+        if (node.left == null)
+            return node.right;
+        if (node.right == null)
+            return node.left;
+
+        //replace the node with the smallest node of its right subtree.
+        Node successor = node.right;
+        while (successor.left != null)
+            successor = successor.left;
+        return balance(successor.tag, successor.query, node.left, deleteMin(node.right));
+    }
+
+
+    private static Node deleteMin(Node node) {
+        if (node.left == null)
+            return node.right;
+        return balance(node.tag, node.query, deleteMin(node.left), node.right);
+    }
+
+
+    //Returns a node for "tag" with the given subtrees, rotated to restore the AVL balance if one of them has
+    //become two levels taller than the other.
+    private static Node balance(String tag, byte[] query, Node left, Node right) {
+        int balance = height(left) - height(right);
+
+        if (balance > 1) {
+            if (height(left.left) < height(left.right)) {
+                Node middle = left.right;
+                return new Node(middle.tag, middle.query, new Node(left.tag, left.query, left.left, middle.left),
+                        new Node(tag, query, middle.right, right));
+            }
+            return new Node(left.tag, left.query, left.left, new Node(tag, query, left.right, right));
+        }
+        if (balance < -1) {
+            if (height(right.right) < height(right.left)) {
+                Node middle = right.left;
+                return new Node(middle.tag, middle.query, new Node(tag, query, left, middle.left),
+                        new Node(right.tag, right.query, middle.right, right.right));
+            }
+            return new Node(right.tag, right.query, new Node(tag, query, left, right.left), right.right);
+        }
+        return new Node(tag, query, left, right);
+    }
+
+
+    private static int height(Node node) {
+        return node != null ? node.height : 0;
+    }
+
+    private static int size(Node node) {
+        return node != null ? node.size : 0;
+    }
+}
@@ -0,0 +1,154 @@
+package com.deitel.twittersearches;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.MessageQueue;
+import android.view.View;
+import android.view.ViewTreeObserver;
+
+import java.util.ArrayList;
+import java.util.List;
+
+//The StartupScheduler class runs the startup work that MainActivity doesn't need for its first frame
+//after that frame, so that the user sees the screen sooner:
+//- afterFirstFrame tasks run (in the order they were added) as soon as the first frame has been drawn.
+//- whenIdle tasks run after those, one at a time, whenever the main thread has nothing else to do (a
+//  MessageQueue.IdleHandler), so they never hold up a frame or an input event that is waiting.
+//A task added once its turn has come is run at the next opportunity. Each task is recorded as a phase of
+//the StartupTrace, and the moment the first frame was drawn as StartupTrace.FIRST_FRAME.
+//
+//The first frame is detected by the first OnPreDrawListener call on the Activity's window: the message
+//posted from it runs once the traversal it belongs to has drawn the frame.
+//
+//A StartupScheduler must only be used on the main thread. cancel (e.g. from onDestroy) drops the tasks that
+//haven't run.
+class StartupScheduler implements MessageQueue.IdleHandler {
+
+    //Task is a named piece of deferred work.
+    private static class Task {
+        final String name;
+        final Runnable runnable;
+
+        Task(String name, Runnable runnable) {
+            this.name = name;
+            this.runnable = runnable;
+        }
+    }
+
+    private final View window;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final List<Task> afterFirstFrameTasks = new ArrayList<>();
+    private final List<Task> idleTasks = new ArrayList<>();
+
+    private boolean firstFrameDrawn;
+    private boolean idleHandlerAdded;
+    private boolean cancelled;
+
+    //constructor. "window" is a view of the Activity's window, e.g. its decor view.
+    StartupScheduler(View window) {
+        this.window = window;
+        window.getViewTreeObserver().addOnPreDrawListener(preDrawListener);
+    }
+
+
+    //Runs "task", called "name" in the StartupTrace, once the first frame has been drawn.
+    void afterFirstFrame(String name, Runnable task) {
+        if (cancelled)
+            return;
+        afterFirstFrameTasks.add(new Task(name, task));
+        if (firstFrameDrawn)
+            handler.post(firstFrameRunnable);
+    }
+
+
+    //Runs "task", called "name" in the StartupTrace, when the main thread is idle after the first frame.
+    void whenIdle(String name, Runnable task) {
+        if (cancelled)
+            return;
+        idleTasks.add(new Task(name, task));
+        if (firstFrameDrawn)
+            addIdleHandler();
+    }
+
+
+    //Returns true once the first frame has been drawn.
+    boolean isFirstFrameDrawn() {
+        return firstFrameDrawn;
+    }
+
+
+    //Drops the tasks that haven't run, and runs no more.
+    void cancel() {
+        cancelled = true;
+        afterFirstFrameTasks.clear();
+        idleTasks.clear();
+        handler.removeCallbacks(firstFrameRunnable);
+        if (window.getViewTreeObserver().isAlive())
+            window.getViewTreeObserver().removeOnPreDrawListener(preDrawListener);
+        if (idleHandlerAdded) {
+            Looper.myQueue().removeIdleHandler(this);
+            idleHandlerAdded = false;
+        }
+    }
+
+
+    //queueIdle is called by the main thread's MessageQueue when it has run out of messages. It runs one idle
+    //task and stays registered while there are more.
+    @Override
+    public boolean queueIdle() {
+        if (!idleTasks.isEmpty())
+            runTask(idleTasks.remove(0));
+        idleHandlerAdded = !idleTasks.isEmpty();
+        return idleHandlerAdded;
+    }
+
+
+
+    //preDrawListener is told when the first frame is about to be drawn.
+    private final ViewTreeObserver.OnPreDrawListener preDrawListener = new ViewTreeObserver.OnPreDrawListener() {
+        @Override
+        public boolean onPreDraw() {
+            window.getViewTreeObserver().removeOnPreDrawListener(this);
+            handler.post(firstFrameRunnable);
+            return true;
+        }
+    };
+
+
+    //firstFrameRunnable runs after the first frame: it records it, runs the afterFirstFrame tasks and then
+    //lets the idle tasks run.
+    private final Runnable firstFrameRunnable = new Runnable() {
+        @Override
+        public void run() {
+            if (cancelled)
+                return;
+            if (!firstFrameDrawn) {
+                firstFrameDrawn = true;
+                StartupTrace.mark(StartupTrace.FIRST_FRAME);
+            }
+            while (!afterFirstFrameTasks.isEmpty())
+                runTask(afterFirstFrameTasks.remove(0));
+            if (!idleTasks.isEmpty())
+                addIdleHandler();
+        }
+    };
+
+
+    private void addIdleHandler() {
+        if (idleHandlerAdded || cancelled)
+            return;
+        idleHandlerAdded = true;
+        Looper.myQueue().addIdleHandler(this);
+    }
+
+
+    private void runTask(Task task) {
+        StartupTrace.beginPhase(task.name);
+        try {
+            task.runnable.run();
+        }
+        finally {
+            StartupTrace.endPhase();
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package com.deitel.twittersearches;
+
+import android.os.Trace;
+
+import java.util.Locale;
+
+//The StartupTrace class records how long each phase of MainActivity's startup takes, from the start of
+//onCreate to the first frame and the first visible row, and then the work deferred until after the first
+//frame (see StartupScheduler). The phases can be viewed with the "Dump metrics" item of the debug menu.
+//
+//A phase is traced like this:
+//  StartupTrace.beginPhase("inflate views");
+//  ...
+//  StartupTrace.endPhase();
+//and a moment (such as the first frame) is recorded with mark. Phases don't nest. Each phase is also a
+//section of the system trace (android.os.Trace), so it shows up in systrace or Perfetto.
+//
+//Timestamps are System.nanoTime values, kept relative to the start of the trace. A trace holds at most
+//MAX_PHASES phases and ignores any after that, so recording never allocates. It is only written on the
+//main thread, but can be read from any thread.
+public final class StartupTrace {
+
+    //The moments marked by MainActivity.
+    public static final String FIRST_FRAME = "first frame";
+    public static final String FIRST_CHUNK = "first chunk of tags";
+    public static final String FIRST_ROW = "first visible row";
+
+    static final int MAX_PHASES = 48;
+
+    private static final String[] names = new String[MAX_PHASES];
+    private static final long[] startNanos = new long[MAX_PHASES];
+    private static final long[] endNanos = new long[MAX_PHASES];
+    private static int count;
+    private static long traceStartNanos;
+
+    //True while a phase begun with beginPhase hasn't ended.
+    private static boolean inPhase;
+
+    private StartupTrace() {
+    }
+
+
+    //Forgets the previous trace and starts a new one now. MainActivity calls this first thing in onCreate.
+    public static synchronized void start() {
+        if (inPhase)
+            Trace.endSection();
+        count = 0;
+        inPhase = false;
+        traceStartNanos = System.nanoTime();
+    }
+
+
+    //Begins the phase called "name", ending the current one (if any).
+    public static synchronized void beginPhase(String name) {
+        if (inPhase)
+            endPhase();
+        if (count == MAX_PHASES)
+            return;
+        names[count] = name;
+        startNanos[count] = System.nanoTime() - traceStartNanos;
+        endNanos[count] = -1;
+        ++count;
+        inPhase = true;
+        Trace.beginSection(name);
+    }
+
+
+    //Ends the current phase.
+    public static synchronized void endPhase() {
+        if (!inPhase)
+            return;
+        Trace.endSection();
+        endNanos[count - 1] = System.nanoTime() - traceStartNanos;
+        inPhase = false;
+    }
+
+
+    //Records the moment "name" (a phase that ends as it begins), e.g. FIRST_FRAME.
+    public static synchronized void mark(String name) {
+        if (inPhase)
+            endPhase();
+        if (count == MAX_PHASES)
+            return;
+        long now = System.nanoTime() - traceStartNanos;
+        names[count] = name;
+        startNanos[count] = now;
+        endNanos[count] = now;
+        ++count;
+    }
+
+
+    //Returns the number of phases recorded.
+    public static synchronized int getPhaseCount() {
+        return count;
+    }
+
+    public static synchronized String getPhaseName(int phase) {
+        return names[phase];
+    }
+
+    //Returns the time from the start of the trace to the start of "phase".
+    public static synchronized long getPhaseStartNanos(int phase) {
+        return startNanos[phase];
+    }
+
+    //Returns the time from the start of the trace to the end of "phase", or -1 if it hasn't ended.
+    public static synchronized long getPhaseEndNanos(int phase) {
+        return endNanos[phase];
+    }
+
+
+    //Returns the time from the start of the trace to the end of the first phase called "name", or -1 if
+    //there is none (yet).
+    public static synchronized long getElapsedNanos(String name) {
+        for (int phase = 0; phase < count; ++phase)
+            if (names[phase].equals(name))
+                return endNanos[phase];
+        return -1;
+    }
+
+
+    //Returns the phases as a table, with times in microseconds.
+    public static synchronized String dump() {
+        StringBuilder out = new StringBuilder();
+        out.append(String.format(Locale.US, "%-32s %9s %9s%n", "startup (microseconds)", "start", "duration"));
+        for (int phase = 0; phase < count; ++phase) {
+            out.append(String.format(Locale.US, "%-32s %9d ", names[phase], startNanos[phase] / 1000));
+            if (endNanos[phase] < 0)
+                out.append(String.format(Locale.US, "%9s%n", "-"));
+            else
+                out.append(String.format(Locale.US, "%9d%n", (endNanos[phase] - startNanos[phase]) / 1000));
+        }
+        if (count == MAX_PHASES)
+            out.append("(later phases weren't recorded)\n");
+        return out.toString();
+    }
+}
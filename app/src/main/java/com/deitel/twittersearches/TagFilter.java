@@ -0,0 +1,694 @@
+package com.deitel.twittersearches;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+
+//The TagFilter class finds the saved tags that contain the text typed so far, while the user types.
+//Tags that start with the text come first, followed by the tags that contain it further in; both groups
+//are in the same case-insensitive order as the list (SortedTagIndex.ORDER). Matching ignores case.
+//
+//To avoid scanning every tag on every keystroke, TagFilter keeps
+//  - a sorted array of every tag, in which the tags starting with the text form one contiguous range
+//    found by binary search, and
+//  - a bigram index: for every pair of adjacent (case-folded) characters, the sorted tags containing it.
+//    A tag can only contain the text if it contains every bigram of the text, so only the tags of the
+//    text's rarest bigram need to be checked.
+//When the user extends the text, the new matches are a subset of the previous ones, so they are narrowed
+//down from the previous result instead of being looked up again.
+//
+//If the text is a Twitter operator (e.g. "#java" or "from:someone") and a QueryIndex has been set, the
+//tags of the searches whose queries contain a matching token are listed after the tags themselves.
+//
+//All the filtering happens on a single background thread, which is also the only thread that touches the
+//index (add, remove and filter just queue work for it). Every call to filter supersedes the previous
+//one: filters that haven't started yet are skipped and results that are no longer wanted are dropped, so
+//fast typing never shows stale results.
+//
+//Filtering runs on every keystroke, so once it has warmed up it doesn't allocate, on either thread:
+//  - filter copies the text (e.g. the search box's Editable) into a buffer rather than making a String,
+//  - work is queued for the filter thread in an ArrayDeque, which (unlike an ExecutorService's queue)
+//    doesn't allocate a node per task,
+//  - the same two Runnables carry every filter and every result between the threads,
+//  - the filter thread keeps its working lists from one filter to the next, and its bigram table is keyed
+//    by ints rather than boxed Integers, and
+//  - a list of matches that is no longer displayed can be handed back with recycle to be filled again.
+//Only listing the searches whose queries contain an operator (see QueryIndex.findByPrefix) allocates.
+public class TagFilter {
+
+    //Callback receives the tags matching the latest filter text.
+    public interface Callback {
+        void onFiltered(List<String> matches);
+    }
+
+    //Callbacks are delivered through this Executor (the main thread in the app).
+    private final Executor callbackExecutor;
+
+    //Looks up searches by the tokens of their queries; may be null.
+    private volatile QueryIndex queryIndex;
+
+    //Incremented by every filter and cancel call; a filter only delivers its result if no later call was made.
+    private volatile int generation;
+
+    //The work queued for the filter thread, the filter waiting to run, the result waiting to be delivered and
+    //a list of matches handed back with recycle, all guarded by "lock". queuedFilters counts the filterJobs
+    //queued but not yet run; only the last of them runs the filter.
+    private final Object lock = new Object();
+    private final ArrayDeque<Runnable> work = new ArrayDeque<>();
+    private boolean shutDown;
+    private final StringBuilder pendingText = new StringBuilder();
+    private Callback pendingCallback;
+    private int pendingGeneration;
+    private int queuedFilters;
+    private Callback resultCallback;
+    private List<String> resultMatches;
+    private int resultGeneration;
+    private List<String> spareMatches;
+
+    //The fields below are only used on the filter thread.
+    private final SortedTags allTags = new SortedTags();
+    private final BigramTable bigrams = new BigramTable();
+    private final StringBuilder text = new StringBuilder();
+    private final StringBuilder lastText = new StringBuilder();
+    private boolean lastTextValid;
+    private List<String> prefixMatches = new ArrayList<>();
+    private List<String> otherMatches = new ArrayList<>();
+    private List<String> lastPrefixMatches = new ArrayList<>();
+    private List<String> lastOtherMatches = new ArrayList<>();
+    private final List<String> movedMatches = new ArrayList<>();
+    private final List<String> remainingMatches = new ArrayList<>();
+    private final List<String> queryMatches = new ArrayList<>();
+
+
+    //constructor. Results are delivered through "callbackExecutor".
+    public TagFilter(Executor callbackExecutor) {
+        this.callbackExecutor = callbackExecutor;
+
+        Thread filterThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                runQueuedWork();
+            }
+        }, "tag-filter");
+        filterThread.setDaemon(true);
+        filterThread.start();
+    }
+
+
+    //Sets the QueryIndex used to find searches whose queries contain an operator typed as the filter text.
+    public void setQueryIndex(QueryIndex queryIndex) {
+        this.queryIndex = queryIndex;
+    }
+
+
+    //Adds "tag" to the index.
+    public void add(final String tag) {
+        execute(new Runnable() {
+            @Override
+            public void run() {
+                index(tag);
+            }
+        });
+    }
+
+
+    //Adds several tags to the index. "tags" must not be changed afterwards.
+    public void addAll(final Collection<String> tags) {
+        execute(new Runnable() {
+            @Override
+            public void run() {
+                indexAll(tags);
+            }
+        });
+    }
+
+
+    //Removes "tag" from the index.
+    public void remove(final String tag) {
+        execute(new Runnable() {
+            @Override
+            public void run() {
+                unindex(tag);
+            }
+        });
+    }
+
+
+    //Removes several tags from the index. "tags" must not be changed afterwards.
+    public void removeAll(final Collection<String> tags) {
+        execute(new Runnable() {
+            @Override
+            public void run() {
+                for (String tag : tags)
+                    unindex(tag);
+            }
+        });
+    }
+
+
+    //Finds the tags matching "text" and passes them to "callback", unless filter or cancel is called again
+    //before the result is delivered. "text" is copied, so it may be changed (e.g. typed into) afterwards.
+    public void filter(CharSequence text, Callback callback) {
+        int filterGeneration = ++generation;
+        synchronized (lock) {
+            pendingText.setLength(0);
+            pendingText.append(text);
+            pendingCallback = callback;
+            pendingGeneration = filterGeneration;
+            ++queuedFilters;
+            queue(filterJob);
+        }
+    }
+
+
+    //Drops the result of any filter that hasn't been delivered yet.
+    public void cancel() {
+        ++generation;
+    }
+
+
+    //Hands back "matches", a list delivered to a Callback that is no longer used, so that a later filter can
+    //fill it instead of making a new one. The caller mustn't use it afterwards.
+    public void recycle(List<String> matches) {
+        synchronized (lock) {
+            spareMatches = matches;
+        }
+    }
+
+
+    //Stops the filter thread once the work already queued has been done.
+    public void shutdown() {
+        cancel();
+        synchronized (lock) {
+            shutDown = true;
+            lock.notifyAll();
+        }
+    }
+
+
+    //Waits until everything queued so far on the filter thread has run. Used by tests.
+    void awaitIdle() throws InterruptedException {
+        final CountDownLatch latch = new CountDownLatch(1);
+        execute(new Runnable() {
+            @Override
+            public void run() {
+                latch.countDown();
+            }
+        });
+        latch.await();
+    }
+
+
+
+    private void execute(Runnable job) {
+        synchronized (lock) {
+            queue(job);
+        }
+    }
+
+
+    //Queues "job" for the filter thread. Called while holding "lock".
+    private void queue(Runnable job) {
+        if (shutDown)
+            return;
+        work.add(job);
+        lock.notifyAll();
+    }
+
+
+    //The filter thread's loop: runs the queued work in order until shutdown is called.
+    private void runQueuedWork() {
+        while (true) {
+            Runnable job;
+            synchronized (lock) {
+                while (work.isEmpty() && !shutDown) {
+                    try {
+                        lock.wait();
+                    }
+                    catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                job = work.poll();
+                if (job == null)
+                    return;
+            }
+            job.run();
+        }
+    }
+
+
+    //Runs the latest filter on the filter thread.
+    private final Runnable filterJob = new Runnable() {
+        @Override
+        public void run() {
+            Callback callback;
+            int filterGeneration;
+            synchronized (lock) {
+                //a later keystroke has already been queued.
+                if (--queuedFilters > 0)
+                    return;
+                text.setLength(0);
+                text.append(pendingText);
+                callback = pendingCallback;
+                filterGeneration = pendingGeneration;
+                pendingCallback = null;
+            }
+            if (filterGeneration != generation)
+                return;
+
+            List<String> matches = takeSpareMatches();
+            match(text, matches);
+
+            synchronized (lock) {
+                //a result that was never delivered can be filled again.
+                if (resultMatches != null && spareMatches == null)
+                    spareMatches = resultMatches;
+                resultCallback = callback;
+                resultMatches = matches;
+                resultGeneration = filterGeneration;
+            }
+            callbackExecutor.execute(deliverJob);
+        }
+    };
+
+
+    //Delivers the latest result through the callbackExecutor.
+    private final Runnable deliverJob = new Runnable() {
+        @Override
+        public void run() {
+            Callback callback;
+            List<String> matches;
+            int filterGeneration;
+            synchronized (lock) {
+                callback = resultCallback;
+                matches = resultMatches;
+                filterGeneration = resultGeneration;
+                resultCallback = null;
+                resultMatches = null;
+            }
+            //an earlier deliverJob has already delivered it.
+            if (matches == null)
+                return;
+
+            if (filterGeneration == generation)
+                callback.onFiltered(matches);
+            else
+                recycle(matches);
+        }
+    };
+
+
+    private List<String> takeSpareMatches() {
+        List<String> matches;
+        synchronized (lock) {
+            matches = spareMatches;
+            spareMatches = null;
+        }
+        if (matches == null)
+            return new ArrayList<>();
+        matches.clear();
+        return matches;
+    }
+
+
+    //Adds the tags matching "text" to "matches": the ones that start with it followed by the ones that
+    //contain it. Only called on the filter thread.
+    private void match(CharSequence text, List<String> matches) {
+        //this filter's matches go in the lists the filter before last used.
+        List<String> swap = lastPrefixMatches;
+        lastPrefixMatches = prefixMatches;
+        prefixMatches = swap;
+        swap = lastOtherMatches;
+        lastOtherMatches = otherMatches;
+        otherMatches = swap;
+        prefixMatches.clear();
+        otherMatches.clear();
+
+        if (lastTextValid && startsWith(text, lastText)) {
+            //Narrow down the previous result. A tag that starts with the old text but not the new text
+            //may still contain the new text further in, so it moves to the other matches. Indexed loops
+            //don't create Iterators.
+            movedMatches.clear();
+            for (int i = 0; i < lastPrefixMatches.size(); ++i) {
+                String tag = lastPrefixMatches.get(i);
+                if (startsWith(tag, text))
+                    prefixMatches.add(tag);
+                else if (contains(tag, text))
+                    movedMatches.add(tag);
+            }
+            remainingMatches.clear();
+            for (int i = 0; i < lastOtherMatches.size(); ++i) {
+                String tag = lastOtherMatches.get(i);
+                if (contains(tag, text))
+                    remainingMatches.add(tag);
+            }
+            merge(movedMatches, remainingMatches, otherMatches);
+        }
+        else {
+            int first = allTags.lowerBound(text);
+            for (int i = first; i < allTags.size && startsWith(allTags.tags[i], text); ++i)
+                prefixMatches.add(allTags.tags[i]);
+
+            //Only the tags containing the text's rarest bigram can contain the text.
+            SortedTags candidates = allTags;
+            for (int i = 0; i + 1 < text.length(); ++i) {
+                SortedTags tags = bigrams.get(bigram(text, i));
+                if (tags == null || tags.size == 0) {
+                    candidates = null;
+                    break;
+                }
+                if (tags.size < candidates.size)
+                    candidates = tags;
+            }
+
+            if (candidates != null) {
+                for (int i = 0; i < candidates.size; ++i) {
+                    String tag = candidates.tags[i];
+                    if (!startsWith(tag, text) && contains(tag, text))
+                        otherMatches.add(tag);
+                }
+            }
+        }
+
+        lastText.setLength(0);
+        lastText.append(text);
+        lastTextValid = true;
+
+        for (int i = 0; i < prefixMatches.size(); ++i)
+            matches.add(prefixMatches.get(i));
+        for (int i = 0; i < otherMatches.size(); ++i)
+            matches.add(otherMatches.get(i));
+
+        QueryIndex index = queryIndex;
+        if (index != null && QueryTokenizer.isOperator(text)) {
+            //tags containing the text are already listed above.
+            queryMatches.clear();
+            for (String tag : index.findByPrefix(text.toString())) {
+                if (!contains(tag, text))
+                    queryMatches.add(tag);
+            }
+            Collections.sort(queryMatches, SortedTagIndex.ORDER);
+            matches.addAll(queryMatches);
+        }
+    }
+
+
+    private void index(String tag) {
+        if (!allTags.add(tag))
+            return;
+        lastTextValid = false;
+
+        for (int i = 0; i + 1 < tag.length(); ++i) {
+            int bigram = bigram(tag, i);
+            SortedTags tags = bigrams.get(bigram);
+            if (tags == null) {
+                tags = new SortedTags();
+                bigrams.put(bigram, tags);
+            }
+            tags.add(tag);
+        }
+    }
+
+
+    //Adds a batch of tags, e.g. one batch of an import. Adding them one at a time would shift the sorted
+    //arrays once per tag, which is quadratic over a large import, so the batch is sorted and merged into
+    //each array it touches in one pass.
+    private void indexAll(Collection<String> tags) {
+        List<String> added = new ArrayList<>(tags);
+        Collections.sort(added, SortedTagIndex.ORDER);
+        //drop repeated tags and tags already in the index.
+        int count = 0;
+        for (int i = 0; i < added.size(); ++i) {
+            String tag = added.get(i);
+            if ((count == 0 || !added.get(count - 1).equals(tag)) && !allTags.contains(tag))
+                added.set(count++, tag);
+        }
+        added.subList(count, added.size()).clear();
+        if (added.isEmpty())
+            return;
+        lastTextValid = false;
+        allTags.addAllSorted(added);
+
+        //the new tags containing each bigram, in order.
+        Map<SortedTags, List<String>> additions = new HashMap<>();
+        for (String tag : added) {
+            for (int i = 0; i + 1 < tag.length(); ++i) {
+                int bigram = bigram(tag, i);
+                SortedTags bigramTags = bigrams.get(bigram);
+                if (bigramTags == null) {
+                    bigramTags = new SortedTags();
+                    bigrams.put(bigram, bigramTags);
+                }
+                List<String> bigramAdded = additions.get(bigramTags);
+                if (bigramAdded == null) {
+                    bigramAdded = new ArrayList<>();
+                    additions.put(bigramTags, bigramAdded);
+                }
+                //a tag can contain the same bigram more than once.
+                if (bigramAdded.isEmpty() || bigramAdded.get(bigramAdded.size() - 1) != tag)
+                    bigramAdded.add(tag);
+            }
+        }
+        for (Map.Entry<SortedTags, List<String>> entry : additions.entrySet())
+            entry.getKey().addAllSorted(entry.getValue());
+    }
+
+
+    private void unindex(String tag) {
+        if (!allTags.remove(tag))
+            return;
+        lastTextValid = false;
+
+        int previous = -1;
+        for (int i = 0; i + 1 < tag.length(); ++i) {
+            int bigram = bigram(tag, i);
+            if (bigram == previous)
+                continue;
+            previous = bigram;
+            SortedTags tags = bigrams.get(bigram);
+            if (tags != null)
+                tags.remove(tag);
+        }
+    }
+
+
+    //Merges two lists sorted by SortedTagIndex.ORDER into "into".
+    private static void merge(List<String> a, List<String> b, List<String> into) {
+        int i = 0;
+        int j = 0;
+        while (i < a.size() && j < b.size()) {
+            if (SortedTagIndex.ORDER.compare(a.get(i), b.get(j)) <= 0)
+                into.add(a.get(i++));
+            else
+                into.add(b.get(j++));
+        }
+        while (i < a.size())
+            into.add(a.get(i++));
+        while (j < b.size())
+            into.add(b.get(j++));
+    }
+
+
+    //The bigram starting at "index", with both characters folded the way String.regionMatches ignores case.
+    private static int bigram(CharSequence s, int index) {
+        return (fold(s.charAt(index)) << 16) | fold(s.charAt(index + 1));
+    }
+
+    //Two characters are equal ignoring case (as String.regionMatches and CASE_INSENSITIVE_ORDER see them)
+    //exactly when their folded characters are equal.
+    private static char fold(char c) {
+        if (c < 0x80)
+            return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+        return Character.toLowerCase(Character.toUpperCase(c));
+    }
+
+    //Returns true if "s" starts with "prefix", ignoring case.
+    private static boolean startsWith(CharSequence s, CharSequence prefix) {
+        return regionMatches(s, 0, prefix);
+    }
+
+    //Returns true if "text" appears in "s" at "offset", ignoring case.
+    private static boolean regionMatches(CharSequence s, int offset, CharSequence text) {
+        if (offset + text.length() > s.length())
+            return false;
+        for (int i = 0; i < text.length(); ++i) {
+            if (fold(s.charAt(offset + i)) != fold(text.charAt(i)))
+                return false;
+        }
+        return true;
+    }
+
+    //The rest of the region is only compared where the first character already matches, which rules out most
+    //positions with a cheap comparison.
+    private static boolean contains(String tag, CharSequence text) {
+        char first = fold(text.charAt(0));
+        int last = tag.length() - text.length();
+        for (int i = 0; i <= last; ++i) {
+            if (fold(tag.charAt(i)) == first && regionMatches(tag, i, text))
+                return true;
+        }
+        return false;
+    }
+
+    //Compares "tag" with "text" the way String.CASE_INSENSITIVE_ORDER compares two Strings.
+    private static int compareIgnoringCase(String tag, CharSequence text) {
+        int length = Math.min(tag.length(), text.length());
+        for (int i = 0; i < length; ++i) {
+            char a = tag.charAt(i);
+            char b = text.charAt(i);
+            if (a != b) {
+                a = Character.toLowerCase(Character.toUpperCase(a));
+                b = Character.toLowerCase(Character.toUpperCase(b));
+                if (a != b)
+                    return a - b;
+            }
+        }
+        return tag.length() - text.length();
+    }
+
+
+
+    //SortedTags is a growable array of tags sorted by SortedTagIndex.ORDER.
+    private static final class SortedTags {
+        String[] tags = new String[4];
+        int size;
+
+        boolean add(String tag) {
+            int index = binarySearch(tag);
+            if (index >= 0)
+                return false;
+            index = -index - 1;
+
+            if (size == tags.length) {
+                String[] grown = new String[size * 2];
+                System.arraycopy(tags, 0, grown, 0, size);
+                tags = grown;
+            }
+            System.arraycopy(tags, index, tags, index + 1, size - index);
+            tags[index] = tag;
+            ++size;
+            return true;
+        }
+
+        //Adds "added", which is sorted and holds none of the tags already here. The arrays are merged from
+        //the end, so every tag moves at most once.
+        void addAllSorted(List<String> added) {
+            int total = size + added.size();
+            if (total > tags.length) {
+                String[] grown = new String[Math.max(total, tags.length * 2)];
+                System.arraycopy(tags, 0, grown, 0, size);
+                tags = grown;
+            }
+
+            int i = size - 1;
+            int j = added.size() - 1;
+            int k = total - 1;
+            while (j >= 0) {
+                if (i >= 0 && SortedTagIndex.ORDER.compare(tags[i], added.get(j)) > 0)
+                    tags[k--] = tags[i--];
+                else
+                    tags[k--] = added.get(j--);
+            }
+            size = total;
+        }
+
+        boolean contains(String tag) {
+            return binarySearch(tag) >= 0;
+        }
+
+        boolean remove(String tag) {
+            int index = binarySearch(tag);
+            if (index < 0)
+                return false;
+
+            System.arraycopy(tags, index + 1, tags, index, size - index - 1);
+            tags[--size] = null;
+            return true;
+        }
+
+        //Returns the index of the first tag that isn't less than "text", ignoring case.
+        int lowerBound(CharSequence text) {
+            int low = 0;
+            int high = size;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (compareIgnoringCase(tags[middle], text) < 0)
+                    low = middle + 1;
+                else
+                    high = middle;
+            }
+            return low;
+        }
+
+        private int binarySearch(String tag) {
+            int low = 0;
+            int high = size - 1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                int result = SortedTagIndex.ORDER.compare(tags[middle], tag);
+                if (result < 0)
+                    low = middle + 1;
+                else if (result > 0)
+                    high = middle - 1;
+                else
+                    return middle;
+            }
+            return -(low + 1);
+        }
+    }
+
+
+
+    //BigramTable maps bigrams to the SortedTags containing them. It is an open-addressing hash table keyed by
+    //ints, so looking a bigram up doesn't box it into an Integer the way a HashMap<Integer, ...> would.
+    private static final class BigramTable {
+        //A slot is free when its value is null. The length is a power of two, kept at most half full.
+        private int[] keys = new int[64];
+        private SortedTags[] values = new SortedTags[64];
+        private int size;
+
+        SortedTags get(int bigram) {
+            return values[slot(keys, values, bigram)];
+        }
+
+        void put(int bigram, SortedTags tags) {
+            int slot = slot(keys, values, bigram);
+            if (values[slot] == null && ++size * 2 > keys.length) {
+                grow();
+                slot = slot(keys, values, bigram);
+            }
+            keys[slot] = bigram;
+            values[slot] = tags;
+        }
+
+        private void grow() {
+            int[] oldKeys = keys;
+            SortedTags[] oldValues = values;
+            keys = new int[oldKeys.length * 2];
+            values = new SortedTags[oldValues.length * 2];
+            for (int i = 0; i < oldKeys.length; ++i) {
+                if (oldValues[i] != null) {
+                    int slot = slot(keys, values, oldKeys[i]);
+                    keys[slot] = oldKeys[i];
+                    values[slot] = oldValues[i];
+                }
+            }
+        }
+
+        //Returns the slot holding "bigram", or the free slot where it would go.
+        private static int slot(int[] keys, SortedTags[] values, int bigram) {
+            int mask = keys.length - 1;
+            int slot = (bigram * 0x9E3779B9) >>> 16 & mask;
+            while (values[slot] != null && keys[slot] != bigram)
+                slot = (slot + 1) & mask;
+            return slot;
+        }
+    }
+}
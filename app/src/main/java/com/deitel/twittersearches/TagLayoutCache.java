@@ -0,0 +1,201 @@
+package com.deitel.twittersearches;
+
+import android.os.Process;
+import android.text.Layout;
+import android.text.StaticLayout;
+import android.text.TextPaint;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+//The TagLayoutCache class keeps the text layouts (line breaks and glyph positions) of the tags shown in the
+//list, so that TagView doesn't have to measure its tag on the main thread every time it is bound.
+//
+//Measuring text is the most expensive part of binding a row: a long tag, or one in a script that needs
+//shaping, can take a large part of a frame. The SearchesAdapter therefore asks the cache to prefetch the
+//layouts of the rows that are about to scroll into view; they are built on a low-priority background
+//thread, and by the time a row is bound its layout is usually already there (see getHitCount).
+//
+//The layouts are kept in a LinkedHashMap in access order; once it holds more than maxSize layouts the least
+//recently used one is dropped. Every layout is laid out for the same width, the width of the rows: when
+//get is called with another width (e.g. after a rotation) every layout is dropped.
+//
+//The TextPaint is shared by every layout (a StaticLayout draws with the paint it was built with) and is
+//read by both threads, so it must not be changed after it has been passed to the constructor.
+public class TagLayoutCache {
+
+    private final TextPaint paint;
+    private final LinkedHashMap<String, Layout> layouts;
+    private int width;
+    private long hits;
+    private long misses;
+
+    //Incremented whenever the width changes, so that layouts built for the old width are thrown away.
+    private int widthGeneration;
+
+    //Incremented by every prefetch call; a prefetch stops as soon as a later one has been requested, since
+    //the rows it was building for have scrolled past by then.
+    private volatile int prefetchGeneration;
+
+    private final ExecutorService prefetchExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(final Runnable runnable) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    //the layouts must never take CPU time away from the main thread.
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    runnable.run();
+                }
+            }, "tag-layout");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+
+    //constructor. "paint" is the paint the tags are drawn with.
+    public TagLayoutCache(TextPaint paint, final int maxSize) {
+        this.paint = paint;
+        this.layouts = new LinkedHashMap<String, Layout>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Layout> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+
+    //Returns the layout of "tag" laid out "width" pixels wide, building it (on the calling thread) if it
+    //hasn't been prefetched.
+    public Layout get(String tag, int width) {
+        int generation;
+        synchronized (this) {
+            if (width != this.width) {
+                layouts.clear();
+                this.width = width;
+                ++widthGeneration;
+            }
+
+            Layout layout = layouts.get(tag);
+            if (layout != null) {
+                ++hits;
+                return layout;
+            }
+            ++misses;
+            generation = widthGeneration;
+        }
+
+        long start = Metrics.start();
+        Layout layout = build(tag, width);
+        Metrics.TAG_LAYOUT.record(start);
+
+        put(tag, layout, generation);
+        return layout;
+    }
+
+
+    //Builds the layouts of "tags" that aren't cached yet on the background thread, for the width of the
+    //last get call. Does nothing until get has been called, since the width of the rows isn't known before.
+    //The adapter calls this while binding rows, so when every layout is already cached it returns without
+    //allocating anything.
+    public void prefetch(List<String> tags) {
+        final String[] missing;
+        int count = 0;
+        final int width;
+        final int generation;
+
+        synchronized (this) {
+            if (this.width <= 0)
+                return;
+            for (int i = 0; i < tags.size(); ++i)
+                if (!layouts.containsKey(tags.get(i)))
+                    ++count;
+            if (count == 0)
+                return;
+
+            missing = new String[count];
+            count = 0;
+            for (int i = 0; i < tags.size(); ++i)
+                if (!layouts.containsKey(tags.get(i)))
+                    missing[count++] = tags.get(i);
+            width = this.width;
+            generation = widthGeneration;
+        }
+
+        final int missingCount = count;
+        final int prefetch = ++prefetchGeneration;
+        prefetchExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < missingCount && prefetch == prefetchGeneration; ++i) {
+                    synchronized (TagLayoutCache.this) {
+                        if (generation != widthGeneration)
+                            return;
+                        if (layouts.containsKey(missing[i]))
+                            continue;
+                    }
+                    put(missing[i], build(missing[i], width), generation);
+                }
+            }
+        });
+    }
+
+
+    //Forgets every layout.
+    public synchronized void clear() {
+        layouts.clear();
+    }
+
+
+    //Stops the prefetch thread.
+    public void shutdown() {
+        ++prefetchGeneration;
+        prefetchExecutor.shutdown();
+    }
+
+
+    //Returns the number of layouts currently cached.
+    public synchronized int size() {
+        return layouts.size();
+    }
+
+
+    //Returns the number of calls to get that found the layout in the cache.
+    public synchronized long getHitCount() {
+        return hits;
+    }
+
+
+    //Returns the number of calls to get that had to build the layout.
+    public synchronized long getMissCount() {
+        return misses;
+    }
+
+
+    //Appends the hit and miss counts, e.g. for Metrics.dump.
+    public synchronized void appendTo(StringBuilder out) {
+        Metrics.appendHitCounts(out, "tag layout cache", hits, misses);
+    }
+
+
+
+    //Keeps "layout" unless the width has changed since it was started.
+    private synchronized void put(String tag, Layout layout, int generation) {
+        if (generation == widthGeneration)
+            layouts.put(tag, layout);
+    }
+
+
+    //Lays "tag" out the way the list's TextView used to: wrapped to "width", starting on the side its
+    //script is read from.
+    @SuppressWarnings("deprecation")
+    private Layout build(String tag, int width) {
+        //StaticLayout.Builder needs API 23, so the constructor is used on every version.
+        return new StaticLayout(tag, paint, width, Layout.Alignment.ALIGN_NORMAL, 1f, 0f, true);
+    }
+}
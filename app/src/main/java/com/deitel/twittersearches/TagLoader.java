@@ -0,0 +1,246 @@
+package com.deitel.twittersearches;
+
+import android.content.Context;
+import android.os.AsyncTask;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+//The TagLoader class opens the app's SearchStore and sorts its tags on a background thread, so that
+//MainActivity can show its (empty) list straight away instead of waiting in onCreate.
+//The sorted searches are added to the SearchModel in chunks, on the background thread, and each chunk's
+//version of the model is handed to the main thread: a small first chunk that fills the first screen,
+//followed by larger chunks, so that no single update stalls the main thread.
+//Once every tag has been handed back, the QueryIndex is loaded (or rebuilt if it is out of date).
+//The app's ClickStats are read as soon as the store is open and handed over with it, so that the main thread
+//never has to read them when a search is tapped or deleted.
+//
+//If the searches were saved in a SearchSnapshotFile when the app last stopped, the chunks are read from it
+//instead: it is already sorted, and its first chunk is read without reading the rest of the file, so the
+//first screen is shown before the store has even been opened. The store is still the source of truth: once
+//it is open its searches are compared with the ones loaded from the snapshot, and any that differ (e.g.
+//because the app was killed before the snapshot was saved) are put in the model or removed from it. If the
+//snapshot is damaged the searches are loaded from the store as if there were no snapshot.
+//
+//A TagLoader is an AsyncTask: doInBackground runs on a background thread, and onProgressUpdate and
+//onPostExecute run on the main thread. Calling cancel (e.g. from onDestroy) stops any further chunks
+//from being delivered. A loader that is still running when the screen rotates is kept by MainActivity
+//and handed to the new MainActivity, which calls setCallbacks to receive the rest of the tags.
+class TagLoader extends AsyncTask<Void, TagLoader.Chunk, SearchStore> {
+
+    //Enough tags to fill the first screen.
+    private static final int FIRST_CHUNK_SIZE = 32;
+    private static final int CHUNK_SIZE = 512;
+
+    //What loadSnapshot found.
+    private static final int SNAPSHOT_LOADED = 0;
+    private static final int SNAPSHOT_MISSING = 1;
+    private static final int SNAPSHOT_DAMAGED = 2;
+
+    //Callbacks receives the loaded tags on the main thread.
+    interface Callbacks {
+
+        //Called with each chunk of sorted tags and the version of the SearchModel they were added in. Every
+        //chunk follows the previous one in sorted order, so the tags are appended. Chunks read from the
+        //snapshot file arrive before the store has been opened, with a null "store" and "clickStats". The
+        //chunk that brings the model into line with the store may also remove tags ("removedTags" is empty
+        //otherwise).
+        void onTagsLoaded(SearchStore store, ClickStats clickStats, SearchModel.Snapshot snapshot,
+                          List<String> addedTags, List<String> removedTags);
+
+        //Called once every tag has been delivered.
+        void onLoadFinished(SearchStore store, ClickStats clickStats);
+    }
+
+    //Chunk is one chunk of tags handed from the background thread to the main thread.
+    static class Chunk {
+        final SearchStore store;
+        final ClickStats clickStats;
+        final SearchModel.Snapshot snapshot;
+        final List<String> addedTags;
+        final List<String> removedTags;
+
+        Chunk(SearchStore store, ClickStats clickStats, SearchModel.Snapshot snapshot, List<String> addedTags,
+              List<String> removedTags) {
+            this.store = store;
+            this.clickStats = clickStats;
+            this.snapshot = snapshot;
+            this.addedTags = addedTags;
+            this.removedTags = removedTags;
+        }
+    }
+
+    private final Context context;
+    private final SearchModel model;
+    private final QueryIndex queryIndex;
+    private Callbacks callbacks;
+
+    //Read on the background thread before the first chunk with the store is published.
+    private ClickStats clickStats;
+
+    //constructor. The load starts when execute is called.
+    TagLoader(Context context, SearchModel model, QueryIndex queryIndex, Callbacks callbacks) {
+        this.context = context.getApplicationContext();
+        this.model = model;
+        this.queryIndex = queryIndex;
+        this.callbacks = callbacks;
+    }
+
+
+    //Delivers the remaining chunks to "callbacks" instead, e.g. to the MainActivity created after a rotation.
+    void setCallbacks(Callbacks callbacks) {
+        if (getStatus() != Status.FINISHED && !isCancelled())
+            this.callbacks = callbacks;
+    }
+
+
+    @Override
+    protected SearchStore doInBackground(Void... params) {
+        int snapshotResult = loadSnapshot();
+
+        long metricsStart = Metrics.start();
+        SearchStore store = SearchStores.get(context);
+        Map<String, String> searches = store.getAll();
+        Metrics.STORE_OPEN.record(metricsStart);
+        //the tap counts are a small file, read now so that they arrive with the store.
+        clickStats = ClickStats.get(context);
+
+        boolean snapshotSaved;
+        if (snapshotResult != SNAPSHOT_MISSING)
+            snapshotSaved = reconcile(store, searches) && snapshotResult == SNAPSHOT_LOADED;
+        else {
+            loadStore(store, searches);
+            snapshotSaved = false;
+        }
+
+        if (!isCancelled()) {
+            SearchStores.setModelLoaded(model, snapshotSaved);
+            queryIndex.loadOrRebuild(store);
+        }
+        return store;
+    }
+
+
+    //Sorts the searches read from the store and adds them to the model in chunks.
+    private void loadStore(SearchStore store, Map<String, String> searches) {
+        List<String> tags = new ArrayList<>(searches.keySet());
+        long metricsStart = Metrics.start();
+        //sorted in the model's own order, so that tags differing only in case (e.g. "Java" and "java") are
+        //in the same order in the chunks as in the model, and every chunk is appended even when they fall on
+        //either side of a chunk boundary.
+        Collections.sort(tags, SortedTagIndex.ORDER);
+        Metrics.TAG_SORT.record(metricsStart);
+
+        int start = 0;
+        int chunkSize = FIRST_CHUNK_SIZE;
+        while (start < tags.size() && !isCancelled()) {
+            int end = Math.min(tags.size(), start + chunkSize);
+            List<String> chunk = tags.subList(start, end);
+            Map<String, String> chunkSearches = new HashMap<>(chunk.size() * 2);
+            for (String tag : chunk)
+                chunkSearches.put(tag, searches.get(tag));
+            publishProgress(new Chunk(store, clickStats, model.putAll(chunkSearches), chunk,
+                    Collections.<String>emptyList()));
+            start = end;
+            chunkSize = CHUNK_SIZE;
+        }
+    }
+
+
+    //Adds the searches saved in the snapshot file to the model in chunks, before the store is opened.
+    //Returns SNAPSHOT_LOADED, SNAPSHOT_MISSING if there is no snapshot (or its header is damaged), or
+    //SNAPSHOT_DAMAGED if a damaged block was found after some searches had been loaded. Either way, whatever
+    //was loaded is checked against the store.
+    private int loadSnapshot() {
+        long metricsStart = Metrics.start();
+        SearchSnapshotFile snapshotFile;
+        try {
+            snapshotFile = SearchSnapshotFile.open(SearchStores.getSnapshotFile(context));
+        }
+        catch (IOException e) {
+            return SNAPSHOT_MISSING;
+        }
+
+        int start = 0;
+        int chunkSize = FIRST_CHUNK_SIZE;
+        while (start < snapshotFile.size() && !isCancelled()) {
+            int end = Math.min(snapshotFile.size(), start + chunkSize);
+            Map<String, String> chunkSearches = new LinkedHashMap<>(chunkSize * 2);
+            try {
+                snapshotFile.read(start, end, chunkSearches);
+            }
+            catch (IOException e) {
+                return start == 0 ? SNAPSHOT_MISSING : SNAPSHOT_DAMAGED;
+            }
+            publishProgress(new Chunk(null, null, model.putAll(chunkSearches),
+                    new ArrayList<>(chunkSearches.keySet()), Collections.<String>emptyList()));
+            if (start == 0)
+                Metrics.SNAPSHOT_FIRST_CHUNK.record(metricsStart);
+            start = end;
+            chunkSize = CHUNK_SIZE;
+        }
+        return SNAPSHOT_LOADED;
+    }
+
+
+    //Brings the model, loaded from the snapshot file, into line with "searches" read from the store: searches
+    //that are missing or have another query are put in the model, and tags that are no longer saved are
+    //removed from it. The store is delivered with the last chunk even if nothing changed. Returns true if
+    //nothing changed, i.e. the snapshot file still holds the current version of the model.
+    private boolean reconcile(SearchStore store, Map<String, String> searches) {
+        SearchModel.Snapshot snapshot = model.snapshot();
+        Map<String, String> changed = new HashMap<>();
+        for (Map.Entry<String, String> search : searches.entrySet()) {
+            if (!snapshot.hasQuery(search.getKey(), search.getValue()))
+                changed.put(search.getKey(), search.getValue());
+        }
+        List<String> removed = new ArrayList<>();
+        for (String tag : snapshot) {
+            if (!searches.containsKey(tag))
+                removed.add(tag);
+        }
+        if (isCancelled())
+            return false;
+
+        List<String> none = Collections.emptyList();
+        if (!changed.isEmpty() || removed.isEmpty())
+            publishProgress(new Chunk(store, clickStats, model.putAll(changed), new ArrayList<>(changed.keySet()),
+                    none));
+        if (!removed.isEmpty())
+            publishProgress(new Chunk(store, clickStats, model.removeAll(removed), none, removed));
+        return changed.isEmpty() && removed.isEmpty();
+    }
+
+
+    @Override
+    protected void onProgressUpdate(Chunk... chunks) {
+        //chunks that were already posted when the loader was cancelled are dropped.
+        if (isCancelled() || callbacks == null)
+            return;
+
+        for (Chunk chunk : chunks)
+            callbacks.onTagsLoaded(chunk.store, chunk.clickStats, chunk.snapshot, chunk.addedTags,
+                    chunk.removedTags);
+    }
+
+
+    @Override
+    protected void onPostExecute(SearchStore store) {
+        if (callbacks == null)
+            return;
+
+        callbacks.onLoadFinished(store, clickStats);
+        callbacks = null;
+    }
+
+
+    @Override
+    protected void onCancelled(SearchStore store) {
+        callbacks = null;
+    }
+}
@@ -0,0 +1,191 @@
+package com.deitel.twittersearches;
+
+import java.util.Arrays;
+
+//The TagSections class divides the sorted tags of a SortedTagIndex into alphabetical sections, for the
+//section headers and the fast-scroll rail.
+//SortedTagIndex.ORDER compares tags case-insensitively character by character, so all the tags that
+//start with the same (case-folded) character are next to each other. Each such run is a section, and the
+//sections are kept in an array sorted by that character together with the position of their first tag
+//and their number of tags.
+//
+//SortedTagIndex updates the sections whenever a tag is added or removed: finding the tag's section is a
+//binary search and only the start positions of the sections after it have to move, so the list is never
+//scanned. There are only as many sections as there are distinct first characters (about 27 for English
+//tags), and the start of any section can be read straight from the array.
+//
+//Sections are labelled with their upper-case letter; tags that don't start with a letter are labelled "#".
+//Several consecutive sections can have the same label (e.g. "1..." and "2..." are both "#"), in which
+//case only the first of them gets a header.
+public class TagSections {
+
+    private char[] keys = new char[32];
+    private int[] starts = new int[32];
+    private int[] counts = new int[32];
+    private String[] labels = new String[32];
+    private int size;
+
+    //Incremented by every change, so that views can tell when they need to update.
+    private int modificationCount;
+
+
+    //Returns the number of sections.
+    public int size() {
+        return size;
+    }
+
+
+    //Returns the position of the first tag of "section".
+    public int getStart(int section) {
+        return starts[section];
+    }
+
+
+    //Returns the number of tags in "section".
+    public int getCount(int section) {
+        return counts[section];
+    }
+
+
+    //Returns the label of "section", e.g. "A" or "#".
+    public String getLabel(int section) {
+        return labels[section];
+    }
+
+
+    //Returns the section containing the tag at "position", or -1 if there is no tag at "position".
+    public int getSectionForPosition(int position) {
+        if (size == 0 || position < 0 || position >= starts[size - 1] + counts[size - 1])
+            return -1;
+
+        //find the last section starting at or before "position".
+        int low = 0;
+        int high = size - 1;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (starts[middle] <= position)
+                low = middle;
+            else
+                high = middle - 1;
+        }
+        return low;
+    }
+
+
+    //Returns true if the tag at "position" is the first tag under a header, i.e. the first of its section
+    //and the previous section has a different label.
+    public boolean isHeaderPosition(int position) {
+        int section = getSectionForPosition(position);
+        return section >= 0 && starts[section] == position && isHeaderSection(section);
+    }
+
+
+    //Returns true if "section" gets a header, i.e. it is the first of the consecutive sections with its label.
+    public boolean isHeaderSection(int section) {
+        return section == 0 || !labels[section - 1].equals(labels[section]);
+    }
+
+
+    //Returns a number that changes every time the sections change.
+    public int getModificationCount() {
+        return modificationCount;
+    }
+
+
+
+    //Counts a tag that has been added to the index.
+    void add(String tag) {
+        char key = key(tag);
+        int section = Arrays.binarySearch(keys, 0, size, key);
+
+        if (section < 0) {
+            //a new section, starting where the next one starts (or at the end).
+            section = -section - 1;
+            int start = section < size ? starts[section] : total();
+            insertSection(section, key, start);
+        }
+
+        ++counts[section];
+        for (int i = section + 1; i < size; ++i)
+            ++starts[i];
+        ++modificationCount;
+    }
+
+
+    //Uncounts a tag that has been removed from the index.
+    void remove(String tag) {
+        int section = Arrays.binarySearch(keys, 0, size, key(tag));
+        if (section < 0)
+            return;
+
+        for (int i = section + 1; i < size; ++i)
+            --starts[i];
+        if (--counts[section] == 0)
+            removeSection(section);
+        ++modificationCount;
+    }
+
+
+    //Makes these sections the same as "other".
+    void copyFrom(TagSections other) {
+        keys = other.keys.clone();
+        starts = other.starts.clone();
+        counts = other.counts.clone();
+        labels = other.labels.clone();
+        size = other.size;
+        ++modificationCount;
+    }
+
+
+    //Returns the character that decides a tag's section: its first character, folded the same way
+    //String.CASE_INSENSITIVE_ORDER folds it.
+    static char key(String tag) {
+        if (tag.isEmpty())
+            return 0;
+        return Character.toLowerCase(Character.toUpperCase(tag.charAt(0)));
+    }
+
+
+    static String label(char key) {
+        return Character.isLetter(key) ? String.valueOf(Character.toUpperCase(key)) : "#";
+    }
+
+
+
+    private int total() {
+        return size == 0 ? 0 : starts[size - 1] + counts[size - 1];
+    }
+
+
+    private void insertSection(int section, char key, int start) {
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size * 2);
+            starts = Arrays.copyOf(starts, size * 2);
+            counts = Arrays.copyOf(counts, size * 2);
+            labels = Arrays.copyOf(labels, size * 2);
+        }
+
+        int moved = size - section;
+        System.arraycopy(keys, section, keys, section + 1, moved);
+        System.arraycopy(starts, section, starts, section + 1, moved);
+        System.arraycopy(counts, section, counts, section + 1, moved);
+        System.arraycopy(labels, section, labels, section + 1, moved);
+
+        keys[section] = key;
+        starts[section] = start;
+        counts[section] = 0;
+        labels[section] = label(key);
+        ++size;
+    }
+
+
+    private void removeSection(int section) {
+        int moved = size - section - 1;
+        System.arraycopy(keys, section + 1, keys, section, moved);
+        System.arraycopy(starts, section + 1, starts, section, moved);
+        System.arraycopy(counts, section + 1, counts, section, moved);
+        System.arraycopy(labels, section + 1, labels, section, moved);
+        --size;
+        labels[size] = null;
+    }
+}
@@ -0,0 +1,114 @@
+package com.deitel.twittersearches;
+
+import android.content.Context;
+import android.content.res.TypedArray;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.text.Layout;
+import android.text.TextPaint;
+import android.util.AttributeSet;
+import android.util.TypedValue;
+import android.view.View;
+import android.view.ViewGroup;
+
+//The TagView class displays the tag of one row of the search list (see list_item.xml).
+//It replaces the TextView the rows used to have: a TextView measures its text on the main thread every time
+//setText is called, while a TagView draws a Layout taken from a TagLayoutCache, which has usually been built
+//on a background thread before the row is bound. The tag is drawn centred vertically, like the TextView's
+//center_vertical gravity, with the text appearance from createPaint.
+//
+//As long as the row has a fixed height (it is ?android:attr/listPreferredItemHeight), binding a new tag
+//doesn't even need a new layout pass: the row keeps its size and only its Layout is swapped.
+public class TagView extends View {
+
+    private String text;
+    private TagLayoutCache layoutCache;
+    private Layout layout;
+
+    //constructor used when the view is inflated from a layout.
+    public TagView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+    }
+
+
+    //Creates the paint the tags are drawn with: the theme's textAppearanceMedium, which is what the
+    //list's TextView used.
+    public static TextPaint createPaint(Context context) {
+        TextPaint paint = new TextPaint(Paint.ANTI_ALIAS_FLAG);
+        paint.density = context.getResources().getDisplayMetrics().density;
+
+        TypedValue appearance = new TypedValue();
+        context.getTheme().resolveAttribute(android.R.attr.textAppearanceMedium, appearance, true);
+
+        //The attributes must be in ascending order of their IDs.
+        TypedArray attributes = context.obtainStyledAttributes(appearance.resourceId,
+                new int[]{android.R.attr.textSize, android.R.attr.textColor});
+        paint.setTextSize(attributes.getDimension(0, paint.getTextSize()));
+        paint.setColor(attributes.getColor(1, paint.getColor()));
+        attributes.recycle();
+
+        return paint;
+    }
+
+
+    //Displays "text", using its layout from "layoutCache".
+    public void setText(String text, TagLayoutCache layoutCache) {
+        this.text = text;
+        this.layoutCache = layoutCache;
+        setContentDescription(text);
+
+        ViewGroup.LayoutParams params = getLayoutParams();
+        int textWidth = getTextWidth(getWidth());
+        if (textWidth > 0 && params != null && params.height >= 0) {
+            //the view has already been laid out and its size doesn't depend on its text.
+            layout = layoutCache.get(text, textWidth);
+        }
+        else {
+            layout = null;
+            requestLayout();
+        }
+        invalidate();
+    }
+
+
+    //Returns the tag displayed.
+    public String getText() {
+        return text;
+    }
+
+
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        int width = getDefaultSize(getSuggestedMinimumWidth(), widthMeasureSpec);
+        int textWidth = getTextWidth(width);
+
+        if (text != null && textWidth > 0 && (layout == null || layout.getWidth() != textWidth))
+            layout = layoutCache.get(text, textWidth);
+
+        int textHeight = layout != null ? layout.getHeight() : 0;
+        setMeasuredDimension(width,
+                resolveSize(textHeight + getPaddingTop() + getPaddingBottom(), heightMeasureSpec));
+    }
+
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        super.onDraw(canvas);
+        if (layout == null || text == null)
+            return;
+
+        //centre the text vertically in the space between the paddings.
+        int space = getHeight() - getPaddingTop() - getPaddingBottom();
+        float top = getPaddingTop() + Math.max(0, (space - layout.getHeight()) / 2f);
+
+        canvas.save();
+        canvas.translate(getPaddingLeft(), top);
+        layout.draw(canvas);
+        canvas.restore();
+    }
+
+
+    private int getTextWidth(int width) {
+        return width - getPaddingLeft() - getPaddingRight();
+    }
+}
@@ -0,0 +1,69 @@
+package com.deitel.twittersearches;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+//The UrlConnectionHttpClient class is the app's HttpClient. It uses HttpURLConnection, which keeps the
+//connection to a server open after a request and reuses it for the next request to the same server, so
+//only the first search of a session pays for the TCP and TLS handshakes.
+//A connection is only reused if the previous response was read to the end and its stream closed (and
+//disconnect wasn't called), which is why every body, including the bodies of error responses, is read
+//completely here.
+public class UrlConnectionHttpClient implements HttpClient {
+
+    private static final int CONNECT_TIMEOUT_MILLIS = 15000;
+    private static final int READ_TIMEOUT_MILLIS = 20000;
+
+    //Responses longer than this are refused rather than read into memory.
+    private static final int MAX_BODY_BYTES = 4 * 1024 * 1024;
+
+    @Override
+    public Response get(String url, Map<String, String> headers) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setConnectTimeout(CONNECT_TIMEOUT_MILLIS);
+        connection.setReadTimeout(READ_TIMEOUT_MILLIS);
+        //the app keeps its own cache (see ResultsCache).
+        connection.setUseCaches(false);
+        for (Map.Entry<String, String> header : headers.entrySet())
+            connection.setRequestProperty(header.getKey(), header.getValue());
+
+        int code = connection.getResponseCode();
+
+        Map<String, String> responseHeaders = new HashMap<>();
+        for (Map.Entry<String, List<String>> header : connection.getHeaderFields().entrySet()) {
+            //the status line is returned under a null name.
+            if (header.getKey() != null && !header.getValue().isEmpty())
+                responseHeaders.put(header.getKey().toLowerCase(Locale.US), header.getValue().get(0));
+        }
+
+        InputStream in = code >= 400 ? connection.getErrorStream() : connection.getInputStream();
+        byte[] body = in != null ? readFully(in) : new byte[0];
+        return new Response(code, responseHeaders, body);
+    }
+
+
+    //Reads "in" to the end and closes it.
+    private static byte[] readFully(InputStream in) throws IOException {
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int count;
+            while ((count = in.read(buffer)) != -1) {
+                if (out.size() + count > MAX_BODY_BYTES)
+                    throw new IOException("response is longer than " + MAX_BODY_BYTES + " bytes");
+                out.write(buffer, 0, count);
+            }
+            return out.toByteArray();
+        }
+        finally {
+            in.close();
+        }
+    }
+}
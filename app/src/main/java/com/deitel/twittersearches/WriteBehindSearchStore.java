@@ -0,0 +1,234 @@
+package com.deitel.twittersearches;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+//The WriteBehindSearchStore class is a SearchStore that buffers edits in memory for a short window and
+//then writes them to another SearchStore in one batch.
+//Saving, re-saving and deleting several searches in a row would otherwise write every single edit to the
+//store's file. Here the edits made within "windowMillis" of the first one are collected, repeated edits of
+//the same tag collapse into the last one, and the whole batch is written with a single Editor.apply.
+//
+//Reads always see the buffered edits first, so a search that was just saved can be clicked, shared or
+//edited straight away even though it hasn't been written yet.
+//Call flush (e.g. in onPause) to write the buffered edits immediately.
+//How many edits the buffering saved is counted, and shown in the "Dump metrics" dialog (see appendTo).
+public class WriteBehindSearchStore implements SearchStore {
+
+    //Once this many tags have buffered edits they are written straight away (e.g. during an import).
+    private static final int MAX_PENDING = 1024;
+
+    //Marks a buffered remove in "pending". Compared by identity.
+    private static final String REMOVED = new String("removed");
+
+    private final SearchStore store;
+    private final long windowMillis;
+
+    private final ScheduledExecutorService flushExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "search-write-behind");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private final Runnable flushTask = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    //The buffered edits: the latest query (or REMOVED) for each edited tag.
+    private Map<String, String> pending = new HashMap<>();
+    private boolean flushScheduled;
+    private boolean closed;
+
+    //Counters of the edits applied to this store, the ones that replaced a buffered edit of the same tag
+    //(and so were never written), and the batches written to the underlying store.
+    private long writeCount;
+    private long coalescedWriteCount;
+    private long physicalWriteCount;
+
+    //constructor. Edits are written to "store" at most "windowMillis" after they are applied.
+    public WriteBehindSearchStore(SearchStore store, long windowMillis) {
+        this.store = store;
+        this.windowMillis = windowMillis;
+    }
+
+
+    @Override
+    public synchronized String getString(String tag, String defValue) {
+        String query = pending.get(tag);
+        if (query == null)
+            return store.getString(tag, defValue);
+        return query == REMOVED ? defValue : query;
+    }
+
+    @Override
+    public synchronized boolean contains(String tag) {
+        String query = pending.get(tag);
+        if (query == null)
+            return store.contains(tag);
+        return query != REMOVED;
+    }
+
+    @Override
+    public synchronized Map<String, String> getAll() {
+        Map<String, String> searches = store.getAll();
+        for (Map.Entry<String, String> edit : pending.entrySet()) {
+            if (edit.getValue() == REMOVED)
+                searches.remove(edit.getKey());
+            else
+                searches.put(edit.getKey(), edit.getValue());
+        }
+        return searches;
+    }
+
+    @Override
+    public synchronized int size() {
+        int size = store.size();
+        for (Map.Entry<String, String> edit : pending.entrySet()) {
+            boolean saved = store.contains(edit.getKey());
+            if (edit.getValue() == REMOVED && saved)
+                --size;
+            else if (edit.getValue() != REMOVED && !saved)
+                ++size;
+        }
+        return size;
+    }
+
+    @Override
+    public Editor edit() {
+        return new WriteBehindEditor();
+    }
+
+
+    //Writes the buffered edits to the underlying store now. The underlying store isn't flushed itself:
+    //a LogSearchStore's applied edits are already in its mapped file and survive the app being killed.
+    @Override
+    public synchronized void flush() {
+        flushScheduled = false;
+        if (pending.isEmpty())
+            return;
+
+        Map<String, String> edits = pending;
+        pending = new HashMap<>();
+
+        Editor editor = store.edit();
+        for (Map.Entry<String, String> edit : edits.entrySet()) {
+            if (edit.getValue() == REMOVED)
+                editor.remove(edit.getKey());
+            else
+                editor.putString(edit.getKey(), edit.getValue());
+        }
+        try {
+            editor.apply();
+        }
+        catch (RuntimeException e) {
+            //keep the edits (behind any made since) so that a later flush can try again.
+            edits.putAll(pending);
+            pending = edits;
+            throw e;
+        }
+        ++physicalWriteCount;
+    }
+
+
+    //Writes the buffered edits, then closes the underlying store.
+    @Override
+    public synchronized void close() {
+        if (closed)
+            return;
+        closed = true;
+        flushExecutor.shutdown();
+        flush();
+        store.close();
+    }
+
+
+    //Returns the number of tag edits (puts and removes) applied to this store.
+    public synchronized long getWriteCount() {
+        return writeCount;
+    }
+
+
+    //Returns the number of tag edits that replaced a buffered edit of the same tag, and so never had to be
+    //written to the underlying store.
+    public synchronized long getCoalescedWriteCount() {
+        return coalescedWriteCount;
+    }
+
+
+    //Returns the number of batches written to the underlying store.
+    public synchronized long getPhysicalWriteCount() {
+        return physicalWriteCount;
+    }
+
+
+    //Appends the edit counts, e.g. for Metrics.dump.
+    public synchronized void appendTo(StringBuilder out) {
+        out.append(String.format(Locale.US, "store edits: %d, %d coalesced (%.1f%%), %d batches written%n",
+                writeCount, coalescedWriteCount, writeCount == 0 ? 0.0 : coalescedWriteCount * 100.0 / writeCount,
+                physicalWriteCount));
+    }
+
+
+
+    //Buffers the edits collected by an Editor, and makes sure they are written within the window.
+    private synchronized void applyEdits(Map<String, String> edits, int editCount) {
+        if (closed)
+            throw new IllegalStateException("Search store is closed");
+
+        writeCount += editCount;
+        //edits of the same tag in one Editor were already collapsed by the Editor.
+        coalescedWriteCount += editCount - edits.size();
+        for (Map.Entry<String, String> edit : edits.entrySet()) {
+            if (pending.put(edit.getKey(), edit.getValue()) != null)
+                ++coalescedWriteCount;
+        }
+
+        if (pending.size() >= MAX_PENDING || windowMillis <= 0) {
+            flush();
+        }
+        else if (!flushScheduled) {
+            flushScheduled = true;
+            flushExecutor.schedule(flushTask, windowMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+
+    //WriteBehindEditor collects edits like the other stores' Editors, keeping only the last edit of each tag.
+    private class WriteBehindEditor implements Editor {
+
+        private final Map<String, String> edits = new HashMap<>();
+        private int editCount;
+
+        @Override
+        public Editor putString(String tag, String query) {
+            edits.put(tag, query);
+            ++editCount;
+            return this;
+        }
+
+        @Override
+        public Editor remove(String tag) {
+            edits.put(tag, REMOVED);
+            ++editCount;
+            return this;
+        }
+
+        @Override
+        public void apply() {
+            applyEdits(edits, editCount);
+            edits.clear();
+            editCount = 0;
+        }
+    }
+}
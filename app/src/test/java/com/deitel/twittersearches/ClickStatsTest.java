@@ -0,0 +1,74 @@
+package com.deitel.twittersearches;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class ClickStatsTest {
+
+    private static final long DAY = 24 * 60 * 60 * 1000;
+    private static final long NOW = 1500000000000L;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void recordClick_decaysOldClicks() {
+        ClickStats stats = new ClickStats(new File(folder.getRoot(), "clicks.dat"));
+
+        for (int i = 0; i < 4; ++i)
+            stats.recordClick("java", NOW);
+        assertEquals(4, stats.getCount("java", NOW), 1e-9);
+        assertEquals(2, stats.getCount("java", NOW + ClickStats.HALF_LIFE_MILLIS), 1e-9);
+        stats.recordClick("java", NOW + ClickStats.HALF_LIFE_MILLIS);
+        assertEquals(3, stats.getCount("java", NOW + ClickStats.HALF_LIFE_MILLIS), 1e-9);
+
+        //ten taps a month ago count for less than three taps today.
+        for (int i = 0; i < 10; ++i)
+            stats.recordClick("old", NOW - 30 * DAY);
+        for (int i = 0; i < 3; ++i)
+            stats.recordClick("new", NOW);
+        stats.recordClick("once", NOW);
+        assertEquals(Arrays.asList("java", "new", "once"), stats.top(3));
+        assertEquals(Arrays.asList("java", "new", "once", "old"), stats.top(10));
+        assertEquals(Collections.emptyList(), stats.top(0));
+    }
+
+    @Test
+    public void remove_andSave_keepEveryOtherCounter() throws Exception {
+        File file = new File(folder.getRoot(), "clicks.dat");
+        ClickStats stats = new ClickStats(file);
+        Map<String, Integer> expected = new HashMap<>();
+        Random random = new Random(1);
+
+        //enough tags to grow the table several times, with removals that shift the probe sequences.
+        for (int i = 0; i < 5000; ++i) {
+            String tag = "tag" + random.nextInt(300);
+            if (random.nextInt(4) == 0) {
+                stats.remove(tag);
+                expected.remove(tag);
+            }
+            else {
+                stats.recordClick(tag, NOW);
+                expected.put(tag, expected.containsKey(tag) ? expected.get(tag) + 1 : 1);
+            }
+        }
+        stats.save();
+
+        ClickStats loaded = new ClickStats(file);
+        loaded.load();
+        assertEquals(expected.size(), loaded.size());
+        for (Map.Entry<String, Integer> entry : expected.entrySet())
+            assertEquals(entry.getValue(), loaded.getCount(entry.getKey(), NOW), 1e-6);
+        assertEquals(0, loaded.getCount("tag300", NOW), 0);
+    }
+}
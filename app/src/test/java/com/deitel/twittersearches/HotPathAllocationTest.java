@@ -0,0 +1,247 @@
+package com.deitel.twittersearches;
+
+import android.text.TextPaint;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.*;
+
+//Checks that the paths run on every keystroke, bind and tap stay within their allocation budgets once they
+//have warmed up, by counting the bytes the test thread (and any thread it hands the work to) allocates over
+//10,000 simulated events.
+//The Android framework calls on these paths (setting the TagView's layout, showing the FAB, starting the
+//Activity) aren't simulated; everything the app itself does is.
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 25)
+public class HotPathAllocationTest {
+
+    private static final int EVENTS = 10000;
+
+    //Bytes allowed per 10,000 events. Steady state should allocate nothing; this leaves room for the
+    //measurement itself.
+    private static final long BUDGET = 1024;
+
+    private static final int TAG_COUNT = 2000;
+    private static final int WIDTH = 400;
+    private static final String SEARCH_URL = "https://mobile.twitter.com/search?q=";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private com.sun.management.ThreadMXBean threads;
+    private SearchModel.Snapshot snapshot;
+    private TagLayoutCache layoutCache;
+
+    @Before
+    public void setUp() {
+        Assume.assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+        threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled());
+
+        Map<String, String> searches = new HashMap<>();
+        for (int i = 0; i < TAG_COUNT; ++i)
+            searches.put("tag " + Integer.toString(i, 36), "#java OR from:user" + i);
+        snapshot = new SearchModel().putAll(searches);
+        layoutCache = new TagLayoutCache(new TextPaint(), 256);
+    }
+
+    @After
+    public void tearDown() {
+        if (layoutCache != null)
+            layoutCache.shutdown();
+    }
+
+    @Test
+    public void keystrokes_allocateNothing() {
+        final StringBuilder query = new StringBuilder();
+        final StringBuilder tag = new StringBuilder("java");
+
+        Runnable keystrokes = new Runnable() {
+            int shown;
+
+            @Override
+            public void run() {
+                //type a character, or clear the query now and then, as updateSaveFAB would see it.
+                for (int i = 0; i < EVENTS; ++i) {
+                    if (i % 20 == 19)
+                        query.setLength(0);
+                    else
+                        query.append('x');
+                    if (MainActivity.hasQueryAndTag(query, tag))
+                        ++shown;
+                }
+            }
+        };
+
+        assertWithinBudget("keystrokes", keystrokes);
+    }
+
+    @Test
+    public void filtering_allocatesNothingOnceWarmedUp() throws Exception {
+        //results are delivered straight away on the filter thread, so the test can wait for each of them.
+        final TagFilter filter = new TagFilter(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                command.run();
+            }
+        });
+        List<String> tags = new ArrayList<>();
+        for (String tag : snapshot)
+            tags.add(tag);
+        filter.addAll(tags);
+        filter.awaitIdle();
+
+        //the texts seen while typing tags one character at a time and deleting them again.
+        final List<String> texts = new ArrayList<>();
+        for (String word : new String[] { "tag 1", "tag a", "ta", "tag 1z" }) {
+            for (int length = 1; length <= word.length(); ++length)
+                texts.add(word.substring(0, length));
+            for (int length = word.length() - 1; length > 1; --length)
+                texts.add(word.substring(0, length));
+        }
+
+        //the way MainActivity's filterTextWatcher and tagFilterCallback use the filter: each keystroke
+        //filters the text in the search box, and the list displayed until then is recycled.
+        final FilterKeystrokes keystrokes = new FilterKeystrokes(filter, texts);
+        keystrokes.run();
+
+        assertWithinBudget("filtering", keystrokes, keystrokes.filterThread);
+        filter.shutdown();
+    }
+
+    @Test
+    public void binds_allocateNothingOnceTheLayoutsAreCached() {
+        final SearchesAdapter adapter = new SearchesAdapter(snapshot, layoutCache, null, null);
+        //the rows scrolled over below, and the ones prefetched beyond them, are cached.
+        for (int position = 0; position < 240; ++position)
+            layoutCache.get(adapter.getTag(position), WIDTH);
+
+        Runnable binds = new Runnable() {
+            long ids;
+
+            @Override
+            public void run() {
+                //scroll down through 200 rows and back up again, as onBindViewHolder would be called.
+                for (int i = 0; i < EVENTS; ++i) {
+                    int step = i % 400;
+                    int position = step < 200 ? step : 399 - step;
+                    String tag = adapter.getTag(position);
+                    layoutCache.get(tag, WIDTH);
+                    adapter.prefetch(position);
+                    ids += adapter.getItemId(position);
+                }
+            }
+        };
+
+        assertWithinBudget("binds", binds);
+        assertEquals(240, layoutCache.getMissCount());
+    }
+
+    @Test
+    public void taps_allocateNothingForTheSearchesTappedBefore() throws Exception {
+        final SearchesAdapter adapter = new SearchesAdapter(snapshot, layoutCache, null, null);
+        final LogSearchStore store = new LogSearchStore(new File(folder.getRoot(), "searches.log"));
+        SearchStore.Editor editor = store.edit();
+        for (String tag : snapshot)
+            editor.putString(tag, snapshot.getQuery(tag));
+        editor.apply();
+        final ClickStats clickStats = new ClickStats(new File(folder.getRoot(), "clicks"));
+        final SearchUrlCache urlCache = new SearchUrlCache(SEARCH_URL, 64);
+
+        Runnable taps = new Runnable() {
+            int urlLength;
+
+            @Override
+            public void run() {
+                //tap the first 50 rows over and over, as itemClickListener would up to creating the Intent.
+                for (int i = 0; i < EVENTS; ++i) {
+                    String tag = adapter.getTag(i % 50);
+                    clickStats.recordClick(tag, 1000000L + i);
+                    urlLength += urlCache.get(tag, store).length();
+                }
+            }
+        };
+
+        assertWithinBudget("taps", taps);
+        store.close();
+    }
+
+
+    //Runs "events" once to warm it up (filling caches and letting the JIT compile it), then checks that
+    //running it again allocates no more than BUDGET bytes.
+    //Also counts the bytes allocated by "otherThreads", e.g. a background thread the events hand work to.
+    private void assertWithinBudget(String name, Runnable events, long... otherThreads) {
+        events.run();
+        events.run();
+
+        long threadId = Thread.currentThread().getId();
+        //the allocations of the measurement itself.
+        long before = threads.getThreadAllocatedBytes(threadId);
+        long overhead = threads.getThreadAllocatedBytes(threadId) - before;
+
+        long[] otherBefore = new long[otherThreads.length];
+        for (int i = 0; i < otherThreads.length; ++i)
+            otherBefore[i] = threads.getThreadAllocatedBytes(otherThreads[i]);
+        before = threads.getThreadAllocatedBytes(threadId);
+        events.run();
+        long allocated = threads.getThreadAllocatedBytes(threadId) - before - overhead;
+        for (int i = 0; i < otherThreads.length; ++i)
+            allocated += threads.getThreadAllocatedBytes(otherThreads[i]) - otherBefore[i];
+        assertTrue(name + " allocated " + allocated + " bytes per " + EVENTS, allocated <= BUDGET);
+    }
+
+
+    //FilterKeystrokes types EVENTS texts into a reused buffer, filters each of them and waits for its result.
+    private static class FilterKeystrokes implements Runnable, TagFilter.Callback {
+        private final TagFilter filter;
+        private final List<String> texts;
+        private final StringBuilder text = new StringBuilder();
+        private List<String> shown;
+        private volatile int delivered;
+        volatile long filterThread;
+
+        FilterKeystrokes(TagFilter filter, List<String> texts) {
+            this.filter = filter;
+            this.texts = texts;
+        }
+
+        @Override
+        public void run() {
+            for (int i = 0; i < EVENTS; ++i) {
+                text.setLength(0);
+                text.append(texts.get(i % texts.size()));
+                int expected = delivered + 1;
+                filter.filter(text, this);
+                while (delivered != expected)
+                    Thread.yield();
+            }
+        }
+
+        //called on the filter thread.
+        @Override
+        public void onFiltered(List<String> matches) {
+            filterThread = Thread.currentThread().getId();
+            List<String> previous = shown;
+            shown = matches;
+            if (previous != null)
+                filter.recycle(previous);
+            ++delivered;
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package com.deitel.twittersearches;
+
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.drawable.ColorDrawable;
+import android.support.v7.widget.RecyclerView;
+import android.view.View;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.*;
+
+//Checks that ItemDivider draws the dividers of a frame with a single drawLines call, skips the ones outside
+//the clip bounds, follows animated items, and doesn't allocate anything per frame.
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 25)
+public class ItemDividerTest {
+
+    private static final int WIDTH = 400;
+    private static final int ITEM_HEIGHT = 100;
+    private static final int ITEMS = 20;
+    private static final int DIVIDER_HEIGHT = 2;
+
+    private RecyclerView recyclerView;
+    private ItemDivider itemDivider;
+    private CountingCanvas canvas;
+
+    @Before
+    public void setUp() {
+        //The items are added and laid out by hand, the way a LinearLayoutManager would lay them out.
+        recyclerView = new RecyclerView(RuntimeEnvironment.application);
+        for (int i = 0; i < ITEMS; ++i) {
+            View item = new View(RuntimeEnvironment.application);
+            recyclerView.addView(item, new RecyclerView.LayoutParams(WIDTH, ITEM_HEIGHT));
+            item.layout(0, i * ITEM_HEIGHT, WIDTH, (i + 1) * ITEM_HEIGHT);
+        }
+        recyclerView.layout(0, 0, WIDTH, ITEMS * ITEM_HEIGHT);
+
+        ColorDrawable divider = new ColorDrawable(0xff888888) {
+            @Override
+            public int getIntrinsicHeight() {
+                return DIVIDER_HEIGHT;
+            }
+        };
+        itemDivider = new ItemDivider(divider);
+        //only the first 5 items are on screen.
+        canvas = new CountingCanvas(new Rect(0, 0, WIDTH, 5 * ITEM_HEIGHT));
+    }
+
+    @Test
+    public void onDrawOver_drawsVisibleDividersInOneCall() {
+        itemDivider.onDrawOver(canvas, recyclerView, new RecyclerView.State());
+
+        assertEquals(1, canvas.drawCalls);
+        //the dividers below items 0 to 3; the one below item 4 is at the bottom edge of the clip bounds.
+        assertEquals(4, canvas.lineCount);
+        assertEquals(ITEM_HEIGHT + DIVIDER_HEIGHT / 2f, canvas.firstY, 0f);
+        assertEquals(DIVIDER_HEIGHT, canvas.strokeWidth, 0f);
+    }
+
+    @Test
+    public void onDrawOver_followsAnimatedItems() {
+        recyclerView.getChildAt(0).setTranslationY(-50);
+        recyclerView.getChildAt(1).setAlpha(0.5f);
+        itemDivider.onDrawOver(canvas, recyclerView, new RecyclerView.State());
+
+        //the fading item's divider is drawn on its own.
+        assertEquals(2, canvas.drawCalls);
+        assertEquals(4, canvas.lineCount);
+        assertEquals(ITEM_HEIGHT - 50 + DIVIDER_HEIGHT / 2f, canvas.firstY, 0f);
+    }
+
+    @Test
+    public void onDrawOver_doesNotAllocatePerFrame() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        Assume.assumeTrue(threads.isThreadAllocatedMemorySupported());
+
+        RecyclerView.State state = new RecyclerView.State();
+        for (int i = 0; i < 1000; ++i)
+            itemDivider.onDrawOver(canvas, recyclerView, state);
+
+        int frames = 1000;
+        canvas.drawCalls = 0;
+        long threadId = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < frames; ++i)
+            itemDivider.onDrawOver(canvas, recyclerView, state);
+        long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+
+        assertEquals(frames, canvas.drawCalls);
+        //allow for a few stray allocations by the test framework, but not one per frame.
+        assertTrue("allocated " + allocated + " bytes in " + frames + " frames", allocated < frames);
+    }
+
+
+    //CountingCanvas records the lines drawn on it instead of drawing them.
+    private static class CountingCanvas extends Canvas {
+        private final Rect clip;
+        int drawCalls;
+        int lineCount;
+        float firstY = -1;
+        float strokeWidth;
+
+        CountingCanvas(Rect clip) {
+            this.clip = clip;
+        }
+
+        @Override
+        public boolean getClipBounds(Rect bounds) {
+            bounds.set(clip);
+            return true;
+        }
+
+        @Override
+        public void drawLines(float[] points, int offset, int count, Paint paint) {
+            ++drawCalls;
+            lineCount += count / 4;
+            if (firstY < 0 || points[offset + 1] < firstY)
+                firstY = points[offset + 1];
+            strokeWidth = paint.getStrokeWidth();
+        }
+
+        @Override
+        public void drawLine(float startX, float startY, float stopX, float stopY, Paint paint) {
+            ++drawCalls;
+            ++lineCount;
+            if (firstY < 0 || startY < firstY)
+                firstY = startY;
+        }
+    }
+}
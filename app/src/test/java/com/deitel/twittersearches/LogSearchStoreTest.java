@@ -0,0 +1,198 @@
+package com.deitel.twittersearches;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class LogSearchStoreTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void putAndRemove_survivesReopen() throws Exception {
+        File file = folder.newFile("searches.log");
+        LogSearchStore store = new LogSearchStore(file);
+        store.edit().putString("java", "#java").putString("news", "from:bbcnews").apply();
+        store.edit().putString("java", "#java OR #kotlin").remove("news").apply();
+        store.close();
+
+        LogSearchStore reopened = new LogSearchStore(file);
+        assertEquals("#java OR #kotlin", reopened.getString("java", ""));
+        assertFalse(reopened.contains("news"));
+        assertEquals(1, reopened.size());
+        reopened.close();
+    }
+
+    @Test
+    public void unicodeTagsAndQueries_roundTrip() throws Exception {
+        File file = folder.newFile("searches.log");
+        LogSearchStore store = new LogSearchStore(file);
+        store.edit().putString("caf\u00e9 \ud83d\ude00", "\u6771\u4eac lang:ja").apply();
+        store.close();
+
+        LogSearchStore reopened = new LogSearchStore(file);
+        assertEquals("\u6771\u4eac lang:ja", reopened.getString("caf\u00e9 \ud83d\ude00", ""));
+        reopened.close();
+    }
+
+    @Test
+    public void tornRecord_isIgnoredOnReplay() throws Exception {
+        File file = folder.newFile("searches.log");
+        LogSearchStore store = new LogSearchStore(file);
+        store.edit().putString("kept", "query").apply();
+        long end = store.getLogBytes();
+        store.edit().putString("torn", "query that was only partly written").apply();
+        store.close();
+
+        //corrupt the last record as if the app had been killed half way through writing it.
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.seek(end + 12);
+        raf.write(0x7f);
+        raf.close();
+
+        LogSearchStore reopened = new LogSearchStore(file);
+        assertEquals("query", reopened.getString("kept", ""));
+        assertFalse(reopened.contains("torn"));
+        reopened.edit().putString("after", "crash").apply();
+        reopened.close();
+
+        LogSearchStore again = new LogSearchStore(file);
+        assertEquals(2, again.size());
+        assertEquals("crash", again.getString("after", ""));
+        again.close();
+    }
+
+    @Test
+    public void compact_dropsGarbageAndKeepsLiveSearches() throws Exception {
+        File file = folder.newFile("searches.log");
+        LogSearchStore store = new LogSearchStore(file);
+        Map<String, String> expected = new HashMap<>();
+        Random random = new Random(42);
+
+        for (int i = 0; i < 5000; ++i) {
+            String tag = "tag" + random.nextInt(200);
+            if (random.nextInt(4) == 0) {
+                store.edit().remove(tag).apply();
+                expected.remove(tag);
+            }
+            else {
+                String query = "query " + i;
+                store.edit().putString(tag, query).apply();
+                expected.put(tag, query);
+            }
+        }
+
+        store.compact();
+        assertEquals(0, store.getGarbageBytes());
+        assertEquals(expected, store.getAll());
+
+        store.edit().putString("new", "after compaction").apply();
+        expected.put("new", "after compaction");
+        store.close();
+
+        LogSearchStore reopened = new LogSearchStore(file);
+        assertEquals(expected, reopened.getAll());
+        reopened.close();
+    }
+
+    @Test
+    public void compact_keepsRecordsLargerThanItsBuffer() throws Exception {
+        File file = folder.newFile("searches.log");
+        LogSearchStore store = new LogSearchStore(file);
+        StringBuilder longQuery = new StringBuilder();
+        while (longQuery.length() < 200 * 1024)
+            longQuery.append("#java OR ");
+        store.edit().putString("short", "query").putString("long", longQuery.toString()).apply();
+        store.edit().putString("short", "edited").apply();
+
+        store.compact();
+        assertTrue("the long query was lost", longQuery.toString().equals(store.getString("long", "")));
+        store.close();
+
+        LogSearchStore reopened = new LogSearchStore(file);
+        assertTrue("the long query was lost", longQuery.toString().equals(reopened.getString("long", "")));
+        assertEquals("edited", reopened.getString("short", ""));
+        reopened.close();
+    }
+
+    @Test
+    public void compact_calledFromSeveralThreadsKeepsEverySearch() throws Exception {
+        File file = folder.newFile("searches.log");
+        final LogSearchStore store = new LogSearchStore(file);
+        final Map<String, String> expected = new HashMap<>();
+        for (int i = 0; i < 2000; ++i) {
+            store.edit().putString("tag" + i, "query " + i).apply();
+            expected.put("tag" + i, "query " + i);
+        }
+
+        //compactions racing each other and the edits must neither lose nor resurrect a search.
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread[] compactors = new Thread[3];
+        for (int t = 0; t < compactors.length; ++t) {
+            compactors[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        for (int i = 0; i < 20; ++i)
+                            store.compact();
+                    }
+                    catch (Throwable e) {
+                        failure.set(e);
+                    }
+                }
+            });
+            compactors[t].start();
+        }
+        for (int i = 0; i < 2000; ++i) {
+            if (i % 3 == 0) {
+                store.edit().remove("tag" + i).apply();
+                expected.remove("tag" + i);
+            }
+            else {
+                store.edit().putString("tag" + i, "edited " + i).apply();
+                expected.put("tag" + i, "edited " + i);
+            }
+        }
+        for (Thread compactor : compactors)
+            compactor.join();
+
+        assertNull(failure.get());
+        assertEquals(expected, store.getAll());
+        store.close();
+
+        LogSearchStore reopened = new LogSearchStore(file);
+        assertEquals(expected, reopened.getAll());
+        reopened.close();
+    }
+
+    @Test
+    public void utf8Length_matchesGetBytes() throws Exception {
+        String[] samples = {"", "abc", "caf\u00e9", "\u6771\u4eac", "\ud83d\ude00", "lone \ud83d surrogate"};
+        for (String sample : samples)
+            assertEquals(sample, sample.getBytes("UTF-8").length, LogSearchStore.utf8Length(sample));
+    }
+
+    @Test
+    public void grownCapacity_doesNotOverflow() throws Exception {
+        assertEquals(4096, LogSearchStore.grownCapacity(1024, 3000));
+        //doubling 1 GiB as an int would overflow to a negative capacity.
+        assertEquals(Integer.MAX_VALUE, LogSearchStore.grownCapacity(1 << 30, (1L << 30) + 1));
+        assertEquals(Integer.MAX_VALUE, LogSearchStore.grownCapacity(1 << 30, Integer.MAX_VALUE));
+    }
+
+    @Test(expected = IOException.class)
+    public void grownCapacity_failsPastTheLargestMapping() throws Exception {
+        LogSearchStore.grownCapacity(1 << 30, Integer.MAX_VALUE + 1L);
+    }
+}
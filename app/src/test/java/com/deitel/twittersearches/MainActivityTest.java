@@ -0,0 +1,129 @@
+package com.deitel.twittersearches;
+
+import android.content.res.Configuration;
+import android.support.v7.widget.RecyclerView;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.android.controller.ActivityController;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+//Checks that rotating MainActivity keeps the loaded searches: the new MainActivity shows the same tags
+//without reading the SearchStore again.
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 25)
+public class MainActivityTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private CountingSearchStore store;
+
+    @Before
+    public void setUp() throws Exception {
+        LogSearchStore log = new LogSearchStore(folder.newFile("searches.log"));
+        log.edit().putString("java", "#java").putString("news", "from:bbcnews").putString("Android", "#android").apply();
+        store = new CountingSearchStore(log);
+        SearchStores.set(store);
+    }
+
+    @After
+    public void tearDown() {
+        SearchStores.set(null);
+        store.close();
+    }
+
+    @Test
+    public void rotation_reusesLoadedSearchesWithoutReadingTheStore() {
+        ActivityController<MainActivity> controller = Robolectric.buildActivity(MainActivity.class).setup();
+        finishBackgroundWork();
+        MainActivity activity = controller.get();
+        assertEquals(3, displayedTagCount(activity));
+        assertTrue(store.reads > 0);
+
+        store.reads = 0;
+        Configuration landscape = new Configuration(RuntimeEnvironment.application.getResources().getConfiguration());
+        landscape.orientation = Configuration.ORIENTATION_LANDSCAPE;
+        controller.configurationChange(landscape);
+        finishBackgroundWork();
+
+        MainActivity rotated = controller.get();
+        assertNotSame(activity, rotated);
+        assertEquals(3, displayedTagCount(rotated));
+        assertEquals(0, store.reads);
+
+        controller.pause().stop().destroy();
+    }
+
+    private static int displayedTagCount(MainActivity activity) {
+        RecyclerView recyclerView = (RecyclerView) activity.findViewById(R.id.recyclerView);
+        return recyclerView.getAdapter().getItemCount();
+    }
+
+    private static void finishBackgroundWork() {
+        Robolectric.flushBackgroundThreadScheduler();
+        ShadowLooper.runUiThreadTasksIncludingDelayedTasks();
+    }
+
+
+    //CountingSearchStore counts the calls that read searches from the store it wraps.
+    private static class CountingSearchStore implements SearchStore {
+        private final SearchStore store;
+        int reads;
+
+        CountingSearchStore(SearchStore store) {
+            this.store = store;
+        }
+
+        @Override
+        public String getString(String tag, String defValue) {
+            ++reads;
+            return store.getString(tag, defValue);
+        }
+
+        @Override
+        public boolean contains(String tag) {
+            ++reads;
+            return store.contains(tag);
+        }
+
+        @Override
+        public Map<String, String> getAll() {
+            ++reads;
+            return store.getAll();
+        }
+
+        @Override
+        public int size() {
+            ++reads;
+            return store.size();
+        }
+
+        @Override
+        public Editor edit() {
+            return store.edit();
+        }
+
+        @Override
+        public void flush() {
+            store.flush();
+        }
+
+        @Override
+        public void close() {
+            store.close();
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.deitel.twittersearches;
+
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class MetricsTest {
+
+    @After
+    public void tearDown() {
+        Metrics.setEnabled(false);
+        Metrics.reset();
+    }
+
+    @Test
+    public void percentilesAreWithinOneBucket() {
+        LatencyHistogram histogram = new LatencyHistogram("test");
+        for (long nanos = 1; nanos <= 100000; ++nanos)
+            histogram.recordNanos(nanos * 1000);
+
+        assertEquals(100000, histogram.getCount());
+        assertEquals(100000000, histogram.getMaxNanos());
+        assertEquals(50000500, histogram.getMeanNanos());
+        assertWithin(50000000, histogram.getPercentileNanos(50));
+        assertWithin(90000000, histogram.getPercentileNanos(90));
+        assertWithin(99000000, histogram.getPercentileNanos(99));
+        assertEquals(100000000, histogram.getPercentileNanos(100));
+    }
+
+    @Test
+    public void bucketsCoverEveryDuration() {
+        for (long nanos = 0; nanos < 100000; ++nanos) {
+            int bucket = LatencyHistogram.bucket(nanos);
+            assertTrue(nanos <= LatencyHistogram.upperBound(bucket));
+            assertTrue(bucket == 0 || nanos > LatencyHistogram.upperBound(bucket - 1));
+        }
+        int last = LatencyHistogram.bucket(Long.MAX_VALUE);
+        assertEquals(Long.MAX_VALUE, LatencyHistogram.upperBound(last));
+    }
+
+    @Test
+    public void disabledMetricsRecordNothing() {
+        Metrics.setEnabled(false);
+        long start = Metrics.start();
+        assertEquals(0, start);
+        Metrics.BIND_VIEW_HOLDER.record(start);
+        assertEquals(0, Metrics.BIND_VIEW_HOLDER.getCount());
+
+        Metrics.setEnabled(true);
+        Metrics.BIND_VIEW_HOLDER.record(Metrics.start());
+        assertEquals(1, Metrics.BIND_VIEW_HOLDER.getCount());
+        assertTrue(Metrics.dump().contains("onBindViewHolder"));
+    }
+
+    @Test
+    public void slowFramesAreCountedAsJank() {
+        JankCounter counter = new JankCounter("frames");
+        long interval = 16666667;
+        counter.recordFrame(interval, interval);
+        counter.recordFrame(interval * 3 / 2, interval);
+        counter.recordFrame(interval * 2, interval);
+        counter.recordFrame(interval * 4, interval);
+
+        assertEquals(4, counter.getFrameCount());
+        assertEquals(2, counter.getJankyFrameCount());
+        assertEquals(1 + 3, counter.getDroppedFrameCount());
+    }
+
+    private static void assertWithin(long expected, long actual) {
+        assertTrue(actual + " is not within 12.5% of " + expected,
+                Math.abs(actual - expected) <= expected / 8);
+    }
+}
@@ -0,0 +1,84 @@
+package com.deitel.twittersearches;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+//Compares looking searches up in a QueryIndex with tokenizing and scanning every saved query, and reports
+//the size of the saved index next to the size of the searches themselves.
+//Benchmarks are skipped unless the tests are run with -Dbenchmark=true.
+public class QueryIndexBenchmark {
+
+    private static final int[] SEARCHES = {1000, 10000, 100000};
+    private static final int LOOKUPS = 200;
+    private static final String[] WORDS = {"java", "kotlin", "android", "news", "release", "conference", "jobs"};
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Before
+    public void onlyWhenBenchmarking() {
+        Assume.assumeTrue(Boolean.getBoolean("benchmark"));
+    }
+
+    @Test
+    public void lookupAndSize() throws Exception {
+        for (int count : SEARCHES) {
+            Random random = new Random(count);
+            Map<String, String> searches = new HashMap<>();
+            long searchBytes = 0;
+            for (int i = 0; i < count; ++i) {
+                String query = "#tag" + random.nextInt(count / 10) + " from:user" + random.nextInt(count) + " "
+                        + WORDS[random.nextInt(WORDS.length)] + " lang:en";
+                searches.put("search" + i, query);
+                searchBytes += ("search" + i).length() + query.length();
+            }
+
+            File file = new File(folder.getRoot(), "queries" + count + ".idx");
+            QueryIndex index = new QueryIndex(file);
+            long start = System.nanoTime();
+            for (Map.Entry<String, String> search : searches.entrySet())
+                index.update(search.getKey(), null, search.getValue());
+            double buildMillis = (System.nanoTime() - start) / 1e6;
+            index.save();
+
+            String[] tokens = new String[LOOKUPS];
+            for (int i = 0; i < LOOKUPS; ++i)
+                tokens[i] = "#tag" + random.nextInt(count / 10);
+
+            int found = 0;
+            start = System.nanoTime();
+            for (String token : tokens)
+                found += index.find(token).size();
+            long indexNanos = (System.nanoTime() - start) / LOOKUPS;
+
+            int scanned = 0;
+            start = System.nanoTime();
+            for (String token : tokens) {
+                Set<String> tags = new HashSet<>();
+                for (Map.Entry<String, String> search : searches.entrySet()) {
+                    if (QueryTokenizer.tokenize(search.getValue()).contains(token))
+                        tags.add(search.getKey());
+                }
+                scanned += tags.size();
+            }
+            long scanNanos = (System.nanoTime() - start) / LOOKUPS;
+
+            if (found != scanned)
+                throw new AssertionError("index found " + found + " matches, scan found " + scanned);
+
+            System.out.printf("%6d searches: build %7.1f ms, lookup %8.1f us (scan %9.1f us), index %6d KB (searches %6d KB), %d tokens%n",
+                    count, buildMillis, indexNanos / 1e3, scanNanos / 1e3, file.length() / 1024, searchBytes / 1024,
+                    index.getTokenCount());
+        }
+    }
+}
@@ -0,0 +1,270 @@
+package com.deitel.twittersearches;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+import static org.junit.Assert.*;
+
+public class QueryIndexTest {
+
+    //The size of the file header: magic number, version, fingerprint, body length and checksum.
+    private static final int HEADER_SIZE = 24;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void tokenize_keepsOperators() {
+        assertEquals(Arrays.asList("#java", "from:oracle", "since:2017-06-27", "-#spam", "release"),
+                QueryTokenizer.tokenize("(#Java OR from:@Oracle) since:2017-06-27 -#spam \"release\""));
+        assertTrue(QueryTokenizer.isOperator("from:"));
+        assertTrue(QueryTokenizer.isOperator("#j"));
+        assertFalse(QueryTokenizer.isOperator("java"));
+    }
+
+    @Test
+    public void update_addsAndRemovesTokens() throws Exception {
+        QueryIndex index = new QueryIndex(new File(folder.getRoot(), "queries.idx"));
+        index.update("java", null, "#java OR #kotlin");
+        index.update("oracle", null, "from:oracle #java");
+
+        assertEquals(new HashSet<>(Arrays.asList("java", "oracle")), index.find("#Java"));
+        assertEquals(Collections.singleton("oracle"), index.findByPrefix("from:o"));
+
+        index.update("java", "#java OR #kotlin", "#kotlin");
+        index.update("oracle", "from:oracle #java", null);
+        assertTrue(index.find("#java").isEmpty());
+        assertTrue(index.findByPrefix("from:").isEmpty());
+        assertEquals(1, index.getTokenCount());
+    }
+
+    @Test
+    public void save_loadsWithoutRebuilding() throws Exception {
+        File file = new File(folder.getRoot(), "queries.idx");
+        LogSearchStore store = new LogSearchStore(folder.newFile("searches.log"));
+        store.edit().putString("java", "#java lang:en").putString("news", "from:bbcnews").apply();
+
+        QueryIndex index = new QueryIndex(file);
+        assertTrue(index.loadOrRebuild(store));
+        store.edit().putString("caf\u00e9", "\u6771\u4eac lang:ja").apply();
+        index.update("caf\u00e9", null, "\u6771\u4eac lang:ja");
+        index.save();
+
+        QueryIndex loaded = new QueryIndex(file);
+        assertFalse(loaded.loadOrRebuild(store));
+        assertEquals(new HashSet<>(Arrays.asList("java", "caf\u00e9")), loaded.findByPrefix("lang:"));
+        assertEquals(Collections.singleton("caf\u00e9"), loaded.find("\u6771\u4eac"));
+        store.close();
+    }
+
+    @Test
+    public void loadOrRebuild_rebuildsADamagedIndex() throws Exception {
+        File file = new File(folder.getRoot(), "queries.idx");
+        LogSearchStore store = new LogSearchStore(folder.newFile("searches.log"));
+        store.edit().putString("java", "#java lang:en").putString("news", "from:bbcnews").apply();
+        QueryIndex index = new QueryIndex(file);
+        index.loadOrRebuild(store);
+        index.save();
+        byte[] saved = Files.readAllBytes(file.toPath());
+
+        //a flipped bit in the body.
+        byte[] damaged = saved.clone();
+        damaged[damaged.length - 3] ^= 1;
+        Files.write(file.toPath(), damaged);
+        assertRebuilt(file, store);
+
+        //a body whose checksum matches but which claims two billion tags.
+        ByteBuffer body = ByteBuffer.allocate(8).putInt(Integer.MAX_VALUE).putInt(0);
+        CRC32 crc = new CRC32();
+        crc.update(body.array());
+        ByteBuffer huge = ByteBuffer.allocate(HEADER_SIZE + 8);
+        huge.put(saved, 0, 16).putInt(8).putInt((int) crc.getValue()).put(body.array());
+        Files.write(file.toPath(), huge.array());
+        assertRebuilt(file, store);
+
+        //a truncated file.
+        Files.write(file.toPath(), Arrays.copyOf(saved, saved.length / 2));
+        assertRebuilt(file, store);
+        store.close();
+    }
+
+    @Test
+    public void loadOrRebuild_rebuildsStaleIndex() throws Exception {
+        File file = new File(folder.getRoot(), "queries.idx");
+        LogSearchStore store = new LogSearchStore(folder.newFile("searches.log"));
+        store.edit().putString("java", "#java").apply();
+
+        QueryIndex index = new QueryIndex(file);
+        index.loadOrRebuild(store);
+        index.save();
+
+        //the search changes without the index being told, e.g. because the app was killed before onStop.
+        store.edit().putString("java", "#kotlin").apply();
+
+        QueryIndex loaded = new QueryIndex(file);
+        assertTrue(loaded.loadOrRebuild(store));
+        assertTrue(loaded.find("#java").isEmpty());
+        assertEquals(Collections.singleton("java"), loaded.find("#kotlin"));
+        store.close();
+    }
+
+    @Test
+    public void save_writesStringsLongerThan64KB() throws Exception {
+        File file = new File(folder.getRoot(), "queries.idx");
+        LogSearchStore store = new LogSearchStore(folder.newFile("searches.log"));
+        StringBuilder longToken = new StringBuilder("#");
+        while (longToken.length() < 100 * 1024)
+            longToken.append("java");
+        String longQuery = longToken + " from:oracle";
+        store.edit().putString("long", longQuery).apply();
+
+        QueryIndex index = new QueryIndex(file);
+        index.loadOrRebuild(store);
+        index.save();
+
+        QueryIndex loaded = new QueryIndex(file);
+        assertFalse(loaded.loadOrRebuild(store));
+        assertEquals(Collections.singleton("long"), loaded.find(longToken.toString()));
+        assertEquals(Collections.singleton("long"), loaded.find("from:oracle"));
+        store.close();
+    }
+
+    @Test
+    public void update_doesNotWaitForALoad() throws Exception {
+        LogSearchStore log = new LogSearchStore(folder.newFile("searches.log"));
+        log.edit().putString("java", "#java").putString("news", "from:bbcnews").apply();
+        final BlockingSearchStore store = new BlockingSearchStore(log);
+        final QueryIndex index = new QueryIndex(new File(folder.getRoot(), "queries.idx"));
+
+        Thread loader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                index.loadOrRebuild(store);
+            }
+        });
+        loader.start();
+        assertTrue(store.reading.await(10, TimeUnit.SECONDS));
+
+        //the load is stuck reading the store, but searches can still be saved and deleted.
+        Thread updater = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                index.update("kotlin", null, "#kotlin");
+                index.update("news", "from:bbcnews", null);
+            }
+        });
+        updater.start();
+        updater.join(5000);
+        assertFalse("update waited for the load", updater.isAlive());
+
+        store.release.countDown();
+        loader.join();
+        //the loaded index includes the updates made while it was loading.
+        assertEquals(Collections.singleton("java"), index.find("#java"));
+        assertEquals(Collections.singleton("kotlin"), index.find("#kotlin"));
+        assertTrue(index.find("from:bbcnews").isEmpty());
+
+        //and so does its fingerprint: once saved, it loads without a rebuild.
+        log.edit().putString("kotlin", "#kotlin").remove("news").apply();
+        index.save();
+        assertFalse(new QueryIndex(new File(folder.getRoot(), "queries.idx")).loadOrRebuild(log));
+        log.close();
+    }
+
+    @Test
+    public void updatesAfterASave_doNotChangeTheSavedCopy() throws Exception {
+        File file = new File(folder.getRoot(), "queries.idx");
+        LogSearchStore store = new LogSearchStore(folder.newFile("searches.log"));
+        store.edit().putString("java", "#java").putString("jvm", "#java #jvm").apply();
+        QueryIndex index = new QueryIndex(file);
+        index.loadOrRebuild(store);
+        index.save();
+
+        //the posting set of "#java" is shared with the copy that was saved, so it is copied before it changes.
+        index.update("kotlin", null, "#java #kotlin");
+        index.update("jvm", "#java #jvm", null);
+        assertEquals(new HashSet<>(Arrays.asList("java", "kotlin")), index.find("#java"));
+        index.save();
+
+        store.edit().putString("kotlin", "#java #kotlin").remove("jvm").apply();
+        QueryIndex loaded = new QueryIndex(file);
+        assertFalse(loaded.loadOrRebuild(store));
+        assertEquals(new HashSet<>(Arrays.asList("java", "kotlin")), loaded.find("#java"));
+        assertTrue(loaded.find("#jvm").isEmpty());
+        store.close();
+    }
+
+
+    //Checks that the index in "file" is rebuilt from "store" rather than loaded.
+    private static void assertRebuilt(File file, SearchStore store) {
+        QueryIndex loaded = new QueryIndex(file);
+        assertTrue(loaded.loadOrRebuild(store));
+        assertEquals(Collections.singleton("java"), loaded.find("#java"));
+        assertEquals(Collections.singleton("news"), loaded.find("from:bbcnews"));
+    }
+
+    //BlockingSearchStore blocks getAll until it is released.
+    private static class BlockingSearchStore implements SearchStore {
+        private final SearchStore store;
+        final CountDownLatch reading = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+
+        BlockingSearchStore(SearchStore store) {
+            this.store = store;
+        }
+
+        @Override
+        public String getString(String tag, String defValue) {
+            return store.getString(tag, defValue);
+        }
+
+        @Override
+        public boolean contains(String tag) {
+            return store.contains(tag);
+        }
+
+        @Override
+        public Map<String, String> getAll() {
+            reading.countDown();
+            try {
+                release.await();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return store.getAll();
+        }
+
+        @Override
+        public int size() {
+            return store.size();
+        }
+
+        @Override
+        public Editor edit() {
+            return store.edit();
+        }
+
+        @Override
+        public void flush() {
+            store.flush();
+        }
+
+        @Override
+        public void close() {
+            store.close();
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package com.deitel.twittersearches;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+//Fetches and prefetches search results from a local HTTP server through the UrlConnectionHttpClient.
+public class ResultsFetcherTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final long HOUR = 60 * 60 * 1000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private HttpServer server;
+    private String url;
+
+    //what the server answers with, and what it was asked.
+    private volatile String body = "<p>results</p>";
+    private volatile int errorCode;
+    private final List<String> requestsIfNoneMatch = new ArrayList<>();
+    private final List<Integer> clientPorts = new ArrayList<>();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+    private volatile long delayMillis;
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/search", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                String etag = "\"" + body.hashCode() + "\"";
+                synchronized (ResultsFetcherTest.this) {
+                    requestsIfNoneMatch.add(exchange.getRequestHeaders().getFirst("If-None-Match"));
+                    clientPorts.add(exchange.getRemoteAddress().getPort());
+                }
+
+                int running = inFlight.incrementAndGet();
+                while (maxInFlight.get() < running)
+                    maxInFlight.compareAndSet(maxInFlight.get(), running);
+                try {
+                    Thread.sleep(delayMillis);
+                }
+                catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+                inFlight.decrementAndGet();
+
+                if (errorCode != 0) {
+                    exchange.sendResponseHeaders(errorCode, -1);
+                }
+                else if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                    exchange.sendResponseHeaders(304, -1);
+                }
+                else {
+                    byte[] bytes = body.getBytes(UTF_8);
+                    exchange.getResponseHeaders().set("Content-Type", "text/html; charset=utf-8");
+                    exchange.getResponseHeaders().set("ETag", etag);
+                    exchange.getResponseHeaders().set("Cache-Control", "no-cache, no-store");
+                    exchange.sendResponseHeaders(200, bytes.length);
+                    OutputStream out = exchange.getResponseBody();
+                    out.write(bytes);
+                    out.close();
+                }
+                exchange.close();
+            }
+        });
+        server.start();
+        url = "http://127.0.0.1:" + server.getAddress().getPort() + "/search?q=%23java";
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+        ((ExecutorService) server.getExecutor()).shutdown();
+    }
+
+    @Test
+    public void fetch_servesFreshResultsFromTheCache() throws Exception {
+        ResultsFetcher fetcher = newFetcher(HOUR, HOUR);
+
+        ResultsFetcher.Result result = fetcher.fetch(url);
+        assertEquals(ResultsFetcher.Source.NETWORK, result.source);
+        assertEquals("<p>results</p>", new String(result.body, result.getCharset()));
+
+        //the server isn't asked again while the results are fresh, even by a new cache over the same files.
+        body = "<p>newer results</p>";
+        assertEquals(ResultsFetcher.Source.CACHE, fetcher.fetch(url).source);
+        result = newFetcher(HOUR, HOUR).fetch(url);
+        assertEquals(ResultsFetcher.Source.CACHE, result.source);
+        assertEquals("<p>results</p>", new String(result.body, UTF_8));
+        assertEquals(1, requestsIfNoneMatch.size());
+    }
+
+    @Test
+    public void fetch_revalidatesStaleResults() throws Exception {
+        ResultsFetcher fetcher = newFetcher(0, HOUR);
+
+        assertEquals(ResultsFetcher.Source.NETWORK, fetcher.fetch(url).source);
+        assertEquals(ResultsFetcher.Source.REVALIDATED, fetcher.fetch(url).source);
+
+        body = "<p>newer results</p>";
+        ResultsFetcher.Result result = fetcher.fetch(url);
+        assertEquals(ResultsFetcher.Source.NETWORK, result.source);
+        assertEquals("<p>newer results</p>", new String(result.body, UTF_8));
+
+        assertEquals(3, requestsIfNoneMatch.size());
+        assertNull(requestsIfNoneMatch.get(0));
+        assertEquals("\"" + "<p>results</p>".hashCode() + "\"", requestsIfNoneMatch.get(1));
+
+        //the revalidation went over the connection of the first request (the JDK's HttpServer closes the
+        //connection after a 304, so the third request needs a new one).
+        assertEquals(clientPorts.get(0), clientPorts.get(1));
+    }
+
+    @Test
+    public void fetch_fallsBackToStaleResults() throws Exception {
+        fetch_fallsBackToStaleResults(newFetcher(0, HOUR), true);
+        fetch_fallsBackToStaleResults(newFetcher(0, -1), false);
+    }
+
+    private void fetch_fallsBackToStaleResults(ResultsFetcher fetcher, boolean staleAllowed) throws Exception {
+        errorCode = 0;
+        fetcher.getCache().clear();
+        fetcher.fetch(url);
+
+        errorCode = 503;
+        try {
+            assertEquals(ResultsFetcher.Source.STALE, fetcher.fetch(url).source);
+            assertTrue(staleAllowed);
+        }
+        catch (IOException e) {
+            assertFalse(staleAllowed);
+        }
+    }
+
+    @Test
+    public void prefetch_isBoundedAndCountsUsedResults() throws Exception {
+        ResultsFetcher fetcher = newFetcher(HOUR, HOUR);
+        List<String> urls = new ArrayList<>();
+        for (int i = 0; i < 8; ++i)
+            urls.add(url + i);
+
+        //at most 2 downloads at a time, and no new download once 2500 bytes have been downloaded.
+        body = new String(new char[1000]).replace('\0', 'x');
+        delayMillis = 50;
+        assertEquals(3, new ResultsPrefetcher(fetcher, 1, 2500).prefetch(urls));
+        assertEquals(8, new ResultsPrefetcher(fetcher, 2, 1024 * 1024).prefetch(urls) + 3);
+        assertEquals(2, maxInFlight.get());
+
+        //fresh results aren't downloaded again.
+        assertEquals(0, new ResultsPrefetcher(fetcher, 2, 1024 * 1024).prefetch(urls));
+        assertEquals(8, requestsIfNoneMatch.size());
+
+        //a prefetched result is used once; "other" was never prefetched.
+        assertEquals(ResultsFetcher.Source.CACHE, fetcher.fetch(urls.get(0)).source);
+        assertEquals(ResultsFetcher.Source.CACHE, fetcher.fetch(urls.get(0)).source);
+        assertEquals(ResultsFetcher.Source.NETWORK, fetcher.fetch(url + "other").source);
+
+        PrefetchStats stats = fetcher.getStats();
+        assertEquals(8, stats.getPrefetchedCount());
+        assertEquals(1, stats.getUsedCount());
+        assertEquals(2, stats.getTapsFromCacheCount());
+        assertFalse(fetcher.getCache().get(urls.get(0)).prefetched);
+        assertTrue(fetcher.getCache().get(urls.get(1)).prefetched);
+    }
+
+    @Test
+    public void cache_evictsLeastRecentlyUsed() throws Exception {
+        byte[] body = new byte[1000];
+        ResultsCache cache = new ResultsCache(folder.newFolder("results"), 2500);
+
+        cache.put("a", new ResultsCache.Entry("text/html", null, null, 0, 0, false, body));
+        cache.put("b", new ResultsCache.Entry("text/html", null, null, 0, 0, false, body));
+        assertNotNull(cache.get("a"));
+        cache.put("c", new ResultsCache.Entry("text/html", null, null, 0, 0, false, body));
+
+        assertEquals(2, cache.size());
+        assertTrue(cache.getTotalBytes() <= 2500);
+        assertNotNull(cache.get("a"));
+        assertNull(cache.get("b"));
+        assertArrayEquals(body, cache.get("c").body);
+    }
+
+
+
+    private ResultsFetcher newFetcher(long freshMillis, long maxStaleMillis) {
+        return new ResultsFetcher(new UrlConnectionHttpClient(),
+                new ResultsCache(new File(folder.getRoot(), "results"), 1024 * 1024),
+                new PrefetchStats(new File(folder.getRoot(), "prefetch.stats")), freshMillis, maxStaleMillis);
+    }
+}
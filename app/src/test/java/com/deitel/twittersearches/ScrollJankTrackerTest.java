@@ -0,0 +1,56 @@
+package com.deitel.twittersearches;
+
+import android.support.v7.widget.RecyclerView;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
+import org.robolectric.util.Scheduler;
+
+import static org.junit.Assert.*;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 25)
+public class ScrollJankTrackerTest {
+
+    private static final int FRAMES = 10;
+
+    @Before
+    public void setUp() {
+        Metrics.reset();
+        Metrics.setEnabled(true);
+    }
+
+    @After
+    public void tearDown() {
+        Metrics.setEnabled(false);
+        Metrics.reset();
+    }
+
+    @Test
+    public void scrollingAgainWithinAFrame_leavesOneFrameCallback() {
+        ScrollJankTracker tracker = new ScrollJankTracker(60);
+        Scheduler scheduler = ShadowLooper.getShadowMainLooper().getScheduler();
+        scheduler.pause();
+        int queued = scheduler.size();
+
+        //the list stops and is dragged again before the next frame.
+        tracker.onScrollStateChanged(null, RecyclerView.SCROLL_STATE_DRAGGING);
+        tracker.onScrollStateChanged(null, RecyclerView.SCROLL_STATE_IDLE);
+        tracker.onScrollStateChanged(null, RecyclerView.SCROLL_STATE_DRAGGING);
+        assertEquals(queued + 1, scheduler.size());
+
+        //each frame asks for the next one, once.
+        for (int frame = 0; frame < FRAMES; ++frame) {
+            scheduler.runOneTask();
+            assertEquals(queued + 1, scheduler.size());
+        }
+
+        tracker.onScrollStateChanged(null, RecyclerView.SCROLL_STATE_IDLE);
+        assertEquals(queued, scheduler.size());
+    }
+}
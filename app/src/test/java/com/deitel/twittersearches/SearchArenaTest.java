@@ -0,0 +1,105 @@
+package com.deitel.twittersearches;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class SearchArenaTest {
+
+    @Test
+    public void putGetRemove() {
+        SearchArena arena = new SearchArena();
+        assertEquals(-1, arena.put("java", "#java"));
+        assertEquals(-1, arena.put("caf\u00e9", "caf\u00e9 \ud83d\ude00"));
+        assertEquals("#java", arena.getQuery("java"));
+        assertEquals("caf\u00e9 \ud83d\ude00", arena.getQuery("caf\u00e9"));
+        assertNull(arena.getQuery("Java"));
+
+        //the returned lengths are the UTF-8 bytes of the replaced tag and query.
+        assertEquals(4 + 5, arena.put("java", "#java OR #kotlin"));
+        assertEquals("#java OR #kotlin", arena.getQuery("java"));
+        assertEquals(4 + 16, arena.put("java", "java"));
+        assertEquals("java", arena.getQuery("java"));
+
+        assertEquals(4 + 4, arena.remove("java"));
+        assertEquals(-1, arena.remove("java"));
+        assertFalse(arena.contains("java"));
+        assertTrue(arena.contains("caf\u00e9"));
+        assertEquals(1, arena.size());
+    }
+
+    @Test
+    public void unpairedSurrogatesMatchGetBytes() throws Exception {
+        SearchArena arena = new SearchArena();
+        String tag = "a\ud800b";
+        byte[] bytes = tag.getBytes("UTF-8");
+        byte[] query = "q".getBytes("UTF-8");
+        arena.put(bytes, 0, bytes.length, query, 0, query.length);
+        assertEquals("q", arena.getQuery(tag));
+        assertEquals("q", arena.getQuery("a?b"));
+    }
+
+    @Test
+    public void matchesHashMapUnderRandomEdits() {
+        Random random = new Random(3);
+        SearchArena arena = new SearchArena();
+        Map<String, String> expected = new HashMap<>();
+        List<String> tags = new ArrayList<>();
+        for (int i = 0; i < 2000; ++i)
+            tags.add((i % 7 == 0 ? "\u00fc" : "tag") + i);
+
+        for (int i = 0; i < 200000; ++i) {
+            String tag = tags.get(random.nextInt(tags.size()));
+            if (random.nextInt(3) == 0) {
+                String previous = expected.remove(tag);
+                int removed = arena.remove(tag);
+                assertEquals(previous == null, removed < 0);
+            }
+            else {
+                String query = "query " + random.nextInt(1 << random.nextInt(20));
+                String previous = expected.put(tag, query);
+                int replaced = arena.put(tag, query);
+                assertEquals(previous == null, replaced < 0);
+            }
+        }
+
+        assertEquals(expected.size(), arena.size());
+        assertEquals(expected, arena.toMap());
+        for (String tag : tags)
+            assertEquals(expected.get(tag), arena.getQuery(tag));
+
+        //a copy is unaffected by later edits.
+        SearchArena copy = arena.copy();
+        arena.clear();
+        assertEquals(0, arena.size());
+        assertEquals(expected, copy.toMap());
+    }
+
+    //100k searches take less room in the arena's arrays than their Strings alone would in a
+    //HashMap<String, String>, before counting the map's own entries: on a 64-bit JVM with compressed
+    //pointers, each tag and query is a 24-byte String and a char array with a 16-byte header.
+    @Test
+    public void footprintPer100kSearches_isSmallerThanTheirStrings() {
+        SearchArena arena = new SearchArena();
+        Random random = new Random(1);
+        long stringBytes = 0;
+        for (int i = 0; i < 100000; ++i) {
+            String tag = "tag" + random.nextInt(Integer.MAX_VALUE);
+            String query = "from:user" + random.nextInt(1000) + " #topic" + random.nextInt(1000) + " lang:en";
+            arena.put(tag, query);
+            stringBytes += 2 * (24 + 16) + 2L * (tag.length() + query.length());
+        }
+
+        assertTrue(arena.getFootprintBytes() + " bytes in the arena, " + stringBytes + " in Strings",
+                arena.getFootprintBytes() < stringBytes);
+    }
+}
@@ -0,0 +1,230 @@
+package com.deitel.twittersearches;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class SearchModelTest {
+
+    @Test
+    public void runs_turnThePreviousVersionIntoTheNextOne() {
+        Random random = new Random(19);
+        SearchModel model = new SearchModel();
+        //the list as the RecyclerView would see it after each version's notifications.
+        List<String> displayed = new ArrayList<>();
+
+        for (int i = 0; i < 3000; ++i) {
+            SearchModel.Snapshot previous = model.snapshot();
+            List<String> previousTags = toList(previous);
+            SearchModel.Snapshot next;
+
+            int operation = random.nextInt(5);
+            if (operation == 0)
+                next = model.remove(previous.size() > 0 ? previous.get(random.nextInt(previous.size())) : "none");
+            else if (operation == 4) {
+                List<String> batch = new ArrayList<>();
+                for (int j = random.nextInt(20); j > 0; --j)
+                    batch.add("tag" + random.nextInt(500));
+                next = model.removeAll(batch);
+            }
+            else if (operation == 1) {
+                Map<String, String> batch = new HashMap<>();
+                for (int j = random.nextInt(20); j > 0; --j)
+                    batch.put("tag" + random.nextInt(500), "query" + i);
+                next = model.putAll(batch);
+            }
+            else
+                next = model.put("tag" + random.nextInt(500), "query" + random.nextInt(3));
+
+            if (next == previous)
+                continue;
+            assertEquals(previous.getVersion(), next.getPreviousVersion());
+            //apply the runs the way the RecyclerView does, with a placeholder for each inserted row.
+            for (int run = 0; run < next.getRunCount(); ++run) {
+                for (int j = 0; j < next.getRunLength(run); ++j) {
+                    if (next.isRunInserted(run))
+                        displayed.add(next.getRunStart(run) + j, null);
+                    else
+                        displayed.remove(next.getRunStart(run));
+                }
+            }
+            //the rows that were kept must be where the next version has them.
+            List<String> nextTags = toList(next);
+            assertEquals(nextTags.size(), displayed.size());
+            for (int j = 0; j < displayed.size(); ++j) {
+                if (displayed.get(j) == null)
+                    displayed.set(j, nextTags.get(j));
+                else
+                    assertEquals(nextTags.get(j), displayed.get(j));
+            }
+            assertEquals(next.getInsertedCount() - next.getRemovedCount(), nextTags.size() - previousTags.size());
+
+            //the previous version hasn't changed.
+            assertEquals(previousTags, toList(previous));
+        }
+    }
+
+    @Test
+    public void concurrentReadersAndWriters_seeConsistentVersions() throws Exception {
+        final SearchModel model = new SearchModel();
+        final int writers = 4;
+        final int readers = 8;
+        final int changesPerWriter = 5000;
+        final AtomicBoolean writing = new AtomicBoolean(true);
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<Map<String, String>> expected = new ArrayList<>();
+        final long[] changeCounts = new long[writers];
+
+        List<Thread> threads = new ArrayList<>();
+        for (int w = 0; w < writers; ++w) {
+            final int writer = w;
+            final Map<String, String> saved = new HashMap<>();
+            expected.add(saved);
+            threads.add(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Random random = new Random(writer);
+                    try {
+                        start.await();
+                        for (int i = 0; i < changesPerWriter; ++i) {
+                            //each writer has tags of its own, so it knows what they should end up as.
+                            String tag = (char) ('a' + random.nextInt(26)) + "w" + writer + "-" + random.nextInt(300);
+                            //every put changes the query, but removing a tag that isn't saved changes nothing.
+                            if (random.nextInt(3) == 0) {
+                                if (saved.remove(tag) != null)
+                                    ++changeCounts[writer];
+                                model.remove(tag);
+                            }
+                            else {
+                                String query = tag + "#" + i;
+                                saved.put(tag, query);
+                                ++changeCounts[writer];
+                                model.put(tag, query);
+                            }
+                        }
+                    }
+                    catch (Throwable e) {
+                        failure.compareAndSet(null, e);
+                    }
+                }
+            }));
+        }
+
+        for (int r = 0; r < readers; ++r) {
+            threads.add(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        long lastVersion = -1;
+                        do {
+                            SearchModel.Snapshot snapshot = model.snapshot();
+                            assertTrue(snapshot.getVersion() >= lastVersion);
+                            lastVersion = snapshot.getVersion();
+                            assertConsistent(snapshot);
+                        } while (writing.get());
+                    }
+                    catch (Throwable e) {
+                        failure.compareAndSet(null, e);
+                    }
+                }
+            }));
+        }
+
+        for (Thread thread : threads)
+            thread.start();
+        start.countDown();
+        for (Thread thread : threads.subList(0, writers))
+            thread.join();
+        writing.set(false);
+        for (Thread thread : threads)
+            thread.join();
+        if (failure.get() != null)
+            throw new AssertionError(failure.get());
+
+        //no change was lost: every writer's tags have the queries it last saved.
+        SearchModel.Snapshot last = model.snapshot();
+        Map<String, String> all = new HashMap<>();
+        for (Map<String, String> saved : expected)
+            all.putAll(saved);
+        assertEquals(all.size(), last.size());
+        for (Map.Entry<String, String> search : all.entrySet())
+            assertEquals(search.getValue(), last.getQuery(search.getKey()));
+        assertConsistent(last);
+
+        //every change made exactly one new version.
+        long changes = 0;
+        for (long count : changeCounts)
+            changes += count;
+        assertEquals(changes, last.getVersion());
+    }
+
+    @Test
+    public void unchangedSearches_keepTheCurrentVersion() {
+        SearchModel model = new SearchModel();
+        SearchModel.Snapshot first = model.put("java", "java lang:en");
+        assertEquals(1, first.getVersion());
+        assertEquals(1, first.getInsertedCount());
+
+        assertSame(first, model.put("java", "java lang:en"));
+        assertSame(first, model.remove("kotlin"));
+        Map<String, String> same = new HashMap<>();
+        same.put("java", "java lang:en");
+        assertSame(first, model.putAll(same));
+
+        SearchModel.Snapshot edited = model.put("java", "java");
+        assertEquals(2, edited.getVersion());
+        assertEquals(0, edited.getRunCount());
+        assertEquals("java", edited.getQuery("java"));
+        assertEquals("java lang:en", first.getQuery("java"));
+
+        SearchModel.Snapshot removed = model.remove("java");
+        assertEquals(1, removed.getRemovedCount());
+        assertEquals(0, removed.size());
+        assertEquals(1, edited.size());
+    }
+
+
+    //Checks that the tags are in order, that positions, lookups, queries and sections agree with each other.
+    private static void assertConsistent(SearchModel.Snapshot snapshot) {
+        List<String> tags = toList(snapshot);
+        assertEquals(tags.size(), snapshot.size());
+
+        List<String> sorted = new ArrayList<>(tags);
+        Collections.sort(sorted, SortedTagIndex.ORDER);
+        assertEquals(sorted, tags);
+
+        int sectionTotal = 0;
+        TagSections sections = snapshot.getSections();
+        for (int section = 0; section < sections.size(); ++section) {
+            assertEquals(sectionTotal, sections.getStart(section));
+            sectionTotal += sections.getCount(section);
+        }
+        assertEquals(tags.size(), sectionTotal);
+
+        for (int position = 0; position < tags.size(); position += 1 + position / 8) {
+            String tag = tags.get(position);
+            assertEquals(tag, snapshot.get(position));
+            assertEquals(position, snapshot.indexOf(tag));
+            assertTrue(snapshot.getQuery(tag).startsWith(tag + "#"));
+        }
+    }
+
+    private static List<String> toList(SearchModel.Snapshot snapshot) {
+        List<String> tags = new ArrayList<>(snapshot.size());
+        for (String tag : snapshot)
+            tags.add(tag);
+        return tags;
+    }
+}
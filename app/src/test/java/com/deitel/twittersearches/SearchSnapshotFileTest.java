@@ -0,0 +1,124 @@
+package com.deitel.twittersearches;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class SearchSnapshotFileTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void writeAndRead_keepsTheSearchesInSortedOrder() throws Exception {
+        SearchModel model = new SearchModel();
+        Map<String, String> searches = new HashMap<>();
+        for (int i = 0; i < 1000; ++i)
+            searches.put((i % 2 == 0 ? "Java " : "caf\u00e9 ") + Integer.toString(i, 36), "\u6771\u4eac #" + i);
+        searches.put("\ud83d\ude00", "");
+        SearchModel.Snapshot snapshot = model.putAll(searches);
+
+        File file = new File(folder.getRoot(), "searches.snapshot");
+        SearchSnapshotFile.write(file, snapshot);
+        SearchSnapshotFile snapshotFile = SearchSnapshotFile.open(file);
+        assertEquals(searches.size(), snapshotFile.size());
+
+        //read in chunks, the way the TagLoader does.
+        Map<String, String> read = new LinkedHashMap<>();
+        for (int start = 0; start < snapshotFile.size(); start += 300)
+            snapshotFile.read(start, Math.min(snapshotFile.size(), start + 300), read);
+        assertEquals(searches, read);
+        assertEquals(toList(snapshot), new ArrayList<>(read.keySet()));
+
+        //reading out of order finds the same searches.
+        Map<String, String> one = new LinkedHashMap<>();
+        snapshotFile.read(700, 701, one);
+        snapshotFile.read(3, 4, one);
+        assertEquals(snapshot.get(700), new ArrayList<>(one.keySet()).get(0));
+        assertEquals(snapshot.get(3), new ArrayList<>(one.keySet()).get(1));
+
+        //an empty model makes an empty snapshot.
+        SearchSnapshotFile.write(file, new SearchModel().snapshot());
+        assertEquals(0, SearchSnapshotFile.open(file).size());
+        assertFalse(new File(file.getPath() + ".tmp").exists());
+    }
+
+    @Test
+    public void damagedBlock_isReportedWhenItIsRead() throws Exception {
+        SearchModel model = new SearchModel();
+        Map<String, String> searches = new HashMap<>();
+        for (int i = 0; i < SearchSnapshotFile.BLOCK_SIZE * 3; ++i)
+            searches.put("tag" + i, "query " + i);
+        File file = new File(folder.getRoot(), "searches.snapshot");
+        SearchSnapshotFile.write(file, model.putAll(searches));
+
+        //damage a byte near the end of the file, i.e. in the last block.
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        randomAccessFile.seek(randomAccessFile.length() - 10);
+        int b = randomAccessFile.read();
+        randomAccessFile.seek(randomAccessFile.length() - 10);
+        randomAccessFile.write(b ^ 0x20);
+        randomAccessFile.close();
+
+        //the first blocks can still be read; only reading the last one fails.
+        SearchSnapshotFile snapshotFile = SearchSnapshotFile.open(file);
+        Map<String, String> read = new LinkedHashMap<>();
+        snapshotFile.read(0, SearchSnapshotFile.BLOCK_SIZE * 2, read);
+        assertEquals(SearchSnapshotFile.BLOCK_SIZE * 2, read.size());
+        try {
+            snapshotFile.read(SearchSnapshotFile.BLOCK_SIZE * 2, snapshotFile.size(), read);
+            fail();
+        }
+        catch (IOException e) {
+            //expected.
+        }
+    }
+
+    @Test
+    public void damagedOrMissingFile_cannotBeOpened() throws Exception {
+        File file = new File(folder.getRoot(), "searches.snapshot");
+        try {
+            SearchSnapshotFile.open(file);
+            fail();
+        }
+        catch (IOException e) {
+            //there is no snapshot yet.
+        }
+
+        SearchModel model = new SearchModel();
+        model.put("java", "#java");
+        SearchSnapshotFile.write(file, model.snapshot());
+
+        //change the search count in the header.
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        randomAccessFile.seek(8);
+        randomAccessFile.writeInt(2);
+        randomAccessFile.close();
+        try {
+            SearchSnapshotFile.open(file);
+            fail();
+        }
+        catch (IOException e) {
+            //the header's checksum doesn't match.
+        }
+    }
+
+
+    private static List<String> toList(SearchModel.Snapshot snapshot) {
+        List<String> tags = new ArrayList<>(snapshot.size());
+        for (String tag : snapshot)
+            tags.add(tag);
+        return tags;
+    }
+}
@@ -0,0 +1,111 @@
+package com.deitel.twittersearches;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.Map;
+
+//Compares the per-edit write cost and the cold-load time of LogSearchStore with the way SharedPreferences
+//saves a file (the whole map is written out as XML on every apply).
+//Benchmarks are skipped unless the tests are run with -Dbenchmark=true, e.g.
+//  ./gradlew :app:testDebugUnitTest -Dbenchmark=true --tests '*Benchmark'
+public class SearchStoreBenchmark {
+
+    private static final int[] SIZES = {1000, 10000, 100000};
+    private static final int EDITS = 50;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Before
+    public void onlyWhenBenchmarking() {
+        Assume.assumeTrue(Boolean.getBoolean("benchmark"));
+    }
+
+    @Test
+    public void perEditWriteCost() throws Exception {
+        for (int size : SIZES) {
+            Map<String, String> searches = searches(size);
+
+            LogSearchStore store = new LogSearchStore(folder.newFile());
+            putAll(store, searches);
+            long start = System.nanoTime();
+            for (int i = 0; i < EDITS; ++i)
+                store.edit().putString("tag" + i, "edited query " + i).apply();
+            long logNanos = (System.nanoTime() - start) / EDITS;
+            store.close();
+
+            File xml = folder.newFile();
+            start = System.nanoTime();
+            for (int i = 0; i < EDITS; ++i) {
+                searches.put("tag" + i, "edited query " + i);
+                writeXml(searches, xml);
+            }
+            long xmlNanos = (System.nanoTime() - start) / EDITS;
+
+            System.out.printf("per-edit write  %6d entries: log %8.1f us, xml rewrite %10.1f us%n",
+                    size, logNanos / 1000.0, xmlNanos / 1000.0);
+        }
+    }
+
+    @Test
+    public void coldLoad() throws Exception {
+        for (int size : SIZES) {
+            File file = folder.newFile();
+            LogSearchStore store = new LogSearchStore(file);
+            putAll(store, searches(size));
+            store.close();
+
+            long start = System.nanoTime();
+            LogSearchStore reopened = new LogSearchStore(file);
+            long nanos = System.nanoTime() - start;
+            reopened.close();
+
+            System.out.printf("cold load       %6d entries: log %8.1f ms%n", size, nanos / 1e6);
+        }
+    }
+
+
+    private static Map<String, String> searches(int size) {
+        Map<String, String> searches = new HashMap<>();
+        for (int i = 0; i < size; ++i)
+            searches.put("tag" + i, "from:user" + i + " #topic" + (i % 100) + " since:2017-06-27");
+        return searches;
+    }
+
+    private static void putAll(SearchStore store, Map<String, String> searches) {
+        SearchStore.Editor editor = store.edit();
+        for (Map.Entry<String, String> search : searches.entrySet())
+            editor.putString(search.getKey(), search.getValue());
+        editor.apply();
+    }
+
+    //Writes the map the way SharedPreferencesImpl does: the whole file, every time.
+    private static void writeXml(Map<String, String> searches, File file) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"));
+        try {
+            writer.write("<?xml version='1.0' encoding='utf-8' standalone='yes' ?>\n<map>\n");
+            for (Map.Entry<String, String> search : searches.entrySet()) {
+                writer.write("    <string name=\"");
+                writer.write(search.getKey());
+                writer.write("\">");
+                writer.write(search.getValue());
+                writer.write("</string>\n");
+            }
+            writer.write("</map>\n");
+        }
+        finally {
+            writer.close();
+        }
+    }
+}
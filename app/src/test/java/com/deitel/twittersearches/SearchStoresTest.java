@@ -0,0 +1,54 @@
+package com.deitel.twittersearches;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 25)
+public class SearchStoresTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void migrate_writesTheSearchesToTheLogBeforeClearingThePreferences() throws Exception {
+        SharedPreferences preferences =
+                RuntimeEnvironment.application.getSharedPreferences("searches", Context.MODE_PRIVATE);
+        preferences.edit().putString("java", "#java").putString("news", "from:bbcnews").commit();
+
+        final LogSearchStore log = new LogSearchStore(folder.newFile("searches.log"));
+        //a write-behind window far longer than the test, so only a flush can reach the log in time.
+        WriteBehindSearchStore store = new WriteBehindSearchStore(log, 60000);
+        final Map<String, String> logWhenCleared = new HashMap<>();
+        SharedPreferencesSearchStore from = new SharedPreferencesSearchStore(preferences) {
+            @Override
+            public void clear() {
+                //if the app were killed now, the searches would only be in the log.
+                logWhenCleared.putAll(log.getAll());
+                super.clear();
+            }
+        };
+
+        SearchStores.migrate(from, store);
+
+        Map<String, String> expected = new HashMap<>();
+        expected.put("java", "#java");
+        expected.put("news", "from:bbcnews");
+        assertEquals(expected, logWhenCleared);
+        assertTrue(preferences.getAll().isEmpty());
+        store.close();
+    }
+}
@@ -0,0 +1,117 @@
+package com.deitel.twittersearches;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class SearchTransferTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void exportAndImport_roundTripsBothFormats() throws Exception {
+        Map<String, String> searches = new HashMap<>();
+        searches.put("Java", "#java OR #kotlin");
+        searches.put("Oracle, Inc.", "from:oracle \"java one\"");
+        searches.put("multi\nline", "back\\slash\ttab \u0001");
+        searches.put(" padded ", "caf\u00e9 \u6771\u4eac \ud83d\ude00");
+
+        for (SearchTransfer.Format format : SearchTransfer.Format.values()) {
+            LogSearchStore from = new LogSearchStore(folder.newFile(format + "-from.log"));
+            SearchStore.Editor editor = from.edit();
+            for (Map.Entry<String, String> search : searches.entrySet())
+                editor.putString(search.getKey(), search.getValue());
+            editor.apply();
+
+            StringWriter writer = new StringWriter();
+            assertEquals(4, SearchTransfer.exportSearches(from, writer, format, new RecordingListener()));
+
+            BufferedReader reader = new BufferedReader(new StringReader(writer.toString()));
+            assertEquals(format, SearchTransfer.detectFormat(reader));
+            LogSearchStore to = new LogSearchStore(folder.newFile(format + "-to.log"));
+            assertEquals(4, SearchTransfer.importSearches(reader, format, to, new RecordingListener()));
+            assertEquals(format.toString(), searches, to.getAll());
+
+            from.close();
+            to.close();
+        }
+    }
+
+    @Test
+    public void importSearches_appliesBatchesAndReportsReplacedQueries() throws Exception {
+        LogSearchStore store = new LogSearchStore(folder.newFile("searches.log"));
+        store.edit().putString("tag1", "old query").apply();
+
+        StringBuilder csv = new StringBuilder("tag,query\n");
+        int count = SearchTransfer.BATCH_SIZE + 10;
+        for (int i = 0; i < count; ++i)
+            csv.append("tag").append(i).append(",query ").append(i).append("\r\n");
+        csv.append("\n,no tag\n");
+
+        RecordingListener listener = new RecordingListener();
+        assertEquals(count, SearchTransfer.importSearches(new StringReader(csv.toString()), SearchTransfer.Format.CSV,
+                store, listener));
+        assertEquals(2, listener.batchSizes.size());
+        assertEquals(SearchTransfer.BATCH_SIZE, (int) listener.batchSizes.get(0));
+        assertEquals("old query", listener.replacedQueries.get("tag1"));
+        assertEquals(count, store.size());
+        assertEquals("query 1", store.getString("tag1", null));
+        store.close();
+    }
+
+    @Test
+    public void importSearches_stopsWhenCancelled() throws Exception {
+        LogSearchStore store = new LogSearchStore(folder.newFile("searches.log"));
+        StringBuilder lines = new StringBuilder();
+        for (int i = 0; i < 3 * SearchTransfer.BATCH_SIZE; ++i)
+            lines.append("{\"tag\": \"tag").append(i).append("\", \"query\": \"q\", \"starred\": true}\n");
+
+        RecordingListener listener = new RecordingListener();
+        listener.stopAfter = 1;
+        assertEquals(SearchTransfer.BATCH_SIZE, SearchTransfer.importSearches(new StringReader(lines.toString()),
+                SearchTransfer.Format.JSON_LINES, store, listener));
+        assertEquals(SearchTransfer.BATCH_SIZE, store.size());
+        store.close();
+    }
+
+    @Test
+    public void importSearches_reportsMalformedLine() throws Exception {
+        LogSearchStore store = new LogSearchStore(folder.newFile("searches.log"));
+        String lines = "{\"tag\":\"a\",\"query\":\"b\"}\n\n{\"tag\":\"c\" \"query\":\"d\"}\n";
+        try {
+            SearchTransfer.importSearches(new StringReader(lines), SearchTransfer.Format.JSON_LINES, store,
+                    new RecordingListener());
+            fail();
+        }
+        catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("Line 3"));
+        }
+        store.close();
+    }
+
+
+    private static class RecordingListener implements SearchTransfer.Listener {
+        final List<Integer> batchSizes = new ArrayList<>();
+        final Map<String, String> replacedQueries = new HashMap<>();
+        int stopAfter = Integer.MAX_VALUE;
+
+        @Override
+        public boolean onBatch(Map<String, String> searches, Map<String, String> replaced, long count) {
+            batchSizes.add(searches.size());
+            replacedQueries.putAll(replaced);
+            return batchSizes.size() < stopAfter;
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.deitel.twittersearches;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.Charset;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class SearchUrlCacheTest {
+
+    private static final String SEARCH_URL = "https://mobile.twitter.com/search?q=";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void encode_matchesUriEncode() {
+        PercentEncoder encoder = new PercentEncoder();
+        assertEquals("%23java%20OR%20from%3Aoracle", encoder.encode("", "#java OR from:oracle"));
+        assertEquals(SEARCH_URL + "a_-!.~'()*z", encoder.encode(SEARCH_URL, "a_-!.~'()*z"));
+        assertEquals("caf%C3%A9%20%E6%9D%B1%20%F0%9F%98%80", encoder.encode("", "caf\u00e9 \u6771 \ud83d\ude00"));
+        assertEquals("%3Fx%3F", encoder.encode("", "\ud83dx\ude00"));
+
+        Random random = new Random(1);
+        for (int i = 0; i < 1000; ++i) {
+            char[] chars = new char[random.nextInt(20)];
+            for (int j = 0; j < chars.length; ++j)
+                chars[j] = (char) (random.nextBoolean() ? random.nextInt(0x80) : random.nextInt(0x10000));
+            String text = new String(chars);
+            assertEquals(text, uriEncode(text), encoder.encode("", text));
+        }
+    }
+
+    @Test
+    public void get_cachesUntilInvalidated() throws Exception {
+        LogSearchStore store = new LogSearchStore(folder.newFile("searches.log"));
+        store.edit().putString("java", "#java").apply();
+        SearchUrlCache cache = new SearchUrlCache(SEARCH_URL, 8);
+
+        assertEquals(SEARCH_URL + "%23java", cache.get("java", store));
+        assertEquals(SEARCH_URL + "%23java", cache.get("java", store));
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+
+        store.edit().putString("java", "#kotlin").apply();
+        cache.invalidate("java");
+        assertEquals(SEARCH_URL + "%23kotlin", cache.get("java", store));
+        assertEquals(2, cache.getMissCount());
+        store.close();
+    }
+
+    @Test
+    public void get_evictsLeastRecentlyUsed() throws Exception {
+        LogSearchStore store = new LogSearchStore(folder.newFile("searches.log"));
+        SearchUrlCache cache = new SearchUrlCache(SEARCH_URL, 2);
+
+        cache.get("a", store);
+        cache.get("b", store);
+        cache.get("a", store);
+        cache.get("c", store); //evicts "b", the least recently used.
+        assertEquals(2, cache.size());
+
+        cache.get("a", store);
+        cache.get("b", store);
+        assertEquals(2, cache.getHitCount());
+        assertEquals(4, cache.getMissCount());
+        StringBuilder counts = new StringBuilder();
+        cache.appendTo(counts);
+        assertTrue(counts.toString(), counts.toString().startsWith("search URL cache: 2 hits, 4 misses (33.3% hits)"));
+        store.close();
+    }
+
+
+    @Test
+    public void appendUrl_usesButDoesNotFillTheCache() throws Exception {
+        LogSearchStore store = new LogSearchStore(folder.newFile("searches.log"));
+        store.edit().putString("java", "#java").putString("news", "from:bbc").apply();
+        SearchUrlCache cache = new SearchUrlCache(SEARCH_URL, 8);
+        cache.get("java", store);
+
+        StringBuilder out = new StringBuilder();
+        cache.appendUrl("java", store, out);
+        out.append('\n');
+        cache.appendUrl("news", store, out);
+        assertEquals(SEARCH_URL + "%23java\n" + SEARCH_URL + "from%3Abbc", out.toString());
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.size());
+        store.close();
+    }
+
+
+    //The algorithm of android.net.Uri.encode, which can't be called from a local unit test.
+    private static String uriEncode(String text) {
+        StringBuilder encoded = new StringBuilder();
+        for (byte b : text.getBytes(Charset.forName("UTF-8"))) {
+            char c = (char) (b & 0xFF);
+            if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || "_-!.~'()*".indexOf(c) >= 0)
+                encoded.append(c);
+            else
+                encoded.append(String.format("%%%02X", b & 0xFF));
+        }
+        return encoded.toString();
+    }
+}
@@ -0,0 +1,185 @@
+package com.deitel.twittersearches;
+
+import android.content.ContentResolver;
+import android.content.pm.ProviderInfo;
+import android.database.Cursor;
+import android.net.Uri;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowContentResolver;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+import static org.robolectric.Shadows.shadowOf;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 25)
+public class SearchesProviderTest {
+
+    private static final int SEARCH_COUNT = 100000;
+    private static final int PAGE_SIZE = 1000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private LogSearchStore store;
+    private List<String> sortedTags;
+    private ContentResolver resolver;
+
+    @Before
+    public void setUp() throws Exception {
+        store = new LogSearchStore(new File(folder.getRoot(), "searches.log"));
+        SearchStore.Editor editor = store.edit();
+        sortedTags = new ArrayList<>(SEARCH_COUNT);
+        String[] prefixes = {"java", "Jav", "kotlin", "#news", "swift"};
+        for (int i = 0; i < SEARCH_COUNT; ++i) {
+            String tag = prefixes[i % prefixes.length] + Integer.toString(i, 36);
+            editor.putString(tag, "query " + tag);
+            sortedTags.add(tag);
+        }
+        editor.apply();
+        Collections.sort(sortedTags, SortedTagIndex.ORDER);
+        SearchStores.set(store);
+
+        ProviderInfo info = new ProviderInfo();
+        info.authority = SearchesProvider.AUTHORITY;
+        Robolectric.buildContentProvider(SearchesProvider.class).create(info);
+        resolver = RuntimeEnvironment.application.getContentResolver();
+    }
+
+    @After
+    public void tearDown() {
+        SearchStores.set(null);
+        store.close();
+    }
+
+    @Test
+    public void query_pagesThroughEverySearchInOrder() {
+        List<String> tags = new ArrayList<>(SEARCH_COUNT);
+        for (int offset = 0; ; offset += PAGE_SIZE) {
+            Cursor cursor = resolver.query(page(SearchesProvider.CONTENT_URI, offset, PAGE_SIZE), null, null, null, null);
+            try {
+                assertEquals(SEARCH_COUNT, cursor.getExtras().getInt(SearchesProvider.EXTRA_TOTAL_COUNT));
+                if (cursor.getCount() == 0)
+                    break;
+                assertEquals(Math.min(PAGE_SIZE, SEARCH_COUNT - offset), cursor.getCount());
+
+                int tagColumn = cursor.getColumnIndexOrThrow(SearchesProvider.TAG);
+                int queryColumn = cursor.getColumnIndexOrThrow(SearchesProvider.QUERY);
+                int idColumn = cursor.getColumnIndexOrThrow(SearchesProvider._ID);
+                while (cursor.moveToNext()) {
+                    String tag = cursor.getString(tagColumn);
+                    assertEquals("query " + tag, cursor.getString(queryColumn));
+                    assertEquals(SearchesAdapter.stableId(tag), cursor.getLong(idColumn));
+                    tags.add(tag);
+                }
+
+                //moving backwards through the page reads the windows before the current one.
+                for (int position = cursor.getCount() - 1; position >= 0; position -= 7) {
+                    assertTrue(cursor.moveToPosition(position));
+                    assertEquals(sortedTags.get(offset + position), cursor.getString(tagColumn));
+                }
+            }
+            finally {
+                cursor.close();
+            }
+        }
+        assertEquals(sortedTags, tags);
+    }
+
+    @Test
+    public void query_selectsByPrefixAndByTag() {
+        Cursor cursor = resolver.query(page(SearchesProvider.CONTENT_URI, 10, 50), new String[] {SearchesProvider.TAG},
+                SearchesProvider.PREFIX_SELECTION, new String[] {"JAVA%"}, null);
+        List<String> expected = new ArrayList<>();
+        for (String tag : sortedTags)
+            if (tag.regionMatches(true, 0, "java", 0, 4))
+                expected.add(tag);
+        try {
+            assertEquals(expected.size(), cursor.getExtras().getInt(SearchesProvider.EXTRA_TOTAL_COUNT));
+            assertEquals(50, cursor.getCount());
+            assertEquals(1, cursor.getColumnCount());
+            for (int i = 0; cursor.moveToNext(); ++i)
+                assertEquals(expected.get(10 + i), cursor.getString(0));
+        }
+        finally {
+            cursor.close();
+        }
+
+        cursor = resolver.query(SearchesProvider.CONTENT_URI, null, SearchesProvider.PREFIX_SELECTION,
+                new String[] {"nothing%"}, null);
+        assertEquals(0, cursor.getCount());
+        cursor.close();
+
+        String tag = sortedTags.get(1234);
+        cursor = resolver.query(SearchesProvider.uriFor(tag), null, null, null, null);
+        assertTrue(cursor.moveToFirst());
+        assertEquals(tag, cursor.getString(cursor.getColumnIndexOrThrow(SearchesProvider.TAG)));
+        assertEquals(1, cursor.getCount());
+        cursor.close();
+
+        cursor = resolver.query(SearchesProvider.uriFor("not saved"), null, null, null, null);
+        assertEquals(0, cursor.getCount());
+        cursor.close();
+
+        try {
+            resolver.query(SearchesProvider.CONTENT_URI, null, "query = ?", new String[] {"x"}, null);
+            fail();
+        }
+        catch (IllegalArgumentException e) {
+            //only prefixes are supported.
+        }
+    }
+
+    @Test
+    public void changes_notifyOnlyTheChangedSearches() {
+        Cursor before = resolver.query(SearchesProvider.CONTENT_URI, null, null, null, null);
+        ShadowContentResolver shadowResolver = shadowOf(resolver);
+        shadowResolver.getNotifiedUris().clear();
+
+        SearchModel model = SearchStores.getModel();
+        model.put("android", "android");
+        model.remove(sortedTags.get(0));
+        List<ShadowContentResolver.NotifiedUri> notified = shadowResolver.getNotifiedUris();
+        assertEquals(2, notified.size());
+        assertEquals(SearchesProvider.uriFor("android"), notified.get(0).uri);
+        assertEquals(SearchesProvider.uriFor(sortedTags.get(0)), notified.get(1).uri);
+
+        //a large batch notifies the whole list once.
+        Map<String, String> imported = new HashMap<>();
+        for (int i = 0; i < 100; ++i)
+            imported.put("imported" + i, "query");
+        model.putAll(imported);
+        assertEquals(3, notified.size());
+        assertEquals(SearchesProvider.CONTENT_URI, notified.get(2).uri);
+
+        //a cursor keeps the searches as they were when it was queried.
+        assertEquals(SEARCH_COUNT, before.getCount());
+        assertTrue(before.moveToFirst());
+        assertEquals(sortedTags.get(0), before.getString(before.getColumnIndexOrThrow(SearchesProvider.TAG)));
+        before.close();
+    }
+
+
+    private static Uri page(Uri uri, int offset, int limit) {
+        return uri.buildUpon()
+                .appendQueryParameter(SearchesProvider.PARAM_OFFSET, Integer.toString(offset))
+                .appendQueryParameter(SearchesProvider.PARAM_LIMIT, Integer.toString(limit))
+                .build();
+    }
+}
@@ -0,0 +1,76 @@
+package com.deitel.twittersearches;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+//Compares SortedTagIndex with the sorted ArrayList MainActivity used to keep its tags in, at 100k tags.
+//Benchmarks are skipped unless the tests are run with -Dbenchmark=true.
+public class SortedTagIndexBenchmark {
+
+    private static final int TAGS = 100000;
+    private static final int OPERATIONS = 200;
+
+    @Before
+    public void onlyWhenBenchmarking() {
+        Assume.assumeTrue(Boolean.getBoolean("benchmark"));
+    }
+
+    @Test
+    public void insertRemoveContains() {
+        Random random = new Random(1);
+        List<String> initial = new ArrayList<>();
+        for (int i = 0; i < TAGS; ++i)
+            initial.add("tag" + random.nextInt(Integer.MAX_VALUE));
+
+        SortedTagIndex index = new SortedTagIndex();
+        long start = System.nanoTime();
+        for (String tag : initial)
+            index.add(tag);
+        System.out.printf("index build      %6d tags: %8.1f ms%n", TAGS, (System.nanoTime() - start) / 1e6);
+
+        List<String> list = new ArrayList<>(initial);
+        Collections.sort(list, String.CASE_INSENSITIVE_ORDER);
+
+        List<String> edits = new ArrayList<>();
+        for (int i = 0; i < OPERATIONS; ++i)
+            edits.add("new" + random.nextInt(Integer.MAX_VALUE));
+
+        start = System.nanoTime();
+        for (String tag : edits) {
+            if (!index.contains(tag))
+                index.add(tag);
+        }
+        for (String tag : edits)
+            index.remove(tag);
+        long indexNanos = (System.nanoTime() - start) / (2 * OPERATIONS);
+
+        start = System.nanoTime();
+        for (String tag : edits) {
+            if (!list.contains(tag)) {
+                list.add(tag);
+                Collections.sort(list, String.CASE_INSENSITIVE_ORDER);
+            }
+        }
+        for (String tag : edits)
+            list.remove(tag);
+        long listNanos = (System.nanoTime() - start) / (2 * OPERATIONS);
+
+        start = System.nanoTime();
+        long sink = 0;
+        for (int i = 0; i < OPERATIONS; ++i) {
+            int position = random.nextInt(TAGS);
+            sink += index.indexOf(index.get(position));
+        }
+        long rankNanos = (System.nanoTime() - start) / OPERATIONS;
+
+        System.out.printf("add/remove       %6d tags: index %8.2f us, ArrayList %10.2f us%n",
+                TAGS, indexNanos / 1000.0, listNanos / 1000.0);
+        System.out.printf("get + indexOf   %6d tags: index %8.2f us (%d)%n", TAGS, rankNanos / 1000.0, sink % 10);
+    }
+}
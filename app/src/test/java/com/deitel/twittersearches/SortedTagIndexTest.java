@@ -0,0 +1,117 @@
+package com.deitel.twittersearches;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class SortedTagIndexTest {
+
+    @Test
+    public void randomOperations_matchSortedArrayList() {
+        Random random = new Random(2017);
+        SortedTagIndex index = new SortedTagIndex();
+        //the way MainActivity kept its tags before SortedTagIndex.
+        List<String> tags = new ArrayList<>();
+
+        for (int i = 0; i < 20000; ++i) {
+            String tag = randomTag(random);
+
+            if (random.nextInt(3) == 0) {
+                int expected = tags.indexOf(tag);
+                assertEquals(expected >= 0, index.contains(tag));
+                int position = index.remove(tag);
+                assertEquals(expected >= 0, position >= 0);
+                if (position >= 0)
+                    tags.remove(tag);
+            }
+            else {
+                int position = index.add(tag);
+                assertEquals(!tags.contains(tag), position >= 0);
+                if (position >= 0) {
+                    tags.add(tag);
+                    Collections.sort(tags, String.CASE_INSENSITIVE_ORDER);
+                    assertEquals(tag, index.get(position));
+                }
+            }
+
+            if (i % 500 == 0)
+                assertMatches(tags, index);
+        }
+        assertMatches(tags, index);
+    }
+
+    @Test
+    public void tagsDifferingOnlyInCase_areOrderedByCompareTo() {
+        SortedTagIndex index = new SortedTagIndex();
+        index.add("java");
+        index.add("Java");
+        index.add("JAVA");
+        index.add("android");
+
+        assertEquals("android", index.get(0));
+        assertEquals("JAVA", index.get(1));
+        assertEquals("Java", index.get(2));
+        assertEquals("java", index.get(3));
+        assertEquals(2, index.remove("Java"));
+        assertEquals(2, index.indexOf("java"));
+    }
+
+    @Test
+    public void queries_areKeptPerCopy() {
+        SortedTagIndex index = new SortedTagIndex();
+        index.add("news");
+        assertEquals(0, index.put("caf\u00e9", "caf\u00e9 \ud83d\ude00"));
+        assertEquals("caf\u00e9 \ud83d\ude00", index.getQuery("caf\u00e9"));
+        assertTrue(index.hasQuery("caf\u00e9", "caf\u00e9 \ud83d\ude00"));
+        assertNull(index.getQuery("news"));
+        assertFalse(index.hasQuery("news", ""));
+        assertFalse(index.hasQuery("java", "#java"));
+
+        SortedTagIndex copy = new SortedTagIndex(index);
+        assertEquals(-1, copy.put("caf\u00e9", "coffee"));
+        assertEquals("coffee", copy.getQuery("caf\u00e9"));
+        assertEquals("caf\u00e9 \ud83d\ude00", index.getQuery("caf\u00e9"));
+        assertFalse(index.hasQuery("caf\u00e9", "coffee"));
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void get_outOfRange_throws() {
+        new SortedTagIndex().get(0);
+    }
+
+
+    //Checks that the index holds the same tags as the case-insensitively sorted list, in the same order
+    //(tags that only differ in case may appear in either order in the list), and that the positions
+    //reported by indexOf agree with get.
+    private static void assertMatches(List<String> tags, SortedTagIndex index) {
+        assertEquals(tags.size(), index.size());
+
+        List<String> expected = new ArrayList<>(tags);
+        Collections.sort(expected, SortedTagIndex.ORDER);
+
+        int position = 0;
+        for (String tag : index) {
+            assertEquals(expected.get(position), tag);
+            assertEquals(0, String.CASE_INSENSITIVE_ORDER.compare(tags.get(position), tag));
+            assertEquals(tag, index.get(position));
+            assertEquals(position, index.indexOf(tag));
+            ++position;
+        }
+        assertEquals(tags.size(), position);
+    }
+
+    //Short tags over a small alphabet in mixed case, so that collisions and case-only differences are common.
+    private static String randomTag(Random random) {
+        char[] chars = new char[1 + random.nextInt(3)];
+        for (int i = 0; i < chars.length; ++i) {
+            char c = (char) ('a' + random.nextInt(4));
+            chars[i] = random.nextBoolean() ? Character.toUpperCase(c) : c;
+        }
+        return new String(chars);
+    }
+}
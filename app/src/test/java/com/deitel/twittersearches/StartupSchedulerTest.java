@@ -0,0 +1,130 @@
+package com.deitel.twittersearches;
+
+import android.view.View;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 25)
+public class StartupSchedulerTest {
+
+    private View window;
+    private StartupScheduler scheduler;
+    private final List<String> ran = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        StartupTrace.start();
+        window = new View(RuntimeEnvironment.application);
+        scheduler = new StartupScheduler(window);
+    }
+
+    @Test
+    public void tasks_runAfterTheFirstFrameAndThenWhenIdle() {
+        scheduler.whenIdle("idle 1", task("idle 1"));
+        scheduler.afterFirstFrame("frame 1", task("frame 1"));
+        scheduler.whenIdle("idle 2", task("idle 2"));
+        scheduler.afterFirstFrame("frame 2", task("frame 2"));
+        ShadowLooper.runUiThreadTasksIncludingDelayedTasks();
+        assertTrue(ran.isEmpty());
+        assertFalse(scheduler.isFirstFrameDrawn());
+
+        drawFrame();
+        assertTrue(scheduler.isFirstFrameDrawn());
+        assertEquals(Arrays.asList("frame 1", "frame 2"), ran);
+
+        //one idle task each time the main thread goes idle.
+        assertTrue(scheduler.queueIdle());
+        assertEquals(Arrays.asList("frame 1", "frame 2", "idle 1"), ran);
+        assertFalse(scheduler.queueIdle());
+        assertEquals(Arrays.asList("frame 1", "frame 2", "idle 1", "idle 2"), ran);
+
+        //later frames don't run anything again, and tasks added now run at the next opportunity.
+        drawFrame();
+        scheduler.afterFirstFrame("frame 3", task("frame 3"));
+        ShadowLooper.runUiThreadTasksIncludingDelayedTasks();
+        scheduler.whenIdle("idle 3", task("idle 3"));
+        assertFalse(scheduler.queueIdle());
+        assertEquals(Arrays.asList("frame 1", "frame 2", "idle 1", "idle 2", "frame 3", "idle 3"), ran);
+
+        //the first frame and every task are phases of the trace, in the order they happened.
+        List<String> phases = new ArrayList<>();
+        for (int phase = 0; phase < StartupTrace.getPhaseCount(); ++phase) {
+            phases.add(StartupTrace.getPhaseName(phase));
+            assertTrue(StartupTrace.getPhaseEndNanos(phase) >= StartupTrace.getPhaseStartNanos(phase));
+        }
+        assertEquals(Arrays.asList(StartupTrace.FIRST_FRAME, "frame 1", "frame 2", "idle 1", "idle 2", "frame 3",
+                "idle 3"), phases);
+        assertTrue(StartupTrace.getElapsedNanos(StartupTrace.FIRST_FRAME) >= 0);
+    }
+
+    @Test
+    public void cancel_dropsTheTasksThatHaveNotRun() {
+        scheduler.afterFirstFrame("frame", task("frame"));
+        scheduler.whenIdle("idle", task("idle"));
+        scheduler.cancel();
+        drawFrame();
+        scheduler.whenIdle("later", task("later"));
+        assertFalse(scheduler.queueIdle());
+
+        assertTrue(ran.isEmpty());
+        assertEquals(-1, StartupTrace.getElapsedNanos(StartupTrace.FIRST_FRAME));
+    }
+
+    @Test
+    public void trace_recordsPhasesInOrderUpToTheLimit() {
+        StartupTrace.beginPhase("inflate");
+        StartupTrace.beginPhase("bind");
+        StartupTrace.endPhase();
+        StartupTrace.mark(StartupTrace.FIRST_ROW);
+        StartupTrace.beginPhase("unfinished");
+
+        assertEquals(4, StartupTrace.getPhaseCount());
+        assertEquals("bind", StartupTrace.getPhaseName(1));
+        //a phase ends when the next one begins.
+        assertTrue(StartupTrace.getPhaseEndNanos(0) <= StartupTrace.getPhaseStartNanos(1));
+        assertEquals(StartupTrace.getPhaseStartNanos(2), StartupTrace.getPhaseEndNanos(2));
+        assertEquals(-1, StartupTrace.getPhaseEndNanos(3));
+        assertEquals(StartupTrace.getPhaseEndNanos(2), StartupTrace.getElapsedNanos(StartupTrace.FIRST_ROW));
+        String dump = StartupTrace.dump();
+        assertTrue(dump, dump.contains("inflate") && dump.contains(StartupTrace.FIRST_ROW) && dump.contains("unfinished"));
+
+        for (int i = 0; i < StartupTrace.MAX_PHASES; ++i)
+            StartupTrace.mark("mark " + i);
+        assertEquals(StartupTrace.MAX_PHASES, StartupTrace.getPhaseCount());
+        assertEquals(-1, StartupTrace.getElapsedNanos("mark " + (StartupTrace.MAX_PHASES - 1)));
+
+        //a new trace starts empty.
+        StartupTrace.start();
+        assertEquals(0, StartupTrace.getPhaseCount());
+    }
+
+
+    //Simulates a frame of the window: the traversal tells the OnPreDrawListeners, then the messages posted
+    //during the frame run.
+    private void drawFrame() {
+        window.getViewTreeObserver().dispatchOnPreDraw();
+        ShadowLooper.runUiThreadTasksIncludingDelayedTasks();
+    }
+
+    private Runnable task(final String name) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                ran.add(name);
+            }
+        };
+    }
+}
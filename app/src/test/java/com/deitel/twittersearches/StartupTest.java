@@ -0,0 +1,117 @@
+package com.deitel.twittersearches;
+
+import android.support.v7.widget.RecyclerView;
+import android.view.View;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.android.controller.ActivityController;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+//Checks that MainActivity's time to first frame (see StartupTrace) stays within a budget however many
+//searches are saved: loading them must stay off the main thread, and the work that the first frame doesn't
+//need must wait until after it (see StartupScheduler).
+//The budget is STARTUP_BUDGET_MILLIS unless another is passed to Gradle with -Dstartup.budget.millis=...
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 25)
+public class StartupTest {
+
+    private static final long STARTUP_BUDGET_MILLIS = 500;
+    private static final int SEARCH_COUNT = 100000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private LogSearchStore store;
+
+    @Before
+    public void setUp() throws Exception {
+        store = new LogSearchStore(folder.newFile("searches.log"));
+        SearchStore.Editor editor = store.edit();
+        Map<String, String> searches = new HashMap<>();
+        for (int i = 0; i < SEARCH_COUNT; ++i) {
+            String tag = "tag " + Integer.toString(i, 36);
+            editor.putString(tag, "#java OR from:user" + i);
+            searches.put(tag, "#java OR from:user" + i);
+        }
+        editor.apply();
+
+        //the searches were saved in the snapshot file when the app last stopped.
+        SearchModel model = new SearchModel();
+        model.putAll(searches);
+        SearchSnapshotFile.write(SearchStores.getSnapshotFile(RuntimeEnvironment.application), model.snapshot());
+    }
+
+    @After
+    public void tearDown() {
+        SearchStores.set(null);
+        store.close();
+        SearchStores.getSnapshotFile(RuntimeEnvironment.application).delete();
+    }
+
+    @Test
+    public void firstFrame_isWithinBudgetWithManySearches() {
+        //the first MainActivity loads Robolectric's resources and the app's classes, which a real start
+        //doesn't have to do, so it isn't timed.
+        SearchStores.set(store);
+        ActivityController<MainActivity> warmUp = Robolectric.buildActivity(MainActivity.class).setup();
+        drawFirstFrame(warmUp.get());
+        warmUp.pause().stop().destroy();
+
+        SearchStores.set(store);
+        ActivityController<MainActivity> controller = Robolectric.buildActivity(MainActivity.class).setup();
+        MainActivity activity = controller.get();
+        drawFirstFrame(activity);
+
+        long budgetMillis = Long.getLong("startup.budget.millis", STARTUP_BUDGET_MILLIS);
+        long firstFrameNanos = StartupTrace.getElapsedNanos(StartupTrace.FIRST_FRAME);
+        assertTrue(StartupTrace.dump(), firstFrameNanos >= 0);
+        assertTrue("first frame after " + firstFrameNanos / 1000000 + "ms, budget " + budgetMillis + "ms\n"
+                + StartupTrace.dump(), firstFrameNanos <= budgetMillis * 1000000);
+
+        //the deferred work was only done after the first frame.
+        int firstFrame = phase(StartupTrace.FIRST_FRAME);
+        assertTrue(StartupTrace.dump(), phase("read settings") > firstFrame);
+        assertTrue(StartupTrace.dump(), phase("scroll jank tracker") > firstFrame);
+
+        //the searches were all loaded in the background.
+        Robolectric.flushBackgroundThreadScheduler();
+        ShadowLooper.runUiThreadTasksIncludingDelayedTasks();
+        RecyclerView recyclerView = (RecyclerView) activity.findViewById(R.id.recyclerView);
+        assertEquals(SEARCH_COUNT, recyclerView.getAdapter().getItemCount());
+        assertTrue(phase(StartupTrace.FIRST_CHUNK) > firstFrame);
+
+        controller.pause().stop().destroy();
+    }
+
+
+    //Draws the first frame of "activity" if Robolectric hasn't, and runs what was posted during it.
+    private static void drawFirstFrame(MainActivity activity) {
+        if (StartupTrace.getElapsedNanos(StartupTrace.FIRST_FRAME) < 0) {
+            View decorView = activity.getWindow().getDecorView();
+            decorView.getViewTreeObserver().dispatchOnPreDraw();
+        }
+        ShadowLooper.runUiThreadTasks();
+    }
+
+    //Returns the position of the phase called "name" in the StartupTrace, or -1 if there is none.
+    private static int phase(String name) {
+        for (int phase = 0; phase < StartupTrace.getPhaseCount(); ++phase)
+            if (StartupTrace.getPhaseName(phase).equals(name))
+                return phase;
+        return -1;
+    }
+}
@@ -0,0 +1,201 @@
+package com.deitel.twittersearches;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.*;
+
+public class TagFilterTest {
+
+    //Queues callbacks until run is called, the way the main thread's Handler would.
+    private final QueueExecutor callbacks = new QueueExecutor();
+    private final TagFilter filter = new TagFilter(callbacks);
+    private final List<List<String>> results = new ArrayList<>();
+
+    private final TagFilter.Callback callback = new TagFilter.Callback() {
+        @Override
+        public void onFiltered(List<String> matches) {
+            results.add(matches);
+        }
+    };
+
+    @After
+    public void shutdown() {
+        filter.shutdown();
+    }
+
+    @Test
+    public void prefixMatchesComeBeforeOtherMatches() throws Exception {
+        filter.addAll(Arrays.asList("news", "Java", "kotlin", "javascript", "learnjava", "JAVA tips", "coffee"));
+
+        List<String> matches = filterNow("jav");
+        assertEquals(Arrays.asList("Java", "JAVA tips", "javascript", "learnjava"), matches);
+    }
+
+    @Test
+    public void typingOneCharacterAtATime_matchesBruteForce() throws Exception {
+        Random random = new Random(7);
+        List<String> tags = new ArrayList<>();
+        for (int i = 0; i < 3000; ++i) {
+            String tag = randomTag(random);
+            if (!tags.contains(tag))
+                tags.add(tag);
+        }
+        filter.addAll(new ArrayList<>(tags));
+
+        for (int i = 0; i < 200; ++i) {
+            String text = randomTag(random);
+            //type the text one character at a time, so most filters narrow the previous result.
+            for (int length = 1; length <= text.length(); ++length) {
+                String typed = text.substring(0, length);
+                assertEquals(typed, bruteForce(tags, typed), filterNow(typed));
+            }
+
+            //edit the tags now and then so the index has to be kept up to date.
+            String tag = tags.remove(random.nextInt(tags.size()));
+            filter.remove(tag);
+            if (i % 20 == 0) {
+                //delete several at once, the way a bulk delete does.
+                List<String> removed = new ArrayList<>(tags.subList(0, 10));
+                tags.subList(0, 10).clear();
+                filter.removeAll(removed);
+            }
+            String added = randomTag(random);
+            if (!tags.contains(added)) {
+                tags.add(added);
+                filter.add(added);
+            }
+        }
+    }
+
+    @Test
+    public void addingBatches_matchesBruteForce() throws Exception {
+        Random random = new Random(11);
+        List<String> tags = new ArrayList<>();
+        for (int batch = 0; batch < 20; ++batch) {
+            //batches arrive unsorted, and may repeat tags added before or within the batch.
+            List<String> added = new ArrayList<>();
+            for (int i = 0; i < 100; ++i)
+                added.add(randomTag(random));
+            filter.addAll(added);
+            for (String tag : added) {
+                if (!tags.contains(tag))
+                    tags.add(tag);
+            }
+
+            for (int i = 0; i < 10; ++i) {
+                String text = randomTag(random);
+                assertEquals(text, bruteForce(tags, text), filterNow(text));
+            }
+        }
+    }
+
+    @Test
+    public void staleResults_areDropped() throws Exception {
+        filter.addAll(Arrays.asList("java", "javascript", "jakarta"));
+
+        filter.filter("j", callback);
+        filter.filter("ja", callback);
+        filter.filter("jav", callback);
+        filter.awaitIdle();
+        callbacks.runAll();
+
+        assertEquals(1, results.size());
+        assertEquals(Arrays.asList("java", "javascript"), results.get(0));
+    }
+
+    @Test
+    public void textChangedAfterFiltering_isNotSeen() throws Exception {
+        filter.addAll(Arrays.asList("java", "javascript", "kotlin"));
+
+        //filter copies the text, the way the search box's Editable keeps changing as the user types.
+        StringBuilder text = new StringBuilder("jav");
+        filter.filter(text, callback);
+        text.setLength(0);
+        text.append("kot");
+        filter.awaitIdle();
+        callbacks.runAll();
+
+        assertEquals(Arrays.asList("java", "javascript"), results.get(0));
+    }
+
+    @Test
+    public void recycledMatches_areFilledAgain() throws Exception {
+        filter.addAll(Arrays.asList("java", "javascript", "jakarta", "news"));
+
+        List<String> first = filterNow("ja");
+        assertEquals(Arrays.asList("jakarta", "java", "javascript"), first);
+        filter.recycle(first);
+
+        List<String> second = filterNow("jav");
+        assertSame(first, second);
+        assertEquals(Arrays.asList("java", "javascript"), second);
+    }
+
+    @Test
+    public void cancel_dropsPendingResult() throws Exception {
+        filter.add("java");
+        filter.filter("ja", callback);
+        filter.cancel();
+        filter.awaitIdle();
+        callbacks.runAll();
+
+        assertTrue(results.isEmpty());
+    }
+
+
+    private List<String> filterNow(String text) throws InterruptedException {
+        filter.filter(text, callback);
+        filter.awaitIdle();
+        callbacks.runAll();
+        return results.get(results.size() - 1);
+    }
+
+    private static List<String> bruteForce(List<String> tags, String text) {
+        List<String> prefixMatches = new ArrayList<>();
+        List<String> otherMatches = new ArrayList<>();
+        String lowerText = text.toLowerCase();
+        for (String tag : tags) {
+            String lowerTag = tag.toLowerCase();
+            if (lowerTag.startsWith(lowerText))
+                prefixMatches.add(tag);
+            else if (lowerTag.contains(lowerText))
+                otherMatches.add(tag);
+        }
+        Collections.sort(prefixMatches, SortedTagIndex.ORDER);
+        Collections.sort(otherMatches, SortedTagIndex.ORDER);
+        prefixMatches.addAll(otherMatches);
+        return prefixMatches;
+    }
+
+    private static String randomTag(Random random) {
+        char[] chars = new char[1 + random.nextInt(6)];
+        for (int i = 0; i < chars.length; ++i) {
+            char c = (char) ('a' + random.nextInt(8));
+            chars[i] = random.nextInt(4) == 0 ? Character.toUpperCase(c) : c;
+        }
+        return new String(chars);
+    }
+
+    private static class QueueExecutor implements Executor {
+        private final List<Runnable> queue = new ArrayList<>();
+
+        @Override
+        public synchronized void execute(Runnable command) {
+            queue.add(command);
+        }
+
+        synchronized void runAll() {
+            for (Runnable runnable : queue)
+                runnable.run();
+            queue.clear();
+        }
+    }
+}
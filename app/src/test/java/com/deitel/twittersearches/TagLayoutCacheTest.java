@@ -0,0 +1,84 @@
+package com.deitel.twittersearches;
+
+import android.text.Layout;
+import android.text.TextPaint;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 25)
+public class TagLayoutCacheTest {
+
+    private static final int WIDTH = 400;
+
+    private TagLayoutCache cache;
+
+    @After
+    public void tearDown() {
+        cache.shutdown();
+    }
+
+    @Test
+    public void get_cachesUntilWidthChanges() {
+        cache = new TagLayoutCache(new TextPaint(), 8);
+
+        Layout layout = cache.get("java", WIDTH);
+        assertEquals(WIDTH, layout.getWidth());
+        assertSame(layout, cache.get("java", WIDTH));
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+
+        //every layout is dropped when the rows get another width.
+        cache.get("kotlin", WIDTH);
+        assertEquals(2, cache.size());
+        assertEquals(WIDTH / 2, cache.get("java", WIDTH / 2).getWidth());
+        assertEquals(1, cache.size());
+        assertEquals(3, cache.getMissCount());
+    }
+
+    @Test
+    public void get_evictsLeastRecentlyUsed() {
+        cache = new TagLayoutCache(new TextPaint(), 2);
+
+        cache.get("a", WIDTH);
+        cache.get("b", WIDTH);
+        cache.get("a", WIDTH);
+        cache.get("c", WIDTH);
+        assertEquals(2, cache.size());
+
+        cache.get("a", WIDTH);
+        assertEquals(2, cache.getHitCount());
+        cache.get("b", WIDTH);
+        assertEquals(4, cache.getMissCount());
+    }
+
+    @Test
+    public void prefetch_buildsLayoutsInTheBackground() throws Exception {
+        cache = new TagLayoutCache(new TextPaint(), 64);
+
+        //nothing is prefetched until the width is known.
+        cache.prefetch(Arrays.asList("a", "b"));
+        Thread.sleep(50);
+        assertEquals(0, cache.size());
+
+        cache.get("a", WIDTH);
+        cache.prefetch(Arrays.asList("a", "b", "c", "\u0645\u0631\u062d\u0628\u0627", "\ud83d\ude00"));
+        long deadline = System.currentTimeMillis() + 5000;
+        while (cache.size() < 5 && System.currentTimeMillis() < deadline)
+            Thread.sleep(10);
+        assertEquals(5, cache.size());
+
+        assertEquals(WIDTH, cache.get("c", WIDTH).getWidth());
+        cache.get("\ud83d\ude00", WIDTH);
+        assertEquals(2, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+    }
+}
@@ -0,0 +1,87 @@
+package com.deitel.twittersearches;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class TagSectionsTest {
+
+    @Test
+    public void sectionsFollowTheSortedTags() {
+        SortedTagIndex index = new SortedTagIndex();
+        for (String tag : new String[] {"java", "Android", "1st", "news", "apple", "Jobs", "_x", "~tilde"})
+            index.add(tag);
+
+        //1st, _x | Android, apple | java, Jobs | news | ~tilde
+        TagSections sections = index.getSections();
+        assertEquals(6, sections.size());
+        assertEquals("#", sections.getLabel(0));
+        assertEquals("#", sections.getLabel(1));
+        assertEquals("A", sections.getLabel(2));
+        assertEquals(2, sections.getStart(2));
+        assertEquals(2, sections.getCount(2));
+        assertEquals(4, sections.getStart(3));
+        assertEquals("J", sections.getLabel(3));
+
+        //the "1" and "_" sections share one "#" header.
+        assertTrue(sections.isHeaderPosition(0));
+        assertFalse(sections.isHeaderPosition(1));
+        assertTrue(sections.isHeaderPosition(2));
+        assertFalse(sections.isHeaderPosition(3));
+        assertTrue(sections.isHeaderPosition(7));
+        assertEquals(3, sections.getSectionForPosition(5));
+        assertEquals(-1, sections.getSectionForPosition(8));
+
+        index.remove("news");
+        assertEquals(5, sections.size());
+        assertEquals("#", sections.getLabel(4));
+        assertEquals(6, sections.getStart(4));
+    }
+
+    @Test
+    public void incrementalUpdatesMatchARecount() {
+        Random random = new Random(5);
+        SortedTagIndex index = new SortedTagIndex();
+        List<String> tags = new ArrayList<>();
+        String firsts = "aAbBzZ09#\u00e9\u00c9\u0416\u0436";
+        for (int i = 0; i < 500; ++i)
+            tags.add(firsts.charAt(random.nextInt(firsts.length())) + "tag" + i);
+
+        for (int i = 0; i < 5000; ++i) {
+            String tag = tags.get(random.nextInt(tags.size()));
+            if (random.nextBoolean())
+                index.add(tag);
+            else
+                index.remove(tag);
+            if (i % 250 == 0)
+                assertMatchesRecount(index);
+        }
+        assertMatchesRecount(index);
+
+        assertMatchesRecount(new SortedTagIndex(index));
+        assertEquals(0, new SortedTagIndex().getSections().size());
+    }
+
+    //Checks the sections against the tags, section by section.
+    private static void assertMatchesRecount(SortedTagIndex index) {
+        TagSections sections = index.getSections();
+        int section = -1;
+        char key = 0;
+        int position = 0;
+        for (String tag : index) {
+            if (section < 0 || TagSections.key(tag) != key) {
+                ++section;
+                key = TagSections.key(tag);
+                assertEquals(position, sections.getStart(section));
+                assertEquals(TagSections.label(key), sections.getLabel(section));
+            }
+            assertEquals(section, sections.getSectionForPosition(position));
+            ++position;
+        }
+        assertEquals(section + 1, sections.size());
+    }
+}
@@ -0,0 +1,77 @@
+package com.deitel.twittersearches;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+
+import static org.junit.Assert.*;
+
+public class WriteBehindSearchStoreTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void bufferedEdits_areReadBeforeTheyAreWritten() throws Exception {
+        LogSearchStore log = new LogSearchStore(folder.newFile("searches.log"));
+        log.edit().putString("old", "#old").putString("kept", "#kept").apply();
+        WriteBehindSearchStore store = new WriteBehindSearchStore(log, 60000);
+
+        store.edit().putString("java", "#java").remove("old").apply();
+        assertEquals("#java", store.getString("java", null));
+        assertNull(store.getString("old", null));
+        assertFalse(store.contains("old"));
+        assertEquals(2, store.size());
+        assertEquals(2, store.getAll().size());
+        assertEquals("#kept", store.getAll().get("kept"));
+
+        //nothing has reached the log yet.
+        assertFalse(log.contains("java"));
+        assertTrue(log.contains("old"));
+        store.close();
+    }
+
+    @Test
+    public void repeatedEdits_collapseIntoOneWrite() throws Exception {
+        File file = folder.newFile("searches.log");
+        LogSearchStore log = new LogSearchStore(file);
+        WriteBehindSearchStore store = new WriteBehindSearchStore(log, 60000);
+
+        for (int i = 0; i < 5; ++i)
+            store.edit().putString("java", "#java " + i).apply();
+        store.edit().putString("news", "from:bbcnews").apply();
+        store.edit().remove("news").apply();
+        store.flush();
+
+        assertEquals(7, store.getWriteCount());
+        assertEquals(5, store.getCoalescedWriteCount());
+        assertEquals(1, store.getPhysicalWriteCount());
+        StringBuilder counts = new StringBuilder();
+        store.appendTo(counts);
+        assertTrue(counts.toString(), counts.toString().startsWith("store edits: 7, 5 coalesced (71.4%), 1 batches written"));
+        assertEquals("#java 4", log.getString("java", null));
+        assertFalse(log.contains("news"));
+        store.close();
+
+        LogSearchStore reopened = new LogSearchStore(file);
+        assertEquals("#java 4", reopened.getString("java", null));
+        assertEquals(1, reopened.size());
+        reopened.close();
+    }
+
+    @Test
+    public void edits_areWrittenOnceTheWindowHasPassed() throws Exception {
+        LogSearchStore log = new LogSearchStore(folder.newFile("searches.log"));
+        WriteBehindSearchStore store = new WriteBehindSearchStore(log, 20);
+
+        store.edit().putString("java", "#java").apply();
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!log.contains("java") && System.currentTimeMillis() < deadline)
+            Thread.sleep(5);
+        assertTrue(log.contains("java"));
+        assertEquals(1, store.getPhysicalWriteCount());
+        store.close();
+    }
+}
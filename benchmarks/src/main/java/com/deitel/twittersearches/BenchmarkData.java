@@ -0,0 +1,35 @@
+package com.deitel.twittersearches;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+//BenchmarkData generates the saved searches the benchmarks work on. The same seed always gives the same
+//searches, so results are comparable between runs.
+final class BenchmarkData {
+
+    private static final String[] WORDS = {"java", "Kotlin", "android", "News", "release", "conference",
+            "jobs", "Oracle", "google", "IO"};
+
+    private BenchmarkData() {
+    }
+
+
+    //Returns "count" distinct tags in random order, with mixed case like the ones users type.
+    static List<String> tags(int count, long seed) {
+        Random random = new Random(seed);
+        List<String> tags = new ArrayList<>(count);
+        for (int i = 0; i < count; ++i)
+            tags.add(WORDS[random.nextInt(WORDS.length)] + " " + Integer.toString(i, 36));
+        Collections.shuffle(tags, random);
+        return tags;
+    }
+
+
+    //Returns a query like the ones saved with a tag.
+    static String query(Random random) {
+        return "#" + WORDS[random.nextInt(WORDS.length)].toLowerCase() + " OR from:user" + random.nextInt(1000)
+                + " since:2017-06-" + (10 + random.nextInt(20)) + " caf\u00e9";
+    }
+}
@@ -0,0 +1,96 @@
+package com.deitel.twittersearches;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+//Measures a burst of edits like a user re-saving and deleting searches in a row: editing 10 searches 5 times
+//each and then deleting them. In logBurst every edit goes straight to the LogSearchStore; in writeBehindBurst
+//the edits go through a WriteBehindSearchStore, which collapses them into one batch written by flush.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EditBurstBenchmark {
+
+    private static final int EDITED_TAGS = 10;
+    private static final int ROUNDS = 5;
+
+    @Param({"1000", "10000", "100000"})
+    public int tagCount;
+
+    private File file;
+    private LogSearchStore store;
+    private WriteBehindSearchStore writeBehind;
+    private String[] editedTags;
+    private String[] editedQueries;
+
+    //Every iteration starts from a fresh store, so the log doesn't grow from one iteration to the next.
+    @Setup(Level.Iteration)
+    public void writeStore() throws IOException {
+        file = File.createTempFile("searches", ".log");
+        file.delete();
+
+        List<String> tags = BenchmarkData.tags(tagCount, 1);
+        Random random = new Random(2);
+        store = new LogSearchStore(file);
+        SearchStore.Editor editor = store.edit();
+        for (String tag : tags)
+            editor.putString(tag, BenchmarkData.query(random));
+        editor.apply();
+        //a window long enough that only flush writes the burst.
+        writeBehind = new WriteBehindSearchStore(store, 60000);
+
+        editedTags = tags.subList(0, EDITED_TAGS).toArray(new String[EDITED_TAGS]);
+        editedQueries = new String[ROUNDS];
+        for (int round = 0; round < ROUNDS; ++round)
+            editedQueries[round] = BenchmarkData.query(random);
+    }
+
+    @TearDown(Level.Iteration)
+    public void deleteStore() {
+        writeBehind.close();
+        file.delete();
+    }
+
+
+    @Benchmark
+    public void logBurst() {
+        editBurst(store);
+    }
+
+
+    @Benchmark
+    public void writeBehindBurst() {
+        editBurst(writeBehind);
+        writeBehind.flush();
+    }
+
+
+    private void editBurst(SearchStore target) {
+        for (int round = 0; round < ROUNDS; ++round) {
+            for (String tag : editedTags)
+                target.edit().putString(tag, editedQueries[round]).apply();
+        }
+        for (String tag : editedTags)
+            target.edit().remove(tag).apply();
+    }
+}
@@ -0,0 +1,91 @@
+package com.deitel.twittersearches;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+//Compares keeping the searches in a SearchArena (as LogSearchStore does) with a HashMap<String, String>
+//(what it used to keep): filling one with every search, as opening the store does, and looking a query up,
+//as a tap on a search does. The heap each of them takes is checked by SearchArenaTest.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SearchArenaBenchmark {
+
+    private static final int SAMPLES = 1024;
+
+    @Param({"1000", "10000", "100000"})
+    public int tagCount;
+
+    private String[] tags;
+    private String[] queries;
+    private String[] sampleTags;
+    private SearchArena arena;
+    private Map<String, String> map;
+    private int next;
+
+    @Setup
+    public void createSearches() {
+        List<String> allTags = BenchmarkData.tags(tagCount, 1);
+        Random random = new Random(2);
+        tags = allTags.toArray(new String[tagCount]);
+        queries = new String[tagCount];
+        for (int i = 0; i < tagCount; ++i)
+            queries[i] = BenchmarkData.query(random);
+
+        arena = fillArena();
+        map = fillMap();
+        sampleTags = new String[SAMPLES];
+        for (int i = 0; i < SAMPLES; ++i)
+            sampleTags[i] = tags[random.nextInt(tagCount)];
+    }
+
+
+    @Benchmark
+    public SearchArena fillArena() {
+        SearchArena filled = new SearchArena();
+        for (int i = 0; i < tags.length; ++i)
+            filled.put(tags[i], queries[i]);
+        return filled;
+    }
+
+
+    @Benchmark
+    public Map<String, String> fillMap() {
+        Map<String, String> filled = new HashMap<>();
+        for (int i = 0; i < tags.length; ++i)
+            filled.put(tags[i], queries[i]);
+        return filled;
+    }
+
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public String arenaQuery() {
+        return arena.getQuery(sampleTags[next++ & (SAMPLES - 1)]);
+    }
+
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public String mapQuery() {
+        return map.get(sampleTags[next++ & (SAMPLES - 1)]);
+    }
+}
@@ -0,0 +1,134 @@
+package com.deitel.twittersearches;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+//Measures importing a file of searches into an empty SearchStore, and exporting a store to a file, in both
+//formats. Each import or export is timed once per iteration, since it works through the whole file.
+//Run with -prof gc to see how much the import allocates along the way.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SearchTransferBenchmark {
+
+    @Param({"10000", "500000"})
+    public int searchCount;
+
+    @Param({"JSON_LINES", "CSV"})
+    public SearchTransfer.Format format;
+
+    private File file;
+    private File storeFile;
+    private File exportFile;
+    private File exportStoreFile;
+    private LogSearchStore exportStore;
+    private LogSearchStore importStore;
+
+    @Setup
+    public void writeFile() throws IOException {
+        file = File.createTempFile("searches", "." + format);
+        List<String> tags = BenchmarkData.tags(searchCount, 1);
+        Random random = new Random(2);
+        Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"));
+        for (String tag : tags) {
+            String query = BenchmarkData.query(random) + " \"quoted\"";
+            if (format == SearchTransfer.Format.CSV)
+                writer.write(tag + ",\"" + query.replace("\"", "\"\"") + "\"\n");
+            else
+                writer.write("{\"tag\":\"" + tag + "\",\"query\":\"" + query.replace("\"", "\\\"") + "\"}\n");
+        }
+        writer.close();
+
+        exportStoreFile = File.createTempFile("export", ".log");
+        exportStoreFile.delete();
+        exportStore = new LogSearchStore(exportStoreFile);
+        importFile(exportStore);
+        exportFile = File.createTempFile("export", "." + format);
+    }
+
+    @TearDown
+    public void deleteFiles() {
+        exportStore.close();
+        exportStoreFile.delete();
+        file.delete();
+        exportFile.delete();
+    }
+
+    //Every import starts from an empty store.
+    @Setup(Level.Iteration)
+    public void openStore() throws IOException {
+        storeFile = File.createTempFile("import", ".log");
+        storeFile.delete();
+        importStore = new LogSearchStore(storeFile);
+    }
+
+    @TearDown(Level.Iteration)
+    public void deleteStore() {
+        importStore.close();
+        storeFile.delete();
+    }
+
+
+    @Benchmark
+    public long importSearches() throws IOException {
+        return importFile(importStore);
+    }
+
+
+    @Benchmark
+    public long exportSearches() throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(exportFile), "UTF-8"));
+        try {
+            return SearchTransfer.exportSearches(exportStore, writer, format, CONTINUE);
+        }
+        finally {
+            writer.close();
+        }
+    }
+
+
+    private long importFile(SearchStore store) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+        try {
+            return SearchTransfer.importSearches(reader, format, store, CONTINUE);
+        }
+        finally {
+            reader.close();
+        }
+    }
+
+    private static final SearchTransfer.Listener CONTINUE = new SearchTransfer.Listener() {
+        @Override
+        public boolean onBatch(Map<String, String> searches, Map<String, String> replacedQueries, long count) {
+            return true;
+        }
+    };
+}
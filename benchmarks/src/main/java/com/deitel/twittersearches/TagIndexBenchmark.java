@@ -0,0 +1,83 @@
+package com.deitel.twittersearches;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+//Measures the SortedTagIndex operations behind SearchesAdapter: inserting and deleting a tag (saving and
+//deleting a search), checking whether a tag is saved, and the position lookups the adapter does when it
+//binds a row (get) and when it notifies the RecyclerView of a change (indexOf).
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TagIndexBenchmark {
+
+    //The number of tags each benchmark cycles through; a power of two so the next one is found with a mask.
+    private static final int SAMPLES = 1024;
+
+    @Param({"1000", "10000", "100000"})
+    public int tagCount;
+
+    private SortedTagIndex index;
+    private String[] savedTags;
+    private String[] newTags;
+    private int[] positions;
+    private int next;
+
+    @Setup
+    public void buildIndex() {
+        List<String> tags = BenchmarkData.tags(tagCount + SAMPLES, 1);
+        index = new SortedTagIndex();
+        for (String tag : tags.subList(0, tagCount))
+            index.add(tag);
+
+        savedTags = new String[SAMPLES];
+        newTags = new String[SAMPLES];
+        positions = new int[SAMPLES];
+        for (int i = 0; i < SAMPLES; ++i) {
+            savedTags[i] = tags.get(i * tagCount / SAMPLES);
+            newTags[i] = tags.get(tagCount + i);
+            positions[i] = (int) ((long) i * 7919 % tagCount);
+        }
+    }
+
+
+    @Benchmark
+    public int insertAndDelete() {
+        String tag = newTags[next++ & (SAMPLES - 1)];
+        index.add(tag);
+        return index.remove(tag);
+    }
+
+
+    @Benchmark
+    public boolean contains() {
+        return index.contains(savedTags[next++ & (SAMPLES - 1)]);
+    }
+
+
+    @Benchmark
+    public String tagAtPosition() {
+        return index.get(positions[next++ & (SAMPLES - 1)]);
+    }
+
+
+    @Benchmark
+    public int positionOfTag() {
+        return index.indexOf(savedTags[next++ & (SAMPLES - 1)]);
+    }
+}
@@ -0,0 +1,121 @@
+package com.deitel.twittersearches;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+//Measures the two steps TagLoader goes through before the first tags are shown: opening the SearchStore
+//and reading its tags, then sorting them case-insensitively. The firstScreen benchmarks compare the whole
+//cold start up to the first screen of tags, from the store and from a SearchSnapshotFile, and
+//loadSnapshot the time to read every search from the snapshot.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TagLoadBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    public int tagCount;
+
+    //The number of tags that fill the first screen (TagLoader.FIRST_CHUNK_SIZE).
+    private static final int FIRST_SCREEN = 32;
+
+    private File file;
+    private File snapshotFile;
+    private List<String> unsortedTags;
+
+    @Setup
+    public void writeStore() throws IOException {
+        file = File.createTempFile("searches", ".log");
+        file.delete();
+
+        unsortedTags = BenchmarkData.tags(tagCount, 1);
+        Random random = new Random(2);
+        LogSearchStore store = new LogSearchStore(file);
+        SearchStore.Editor editor = store.edit();
+        for (String tag : unsortedTags)
+            editor.putString(tag, BenchmarkData.query(random));
+        editor.apply();
+
+        snapshotFile = File.createTempFile("searches", ".snapshot");
+        SearchModel model = new SearchModel();
+        SearchSnapshotFile.write(snapshotFile, model.putAll(store.getAll()));
+        store.close();
+    }
+
+    @TearDown
+    public void deleteStore() {
+        file.delete();
+        snapshotFile.delete();
+    }
+
+
+    @Benchmark
+    public List<String> loadTags() throws IOException {
+        LogSearchStore store = new LogSearchStore(file);
+        List<String> tags = new ArrayList<>(store.getAll().keySet());
+        store.close();
+        return tags;
+    }
+
+
+    @Benchmark
+    public List<String> sortTags() {
+        List<String> tags = new ArrayList<>(unsortedTags);
+        Collections.sort(tags, SortedTagIndex.ORDER);
+        return tags;
+    }
+
+
+    @Benchmark
+    public Map<String, String> firstScreenFromStore() throws IOException {
+        LogSearchStore store = new LogSearchStore(file);
+        Map<String, String> searches = store.getAll();
+        List<String> tags = new ArrayList<>(searches.keySet());
+        Collections.sort(tags, SortedTagIndex.ORDER);
+        Map<String, String> firstScreen = new LinkedHashMap<>();
+        for (String tag : tags.subList(0, Math.min(FIRST_SCREEN, tags.size())))
+            firstScreen.put(tag, searches.get(tag));
+        store.close();
+        return firstScreen;
+    }
+
+
+    @Benchmark
+    public Map<String, String> firstScreenFromSnapshot() throws IOException {
+        SearchSnapshotFile snapshot = SearchSnapshotFile.open(snapshotFile);
+        Map<String, String> firstScreen = new LinkedHashMap<>();
+        snapshot.read(0, Math.min(FIRST_SCREEN, snapshot.size()), firstScreen);
+        return firstScreen;
+    }
+
+
+    @Benchmark
+    public Map<String, String> loadSnapshot() throws IOException {
+        SearchSnapshotFile snapshot = SearchSnapshotFile.open(snapshotFile);
+        Map<String, String> searches = new LinkedHashMap<>();
+        snapshot.read(0, snapshot.size(), searches);
+        return searches;
+    }
+}
@@ -0,0 +1,92 @@
+package com.deitel.twittersearches;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+//Measures building the URL of a search, as itemClickListener and shareSearch do: looking the query up and
+//encoding it every time, and going through the SearchUrlCache, both when the user keeps returning to a few
+//searches (which stay cached) and when every tap is on a different search.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UrlEncodingBenchmark {
+
+    private static final String SEARCH_URL = "https://mobile.twitter.com/search?q=";
+    private static final int SAMPLES = 1024;
+    private static final int CACHE_SIZE = 64;
+    private static final int RECENT_SEARCHES = 32;
+
+    @Param({"1000", "10000", "100000"})
+    public int tagCount;
+
+    private File file;
+    private LogSearchStore store;
+    private String[] tags;
+    private PercentEncoder encoder;
+    private SearchUrlCache cache;
+    private int next;
+
+    @Setup
+    public void writeStore() throws IOException {
+        file = File.createTempFile("searches", ".log");
+        file.delete();
+
+        List<String> allTags = BenchmarkData.tags(tagCount, 1);
+        Random random = new Random(2);
+        store = new LogSearchStore(file);
+        SearchStore.Editor editor = store.edit();
+        for (String tag : allTags)
+            editor.putString(tag, BenchmarkData.query(random));
+        editor.apply();
+
+        tags = new String[SAMPLES];
+        for (int i = 0; i < SAMPLES; ++i)
+            tags[i] = allTags.get(random.nextInt(tagCount));
+
+        encoder = new PercentEncoder();
+        cache = new SearchUrlCache(SEARCH_URL, CACHE_SIZE);
+    }
+
+    @TearDown
+    public void deleteStore() {
+        store.close();
+        file.delete();
+    }
+
+
+    @Benchmark
+    public String encode() {
+        return encoder.encode(SEARCH_URL, store.getString(tags[next++ & (SAMPLES - 1)], ""));
+    }
+
+
+    @Benchmark
+    public String cachedRecentSearch() {
+        return cache.get(tags[next++ % RECENT_SEARCHES], store);
+    }
+
+
+    @Benchmark
+    public String cachedAnySearch() {
+        return cache.get(tags[next++ & (SAMPLES - 1)], store);
+    }
+}